@@ -31,6 +31,14 @@ android {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
     }
+    buildFeatures {
+        // MdmLog usa BuildConfig.DEBUG como nivel mínimo fijado al compilar.
+        buildConfig = true
+    }
+    testOptions {
+        // Las pruebas unitarias ejercitan clases que registran con android.util.Log.
+        unitTests.isReturnDefaultValues = true
+    }
 }
 
 dependencies {
@@ -44,8 +52,6 @@ dependencies {
     implementation("com.airbnb.android:lottie:6.0.0")
 
     implementation(libs.okhttp)
-    implementation(libs.glide)
-    annotationProcessor(libs.glide.compiler)
     implementation("com.google.android.gms:play-services-location:21.0.1")
 
     // AÑADE ESTAS LÍNEAS AQUÍ para Firebase Messaging
@@ -0,0 +1,42 @@
+package com.inova.guard.mdm;
+
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.inova.guard.mdm.utils.CommandBus;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Comprobación al estilo de LeakCanary: tras destruir MainActivity, ni el bus de órdenes ni las
+ * órdenes que se publiquen después deben mantenerla en memoria.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MainActivityLeakTest {
+
+    @Test
+    public void mainActivity_isNotRetainedAfterDestroy() throws InterruptedException {
+        AtomicReference<WeakReference<MainActivity>> activity = new AtomicReference<>();
+        try (ActivityScenario<MainActivity> scenario = ActivityScenario.launch(MainActivity.class)) {
+            scenario.onActivity(instance -> activity.set(new WeakReference<>(instance)));
+            InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        }
+        CommandBus.get().publish(new CommandBus.Command(CommandBus.UNLOCK, "test"));
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+
+        WeakReference<MainActivity> reference = activity.get();
+        for (int attempt = 0; attempt < 50 && reference.get() != null; attempt++) {
+            Runtime.getRuntime().gc();
+            System.runFinalization();
+            Thread.sleep(100);
+        }
+        assertNull("MainActivity sigue retenida tras onDestroy", reference.get());
+    }
+}
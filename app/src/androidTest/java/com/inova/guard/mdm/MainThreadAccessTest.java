@@ -0,0 +1,46 @@
+package com.inova.guard.mdm;
+
+import android.os.Build;
+
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.inova.guard.mdm.utils.StrictModeReporter;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Falla si las pantallas de arranque y bloqueo acceden a disco o red desde el hilo principal.
+ * StrictMode solo está activo en compilaciones de depuración y el listener requiere API 28.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MainThreadAccessTest {
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(BuildConfig.DEBUG && Build.VERSION.SDK_INT >= Build.VERSION_CODES.P);
+        StrictModeReporter.clear();
+    }
+
+    @Test
+    public void splashActivity_doesNotTouchDiskOrNetworkOnMainThread() {
+        try (ActivityScenario<SplashActivity> ignored = ActivityScenario.launch(SplashActivity.class)) {
+            InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        }
+        assertEquals("[]", StrictModeReporter.getViolations(SplashActivity.class).toString());
+    }
+
+    @Test
+    public void mainActivity_doesNotTouchDiskOrNetworkOnMainThread() {
+        try (ActivityScenario<MainActivity> ignored = ActivityScenario.launch(MainActivity.class)) {
+            InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        }
+        assertEquals("[]", StrictModeReporter.getViolations(MainActivity.class).toString());
+    }
+}
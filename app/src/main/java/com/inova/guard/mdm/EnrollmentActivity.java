@@ -21,9 +21,10 @@ import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
 import com.google.firebase.messaging.FirebaseMessaging;
-import com.inova.guard.mdm.admin.DeviceAdminReceiver;
+import com.inova.guard.mdm.admin.DevicePolicyFacade;
 import com.inova.guard.mdm.service.MdmService;
 import com.inova.guard.mdm.utils.ApiUtils;
+import com.inova.guard.mdm.utils.CallScope;
 import com.inova.guard.mdm.utils.Constants;
 
 import org.json.JSONException;
@@ -37,9 +38,10 @@ public class EnrollmentActivity extends AppCompatActivity {
     private static final int REQUEST_CODE_ENABLE_ADMIN = 1;
     private static final int PERMISSION_REQUEST_CODE = 100;
 
-    private DevicePolicyManager devicePolicyManager;
+    private DevicePolicyFacade devicePolicyFacade;
     private ComponentName adminComponentName;
     private SharedPreferences sharedPreferences;
+    private final CallScope callScope = CallScope.bind(this);
 
     private Button btnActivateAdmin;
     private Button btnEnroll;
@@ -56,8 +58,8 @@ public class EnrollmentActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_enrollment);
 
-        devicePolicyManager = (DevicePolicyManager) getSystemService(Context.DEVICE_POLICY_SERVICE);
-        adminComponentName = new ComponentName(this, DeviceAdminReceiver.class);
+        devicePolicyFacade = DevicePolicyFacade.get(this);
+        adminComponentName = devicePolicyFacade.getAdminComponent();
         sharedPreferences = getSharedPreferences(Constants.PREFS_NAME, MODE_PRIVATE);
 
         btnActivateAdmin = findViewById(R.id.btn_activate_admin);
@@ -131,13 +133,13 @@ public class EnrollmentActivity extends AppCompatActivity {
     }
 
     private void updateButtonState() {
-        boolean isAdminActive = devicePolicyManager.isAdminActive(adminComponentName);
+        boolean isAdminActive = devicePolicyFacade.isAdminActive();
         btnActivateAdmin.setEnabled(!isAdminActive);
         btnEnroll.setEnabled(isAdminActive);
     }
 
     private void activateDeviceAdmin() {
-        if (!devicePolicyManager.isAdminActive(adminComponentName)) {
+        if (!devicePolicyFacade.isAdminActive()) {
             Intent intent = new Intent(DevicePolicyManager.ACTION_ADD_DEVICE_ADMIN);
             intent.putExtra(DevicePolicyManager.EXTRA_DEVICE_ADMIN, adminComponentName);
             intent.putExtra(DevicePolicyManager.EXTRA_ADD_EXPLANATION, "InovaGuard necesita ser un administrador del dispositivo para poder gestionar las funciones MDM, como el bloqueo de pantalla.");
@@ -149,6 +151,8 @@ public class EnrollmentActivity extends AppCompatActivity {
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
         if (requestCode == REQUEST_CODE_ENABLE_ADMIN) {
+            // El aviso de DeviceAdminReceiver puede llegar después de este resultado.
+            devicePolicyFacade.invalidate();
             updateButtonState();
             if (resultCode == RESULT_OK) {
                 Toast.makeText(this, "Administrador del dispositivo activado.", Toast.LENGTH_SHORT).show();
@@ -171,7 +175,7 @@ public class EnrollmentActivity extends AppCompatActivity {
     }
 
     private void attemptEnrollment() {
-        if (!devicePolicyManager.isAdminActive(adminComponentName)) {
+        if (!devicePolicyFacade.isAdminActive()) {
             Toast.makeText(this, "Por favor, activa el administrador del dispositivo primero.", Toast.LENGTH_SHORT).show();
             return;
         }
@@ -243,45 +247,13 @@ public class EnrollmentActivity extends AppCompatActivity {
             deviceData.put("device_model_info", modelName);
 
 
-            ApiUtils.enrollDevice(this, deviceData, new ApiUtils.ApiCallback() {
-                @Override
-                public void onSuccess(String response) {
-                    try {
-                        JSONObject jsonResponse = new JSONObject(response);
-                        boolean success = jsonResponse.getBoolean("success");
-                        String message = jsonResponse.getString("message");
-                        runOnUiThread(() -> Toast.makeText(EnrollmentActivity.this, message, Toast.LENGTH_LONG).show());
-
-                        if (success) {
-                            String deviceId = jsonResponse.getString("device_id");
-                            String contactPhone = jsonResponse.optString("contact_phone", "");
-
-                            sharedPreferences.edit()
-                                    .putBoolean(Constants.PREF_IS_ENROLLED, true)
-                                    .putString(Constants.PREF_DEVICE_ID, deviceId)
-                                    .putString(Constants.PREF_SERIAL_NUMBER, serialText)
-                                    .putString(Constants.PREF_CONTACT_PHONE, contactPhone)
-                                    .apply();
-
-                            Intent serviceIntent = new Intent(EnrollmentActivity.this, MdmService.class);
-                            startService(serviceIntent);
-
-                            Intent mainIntent = new Intent(EnrollmentActivity.this, MainActivity.class);
-                            startActivity(mainIntent);
-                            finish();
-                        }
-                    } catch (JSONException e) {
-                        Log.e(TAG, "JSON parsing error: " + e.getMessage());
-                        runOnUiThread(() -> Toast.makeText(EnrollmentActivity.this, "Error de datos del servidor: " + e.getMessage(), Toast.LENGTH_LONG).show());
-                    }
-                }
-
-                @Override
-                public void onFailure(String errorMessage) {
-                    Log.e(TAG, "Enrollment API call failed: " + errorMessage);
-                    runOnUiThread(() -> Toast.makeText(EnrollmentActivity.this, "Error de conexión: " + errorMessage, Toast.LENGTH_LONG).show());
-                }
-            });
+            // Se entrega en el hilo principal y se cancela si la actividad se destruye antes.
+            callScope.deliver(ApiUtils.enrollDevice(this, deviceData),
+                    response -> onEnrollResponse(response, serialText),
+                    errorMessage -> {
+                        Log.e(TAG, "Enrollment API call failed: " + errorMessage);
+                        Toast.makeText(EnrollmentActivity.this, "Error de conexión: " + errorMessage, Toast.LENGTH_LONG).show();
+                    });
 
         } catch (Exception e) {
             Log.e(TAG, "Error durante el enrolamiento: " + e.getMessage());
@@ -289,6 +261,39 @@ public class EnrollmentActivity extends AppCompatActivity {
         }
     }
 
+    private void onEnrollResponse(String response, String serialText) {
+        try {
+            JSONObject jsonResponse = new JSONObject(response);
+            boolean success = jsonResponse.getBoolean("success");
+            String message = jsonResponse.getString("message");
+            Toast.makeText(EnrollmentActivity.this, message, Toast.LENGTH_LONG).show();
+
+            if (success) {
+                String deviceId = jsonResponse.getString("device_id");
+                String contactPhone = jsonResponse.optString("contact_phone", "");
+                String unlockSecret = jsonResponse.optString("unlock_secret", "");
+
+                sharedPreferences.edit()
+                        .putBoolean(Constants.PREF_IS_ENROLLED, true)
+                        .putString(Constants.PREF_DEVICE_ID, deviceId)
+                        .putString(Constants.PREF_SERIAL_NUMBER, serialText)
+                        .putString(Constants.PREF_CONTACT_PHONE, contactPhone)
+                        .putString(Constants.PREF_UNLOCK_SECRET, unlockSecret)
+                        .apply();
+
+                Intent serviceIntent = new Intent(EnrollmentActivity.this, MdmService.class);
+                startService(serviceIntent);
+
+                Intent mainIntent = new Intent(EnrollmentActivity.this, MainActivity.class);
+                startActivity(mainIntent);
+                finish();
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "JSON parsing error: " + e.getMessage());
+            Toast.makeText(EnrollmentActivity.this, "Error de datos del servidor: " + e.getMessage(), Toast.LENGTH_LONG).show();
+        }
+    }
+
     private String getImei() {
         String imei = "unknown";
         try {
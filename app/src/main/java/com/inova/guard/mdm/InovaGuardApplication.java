@@ -0,0 +1,27 @@
+package com.inova.guard.mdm;
+
+import android.app.Application;
+
+import com.inova.guard.mdm.utils.Constants;
+import com.inova.guard.mdm.utils.MainThreadWatchdog;
+import com.inova.guard.mdm.utils.StartupTracer;
+import com.inova.guard.mdm.utils.StrictModeReporter;
+
+/**
+ * Punto de entrada del proceso. Solo arranca la instrumentación (y StrictMode en depuración);
+ * cualquier otra inicialización debe hacerse de forma perezosa para no retrasar la pantalla de
+ * bloqueo.
+ */
+public class InovaGuardApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        long begin = StartupTracer.begin();
+        super.onCreate();
+        if (BuildConfig.DEBUG) {
+            StrictModeReporter.install();
+        }
+        MainThreadWatchdog.start(Constants.MAIN_THREAD_STALL_THRESHOLD_MS);
+        StartupTracer.end("app_create", begin);
+    }
+}
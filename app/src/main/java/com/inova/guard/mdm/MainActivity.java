@@ -9,9 +9,11 @@ import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.os.Handler;
-import android.os.UserManager; // Se añadió esta importación
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.ImageView;
@@ -28,23 +30,39 @@ import android.content.pm.PackageManager;
 import androidx.core.content.ContextCompat;
 
 import com.google.firebase.messaging.FirebaseMessaging;
-import com.bumptech.glide.Glide;
 import com.inova.guard.mdm.admin.DeviceAdminReceiver;
+import com.inova.guard.mdm.admin.DevicePolicyFacade;
+import com.inova.guard.mdm.admin.DevicePolicyReconciler;
 import com.inova.guard.mdm.service.MdmService;
 import com.inova.guard.mdm.utils.ApiUtils;
+import com.inova.guard.mdm.utils.AppExecutors;
+import com.inova.guard.mdm.utils.AuditLog;
+import com.inova.guard.mdm.utils.BrandingCache;
+import com.inova.guard.mdm.utils.CommandAcks;
+import com.inova.guard.mdm.utils.CommandBus;
+import com.inova.guard.mdm.utils.CommandTiming;
 import com.inova.guard.mdm.utils.Constants;
+import com.inova.guard.mdm.utils.DeviceStateSnapshot;
+import com.inova.guard.mdm.utils.LockWakeMetrics;
+import com.inova.guard.mdm.utils.OfflineOutbox;
+import com.inova.guard.mdm.utils.OfflineUnlockVerifier;
+import com.inova.guard.mdm.utils.PaymentLedger;
+import com.inova.guard.mdm.utils.RequestDispatcher;
+import com.inova.guard.mdm.utils.RuntimeConfigStore;
+import com.inova.guard.mdm.utils.StartupMetrics;
+import com.inova.guard.mdm.utils.StartupTracer;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 
 import okhttp3.Call;
 import okhttp3.Callback;
 import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
@@ -54,9 +72,19 @@ public class MainActivity extends AppCompatActivity {
     private static final String TAG = "MainActivity";
     private static final int REQUEST_CODE_ENABLE_ADMIN = 1;
     private static final String ADMIN_MODE_CODE = "251983";
+    private static final String EXTRA_WAKE_ELAPSED = "wake_elapsed";
+    // Lo ponen MdmService y el servicio FCM al bloquear: apagar la pantalla tras dibujar el bloqueo.
+    public static final String EXTRA_SCREEN_OFF = "screen_off";
+    private static final int PAYMENT_HISTORY_ROWS = 12;
+    // Si hay una instancia en primer plano; lo consulta ScreenReceiver para no relanzarla.
+    private static volatile boolean resumed;
     private View lockedLayout;
     private ImageView logoImageView;
+    private ImageView mainLogoImageView;
     private TextView lockedMessageTextView;
+    private TextView lockedDetailTextView;
+    // Texto del layout, para volver a él cuando el servidor deja de enviar un mensaje propio.
+    private CharSequence defaultLockDetailText;
     private EditText unlockCodeEditText;
     private Button unlockButton;
     private TextView incorrectCodeTextView;
@@ -67,50 +95,71 @@ public class MainActivity extends AppCompatActivity {
     private TextView amountPaidTextView;
     private TextView deviceInfoTextView;
     private TextView paymentInstructionsTextView;
+    private TextView paymentHistoryTextView;
     private Button contactAdminButton;
     private TextView contactPhoneMainTextView;
     private View adminPanel;
     private Button clearDeviceOwnerButton;
     private DevicePolicyManager devicePolicyManager;
     private ComponentName adminComponentName;
-    private SharedPreferences sharedPreferences;
+    private volatile SharedPreferences sharedPreferences;
+    // Estado con el que se dibuja la pantalla; se sustituye entero, nunca se modifica.
+    private DeviceStateSnapshot state;
+    // Hay que apagar la pantalla en cuanto se dibuje el bloqueo (paso de desbloqueado a bloqueado).
+    private boolean screenOffPending;
+    // Resultado de la última consulta al sistema, hecha siempre fuera del hilo principal.
+    private volatile boolean deviceOwner;
     private Handler handler;
     private Runnable checkConnectionRunnable;
+    // Intervalo de la configuración remota; se lee en segundo plano (la primera lectura es de disco).
+    private volatile long refreshIntervalMs = Constants.CONNECTION_CHECK_INTERVAL;
+    // Texto del historial de pagos, preparado en segundo plano junto con el estado.
+    private volatile String paymentHistory = "";
     private ScreenReceiver screenReceiver;
+    private CommandBus.Subscription commandSubscription;
+    private boolean logoLoaded;
 
     private ActivityResultLauncher<String[]> locationPermissionLauncher;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        long onCreateBegin = StartupTracer.begin();
         super.onCreate(savedInstanceState);
+        // Al recrearse (p. ej. por rotación) el intent es el mismo: no se vuelve a apagar la pantalla.
+        if (savedInstanceState == null) {
+            readScreenOffRequest(getIntent());
+        }
 
-        sharedPreferences = getSharedPreferences(Constants.PREFS_NAME, MODE_PRIVATE);
-        String deviceId = sharedPreferences.getString(Constants.PREF_DEVICE_ID, null);
-
-        if (deviceId == null || deviceId.isEmpty()) {
-            Log.d(TAG, "Device not enrolled. Redirecting to EnrollmentActivity.");
-            Intent enrollmentIntent = new Intent(this, EnrollmentActivity.class);
-            startActivity(enrollmentIntent);
-            finish();
+        // Foto precargada por SplashActivity; si se llegó aquí por otro camino se carga en segundo plano.
+        DeviceStateSnapshot preloaded = DeviceStateSnapshot.peek();
+        if (preloaded != null && !preloaded.enrolled) {
+            redirectToEnrollment("Device not enrolled. Redirecting to EnrollmentActivity.");
             return;
         }
 
         setContentView(R.layout.activity_main);
+        if (preloaded != null && preloaded.locked) {
+            StartupMetrics.recordOnFirstFrame(this, StartupMetrics.LOCK_SCREEN_FIRST_FRAME);
+        }
 
         lockedLayout = findViewById(R.id.locked_layout);
         logoImageView = findViewById(R.id.logo_image_view);
         lockedMessageTextView = findViewById(R.id.locked_message_text_view);
+        lockedDetailTextView = findViewById(R.id.locked_detail_text_view);
+        defaultLockDetailText = lockedDetailTextView.getText();
         unlockCodeEditText = findViewById(R.id.unlock_code_edit_text);
         unlockButton = findViewById(R.id.unlock_button);
         incorrectCodeTextView = findViewById(R.id.incorrect_code_text_view);
         contactPhoneTextView = findViewById(R.id.contact_phone_text_view);
 
         mainLayout = findViewById(R.id.main_layout);
+        mainLogoImageView = findViewById(R.id.main_logo_image_view);
         nextPaymentDateTextView = findViewById(R.id.next_payment_date_text_view);
         amountDueTextView = findViewById(R.id.amount_due_text_view);
         amountPaidTextView = findViewById(R.id.amount_paid_text_view);
         deviceInfoTextView = findViewById(R.id.device_info_text_view);
         paymentInstructionsTextView = findViewById(R.id.payment_instructions_text_view);
+        paymentHistoryTextView = findViewById(R.id.payment_history_text_view);
         contactAdminButton = findViewById(R.id.contact_admin_button);
         contactPhoneMainTextView = findViewById(R.id.contact_phone_main_text_view);
 
@@ -120,11 +169,19 @@ public class MainActivity extends AppCompatActivity {
         devicePolicyManager = (DevicePolicyManager) getSystemService(Context.DEVICE_POLICY_SERVICE);
         adminComponentName = new ComponentName(this, DeviceAdminReceiver.class);
 
+        if (preloaded != null) {
+            renderState(preloaded);
+        }
+
         if (!MdmService.isRunning) {
+            long serviceBegin = StartupTracer.begin();
             Intent serviceIntent = new Intent(this, MdmService.class);
             startService(serviceIntent);
+            StartupTracer.end("start_service", serviceBegin);
         }
 
+        // Sin el estado cargado no se puede verificar el código; se habilita en applyState.
+        unlockButton.setEnabled(sharedPreferences != null);
         unlockButton.setOnClickListener(v -> attemptUnlock());
 
         contactAdminButton.setOnClickListener(v -> {
@@ -147,25 +204,32 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
-        handler = new Handler();
+        handler = new Handler(Looper.getMainLooper());
+        registerScreenReceiver();
+        // Las órdenes de bloqueo/desbloqueo ya escribieron las preferencias antes de publicarse:
+        // basta con volver a leer el estado. La baja en onDestroy evita retener la actividad.
+        commandSubscription = CommandBus.get().subscribe(command -> checkDeviceStatus());
+        recordWakeLatency(getIntent());
         checkConnectionRunnable = new Runnable() {
             @Override
             public void run() {
                 checkDeviceStatus();
-                handler.postDelayed(this, Constants.CONNECTION_CHECK_INTERVAL);
+                handler.postDelayed(this, refreshIntervalMs);
             }
         };
 
-        if (devicePolicyManager != null && adminComponentName != null && devicePolicyManager.isAdminActive(adminComponentName)) {
-            Log.d(TAG, "Device Admin is active. Attempting to restrict settings.");
-        } else {
-            Log.w(TAG, "Device Admin is not active. App may be easily uninstalled.");
-        }
+        AppExecutors.background().execute(() -> {
+            if (DevicePolicyFacade.get(this).isAdminActive()) {
+                Log.d(TAG, "Device Admin is active. Attempting to restrict settings.");
+            } else {
+                Log.w(TAG, "Device Admin is not active. App may be easily uninstalled.");
+            }
+        });
 
         OnBackPressedCallback callback = new OnBackPressedCallback(true) {
             @Override
             public void handleOnBackPressed() {
-                if (isDeviceOwner() && sharedPreferences.getBoolean(Constants.PREF_IS_LOCKED, false)) {
+                if (deviceOwner && state != null && state.locked) {
                     Toast.makeText(MainActivity.this, "El dispositivo está bloqueado. Contacte a la administración.", Toast.LENGTH_SHORT).show();
                 }
             }
@@ -191,6 +255,7 @@ public class MainActivity extends AppCompatActivity {
         requestLocationPermissions();
         getAndSendFCMToken();
         clearDeviceOwnerButton.setOnClickListener(v -> clearDeviceOwner());
+        StartupTracer.end("main_on_create", onCreateBegin);
     }
 
     private void requestLocationPermissions() {
@@ -209,49 +274,78 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void enforceDevicePolicies() {
-        if (isDeviceOwner()) {
-            DevicePolicyManager dpm = (DevicePolicyManager) getSystemService(Context.DEVICE_POLICY_SERVICE);
-            ComponentName adminComponent = new ComponentName(this, DeviceAdminReceiver.class);
-            dpm.addUserRestriction(adminComponent, UserManager.DISALLOW_DEBUGGING_FEATURES);
-            dpm.addUserRestriction(adminComponent, UserManager.DISALLOW_MODIFY_ACCOUNTS);
-            dpm.addUserRestriction(adminComponent, UserManager.DISALLOW_ADD_USER);
-            dpm.addUserRestriction(adminComponent, UserManager.DISALLOW_INSTALL_UNKNOWN_SOURCES);
-            dpm.addUserRestriction(adminComponent, UserManager.DISALLOW_USB_FILE_TRANSFER);
-            dpm.addUserRestriction(adminComponent, UserManager.DISALLOW_FACTORY_RESET);
-            dpm.addUserRestriction(adminComponent, UserManager.DISALLOW_CONFIG_DATE_TIME);
-        }
+        // Solo se aplican las diferencias con el estado real, y fuera del hilo principal.
+        DevicePolicyReconciler.reconcileAsync(this);
     }
 
     @Override
     protected void onResume() {
         super.onResume();
 
-        // Verificación de seguridad clave
-        if (!isDeviceOwner()) {
-            Log.e(TAG, "Device Owner status lost. Redirecting to Enrollment.");
-            Intent enrollmentIntent = new Intent(this, EnrollmentActivity.class);
-            startActivity(enrollmentIntent);
-            finish();
-            return;
-        }
-
         // Método para re-aplicar políticas (código de un mensaje anterior)
         enforceDevicePolicies();
 
-        checkDeviceStatus();
+        // La primera ejecución lee el estado y verifica el Device Owner (ver checkDeviceStatus).
         handler.post(checkConnectionRunnable);
-        screenReceiver = new ScreenReceiver();
-        IntentFilter filter = new IntentFilter(Intent.ACTION_SCREEN_ON);
-        filter.addAction(Intent.ACTION_USER_PRESENT);
-        registerReceiver(screenReceiver, filter);
+        resumed = true;
     }
 
     @Override
     protected void onPause() {
         super.onPause();
+        resumed = false;
         handler.removeCallbacks(checkConnectionRunnable);
-        if (screenReceiver != null) {
-            unregisterReceiver(screenReceiver);
+    }
+
+    /**
+     * El receptor vive mientras viva la actividad: con la pantalla apagada la actividad está en
+     * pausa y es justo entonces cuando hay que escuchar el encendido. El registro es una IPC: se
+     * hace en el ejecutor de segundo plano, que mantiene el orden con la baja de onDestroy.
+     */
+    private void registerScreenReceiver() {
+        ScreenReceiver receiver = new ScreenReceiver();
+        screenReceiver = receiver;
+        IntentFilter filter = new IntentFilter(Intent.ACTION_SCREEN_ON);
+        filter.addAction(Intent.ACTION_USER_PRESENT);
+        AppExecutors.background().execute(() -> registerReceiver(receiver, filter));
+    }
+
+    @Override
+    protected void onNewIntent(Intent intent) {
+        super.onNewIntent(intent);
+        // ScreenReceiver trae al frente esta misma instancia (singleTask): la vista ya está
+        // inflada y onResume vuelve a comprobar el estado, así que basta con medir.
+        setIntent(intent);
+        readScreenOffRequest(intent);
+        recordWakeLatency(intent);
+    }
+
+    private void readScreenOffRequest(Intent intent) {
+        if (intent != null && intent.getBooleanExtra(EXTRA_SCREEN_OFF, false)) {
+            intent.removeExtra(EXTRA_SCREEN_OFF);
+            screenOffPending = true;
+        }
+    }
+
+    private void recordWakeLatency(Intent intent) {
+        long wakeElapsed = intent != null ? intent.getLongExtra(EXTRA_WAKE_ELAPSED, 0) : 0;
+        if (wakeElapsed > 0) {
+            intent.removeExtra(EXTRA_WAKE_ELAPSED);
+            LockWakeMetrics.recordOnNextFrame(this, wakeElapsed);
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (commandSubscription != null) {
+            commandSubscription.unsubscribe();
+            commandSubscription = null;
+        }
+        ScreenReceiver receiver = screenReceiver;
+        screenReceiver = null;
+        if (receiver != null) {
+            AppExecutors.background().execute(() -> unregisterReceiver(receiver));
         }
     }
 
@@ -260,17 +354,26 @@ public class MainActivity extends AppCompatActivity {
             lockedLayout.setVisibility(View.VISIBLE);
             mainLayout.setVisibility(View.GONE);
             adminPanel.setVisibility(View.GONE);
-            Glide.with(this).load(R.drawable.inova_guard_logo).into(logoImageView);
         } else {
             lockedLayout.setVisibility(View.GONE);
             mainLayout.setVisibility(View.VISIBLE);
             adminPanel.setVisibility(View.GONE);
         }
+        if (!logoLoaded) {
+            // Las vistas conservan el bitmap: basta con cargarlo una vez por instancia.
+            long logoBegin = StartupTracer.begin();
+            BrandingCache.loadInto(logoImageView);
+            BrandingCache.loadInto(mainLogoImageView);
+            StartupTracer.end("logo_load", logoBegin);
+            logoLoaded = true;
+        }
     }
 
     private void getAndSendFCMToken() {
+        long tokenBegin = StartupTracer.begin();
         FirebaseMessaging.getInstance().getToken()
                 .addOnCompleteListener(task -> {
+                    StartupTracer.end("fcm_token", tokenBegin);
                     if (!task.isSuccessful()) {
                         Log.w(TAG, "Fetching FCM registration token failed", task.getException());
                         return;
@@ -283,12 +386,11 @@ public class MainActivity extends AppCompatActivity {
 
     private void sendTokenToServer(String token) {
         String serverUrl = "https://tu-backend.com/api/register-device";
-        OkHttpClient client = new OkHttpClient();
         MediaType JSON = MediaType.get("application/json; charset=utf-8");
         JSONObject jsonBody = new JSONObject();
         try {
             jsonBody.put("fcmToken", token);
-            String deviceId = sharedPreferences.getString(Constants.PREF_DEVICE_ID, "N/A");
+            String deviceId = state != null ? state.deviceId : "N/A";
             jsonBody.put("deviceId", deviceId);
         } catch (JSONException e) {
             Log.e(TAG, "Error al crear el JSON para enviar el token", e);
@@ -299,7 +401,7 @@ public class MainActivity extends AppCompatActivity {
                 .url(serverUrl)
                 .post(body)
                 .build();
-        client.newCall(request).enqueue(new Callback() {
+        RequestDispatcher.enqueue(RequestDispatcher.BACKGROUND, request, new Callback() {
             @Override
             public void onFailure(Call call, IOException e) {
                 Log.e(TAG, "Error al enviar el token al servidor", e);
@@ -316,53 +418,151 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
+    /**
+     * Lee el estado persistido y consulta el Device Owner en segundo plano, y aplica el resultado
+     * en el hilo principal.
+     */
     private void checkDeviceStatus() {
-        boolean isDeviceLocked = sharedPreferences.getBoolean(Constants.PREF_IS_LOCKED, false);
-        showScreen(isDeviceLocked);
-        handleKioskMode(isDeviceLocked);
-        if (isDeviceLocked) {
-            String contactNumber = sharedPreferences.getString(Constants.PREF_CONTACT_PHONE, "+58 412 1234567");
-            contactPhoneTextView.setText("Teléfono: " + contactNumber);
-            incorrectCodeTextView.setVisibility(View.GONE);
-            unlockCodeEditText.setText("");
+        AppExecutors.background().execute(() -> {
+            Context appContext = getApplicationContext();
+            if (sharedPreferences == null) {
+                sharedPreferences = appContext.getSharedPreferences(Constants.PREFS_NAME, MODE_PRIVATE);
+            }
+            DeviceStateSnapshot snapshot = DeviceStateSnapshot.load(appContext);
+            boolean owner = isDeviceOwner();
+            // Deja en caché el estado del modo kiosco para handleKioskMode y el encendido de pantalla.
+            DevicePolicyFacade.get(appContext).isInLockTask();
+            refreshIntervalMs = RuntimeConfigStore.get(appContext).getCurrent().getUiRefreshIntervalMs();
+            paymentHistory = describePaymentHistory(PaymentLedger.get(appContext).recent(PAYMENT_HISTORY_ROWS));
+            runOnUiThread(() -> applyState(snapshot, owner));
+        });
+    }
+
+    private void applyState(DeviceStateSnapshot snapshot, boolean owner) {
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+        if (!snapshot.enrolled) {
+            redirectToEnrollment("Device not enrolled. Redirecting to EnrollmentActivity.");
+            return;
+        }
+        // Verificación de seguridad clave
+        if (!owner) {
+            redirectToEnrollment("Device Owner status lost. Redirecting to Enrollment.");
+            return;
+        }
+        deviceOwner = true;
+        unlockButton.setEnabled(true);
+        if (state != null && !state.locked && snapshot.locked) {
+            screenOffPending = true;
+        }
+        renderState(snapshot);
+        handleKioskMode(snapshot.locked);
+        CommandAcks.get(this).recordOnNextFrame(this, snapshot.locked ? CommandBus.LOCK : CommandBus.UNLOCK);
+        if (!snapshot.locked) {
+            screenOffPending = false;
+        } else if (screenOffPending) {
+            screenOffPending = false;
+            lockNowAfterNextFrame();
+        }
+        if (snapshot.locked) {
+            StartupMetrics.recordOnFirstFrame(this, StartupMetrics.LOCK_SCREEN_FIRST_FRAME);
+            StartupMetrics.record(this, StartupMetrics.LOCK_SCREEN_INTERACTIVE);
+        }
+    }
+
+    /** Dibuja la pantalla a partir de la foto del estado, sin tocar disco ni el sistema. */
+    private void renderState(DeviceStateSnapshot snapshot) {
+        boolean wasLocked = state != null && state.locked;
+        state = snapshot;
+        showScreen(snapshot.locked);
+        if (snapshot.locked) {
+            contactPhoneTextView.setText("Teléfono: " + snapshot.contactPhone);
+            lockedDetailTextView.setText(snapshot.lockMessage.isEmpty() ? defaultLockDetailText : snapshot.lockMessage);
+            if (!wasLocked) {
+                incorrectCodeTextView.setVisibility(View.GONE);
+                unlockCodeEditText.setText("");
+            }
         } else {
-            updatePaymentInfo();
+            updatePaymentInfo(snapshot);
         }
     }
 
+    private void redirectToEnrollment(String reason) {
+        Log.d(TAG, reason);
+        Intent enrollmentIntent = new Intent(this, EnrollmentActivity.class);
+        startActivity(enrollmentIntent);
+        finish();
+    }
+
     private void handleKioskMode(boolean isLocked) {
-        if (isDeviceOwner()) {
-            if (isLocked) {
-                Log.d(TAG, "Activando modo Kiosk (Lock Task Mode)");
-                startLockTask();
-            } else {
-                Log.d(TAG, "Desactivando modo Kiosk (Lock Task Mode)");
-                stopLockTask();
+        if (deviceOwner) {
+            if (isLocked != DevicePolicyFacade.get(this).isInLockTask()) {
+                if (isLocked) {
+                    Log.d(TAG, "Activando modo Kiosk (Lock Task Mode)");
+                    startLockTask();
+                } else {
+                    Log.d(TAG, "Desactivando modo Kiosk (Lock Task Mode)");
+                    stopLockTask();
+                }
+                CommandAcks.get(this).mark(isLocked ? CommandBus.LOCK : CommandBus.UNLOCK, CommandTiming.STEP_LOCK_TASK);
             }
         }
     }
 
-    private void updatePaymentInfo() {
-        String nextPaymentDate = sharedPreferences.getString(Constants.PREF_NEXT_PAYMENT_DATE, "31/12/2025");
-        String amountDue = sharedPreferences.getString(Constants.PREF_AMOUNT_DUE, "$0.00");
-        String amountPaid = sharedPreferences.getString(Constants.PREF_AMOUNT_PAID, "$0.00");
-        String deviceBrand = sharedPreferences.getString(Constants.PREF_DEVICE_BRAND, "Marca");
-        String deviceModel = sharedPreferences.getString(Constants.PREF_DEVICE_MODEL, "Modelo");
-        String paymentInstructions = sharedPreferences.getString(Constants.PREF_PAYMENT_INSTRUCTIONS, "Contacte a la administración para más detalles.");
-        String contactNumber = sharedPreferences.getString(Constants.PREF_CONTACT_PHONE, "N/A");
-
-        nextPaymentDateTextView.setText(nextPaymentDate);
-        amountDueTextView.setText(amountDue);
-        amountPaidTextView.setText(amountPaid);
-        deviceInfoTextView.setText(deviceBrand + " " + deviceModel);
-        paymentInstructionsTextView.setText(paymentInstructions);
-        contactPhoneMainTextView.setText("Teléfono: " + contactNumber);
+    /**
+     * Apaga la pantalla tras dibujar el bloqueo. Se hace aquí y no al recibir la orden para que el
+     * primer fotograma no espere a que el usuario la encienda. Si hay un comando en curso, se
+     * marca el paso en su confirmación.
+     */
+    private void lockNowAfterNextFrame() {
+        View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                decorView.post(() -> {
+                    if (DevicePolicyFacade.get(MainActivity.this).lockNow()) {
+                        CommandAcks.get(MainActivity.this).mark(CommandBus.LOCK, CommandTiming.STEP_LOCK_NOW);
+                    }
+                });
+                return true;
+            }
+        });
+        decorView.invalidate();
+    }
+
+    private void updatePaymentInfo(DeviceStateSnapshot snapshot) {
+        nextPaymentDateTextView.setText(snapshot.nextPaymentDate);
+        amountDueTextView.setText(snapshot.amountDue);
+        amountPaidTextView.setText(snapshot.amountPaid);
+        deviceInfoTextView.setText(snapshot.deviceBrand + " " + snapshot.deviceModel);
+        paymentInstructionsTextView.setText(snapshot.paymentInstructions);
+        paymentHistoryTextView.setText(paymentHistory.isEmpty() ? "Sin movimientos registrados." : paymentHistory);
+        contactPhoneMainTextView.setText("Teléfono: " + snapshot.contactPhone);
+    }
+
+    private static String describePaymentHistory(List<PaymentLedger.Entry> entries) {
+        StringBuilder text = new StringBuilder();
+        for (PaymentLedger.Entry entry : entries) {
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            text.append(entry.date).append("  ")
+                    .append(entry.type == PaymentLedger.TYPE_PAYMENT ? "Pago " : "Cuota ")
+                    .append(entry.amount);
+            if (!entry.detail.isEmpty()) {
+                text.append(" (").append(entry.detail).append(')');
+            }
+        }
+        return text.toString();
     }
 
     private void attemptUnlock() {
         String enteredCode = unlockCodeEditText.getText().toString().trim();
-        if (enteredCode.equals(ADMIN_MODE_CODE) && isDeviceOwner()) {
+        if (enteredCode.equals(ADMIN_MODE_CODE) && deviceOwner) {
             unlockCodeEditText.setText("");
+            AuditLog.record(this, AuditLog.EVENT_ADMIN_MODE, "admin_code");
             showAdminPanel();
             return;
         }
@@ -371,20 +571,76 @@ public class MainActivity extends AppCompatActivity {
             incorrectCodeTextView.setVisibility(View.VISIBLE);
             return;
         }
-        String storedUnlockCode = sharedPreferences.getString(Constants.PREF_UNLOCK_CODE, "");
-        if (enteredCode.equals(storedUnlockCode)) {
-            sharedPreferences.edit().putBoolean(Constants.PREF_IS_LOCKED, false).apply();
-            runOnUiThread(() -> {
-                unlockDevice();
-                Toast.makeText(MainActivity.this, "Dispositivo desbloqueado correctamente.", Toast.LENGTH_SHORT).show();
-                incorrectCodeTextView.setVisibility(View.GONE);
-            });
-        } else {
-            runOnUiThread(() -> {
-                incorrectCodeTextView.setText("Código de desbloqueo incorrecto.");
-                incorrectCodeTextView.setVisibility(View.VISIBLE);
-            });
+        if (sharedPreferences == null) {
+            // El botón se habilita al cargar el estado; esto solo cubre una pulsación pendiente.
+            incorrectCodeTextView.setText("Cargando el estado del dispositivo. Intente de nuevo en unos segundos.");
+            incorrectCodeTextView.setVisibility(View.VISIBLE);
+            return;
+        }
+        // La verificación (HMAC y escritura de intentos) se hace fuera del hilo principal.
+        AppExecutors.background().execute(() -> verifyUnlockCode(enteredCode));
+    }
+
+    private void verifyUnlockCode(String enteredCode) {
+        OfflineUnlockVerifier verifier = new OfflineUnlockVerifier(sharedPreferences);
+        long now = System.currentTimeMillis();
+        OfflineUnlockVerifier.Result result = verifier.verify(enteredCode, now);
+        switch (result) {
+            case ACCEPTED:
+            case ACCEPTED_SERVER_CODE:
+                confirmOfflineUnlock(result, verifier.getLastAcceptedStep(), now);
+                sharedPreferences.edit().putBoolean(Constants.PREF_IS_LOCKED, false).apply();
+                runOnUiThread(() -> {
+                    unlockDevice();
+                    Toast.makeText(MainActivity.this, "Dispositivo desbloqueado correctamente.", Toast.LENGTH_SHORT).show();
+                    incorrectCodeTextView.setVisibility(View.GONE);
+                });
+                break;
+            case THROTTLED:
+                AuditLog.record(this, AuditLog.EVENT_UNLOCK_REJECTED, "throttled");
+                long seconds = TimeUnit.MILLISECONDS.toSeconds(verifier.getRemainingLockoutMillis(now)) + 1;
+                runOnUiThread(() -> {
+                    incorrectCodeTextView.setText("Demasiados intentos. Intente de nuevo en " + seconds + " segundos.");
+                    incorrectCodeTextView.setVisibility(View.VISIBLE);
+                });
+                break;
+            case REPLAYED:
+                AuditLog.record(this, AuditLog.EVENT_UNLOCK_REJECTED, "replayed");
+                runOnUiThread(() -> {
+                    incorrectCodeTextView.setText("Este código ya fue utilizado. Solicite uno nuevo.");
+                    incorrectCodeTextView.setVisibility(View.VISIBLE);
+                });
+                break;
+            default:
+                AuditLog.record(this, AuditLog.EVENT_UNLOCK_REJECTED, "wrong_code");
+                runOnUiThread(() -> {
+                    incorrectCodeTextView.setText("Código de desbloqueo incorrecto.");
+                    incorrectCodeTextView.setVisibility(View.VISIBLE);
+                });
+                break;
+        }
+    }
+
+    /**
+     * Deja en la bandeja de salida la confirmación del desbloqueo local para que el servidor
+     * actualice su estado en cuanto haya conexión.
+     */
+    private void confirmOfflineUnlock(OfflineUnlockVerifier.Result result, long step, long unlockedAt) {
+        String serialNumber = sharedPreferences.getString(Constants.PREF_SERIAL_NUMBER, "unknown");
+        String method = result == OfflineUnlockVerifier.Result.ACCEPTED ? "rolling_code" : "server_code";
+        AuditLog.record(this, AuditLog.EVENT_UNLOCK, method);
+        JSONObject payload = new JSONObject();
+        try {
+            payload.put("serial_number", serialNumber);
+            payload.put("method", method);
+            payload.put("step", step);
+            payload.put("unlocked_at", unlockedAt);
+        } catch (JSONException e) {
+            Log.e(TAG, "Error al crear la confirmación de desbloqueo", e);
+            return;
         }
+        OfflineOutbox.enqueue(this, ApiUtils.offlineUnlockConfirmationPath(serialNumber), payload);
+        OfflineOutbox.flush(this);
     }
 
     private void showAdminPanel() {
@@ -395,8 +651,10 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void clearDeviceOwner() {
-        if (isDeviceOwner()) {
+        if (deviceOwner) {
             devicePolicyManager.clearDeviceOwnerApp(getPackageName());
+            DevicePolicyFacade.get(this).invalidate();
+            deviceOwner = false;
             Toast.makeText(this, "Dispositivo desvinculado del modo Device Owner. La aplicación se puede desinstalar.", Toast.LENGTH_LONG).show();
             Intent intent = new Intent(Intent.ACTION_DELETE);
             intent.setData(android.net.Uri.fromParts("package", getPackageName(), null));
@@ -405,12 +663,16 @@ public class MainActivity extends AppCompatActivity {
     }
 
     public void lockDevice() {
+        AppExecutors.background().execute(() -> getApplicationContext()
+                .getSharedPreferences(Constants.PREFS_NAME, MODE_PRIVATE).edit()
+                .putBoolean(Constants.PREF_IS_LOCKED, true)
+                .putString(Constants.PREF_UNLOCK_CODE, "1234")
+                .apply());
+        checkDeviceStatus();
         runOnUiThread(() -> {
-            sharedPreferences.edit().putBoolean(Constants.PREF_IS_LOCKED, true).apply();
-            sharedPreferences.edit().putString(Constants.PREF_UNLOCK_CODE, "1234").apply();
             showScreen(true);
             Toast.makeText(this, "Dispositivo bloqueado por falta de pago.", Toast.LENGTH_LONG).show();
-            if (isDeviceOwner()) {
+            if (deviceOwner) {
                 Log.d(TAG, "Iniciando modo de bloqueo de tarea.");
                 startLockTask();
             }
@@ -418,33 +680,49 @@ public class MainActivity extends AppCompatActivity {
     }
 
     public void unlockDevice() {
+        AppExecutors.background().execute(() -> getApplicationContext()
+                .getSharedPreferences(Constants.PREFS_NAME, MODE_PRIVATE).edit()
+                .putBoolean(Constants.PREF_IS_LOCKED, false)
+                .apply());
+        checkDeviceStatus();
         runOnUiThread(() -> {
-            sharedPreferences.edit().putBoolean(Constants.PREF_IS_LOCKED, false).apply();
             showScreen(false);
             Toast.makeText(this, "Dispositivo desbloqueado.", Toast.LENGTH_LONG).show();
-            if (isDeviceOwner()) {
+            if (deviceOwner) {
                 Log.d(TAG, "Deteniendo modo de bloqueo de tarea.");
                 stopLockTask();
             }
         });
     }
 
+    /** Puede hacer una IPC al sistema si la caché caducó: no llamar desde el hilo principal. */
     private boolean isDeviceOwner() {
-        return devicePolicyManager != null && devicePolicyManager.isDeviceOwnerApp(getPackageName());
+        return DevicePolicyFacade.get(this).isDeviceOwner();
     }
 
     public static class ScreenReceiver extends BroadcastReceiver {
         @Override
         public void onReceive(Context context, Intent intent) {
             if (Objects.equals(intent.getAction(), Intent.ACTION_SCREEN_ON) || Objects.equals(intent.getAction(), Intent.ACTION_USER_PRESENT)) {
+                long wakeElapsed = SystemClock.elapsedRealtime();
+                // La actividad que registró el receptor ya cargó las preferencias: lectura en memoria.
                 SharedPreferences sharedPreferences = context.getSharedPreferences(Constants.PREFS_NAME, MODE_PRIVATE);
-                boolean isLocked = sharedPreferences.getBoolean(Constants.PREF_IS_LOCKED, false);
-                if (isLocked) {
-                    Log.d(TAG, "Screen on event received. Re-enforcing lock.");
-                    Intent mainActivityIntent = new Intent(context, MainActivity.class);
-                    mainActivityIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
-                    context.startActivity(mainActivityIntent);
+                if (!sharedPreferences.getBoolean(Constants.PREF_IS_LOCKED, false)) {
+                    return;
+                }
+                if (resumed && DevicePolicyFacade.get(context).isInLockTask()) {
+                    LockWakeMetrics.recordSkipped();
+                    return;
                 }
+                Log.d(TAG, "Screen on event received. Re-enforcing lock.");
+                // Sin CLEAR_TASK: la instancia singleTask existente recibe onNewIntent en lugar
+                // de destruirse y volver a inflarse.
+                Intent mainActivityIntent = new Intent(context, MainActivity.class);
+                mainActivityIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK
+                        | Intent.FLAG_ACTIVITY_SINGLE_TOP
+                        | Intent.FLAG_ACTIVITY_REORDER_TO_FRONT);
+                mainActivityIntent.putExtra(EXTRA_WAKE_ELAPSED, wakeElapsed);
+                context.startActivity(mainActivityIntent);
             }
         }
     }
@@ -1,45 +1,97 @@
 package com.inova.guard.mdm;
 
-import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import com.airbnb.lottie.LottieAnimationView;
+import com.airbnb.lottie.LottieCompositionFactory;
+import com.inova.guard.mdm.utils.ApiUtils;
+import com.inova.guard.mdm.utils.AppExecutors;
 import com.inova.guard.mdm.utils.Constants;
+import com.inova.guard.mdm.utils.DeviceStateSnapshot;
+import com.inova.guard.mdm.utils.MdmLog;
+import com.inova.guard.mdm.utils.StartupMetrics;
+import com.inova.guard.mdm.utils.StartupTracer;
 
 /**
  * SplashActivity es la actividad de carga que se muestra al inicio de la aplicación.
- * Esta actividad se encarga de mostrar la animación del logo por un breve período de tiempo
- * y luego navegar a la actividad principal (MainActivity).
+ * Mientras se muestra la animación del logo se preparan en paralelo el estado persistido,
+ * la composición de Lottie y la conexión con el servidor, y se navega en cuanto el estado está
+ * listo (respetando un tiempo mínimo en pantalla para que la animación no parpadee).
  */
 public class SplashActivity extends AppCompatActivity {
 
-    private static final int SPLASH_DISPLAY_LENGTH = 3000; // 3 segundos
+    private static final String TAG = "SplashActivity";
+    private static final String LOGO_ANIMATION_ASSET = "inova_guard_logo_anim.json";
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private long createdAt;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        long begin = StartupTracer.begin();
         super.onCreate(savedInstanceState);
+        createdAt = SystemClock.elapsedRealtime();
         setContentView(R.layout.activity_splash); // Carga el layout de la animación
+        StartupMetrics.recordOnFirstFrame(this, StartupMetrics.SPLASH_FIRST_FRAME);
+
+        // 1. Estado persistido: es lo único que decide a dónde navegar.
+        AppExecutors.background().execute(() -> {
+            long loadBegin = StartupTracer.begin();
+            DeviceStateSnapshot snapshot = DeviceStateSnapshot.load(getApplicationContext());
+            StartupTracer.end("prefs_load", loadBegin);
+            handler.post(() -> onStateReady(snapshot));
+        });
+
+        // 2. Animación del logo, decodificada fuera del hilo principal. Si falta el recurso se
+        //    sigue sin animación en lugar de cerrar la app.
+        LottieAnimationView animationView = findViewById(R.id.lottie_animation_view);
+        LottieCompositionFactory.fromAsset(this, LOGO_ANIMATION_ASSET)
+                .addListener(composition -> {
+                    animationView.setComposition(composition);
+                    animationView.playAnimation();
+                })
+                .addFailureListener(error -> MdmLog.w(TAG, "Animación del logo no disponible: {}", error.getMessage()));
+
+        // 3. Conexión con el servidor, lista para el primer reporte de estado.
+        ApiUtils.warmUp(this);
+        StartupTracer.end("splash_create", begin);
+    }
 
-        new Handler().postDelayed(() -> {
-            // Verificar el estado de enrolamiento
-            SharedPreferences prefs = getSharedPreferences(Constants.PREFS_NAME, Context.MODE_PRIVATE);
-            boolean isEnrolled = prefs.getBoolean("is_enrolled", false);
-
-            Intent nextActivityIntent;
-            if (isEnrolled) {
-                // Si ya está enrolado, ir a la actividad principal (MainActivity)
-                nextActivityIntent = new Intent(SplashActivity.this, MainActivity.class);
-            } else {
-                // Si no está enrolado, ir a la actividad de enrolamiento (EnrollmentActivity)
-                nextActivityIntent = new Intent(SplashActivity.this, EnrollmentActivity.class);
-            }
-
-            SplashActivity.this.startActivity(nextActivityIntent);
-            SplashActivity.this.finish(); // Cierra esta actividad para que el usuario no pueda volver atrás
-        }, SPLASH_DISPLAY_LENGTH);
+    private void onStateReady(DeviceStateSnapshot snapshot) {
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+        StartupMetrics.record(this, StartupMetrics.SPLASH_STATE_READY);
+        long remaining = Constants.SPLASH_MIN_DISPLAY_MS - (SystemClock.elapsedRealtime() - createdAt);
+        handler.postDelayed(() -> navigate(snapshot), Math.max(0, remaining));
+    }
+
+    private void navigate(DeviceStateSnapshot snapshot) {
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+        Intent nextActivityIntent;
+        if (snapshot.enrolled) {
+            // Si ya está enrolado, ir a la actividad principal (MainActivity)
+            nextActivityIntent = new Intent(this, MainActivity.class);
+        } else {
+            // Si no está enrolado, ir a la actividad de enrolamiento (EnrollmentActivity)
+            nextActivityIntent = new Intent(this, EnrollmentActivity.class);
+        }
+        startActivity(nextActivityIntent);
+        finish(); // Cierra esta actividad para que el usuario no pueda volver atrás
+        overridePendingTransition(0, 0);
+    }
+
+    @Override
+    protected void onDestroy() {
+        handler.removeCallbacksAndMessages(null);
+        super.onDestroy();
     }
 }
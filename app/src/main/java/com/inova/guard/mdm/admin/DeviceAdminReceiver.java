@@ -1,16 +1,15 @@
 package com.inova.guard.mdm.admin;
 
-import android.app.admin.DevicePolicyManager;
-import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.os.Handler;
-import android.os.UserManager;
 import android.util.Log;
 import android.widget.Toast;
 import com.inova.guard.mdm.MainActivity;
 import com.inova.guard.mdm.utils.ApiUtils;
+import com.inova.guard.mdm.utils.AppExecutors;
+import com.inova.guard.mdm.utils.AuditLog;
 import com.inova.guard.mdm.utils.Constants;
 
 import java.io.IOException;
@@ -27,16 +26,16 @@ public class DeviceAdminReceiver extends android.app.admin.DeviceAdminReceiver {
     @Override
     public void onEnabled(Context context, Intent intent) {
         super.onEnabled(context, intent);
+        DevicePolicyFacade.get(context).invalidate();
+        AuditLog.record(context, AuditLog.EVENT_ADMIN_ENABLED, "");
         Toast.makeText(context, "Administrador de Dispositivo InovaGuard activado.", Toast.LENGTH_SHORT).show();
         Log.d(TAG, "Administrador de Dispositivo InovaGuard activado.");
     }
 
     @Override
     public CharSequence onDisableRequested(Context context, Intent intent) {
-        DevicePolicyManager devicePolicyManager = (DevicePolicyManager) context.getSystemService(Context.DEVICE_POLICY_SERVICE);
-        ComponentName adminComponentName = new ComponentName(context, DeviceAdminReceiver.class);
-        if (devicePolicyManager != null && devicePolicyManager.isAdminActive(adminComponentName)) {
-            devicePolicyManager.lockNow();
+        AuditLog.record(context, AuditLog.EVENT_DISABLE_REQUESTED, "");
+        if (DevicePolicyFacade.get(context).lockNow()) {
             Intent lockIntent = new Intent(context, MainActivity.class);
             lockIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
             lockIntent.putExtra("reason_for_lock", "admin_disabled");
@@ -56,6 +55,8 @@ public class DeviceAdminReceiver extends android.app.admin.DeviceAdminReceiver {
     @Override
     public void onDisabled(Context context, Intent intent) {
         super.onDisabled(context, intent);
+        DevicePolicyFacade.get(context).invalidate();
+        AuditLog.record(context, AuditLog.EVENT_ADMIN_DISABLED, "");
         Toast.makeText(context, "Administrador de Dispositivo InovaGuard desactivado.", Toast.LENGTH_SHORT).show();
         Log.d(TAG, "Administrador de Dispositivo InovaGuard desactivado.");
         String serialNumber = context.getSharedPreferences(Constants.PREFS_NAME, Context.MODE_PRIVATE)
@@ -77,12 +78,16 @@ public class DeviceAdminReceiver extends android.app.admin.DeviceAdminReceiver {
     @Override
     public void onLockTaskModeEntering(Context context, Intent intent, String pkg) {
         super.onLockTaskModeEntering(context, intent, pkg);
+        DevicePolicyFacade.get(context).setLockTaskActive(true);
+        AuditLog.record(context, AuditLog.EVENT_LOCK_TASK_ENTERED, pkg);
         Log.d(TAG, "Entering lock task mode for package: " + pkg);
     }
 
     @Override
     public void onLockTaskModeExiting(Context context, Intent intent) {
         super.onLockTaskModeExiting(context, intent);
+        DevicePolicyFacade.get(context).setLockTaskActive(false);
+        AuditLog.record(context, AuditLog.EVENT_LOCK_TASK_EXITED, "");
         Log.d(TAG, "Exiting lock task mode.");
     }
 
@@ -90,67 +95,40 @@ public class DeviceAdminReceiver extends android.app.admin.DeviceAdminReceiver {
     public void onProfileProvisioningComplete(Context context, Intent intent) {
         Log.d(TAG, "Provisioning complete. Setting up device policies...");
 
-        DevicePolicyManager dpm = (DevicePolicyManager) context.getSystemService(Context.DEVICE_POLICY_SERVICE);
-        ComponentName adminComponent = new ComponentName(context, DeviceAdminReceiver.class);
-
-        if (dpm == null) {
-            Log.e(TAG, "DevicePolicyManager is null.");
-            return;
-        }
-
-        // --- Nuevas políticas de seguridad ---
-
-        // 1. Deshabilitar la depuración USB y la transferencia de archivos
-        dpm.addUserRestriction(adminComponent, UserManager.DISALLOW_USB_FILE_TRANSFER);
-
-        // 2. Deshabilitar la desinstalación de la app
-        dpm.setUninstallBlocked(adminComponent, context.getPackageName(), true);
-
-        // 3. Deshabilitar el restablecimiento de fábrica en los ajustes del sistema
-        dpm.addUserRestriction(adminComponent, UserManager.DISALLOW_FACTORY_RESET);
-
-        // 4. DESHABILITAR el cambio de fecha y hora
-        dpm.addUserRestriction(adminComponent, UserManager.DISALLOW_CONFIG_DATE_TIME);
-
-        // 5. Impide habilitar la depuración USB
-        dpm.addUserRestriction(adminComponent, UserManager.DISALLOW_DEBUGGING_FEATURES);
-
-        // 6. Impide cambiar cuentas
-        dpm.addUserRestriction(adminComponent, UserManager.DISALLOW_MODIFY_ACCOUNTS);
-
-        // 7. Impide añadir nuevos usuarios
-        dpm.addUserRestriction(adminComponent, UserManager.DISALLOW_ADD_USER);
-
-        // 8. Impide instalar apps de fuentes desconocidas
-        dpm.addUserRestriction(adminComponent, UserManager.DISALLOW_INSTALL_UNKNOWN_SOURCES);
-
-        // --- Fin de las nuevas políticas de seguridad ---
-
-        // Habilitar el modo kiosco
-        String[] allowedPackages = {context.getPackageName()};
-        dpm.setLockTaskPackages(adminComponent, allowedPackages);
-
-        // Enviar un Intent a MainActivity para que inicie el modo kiosco
-        Intent lockIntent = new Intent(context, MainActivity.class);
-        lockIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-        lockIntent.putExtra("start_kiosk_mode", true);
-        context.startActivity(lockIntent);
-
-        // Iniciar tus servicios (MdmService y Firebase) para la comunicación remota
-        Intent mdmServiceIntent = new Intent(context, com.inova.guard.mdm.service.MdmService.class);
-        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
-            context.startForegroundService(mdmServiceIntent);
-        } else {
-            context.startService(mdmServiceIntent);
-        }
+        // Las políticas (restricciones, bloqueo de desinstalación y paquetes del modo kiosco) se
+        // aplican en segundo plano; el modo kiosco se inicia cuando ya están en su sitio.
+        DevicePolicyFacade.get(context).invalidate();
+        final PendingResult pendingResult = goAsync();
+        final Context appContext = context.getApplicationContext();
+        AppExecutors.background().execute(() -> {
+            try {
+                DevicePolicyReconciler.reconcile(appContext, PolicyBundleStore.get(appContext).getCurrent().getPolicySet());
+
+                // Enviar un Intent a MainActivity para que inicie el modo kiosco
+                Intent lockIntent = new Intent(appContext, MainActivity.class);
+                lockIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+                lockIntent.putExtra("start_kiosk_mode", true);
+                appContext.startActivity(lockIntent);
+
+                // Iniciar tus servicios (MdmService y Firebase) para la comunicación remota
+                Intent mdmServiceIntent = new Intent(appContext, com.inova.guard.mdm.service.MdmService.class);
+                if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
+                    appContext.startForegroundService(mdmServiceIntent);
+                } else {
+                    appContext.startService(mdmServiceIntent);
+                }
 
-        Intent firebaseServiceIntent = new Intent(context, com.inova.guard.mdm.service.MyFirebaseMessagingService.class);
-        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
-            context.startForegroundService(firebaseServiceIntent);
-        } else {
-            context.startService(firebaseServiceIntent);
-        }
+                Intent firebaseServiceIntent = new Intent(appContext, com.inova.guard.mdm.service.MyFirebaseMessagingService.class);
+                if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
+                    appContext.startForegroundService(firebaseServiceIntent);
+                } else {
+                    appContext.startService(firebaseServiceIntent);
+                }
 
-        Log.d(TAG, "Provisioning complete and device policies applied.");
+                Log.d(TAG, "Provisioning complete and device policies applied.");
+            } finally {
+                pendingResult.finish();
+            }
+        });
     }
 }
\ No newline at end of file
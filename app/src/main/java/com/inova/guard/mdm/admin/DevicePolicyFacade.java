@@ -0,0 +1,221 @@
+package com.inova.guard.mdm.admin;
+
+import android.app.ActivityManager;
+import android.app.admin.DevicePolicyManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.SystemClock;
+
+import com.inova.guard.mdm.utils.MdmLog;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Punto único de consulta a {@link DevicePolicyManager} con caché del estado de Device Owner,
+ * del administrador activo y de las restricciones de usuario. Cada consulta real es una IPC al
+ * sistema; aquí se responden desde memoria hasta que {@link DeviceAdminReceiver} avisa de un
+ * cambio (activación, desactivación, aprovisionamiento) o hasta que caduca la caché.
+ *
+ * <p>Las restricciones solo cambian a través de esta clase (somos el Device Owner), así que las
+ * escrituras actualizan la caché en lugar de invalidarla.
+ */
+public final class DevicePolicyFacade {
+
+    private static final String TAG = "DevicePolicyFacade";
+    /** Red de seguridad por si el sistema no entrega alguna de las notificaciones. */
+    private static final long CACHE_TTL_MS = 15 * 60 * 1000;
+    private static final long STATS_WINDOW_MS = 60 * 60 * 1000;
+
+    private static volatile DevicePolicyFacade instance;
+
+    private final Context context;
+    private final DevicePolicyManager dpm;
+    private final ComponentName admin;
+
+    private Boolean deviceOwner;
+    private Boolean adminActive;
+    private Set<String> userRestrictions;
+    private long cachedAt;
+    // Fuera de la caducidad: DeviceAdminReceiver avisa de cada entrada y salida del modo kiosco.
+    private Boolean lockTaskActive;
+
+    private long windowStart = SystemClock.elapsedRealtime();
+    private long ipcCalls;
+    private long ipcCallsSaved;
+    private long lastHourIpcCalls = -1;
+    private long lastHourIpcCallsSaved = -1;
+
+    private DevicePolicyFacade(Context context) {
+        this.context = context;
+        this.dpm = (DevicePolicyManager) context.getSystemService(Context.DEVICE_POLICY_SERVICE);
+        this.admin = new ComponentName(context, DeviceAdminReceiver.class);
+    }
+
+    public static DevicePolicyFacade get(Context context) {
+        if (instance == null) {
+            synchronized (DevicePolicyFacade.class) {
+                if (instance == null) {
+                    instance = new DevicePolicyFacade(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    public ComponentName getAdminComponent() {
+        return admin;
+    }
+
+    /** Acceso directo para las operaciones que no se cachean (bloqueo de desinstalación, kiosco...). */
+    public DevicePolicyManager getManager() {
+        return dpm;
+    }
+
+    public synchronized boolean isDeviceOwner() {
+        expireIfStale();
+        if (deviceOwner == null) {
+            deviceOwner = dpm != null && dpm.isDeviceOwnerApp(context.getPackageName());
+            countCall();
+        } else {
+            countSaved();
+        }
+        return deviceOwner;
+    }
+
+    public synchronized boolean isAdminActive() {
+        expireIfStale();
+        if (adminActive == null) {
+            adminActive = dpm != null && dpm.isAdminActive(admin);
+            countCall();
+        } else {
+            countSaved();
+        }
+        return adminActive;
+    }
+
+    /**
+     * Si la app está en modo kiosco (lock task). Solo la primera consulta es una IPC; conviene
+     * hacerla en segundo plano para que el camino de encendido de pantalla lea de memoria.
+     */
+    public synchronized boolean isInLockTask() {
+        if (lockTaskActive == null) {
+            ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+            lockTaskActive = activityManager != null
+                    && activityManager.getLockTaskModeState() != ActivityManager.LOCK_TASK_MODE_NONE;
+            countCall();
+        } else {
+            countSaved();
+        }
+        return lockTaskActive;
+    }
+
+    /** Lo llaman {@link DeviceAdminReceiver} al entrar o salir del modo kiosco. */
+    public synchronized void setLockTaskActive(boolean active) {
+        lockTaskActive = active;
+    }
+
+    /** Restricciones de usuario activas. Solo válido si la app es Device Owner. */
+    public synchronized Set<String> getUserRestrictions() {
+        expireIfStale();
+        if (userRestrictions == null) {
+            Set<String> live = new HashSet<>();
+            if (dpm != null) {
+                Bundle bundle = dpm.getUserRestrictions(admin);
+                countCall();
+                for (String key : bundle.keySet()) {
+                    if (bundle.getBoolean(key, false)) {
+                        live.add(key);
+                    }
+                }
+            }
+            userRestrictions = live;
+        } else {
+            countSaved();
+        }
+        return Collections.unmodifiableSet(new HashSet<>(userRestrictions));
+    }
+
+    public synchronized void addUserRestriction(String restriction) {
+        dpm.addUserRestriction(admin, restriction);
+        countCall();
+        if (userRestrictions != null) {
+            userRestrictions.add(restriction);
+        }
+    }
+
+    public synchronized void clearUserRestriction(String restriction) {
+        dpm.clearUserRestriction(admin, restriction);
+        countCall();
+        if (userRestrictions != null) {
+            userRestrictions.remove(restriction);
+        }
+    }
+
+    /** Bloquea la pantalla si el administrador está activo. */
+    public boolean lockNow() {
+        if (!isAdminActive()) {
+            return false;
+        }
+        dpm.lockNow();
+        synchronized (this) {
+            countCall();
+        }
+        return true;
+    }
+
+    /** Descarta todo lo cacheado. Lo llaman los callbacks de {@link DeviceAdminReceiver}. */
+    public synchronized void invalidate() {
+        deviceOwner = null;
+        adminActive = null;
+        userRestrictions = null;
+        MdmLog.d(TAG, "Caché de políticas invalidada.");
+    }
+
+    /**
+     * IPC hechas y ahorradas por hora en la última ventana completa ({@code -1} si aún no ha pasado
+     * una). La ventana solo se cierra con una consulta, así que tras un periodo sin actividad puede
+     * durar varias horas; en ese caso se informa la media por hora.
+     */
+    public synchronized long[] getLastHourStats() {
+        rollWindow();
+        return new long[]{lastHourIpcCalls, lastHourIpcCallsSaved};
+    }
+
+    private void expireIfStale() {
+        long now = SystemClock.elapsedRealtime();
+        if (now - cachedAt >= CACHE_TTL_MS) {
+            deviceOwner = null;
+            adminActive = null;
+            userRestrictions = null;
+            cachedAt = now;
+        }
+    }
+
+    private void countCall() {
+        rollWindow();
+        ipcCalls++;
+    }
+
+    private void countSaved() {
+        rollWindow();
+        ipcCallsSaved++;
+    }
+
+    private void rollWindow() {
+        long now = SystemClock.elapsedRealtime();
+        if (now - windowStart < STATS_WINDOW_MS) {
+            return;
+        }
+        long windowMs = now - windowStart;
+        lastHourIpcCalls = ipcCalls * STATS_WINDOW_MS / windowMs;
+        lastHourIpcCallsSaved = ipcCallsSaved * STATS_WINDOW_MS / windowMs;
+        MdmLog.i(TAG, "IPC a DevicePolicyManager por hora: {} hechas, {} ahorradas.",
+                lastHourIpcCalls, lastHourIpcCallsSaved);
+        ipcCalls = 0;
+        ipcCallsSaved = 0;
+        windowStart = now;
+    }
+}
@@ -0,0 +1,131 @@
+package com.inova.guard.mdm.admin;
+
+import android.app.admin.DevicePolicyManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.inova.guard.mdm.utils.AppExecutors;
+import com.inova.guard.mdm.utils.Constants;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Compara un {@link DevicePolicySet} con el estado real que reporta {@link DevicePolicyManager}
+ * y aplica únicamente las diferencias. Cada llamada a DevicePolicyManager es una IPC al sistema,
+ * así que se cuentan y se mide la duración de cada reconciliación.
+ */
+public final class DevicePolicyReconciler {
+
+    private static final String TAG = "PolicyReconciler";
+
+    /** Resultado de una reconciliación. */
+    public static final class Report {
+        public final String policyHash;
+        public final int ipcCalls;
+        public final int changesApplied;
+        public final long elapsedMillis;
+
+        Report(String policyHash, int ipcCalls, int changesApplied, long elapsedMillis) {
+            this.policyHash = policyHash;
+            this.ipcCalls = ipcCalls;
+            this.changesApplied = changesApplied;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "hash=" + policyHash.substring(0, 12) + " ipc=" + ipcCalls + " cambios=" + changesApplied
+                    + " ms=" + elapsedMillis;
+        }
+    }
+
+    private DevicePolicyReconciler() {
+    }
+
+    /**
+     * Reconciliación en el hilo de segundo plano compartido, con las políticas vigentes
+     * (el paquete del servidor si existe, o las incluidas en la APK).
+     */
+    public static void reconcileAsync(Context context) {
+        final Context appContext = context.getApplicationContext();
+        AppExecutors.background().execute(() ->
+                reconcile(appContext, PolicyBundleStore.get(appContext).getCurrent().getPolicySet()));
+    }
+
+    /**
+     * Reconciliación síncrona. No debe llamarse desde el hilo principal.
+     *
+     * @return el informe, o {@code null} si la app no es Device Owner.
+     */
+    public static Report reconcile(Context context, DevicePolicySet policySet) {
+        long start = SystemClock.elapsedRealtime();
+        DevicePolicyFacade facade = DevicePolicyFacade.get(context);
+        DevicePolicyManager dpm = facade.getManager();
+        if (dpm == null) {
+            Log.e(TAG, "DevicePolicyManager is null.");
+            return null;
+        }
+        // El Device Owner y las restricciones salen de la caché de la fachada; solo se cuentan
+        // las IPC que se hacen aquí directamente y las escrituras.
+        int ipcCalls = 0;
+        if (!facade.isDeviceOwner()) {
+            Log.w(TAG, "La app no es Device Owner. No se aplican políticas.");
+            return null;
+        }
+        ComponentName admin = facade.getAdminComponent();
+        int changes = 0;
+
+        // 1. Restricciones de usuario: añadir las que faltan y quitar las que ya no se declaran.
+        Set<String> liveRestrictions = facade.getUserRestrictions();
+        for (String restriction : policySet.getUserRestrictions()) {
+            if (!liveRestrictions.contains(restriction)) {
+                facade.addUserRestriction(restriction);
+                ipcCalls++;
+                changes++;
+            }
+        }
+        for (String restriction : liveRestrictions) {
+            if (!policySet.getUserRestrictions().contains(restriction)) {
+                facade.clearUserRestriction(restriction);
+                ipcCalls++;
+                changes++;
+            }
+        }
+
+        // 2. Bloqueo de desinstalación de la propia app.
+        boolean uninstallBlocked = dpm.isUninstallBlocked(admin, context.getPackageName());
+        ipcCalls++;
+        if (uninstallBlocked != policySet.isUninstallBlocked()) {
+            dpm.setUninstallBlocked(admin, context.getPackageName(), policySet.isUninstallBlocked());
+            ipcCalls++;
+            changes++;
+        }
+
+        // 3. Paquetes permitidos en modo kiosco.
+        boolean lockTaskDiffers = true;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            Set<String> livePackages = new TreeSet<>(Arrays.asList(dpm.getLockTaskPackages(admin)));
+            ipcCalls++;
+            lockTaskDiffers = !livePackages.equals(policySet.getLockTaskPackages());
+        }
+        if (lockTaskDiffers) {
+            dpm.setLockTaskPackages(admin, policySet.getLockTaskPackages().toArray(new String[0]));
+            ipcCalls++;
+            changes++;
+        }
+
+        Report report = new Report(policySet.getHash(), ipcCalls, changes, SystemClock.elapsedRealtime() - start);
+        context.getSharedPreferences(Constants.PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putString(Constants.PREF_POLICY_APPLIED_HASH, report.policyHash)
+                .putInt(Constants.PREF_POLICY_LAST_IPC_CALLS, report.ipcCalls)
+                .putLong(Constants.PREF_POLICY_LAST_RECONCILE_MS, report.elapsedMillis)
+                .apply();
+        Log.d(TAG, "Políticas reconciliadas: " + report);
+        return report;
+    }
+}
@@ -0,0 +1,88 @@
+package com.inova.guard.mdm.admin;
+
+import android.content.Context;
+import android.os.UserManager;
+import android.text.TextUtils;
+
+import com.inova.guard.mdm.utils.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Conjunto declarativo de políticas que el Device Owner debe mantener aplicadas: restricciones de
+ * usuario, bloqueo de desinstalación y paquetes permitidos en modo kiosco.
+ * Es inmutable y tiene un hash estable para saber si dos conjuntos son equivalentes.
+ */
+public final class DevicePolicySet {
+
+    /** Se incrementa cuando cambia el conjunto por defecto incluido en la APK. */
+    public static final int DEFAULT_VERSION = 1;
+
+    private final int version;
+    private final Set<String> userRestrictions;
+    private final boolean uninstallBlocked;
+    private final Set<String> lockTaskPackages;
+    private final String hash;
+
+    public DevicePolicySet(int version, Set<String> userRestrictions, boolean uninstallBlocked, Set<String> lockTaskPackages) {
+        this.version = version;
+        this.userRestrictions = Collections.unmodifiableSet(new TreeSet<>(userRestrictions));
+        this.uninstallBlocked = uninstallBlocked;
+        this.lockTaskPackages = Collections.unmodifiableSet(new TreeSet<>(lockTaskPackages));
+        this.hash = computeHash();
+    }
+
+    /** Políticas que la app aplica desde el aprovisionamiento. */
+    public static DevicePolicySet defaults(Context context) {
+        Set<String> restrictions = new TreeSet<>(Arrays.asList(
+                UserManager.DISALLOW_USB_FILE_TRANSFER,
+                UserManager.DISALLOW_FACTORY_RESET,
+                UserManager.DISALLOW_CONFIG_DATE_TIME,
+                UserManager.DISALLOW_DEBUGGING_FEATURES,
+                UserManager.DISALLOW_MODIFY_ACCOUNTS,
+                UserManager.DISALLOW_ADD_USER,
+                UserManager.DISALLOW_INSTALL_UNKNOWN_SOURCES));
+        return new DevicePolicySet(DEFAULT_VERSION, restrictions, true,
+                Collections.singleton(context.getPackageName()));
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public Set<String> getUserRestrictions() {
+        return userRestrictions;
+    }
+
+    public boolean isUninstallBlocked() {
+        return uninstallBlocked;
+    }
+
+    public Set<String> getLockTaskPackages() {
+        return lockTaskPackages;
+    }
+
+    /** SHA-256 de la forma canónica del conjunto, en hexadecimal. */
+    public String getHash() {
+        return hash;
+    }
+
+    private String computeHash() {
+        StringBuilder canonical = new StringBuilder();
+        canonical.append("v=").append(version);
+        canonical.append(";restrictions=").append(TextUtils.join(",", userRestrictions));
+        canonical.append(";uninstall_blocked=").append(uninstallBlocked);
+        canonical.append(";lock_task=").append(TextUtils.join(",", lockTaskPackages));
+        return Hashing.sha256Hex(canonical.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public String toString() {
+        return "DevicePolicySet{v" + version + ", " + userRestrictions.size() + " restricciones, hash="
+                + hash.substring(0, 12) + "}";
+    }
+}
@@ -0,0 +1,99 @@
+package com.inova.guard.mdm.admin;
+
+import android.content.Context;
+
+import com.inova.guard.mdm.utils.Constants;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paquete de políticas definido por el servidor: restricciones, lista de apps permitidas en modo
+ * kiosco, umbral de bloqueo sin conexión e intervalo de sondeo. Es inmutable; un paquete nuevo
+ * sustituye al anterior completo.
+ */
+public final class PolicyBundle {
+
+    private static final long MIN_OFFLINE_THRESHOLD_MINUTES = 60;
+    private static final long MAX_OFFLINE_THRESHOLD_MINUTES = 60 * 24 * 60;
+    private static final long MIN_POLL_INTERVAL_MINUTES = 1;
+    private static final long MAX_POLL_INTERVAL_MINUTES = 60 * 24;
+
+    private final String hash;
+    private final DevicePolicySet policySet;
+    private final long offlineLockThresholdMinutes;
+    private final long statusPollIntervalMillis;
+
+    private PolicyBundle(String hash, DevicePolicySet policySet, long offlineLockThresholdMinutes, long statusPollIntervalMillis) {
+        this.hash = hash;
+        this.policySet = policySet;
+        this.offlineLockThresholdMinutes = offlineLockThresholdMinutes;
+        this.statusPollIntervalMillis = statusPollIntervalMillis;
+    }
+
+    /** Valores incluidos en la APK, usados hasta recibir el primer paquete del servidor. */
+    public static PolicyBundle defaults(Context context) {
+        return new PolicyBundle("", DevicePolicySet.defaults(context),
+                Constants.LOCK_THRESHOLD_MINUTES, Constants.CONNECTION_CHECK_INTERVAL);
+    }
+
+    /**
+     * Interpreta y valida un paquete. Cualquier campo fuera de rango invalida el paquete completo,
+     * para no aplicar nunca una configuración a medias.
+     */
+    public static PolicyBundle parse(Context context, String hash, String json) throws JSONException {
+        JSONObject root = new JSONObject(json);
+        int version = root.getInt("version");
+
+        JSONArray restrictionsJson = root.getJSONArray("restrictions");
+        Set<String> restrictions = new TreeSet<>();
+        for (int i = 0; i < restrictionsJson.length(); i++) {
+            restrictions.add(restrictionsJson.getString(i));
+        }
+
+        Set<String> kioskPackages = new TreeSet<>();
+        kioskPackages.add(context.getPackageName());
+        JSONArray kioskJson = root.optJSONArray("kiosk_packages");
+        if (kioskJson != null) {
+            for (int i = 0; i < kioskJson.length(); i++) {
+                kioskPackages.add(kioskJson.getString(i));
+            }
+        }
+
+        long thresholdMinutes = root.optLong("offline_lock_threshold_minutes", Constants.LOCK_THRESHOLD_MINUTES);
+        if (thresholdMinutes < MIN_OFFLINE_THRESHOLD_MINUTES || thresholdMinutes > MAX_OFFLINE_THRESHOLD_MINUTES) {
+            throw new JSONException("offline_lock_threshold_minutes fuera de rango: " + thresholdMinutes);
+        }
+        long pollMinutes = root.optLong("status_poll_interval_minutes",
+                TimeUnit.MILLISECONDS.toMinutes(Constants.CONNECTION_CHECK_INTERVAL));
+        if (pollMinutes < MIN_POLL_INTERVAL_MINUTES || pollMinutes > MAX_POLL_INTERVAL_MINUTES) {
+            throw new JSONException("status_poll_interval_minutes fuera de rango: " + pollMinutes);
+        }
+
+        DevicePolicySet policySet = new DevicePolicySet(version, restrictions,
+                root.optBoolean("uninstall_blocked", true), kioskPackages);
+        return new PolicyBundle(hash, policySet, thresholdMinutes, TimeUnit.MINUTES.toMillis(pollMinutes));
+    }
+
+    /** Hash del paquete tal como lo anuncia el servidor; vacío para los valores por defecto. */
+    public String getHash() {
+        return hash;
+    }
+
+    public DevicePolicySet getPolicySet() {
+        return policySet;
+    }
+
+    public long getOfflineLockThresholdMinutes() {
+        return offlineLockThresholdMinutes;
+    }
+
+    public long getStatusPollIntervalMillis() {
+        return statusPollIntervalMillis;
+    }
+}
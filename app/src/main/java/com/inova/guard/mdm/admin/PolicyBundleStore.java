@@ -0,0 +1,166 @@
+package com.inova.guard.mdm.admin;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import com.inova.guard.mdm.utils.ApiUtils;
+import com.inova.guard.mdm.utils.AppExecutors;
+import com.inova.guard.mdm.utils.Constants;
+import com.inova.guard.mdm.utils.Hashing;
+
+import org.json.JSONException;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Caché en disco del paquete de políticas del servidor.
+ * El heartbeat de estado anuncia el hash del paquete vigente y solo se descarga el paquete completo
+ * cuando ese hash cambia. El contenido descargado se verifica contra el hash anunciado, se guarda con
+ * {@link AtomicFile} y sustituye al anterior de una sola vez; si algo falla se conserva el anterior.
+ * Un paquete descartado (hash distinto, JSON inválido o error al guardarlo) no se vuelve a
+ * descargar mientras el heartbeat anuncie el mismo hash, salvo un reintento cada
+ * {@link Constants#POLICY_REJECTED_RETRY_MS}.
+ */
+public final class PolicyBundleStore {
+
+    private static final String TAG = "PolicyBundleStore";
+    private static final String FILE_NAME = "policy_bundle.json";
+
+    private static volatile PolicyBundleStore instance;
+
+    private final Context context;
+    private final AtomicFile file;
+    private final AtomicBoolean fetching = new AtomicBoolean(false);
+    private volatile PolicyBundle current;
+    // Último hash anunciado cuyo paquete se descartó, y hasta cuándo no se reintenta (elapsedRealtime).
+    private volatile String rejectedHash;
+    private volatile long rejectedUntil;
+
+    private PolicyBundleStore(Context context) {
+        this.context = context.getApplicationContext();
+        this.file = new AtomicFile(new File(this.context.getFilesDir(), FILE_NAME));
+        this.current = load();
+    }
+
+    public static PolicyBundleStore get(Context context) {
+        if (instance == null) {
+            synchronized (PolicyBundleStore.class) {
+                if (instance == null) {
+                    instance = new PolicyBundleStore(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    public PolicyBundle getCurrent() {
+        return current;
+    }
+
+    /**
+     * Compara el hash anunciado en el heartbeat con el del paquete en caché y descarga el paquete
+     * solo si difiere. {@code onApplied} se ejecuta en segundo plano tras aplicar un paquete nuevo.
+     */
+    public void onHeartbeatHash(String serialNumber, String advertisedHash, Runnable onApplied) {
+        if (advertisedHash == null || advertisedHash.isEmpty() || advertisedHash.equalsIgnoreCase(current.getHash())) {
+            return;
+        }
+        if (advertisedHash.equalsIgnoreCase(rejectedHash) && SystemClock.elapsedRealtime() < rejectedUntil) {
+            return;
+        }
+        if (!fetching.compareAndSet(false, true)) {
+            return;
+        }
+        Log.d(TAG, "Nuevo paquete de políticas anunciado: " + advertisedHash);
+        ApiUtils.fetchPolicyBundle(context, serialNumber, new ApiUtils.ApiCallback() {
+            @Override
+            public void onSuccess(String response) {
+                AppExecutors.background().execute(() -> {
+                    try {
+                        if (!apply(advertisedHash, response)) {
+                            rejectedHash = advertisedHash;
+                            rejectedUntil = SystemClock.elapsedRealtime() + Constants.POLICY_REJECTED_RETRY_MS;
+                        } else if (onApplied != null) {
+                            onApplied.run();
+                        }
+                    } finally {
+                        fetching.set(false);
+                    }
+                });
+            }
+
+            @Override
+            public void onFailure(String errorMessage) {
+                Log.e(TAG, "No se pudo descargar el paquete de políticas: " + errorMessage);
+                fetching.set(false);
+            }
+        });
+    }
+
+    private boolean apply(String expectedHash, String body) {
+        String actualHash = Hashing.sha256Hex(body.getBytes(StandardCharsets.UTF_8));
+        if (!actualHash.equalsIgnoreCase(expectedHash)) {
+            Log.e(TAG, "Paquete de políticas descartado: hash " + actualHash + " no coincide con " + expectedHash);
+            return false;
+        }
+        PolicyBundle bundle;
+        try {
+            bundle = PolicyBundle.parse(context, actualHash, body);
+        } catch (JSONException e) {
+            Log.e(TAG, "Paquete de políticas inválido: " + e.getMessage());
+            return false;
+        }
+
+        FileOutputStream out = null;
+        try {
+            out = file.startWrite();
+            out.write((actualHash + "\n" + body).getBytes(StandardCharsets.UTF_8));
+            file.finishWrite(out);
+        } catch (IOException e) {
+            Log.e(TAG, "No se pudo guardar el paquete de políticas: " + e.getMessage());
+            if (out != null) {
+                file.failWrite(out);
+            }
+            return false;
+        }
+
+        current = bundle;
+        DevicePolicyReconciler.reconcile(context, bundle.getPolicySet());
+        Log.d(TAG, "Paquete de políticas aplicado: " + bundle.getPolicySet());
+        return true;
+    }
+
+    private PolicyBundle load() {
+        String content;
+        try {
+            content = new String(file.readFully(), StandardCharsets.UTF_8);
+        } catch (FileNotFoundException e) {
+            return PolicyBundle.defaults(context);
+        } catch (IOException e) {
+            Log.e(TAG, "No se pudo leer el paquete de políticas: " + e.getMessage());
+            return PolicyBundle.defaults(context);
+        }
+        int newline = content.indexOf('\n');
+        if (newline > 0) {
+            String storedHash = content.substring(0, newline);
+            String body = content.substring(newline + 1);
+            if (storedHash.equalsIgnoreCase(Hashing.sha256Hex(body.getBytes(StandardCharsets.UTF_8)))) {
+                try {
+                    return PolicyBundle.parse(context, storedHash, body);
+                } catch (JSONException e) {
+                    Log.e(TAG, "Paquete de políticas en caché inválido: " + e.getMessage());
+                }
+            }
+        }
+        Log.e(TAG, "Paquete de políticas en caché corrupto. Se usan los valores por defecto.");
+        file.delete();
+        return PolicyBundle.defaults(context);
+    }
+}
@@ -2,6 +2,8 @@ package com.inova.guard.mdm.service;
 
 
 
+import android.app.AlarmManager;
+
 import android.app.Notification;
 
 import android.app.NotificationChannel;
@@ -12,34 +14,20 @@ import android.app.PendingIntent;
 
 import android.app.Service;
 
-import android.app.admin.DevicePolicyManager;
-
-import android.content.BroadcastReceiver;
-
-import android.content.ComponentName;
-
 import android.content.Context;
 
 import android.content.Intent;
 
-import android.content.IntentFilter;
-
 import android.content.SharedPreferences;
 
-import android.net.ConnectivityManager;
-
-import android.net.NetworkInfo;
-
 import android.os.Handler;
 
 import android.os.IBinder;
 
-import android.os.UserManager;
+import android.os.SystemClock;
 
 import android.os.Build;
 
-import android.util.Log;
-
 
 
 import androidx.annotation.Nullable;
@@ -52,14 +40,60 @@ import com.inova.guard.mdm.MainActivity;
 
 import com.inova.guard.mdm.R;
 
-import com.inova.guard.mdm.admin.DeviceAdminReceiver;
+import com.inova.guard.mdm.admin.DevicePolicyFacade;
+
+import com.inova.guard.mdm.admin.DevicePolicyReconciler;
+
+import com.inova.guard.mdm.admin.PolicyBundle;
+
+import com.inova.guard.mdm.admin.PolicyBundleStore;
 
 import com.inova.guard.mdm.utils.ApiUtils;
 
+import com.inova.guard.mdm.utils.AuditLog;
+
+import com.inova.guard.mdm.utils.BrandingCache;
+
+import com.inova.guard.mdm.utils.CallScope;
+
+import com.inova.guard.mdm.utils.CommandAcks;
+
+import com.inova.guard.mdm.utils.CommandBus;
+
+import com.inova.guard.mdm.utils.ConnectivityMonitor;
+
 import com.inova.guard.mdm.utils.Constants;
 
+import com.inova.guard.mdm.utils.DiagnosticBundle;
+
+import com.inova.guard.mdm.utils.EndpointRegistry;
+
+import com.inova.guard.mdm.utils.LockWakeMetrics;
+
+import com.inova.guard.mdm.utils.MdmLog;
+
+import com.inova.guard.mdm.utils.MessageCatalog;
+
+import com.inova.guard.mdm.utils.OfflineOutbox;
+
+import com.inova.guard.mdm.utils.OfflineTimeTracker;
+
+import com.inova.guard.mdm.utils.PaymentLedger;
+
+import com.inova.guard.mdm.utils.RequestDispatcher;
+
+import com.inova.guard.mdm.utils.RuntimeConfig;
+
+import com.inova.guard.mdm.utils.RuntimeConfigStore;
+
+import com.inova.guard.mdm.utils.StartupTracer;
+
+import com.inova.guard.mdm.utils.StatusStateStore;
 
 
+
+import org.json.JSONArray;
+
 import org.json.JSONException;
 
 import org.json.JSONObject;
@@ -68,6 +102,14 @@ import org.json.JSONObject;
 
 import java.io.IOException;
 
+import java.util.ArrayList;
+
+import java.util.HashMap;
+
+import java.util.List;
+
+import java.util.Map;
+
 import java.util.concurrent.TimeUnit;
 
 
@@ -94,6 +136,8 @@ public class MdmService extends Service {
 
     private static final String TAG = "MdmService";
 
+    public static final String ACTION_CHECK_OFFLINE_LOCK = "com.inova.guard.mdm.action.CHECK_OFFLINE_LOCK";
+
     public static boolean isRunning = false;
 
     private static final String CHANNEL_ID = "InovaGuardMDM_Channel";
@@ -104,49 +148,45 @@ public class MdmService extends Service {
 
     private Runnable connectivityRunnable;
 
-    private long lastConnectedTime;
+    private OfflineTimeTracker offlineTimeTracker;
 
-    private SharedPreferences sharedPreferences;
-
-    private DevicePolicyManager devicePolicyManager;
-
-    private ComponentName adminComponentName;
+    private AlarmManager alarmManager;
 
+    private SharedPreferences sharedPreferences;
 
+    private DevicePolicyFacade devicePolicyFacade;
 
-    private BroadcastReceiver connectivityReceiver = new BroadcastReceiver() {
 
-        @Override
 
-        public void onReceive(Context context, Intent intent) {
+    private ConnectivityMonitor connectivityMonitor;
 
-            if (ConnectivityManager.CONNECTIVITY_ACTION.equals(intent.getAction())) {
+    // Llamadas ligadas a la vida del servicio; se cancelan en onDestroy.
 
-                ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+    private final CallScope callScope = new CallScope();
 
-                NetworkInfo activeNetwork = cm.getActiveNetworkInfo();
 
-                boolean isConnected = activeNetwork != null && activeNetwork.isConnectedOrConnecting();
 
+    // Llega ya agrupado: solo cambios de red que se mantienen (ver ConnectivityMonitor).
 
+    private final ConnectivityMonitor.Listener connectivityListener = state -> {
 
-                if (isConnected) {
+        if (state.validated) {
 
-                    Log.d(TAG, "Conexión a Internet detectada. Reiniciando contador.");
+            MdmLog.d(TAG, "Conexión a Internet detectada. Confirmando con el servidor.");
 
-                    lastConnectedTime = System.currentTimeMillis();
+            reportDeviceStatus(true);
 
-                    reportDeviceStatus(true);
+        } else if (!state.connected) {
 
-                } else {
+            MdmLog.d(TAG, "Sin conexión a Internet.");
 
-                    Log.d(TAG, "Sin conexión a Internet.");
+            reportDeviceStatus(false);
 
-                    reportDeviceStatus(false);
+        } else {
 
-                }
+            // Portal cautivo o red sin validar: aún no sirve para hablar con el servidor.
 
-            }
+            MdmLog.d(TAG, "Red conectada pero sin validar ({}); se espera.", state);
 
         }
 
@@ -158,17 +198,17 @@ public class MdmService extends Service {
 
     public void onCreate() {
 
+        long begin = StartupTracer.begin();
+
         super.onCreate();
 
-        Log.d(TAG, "MdmService onCreate");
+        MdmLog.d(TAG, "MdmService onCreate");
 
         isRunning = true;
 
         sharedPreferences = getSharedPreferences(Constants.PREFS_NAME, MODE_PRIVATE);
 
-        devicePolicyManager = (DevicePolicyManager) getSystemService(Context.DEVICE_POLICY_SERVICE);
-
-        adminComponentName = new ComponentName(this, DeviceAdminReceiver.class);
+        devicePolicyFacade = DevicePolicyFacade.get(this);
 
 
 
@@ -204,17 +244,23 @@ public class MdmService extends Service {
 
 
 
-        if (isDeviceOwner()) {
+        // Verifica en segundo plano que las políticas sigan aplicadas (solo corrige diferencias).
 
-            Log.d(TAG, "MDM Service is Device Owner. Applying restrictions.");
+        DevicePolicyReconciler.reconcileAsync(this);
 
-            devicePolicyManager.addUserRestriction(adminComponentName, UserManager.DISALLOW_FACTORY_RESET);
 
-        }
 
+        // El tiempo sin conexión se persiste: un reinicio del servicio o del equipo no lo pone a cero.
+
+        alarmManager = (AlarmManager) getSystemService(Context.ALARM_SERVICE);
+
+        offlineTimeTracker = OfflineTimeTracker.get(this);
+
+        scheduleOfflineLockAlarm();
 
+        // Las alarmas no sobreviven a un reinicio: se reprograma el próximo recordatorio de pago.
 
-        lastConnectedTime = System.currentTimeMillis();
+        PaymentReminderScheduler.reschedule(this);
 
 
 
@@ -226,9 +272,11 @@ public class MdmService extends Service {
 
             public void run() {
 
-                checkConnectivityAndLockStatus();
+                offlineTimeTracker.checkpoint();
 
-                handler.postDelayed(this, Constants.CONNECTION_CHECK_INTERVAL);
+                reportDeviceStatus(true);
+
+                handler.postDelayed(this, currentPolicy().getStatusPollIntervalMillis());
 
             }
 
@@ -236,9 +284,11 @@ public class MdmService extends Service {
 
 
 
-        IntentFilter filter = new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION);
+        connectivityMonitor = ConnectivityMonitor.get(this);
+
+        connectivityMonitor.addListener(connectivityListener);
 
-        registerReceiver(connectivityReceiver, filter);
+        StartupTracer.end("mdm_service_create", begin);
 
     }
 
@@ -248,7 +298,7 @@ public class MdmService extends Service {
 
     public int onStartCommand(Intent intent, int flags, int startId) {
 
-        Log.d(TAG, "MdmService onStartCommand");
+        MdmLog.d(TAG, "MdmService onStartCommand");
 
 
 
@@ -256,7 +306,7 @@ public class MdmService extends Service {
 
         if (serialNumber == null || serialNumber.isEmpty() || "unknown".equals(serialNumber)) {
 
-            Log.e(TAG, "No se encontró el serial del dispositivo. El servicio no se ejecutará.");
+            MdmLog.e(TAG, "No se encontró el serial del dispositivo. El servicio no se ejecutará.");
 
             stopSelf();
 
@@ -266,7 +316,21 @@ public class MdmService extends Service {
 
 
 
-        handler.post(connectivityRunnable);
+        if (intent != null && ACTION_CHECK_OFFLINE_LOCK.equals(intent.getAction())) {
+
+            MdmLog.d(TAG, "Alarma de bloqueo por desconexión recibida.");
+
+            checkConnectivityAndLockStatus();
+
+            return START_STICKY;
+
+        }
+
+
+
+        handler.removeCallbacks(connectivityRunnable);
+
+        handler.postDelayed(connectivityRunnable, currentPolicy().getStatusPollIntervalMillis());
 
         reportDeviceStatus(true);
 
@@ -302,13 +366,13 @@ public class MdmService extends Service {
 
     private void checkConnectivityAndLockStatus() {
 
-        long timeWithoutConnection = System.currentTimeMillis() - lastConnectedTime;
+        long timeWithoutConnection = offlineTimeTracker.getOfflineMillis();
 
         long minutesWithoutConnection = TimeUnit.MILLISECONDS.toMinutes(timeWithoutConnection);
 
 
 
-        Log.d(TAG, "Minutos sin conexión: " + minutesWithoutConnection);
+        MdmLog.d(TAG, "Minutos sin conexión: {}", minutesWithoutConnection);
 
 
 
@@ -316,127 +380,179 @@ public class MdmService extends Service {
 
 
 
-        if (minutesWithoutConnection >= Constants.LOCK_THRESHOLD_MINUTES && !isLockedPref) {
+        if (minutesWithoutConnection >= currentPolicy().getOfflineLockThresholdMinutes() && !isLockedPref) {
+
+            MdmLog.d(TAG, "Umbral de desconexión alcanzado. Bloqueando dispositivo.");
 
-            Log.d(TAG, "Umbral de desconexión alcanzado. Bloqueando dispositivo.");
+            AuditLog.record(this, AuditLog.EVENT_LOCK, "offline_threshold");
 
             lockDevice();
 
-        } else if (isLockedPref) {
+        } else {
 
-            Log.d(TAG, "Dispositivo localmente marcado como bloqueado. Reportando estado al servidor.");
+            // Alarma adelantada (p. ej. tras una conexión confirmada): se reprograma al nuevo plazo.
 
-            reportDeviceStatus(true);
+            scheduleOfflineLockAlarm();
+
+        }
+
+    }
+
+
+
+    /**
+
+     * Programa una única alarma exacta en el momento en que se cumplirá el umbral de desconexión.
+
+     * Se reprograma cada vez que el servidor confirma la conexión, así que solo llega a dispararse
+
+     * si el dispositivo realmente pasa todo el plazo sin conexión.
+
+     */
+
+    private void scheduleOfflineLockAlarm() {
+
+        long thresholdMillis = TimeUnit.MINUTES.toMillis(currentPolicy().getOfflineLockThresholdMinutes());
+
+        long deadline = offlineTimeTracker.getDeadlineElapsed(thresholdMillis);
+
+
+
+        Intent alarmIntent = new Intent(this, MdmService.class).setAction(ACTION_CHECK_OFFLINE_LOCK);
+
+        int flags = PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT;
+
+        PendingIntent pendingIntent = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+
+                ? PendingIntent.getForegroundService(this, 0, alarmIntent, flags)
+
+                : PendingIntent.getService(this, 0, alarmIntent, flags);
+
+
+
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S || alarmManager.canScheduleExactAlarms()) {
+
+            alarmManager.setExactAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, deadline, pendingIntent);
 
         } else {
 
-            Log.d(TAG, "Dispositivo en línea y no bloqueado. Reportando estado.");
+            MdmLog.w(TAG, "Sin permiso para alarmas exactas. Usando alarma inexacta.");
 
-            reportDeviceStatus(true);
+            alarmManager.setAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, deadline, pendingIntent);
 
         }
 
+        MdmLog.d(TAG, "Bloqueo por desconexión programado en {} minutos.",
+
+                TimeUnit.MILLISECONDS.toMinutes(deadline - SystemClock.elapsedRealtime()));
+
     }
 
 
 
     private void lockDevice() {
 
-        String serialNumber = sharedPreferences.getString(Constants.PREF_SERIAL_NUMBER, "unknown");
+        // El bloqueo local no depende del servidor: se aplica ya, y la llamada solo trae el
 
-        ApiUtils.lockDevice(this, serialNumber, new ApiUtils.ApiCallback() {
+        // código de desbloqueo y el teléfono de contacto. Así cancelarla en onDestroy no deja el
 
-            @Override
+        // dispositivo sin bloquear.
 
-            public void onSuccess(String response) {
+        sharedPreferences.edit().putBoolean(Constants.PREF_IS_LOCKED, true).apply();
 
-                try {
+        devicePolicyFacade.lockNow();
 
-                    JSONObject jsonResponse = new JSONObject(response);
+        CommandBus.get().publish(new CommandBus.Command(CommandBus.LOCK, "offline_threshold"));
 
-                    String message = jsonResponse.getString("message");
+        Intent lockIntent = new Intent(MdmService.this, MainActivity.class);
 
-                    String unlockCode = jsonResponse.optString("unlock_code", "");
+        lockIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
 
-                    String contactPhone = jsonResponse.optString("contact_phone", "+58 412 1234567");
+        startActivity(lockIntent);
 
 
 
-                    Log.d(TAG, "Dispositivo bloqueado exitosamente por API. Código: " + unlockCode);
-
-                    sharedPreferences.edit()
+        String serialNumber = sharedPreferences.getString(Constants.PREF_SERIAL_NUMBER, "unknown");
 
-                            .putBoolean(Constants.PREF_IS_LOCKED, true)
+        callScope.deliver(ApiUtils.lockDevice(this, serialNumber), response -> {
 
-                            .putString(Constants.PREF_LAST_UNLOCK_CODE, unlockCode)
+            try {
 
-                            .putString(Constants.PREF_CONTACT_PHONE, contactPhone)
+                JSONObject jsonResponse = new JSONObject(response);
 
-                            .apply();
+                String unlockCode = jsonResponse.optString("unlock_code", "");
 
+                String contactPhone = jsonResponse.optString("contact_phone", "+58 412 1234567");
 
+                MdmLog.d(TAG, "Dispositivo bloqueado exitosamente por API. Código: {}", unlockCode);
 
-                    if (devicePolicyManager.isAdminActive(adminComponentName)) {
+                sharedPreferences.edit()
 
-                        devicePolicyManager.lockNow();
+                        .putString(Constants.PREF_LAST_UNLOCK_CODE, unlockCode)
 
-                    }
+                        .putString(Constants.PREF_CONTACT_PHONE, contactPhone)
 
+                        .apply();
 
+            } catch (JSONException e) {
 
-                    Intent lockIntent = new Intent(MdmService.this, MainActivity.class);
+                MdmLog.e(TAG, "Error parsing lock response: {}", e.getMessage());
 
-                    lockIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+            }
 
-                    startActivity(lockIntent);
+        }, errorMessage -> MdmLog.e(TAG, "Error al llamar a la API de bloqueo: {}", errorMessage));
 
+    }
 
 
-                } catch (JSONException e) {
 
-                    Log.e(TAG, "Error parsing lock response: " + e.getMessage());
+    // Copia un campo de la respuesta solo si viene; si el servidor lo omite se conserva el guardado.
 
-                    sharedPreferences.edit().putBoolean(Constants.PREF_IS_LOCKED, true).apply();
+    private static void putIfChanged(SharedPreferences.Editor editor, StatusStateStore.Resolution resolution,
 
-                    Intent lockIntent = new Intent(MdmService.this, MainActivity.class);
+                                     String key, String prefKey) {
 
-                    lockIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+        if (resolution.changed(key) && resolution.document.has(key)) {
 
-                    startActivity(lockIntent);
+            editor.putString(prefKey, resolution.document.optString(key));
 
-                }
+        }
 
-            }
+    }
 
 
 
-            @Override
+    /**
 
-            public void onFailure(String errorMessage) {
+     * Campos de un solo uso de la respuesta de estado: llegan fuera del parche, así que se
 
-                Log.e(TAG, "Error al llamar a la API de bloqueo: " + errorMessage);
+     * atienden también cuando el delta se descarta.
 
-                sharedPreferences.edit().putBoolean(Constants.PREF_IS_LOCKED, true).apply();
+     */
 
+    private void handleTransientFields(String serialNumber, JSONObject response) {
 
+        String unlockSecret = response.optString("unlock_secret", "");
 
-                if (devicePolicyManager.isAdminActive(adminComponentName)) {
+        if (!unlockSecret.isEmpty()) {
 
-                    devicePolicyManager.lockNow();
+            sharedPreferences.edit().putString(Constants.PREF_UNLOCK_SECRET, unlockSecret).apply();
 
-                }
+        }
 
+        PaymentLedger.get(this).onStatusResponse(response);
 
+        String diagnosticRequestId = response.optString("diagnostic_request_id", "");
 
-                Intent lockIntent = new Intent(MdmService.this, MainActivity.class);
+        if (!diagnosticRequestId.isEmpty()) {
 
-                lockIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+            DiagnosticBundle.request(this, serialNumber, diagnosticRequestId);
 
-                startActivity(lockIntent);
+        } else {
 
-            }
+            DiagnosticBundle.resumePending(this, serialNumber);
 
-        });
+        }
 
     }
 
@@ -446,109 +562,267 @@ public class MdmService extends Service {
 
         String serialNumber = sharedPreferences.getString(Constants.PREF_SERIAL_NUMBER, "unknown");
 
-        ApiUtils.checkDeviceStatus(this, serialNumber, isOnline, new ApiUtils.ApiCallback() {
+        Map<String, String> heartbeat = new HashMap<>();
+
+        heartbeat.put("policy_hash", currentPolicy().getHash());
+
+        // Resumen del arranque, solo hasta que el servidor lo reciba.
+
+        long startupSequence = StartupTracer.addSummaryTo(this, heartbeat);
+
+        LockWakeMetrics.addSummaryTo(heartbeat);
+
+        connectivityMonitor.addSummaryTo(heartbeat);
+
+        RequestDispatcher.addSummaryTo(heartbeat);
+
+        EndpointRegistry endpointRegistry = EndpointRegistry.get(this);
+
+        endpointRegistry.addSummaryTo(heartbeat);
+
+        MessageCatalog messageCatalog = MessageCatalog.get(this);
+
+        messageCatalog.addSummaryTo(heartbeat);
+
+        RuntimeConfig runtimeConfig = RuntimeConfigStore.get(this).getCurrent();
+
+        heartbeat.put("config_version", Integer.toString(runtimeConfig.getVersion()));
+
+        heartbeat.put("ledger_cursor", Long.toString(PaymentLedger.get(this).getCursor()));
+
+        StatusStateStore statusState = StatusStateStore.get(this);
+
+        long stateVersion = statusState.getVersion();
+
+        heartbeat.put("state_version", Long.toString(stateVersion));
+
+        if (isOnline) {
+
+            endpointRegistry.probeIfDue(runtimeConfig.getEndpointProbeIntervalMs());
+
+        }
+
+        long[] ipcStats = devicePolicyFacade.getLastHourStats();
+
+        if (ipcStats[0] >= 0) {
+
+            heartbeat.put("dpm_ipc_per_hour", Long.toString(ipcStats[0]));
+
+            heartbeat.put("dpm_ipc_saved_per_hour", Long.toString(ipcStats[1]));
+
+        }
+
+        ApiUtils.ApiCallback statusCallback = new ApiUtils.ApiCallback() {
 
             @Override
 
             public void onSuccess(String response) {
 
+                StartupTracer.markReported(startupSequence);
+
                 try {
 
-                    JSONObject jsonResponse = new JSONObject(response);
+                    JSONObject rawResponse = new JSONObject(response);
 
-                    boolean isLockedByAdmin = jsonResponse.getBoolean("is_locked");
+                    StatusStateStore.Resolution resolution = statusState.resolve(rawResponse);
 
+                    if (resolution == null) {
 
+                        // Los campos de un solo uso no dependen del documento anterior.
 
-                    String unlockCode = jsonResponse.optString("unlock_code", "");
+                        handleTransientFields(serialNumber, rawResponse);
 
-                    String message = jsonResponse.optString("message", "");
+                        // Delta sobre una versión que no tenemos: se pide enseguida el documento
 
-                    String contactPhone = jsonResponse.optString("contact_phone", "+58 412 1234567");
+                        // completo (versión 0), una sola vez para no entrar en bucle.
 
-                    String companyLogoUrl = jsonResponse.optString("company_logo_url", "");
+                        if (stateVersion != 0) {
 
-                    String nextPaymentDate = jsonResponse.optString("next_payment_date", "N/A");
+                            handler.post(() -> reportDeviceStatus(isOnline));
 
-                    String paymentReminderMessage = jsonResponse.optString("payment_reminder_message", "");
+                        }
 
-                    String paymentDueDate = jsonResponse.optString("payment_due_date", "N/A");
+                        return;
 
-                    String amountDue = jsonResponse.optString("amount_due", "0.00");
+                    }
 
-                    String amountPaid = jsonResponse.optString("amount_paid", "0.00");
+                    JSONObject jsonResponse = resolution.document;
 
-                    String deviceBrandInfo = jsonResponse.optString("device_brand_info", "N/A");
+                    boolean isLockedByAdmin = jsonResponse.getBoolean("is_locked");
 
-                    String deviceModelInfo = jsonResponse.optString("device_model_info", "N/A");
+                    String companyLogoUrl = jsonResponse.optString("company_logo_url", "");
 
-                    String paymentInstructions = jsonResponse.optString("payment_instructions", "Contacte a la administración para más detalles.");
 
 
+                    // Con un delta solo se reescriben las preferencias de los campos que tocó el parche.
 
                     SharedPreferences.Editor editor = sharedPreferences.edit();
 
-                    editor.putString(Constants.PREF_LAST_UNLOCK_CODE, unlockCode);
+                    if (resolution.changed("unlock_code")) {
+
+                        editor.putString(Constants.PREF_LAST_UNLOCK_CODE, jsonResponse.optString("unlock_code", ""));
+
+                    }
+
+                    if (resolution.changed("contact_phone")) {
+
+                        editor.putString(Constants.PREF_CONTACT_PHONE, jsonResponse.optString("contact_phone", "+58 412 1234567"));
+
+                    }
+
+                    // El resumen de pagos solo viene cuando cambia; el detalle llega por el historial.
+
+                    putIfChanged(editor, resolution, "next_payment_date", Constants.PREF_NEXT_PAYMENT_DATE);
+
+                    putIfChanged(editor, resolution, "amount_due", Constants.PREF_AMOUNT_DUE);
+
+                    putIfChanged(editor, resolution, "amount_paid", Constants.PREF_AMOUNT_PAID);
+
+                    // Textos por plantilla del catálogo local, o completos si la plantilla no está.
+
+                    if (resolution.changed("payment_instructions", "payment_instructions_template", "payment_instructions_params")) {
+
+                        String paymentInstructions = messageCatalog.resolve(jsonResponse, "payment_instructions");
+
+                        if (paymentInstructions != null) {
+
+                            editor.putString(Constants.PREF_PAYMENT_INSTRUCTIONS, paymentInstructions);
+
+                        }
+
+                    }
+
+                    if (resolution.changed("message", "message_template", "message_params")) {
+
+                        String message = messageCatalog.resolve(jsonResponse, "message");
+
+                        if (message != null) {
 
-                    editor.putString(Constants.PREF_CONTACT_PHONE, contactPhone);
+                            editor.putString(Constants.PREF_MESSAGE, message);
 
-                    editor.putString(Constants.PREF_NEXT_PAYMENT_DATE, nextPaymentDate);
+                        }
+
+                    }
+
+                    if (resolution.changed("device_brand_info")) {
 
-                    editor.putString(Constants.PREF_AMOUNT_DUE, amountDue);
+                        editor.putString(Constants.PREF_DEVICE_BRAND, jsonResponse.optString("device_brand_info", "N/A"));
 
-                    editor.putString(Constants.PREF_AMOUNT_PAID, amountPaid);
+                    }
 
-                    editor.putString(Constants.PREF_PAYMENT_INSTRUCTIONS, paymentInstructions);
+                    if (resolution.changed("device_model_info")) {
 
-                    editor.putString(Constants.PREF_DEVICE_BRAND, deviceBrandInfo);
+                        editor.putString(Constants.PREF_DEVICE_MODEL, jsonResponse.optString("device_model_info", "N/A"));
 
-                    editor.putString(Constants.PREF_DEVICE_MODEL, deviceModelInfo);
+                    }
 
                     editor.apply();
 
+                    BrandingCache.update(MdmService.this, companyLogoUrl, jsonResponse.optString("company_logo_version", ""));
 
+                    RuntimeConfigStore.get(MdmService.this).onStatusResponse(jsonResponse);
 
-                    if (isLockedByAdmin && !sharedPreferences.getBoolean(Constants.PREF_IS_LOCKED, false)) {
+                    messageCatalog.onStatusResponse(serialNumber, jsonResponse);
 
-                        Log.d(TAG, "Servidor indica bloqueado, forzando bloqueo local.");
+                    handleTransientFields(serialNumber, jsonResponse);
 
-                        editor.putBoolean(Constants.PREF_IS_LOCKED, true).apply();
+                    PaymentReminderScheduler.reschedule(MdmService.this);
 
-                        if (devicePolicyManager.isAdminActive(adminComponentName)) {
+                    JSONArray endpoints = jsonResponse.optJSONArray("endpoints");
 
-                            devicePolicyManager.lockNow();
+                    if (endpoints != null) {
+
+                        List<String> endpointUrls = new ArrayList<>();
+
+                        for (int i = 0; i < endpoints.length(); i++) {
+
+                            endpointUrls.add(endpoints.optString(i));
 
                         }
 
+                        EndpointRegistry.get(MdmService.this).configure(endpointUrls, jsonResponse.optString("lan_mirror_url", ""));
+
+                    }
+
+                    offlineTimeTracker.markConnected();
+
+                    scheduleOfflineLockAlarm();
+
+                    // Solo se descarga el paquete de políticas si su hash cambió.
+
+                    PolicyBundleStore.get(MdmService.this).onHeartbeatHash(serialNumber,
+
+                            jsonResponse.optString("policy_hash", ""),
+
+                            () -> handler.post(MdmService.this::scheduleOfflineLockAlarm));
+
+                    OfflineOutbox.flush(MdmService.this);
+
+                    // Con red medida el registro decide si la cola ya no puede esperar más.
+
+                    if (connectivityMonitor.allows(ConnectivityMonitor.TRAFFIC_NORMAL)) {
+
+                        AuditLog.get(MdmService.this).uploadPending(MdmService.this, serialNumber,
+
+                                connectivityMonitor.allows(ConnectivityMonitor.TRAFFIC_BULK));
+
+                    }
+
+
+
+                    if (isLockedByAdmin && !sharedPreferences.getBoolean(Constants.PREF_IS_LOCKED, false)) {
+
+                        MdmLog.d(TAG, "Servidor indica bloqueado, forzando bloqueo local.");
+
+                        CommandAcks.get(MdmService.this).begin(jsonResponse.optString("command_id", ""), CommandBus.LOCK, "poll",
+
+                                jsonResponse.optLong("command_sent_at", 0));
+
+                        AuditLog.record(MdmService.this, AuditLog.EVENT_LOCK, "server_status");
+
+                        editor.putBoolean(Constants.PREF_IS_LOCKED, true).apply();
+
+                        // La pantalla se apaga desde MainActivity, después de dibujar el bloqueo.
+
+                        CommandBus.get().publish(new CommandBus.Command(CommandBus.LOCK, "server_status"));
+
                         Intent lockIntent = new Intent(MdmService.this, MainActivity.class);
 
                         lockIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
 
+                        lockIntent.putExtra(MainActivity.EXTRA_SCREEN_OFF, true);
+
                         startActivity(lockIntent);
 
 
 
                     } else if (!isLockedByAdmin && sharedPreferences.getBoolean(Constants.PREF_IS_LOCKED, false)) {
 
-                        Log.d(TAG, "Servidor indica desbloqueado, forzando desbloqueo local.");
+                        MdmLog.d(TAG, "Servidor indica desbloqueado, forzando desbloqueo local.");
 
-                        editor.putBoolean(Constants.PREF_IS_LOCKED, false).apply();
+                        CommandAcks.get(MdmService.this).begin(jsonResponse.optString("command_id", ""), CommandBus.UNLOCK,
+
+                                "poll", jsonResponse.optLong("command_sent_at", 0));
+
+                        AuditLog.record(MdmService.this, AuditLog.EVENT_UNLOCK, "server_status");
 
-                        Intent unlockIntent = new Intent(MdmService.this, MainActivity.class);
+                        editor.putBoolean(Constants.PREF_IS_LOCKED, false).apply();
 
-                        unlockIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+                        // Sin pantalla abierta no hay modo kiosco que cerrar: basta con la preferencia.
 
-                        startActivity(unlockIntent);
+                        CommandBus.get().publish(new CommandBus.Command(CommandBus.UNLOCK, "server_status"));
 
                     }
 
-                    Log.d(TAG, "Estado de conectividad reportado y info actualizada: " + response);
+                    // Solo el tamaño: el cuerpo completo no aporta al diagnóstico y se registraba en cada ciclo.
+
+                    MdmLog.d(TAG, "Estado de conectividad reportado y info actualizada ({} bytes).", response.length());
 
 
 
                 } catch (JSONException e) {
 
-                    Log.e(TAG, "Error parsing status response: " + e.getMessage());
+                    MdmLog.e(TAG, "Error parsing status response: {}", e.getMessage());
 
                 }
 
@@ -560,11 +834,25 @@ public class MdmService extends Service {
 
             public void onFailure(String errorMessage) {
 
-                Log.e(TAG, "Fallo al reportar el estado de conectividad: " + errorMessage);
+                MdmLog.e(TAG, "Fallo al reportar el estado de conectividad: {}", errorMessage);
 
             }
 
-        });
+        };
+
+        // Se procesa en el hilo de OkHttp, como antes, pero se descarta si el servicio se destruye.
+
+        callScope.deliver(ApiUtils.checkDeviceStatus(this, serialNumber, isOnline, heartbeat), Runnable::run,
+
+                statusCallback::onSuccess, statusCallback::onFailure);
+
+    }
+
+
+
+    private PolicyBundle currentPolicy() {
+
+        return PolicyBundleStore.get(this).getCurrent();
 
     }
 
@@ -572,7 +860,7 @@ public class MdmService extends Service {
 
     private boolean isDeviceOwner() {
 
-        return devicePolicyManager != null && devicePolicyManager.isDeviceOwnerApp(getPackageName());
+        return devicePolicyFacade.isDeviceOwner();
 
     }
 
@@ -596,13 +884,17 @@ public class MdmService extends Service {
 
         super.onDestroy();
 
-        Log.d(TAG, "MdmService onDestroy");
+        MdmLog.d(TAG, "MdmService onDestroy");
 
         isRunning = false;
 
         handler.removeCallbacks(connectivityRunnable);
 
-        unregisterReceiver(connectivityReceiver);
+        offlineTimeTracker.checkpoint();
+
+        connectivityMonitor.removeListener(connectivityListener);
+
+        callScope.close();
 
         stopForeground(true);
 
@@ -6,20 +6,24 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.os.Build;
-import android.os.Handler;
-import android.os.Looper;
 import android.util.Log;
 import com.google.firebase.messaging.FirebaseMessagingService;
 import com.google.firebase.messaging.RemoteMessage;
 import com.inova.guard.mdm.MainActivity;
+import com.inova.guard.mdm.utils.AuditLog;
+import com.inova.guard.mdm.utils.CommandAcks;
+import com.inova.guard.mdm.utils.CommandBus;
 import com.inova.guard.mdm.utils.Constants;
+import com.inova.guard.mdm.utils.DiagnosticBundle;
+import com.inova.guard.mdm.utils.EndpointRegistry;
+import com.inova.guard.mdm.utils.MessageCatalog;
+import com.inova.guard.mdm.utils.RequestDispatcher;
 
 import java.io.IOException;
 import java.util.Map;
 import okhttp3.Call;
 import okhttp3.Callback;
 import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
@@ -28,7 +32,6 @@ import androidx.annotation.NonNull;
 public class MyFirebaseMessagingService extends FirebaseMessagingService {
 
     private static final String TAG = "MyFirebaseMsgService";
-    private static final String BACKEND_URL = "https://tako83.pythonanywhere.com/api/update-fcm-token/";
     private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
 
     @Override
@@ -40,27 +43,46 @@ public class MyFirebaseMessagingService extends FirebaseMessagingService {
             String command = data.get("action");
 
             if ("lock".equals(command)) {
+                CommandAcks.get(this).begin(data.get("command_id"), CommandBus.LOCK, "fcm", parseTime(data.get("command_sent_at")));
+                AuditLog.record(this, AuditLog.EVENT_LOCK, "fcm");
                 SharedPreferences.Editor editor = getSharedPreferences(Constants.PREFS_NAME, MODE_PRIVATE).edit();
                 editor.putBoolean(Constants.PREF_IS_LOCKED, true);
                 editor.putString(Constants.PREF_UNLOCK_CODE, data.get("unlock_code"));
+                String lockMessage = MessageCatalog.get(this).resolve(data, "message");
+                if (lockMessage != null) {
+                    editor.putString(Constants.PREF_MESSAGE, lockMessage);
+                }
                 editor.apply();
 
+                // La pantalla se apaga desde MainActivity, después de dibujar el bloqueo.
+                CommandBus.get().publish(new CommandBus.Command(CommandBus.LOCK, "fcm"));
                 Intent lockIntent = new Intent(this, MainActivity.class);
                 lockIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+                lockIntent.putExtra(MainActivity.EXTRA_SCREEN_OFF, true);
                 startActivity(lockIntent);
 
             } else if ("unlock".equals(command)) {
-                if (MainActivity.instance != null) {
-                    new Handler(Looper.getMainLooper()).post(() -> MainActivity.instance.unlockDevice());
-                }
+                CommandAcks.get(this).begin(data.get("command_id"), CommandBus.UNLOCK, "fcm", parseTime(data.get("command_sent_at")));
+                AuditLog.record(this, AuditLog.EVENT_UNLOCK, "fcm");
+                getSharedPreferences(Constants.PREFS_NAME, MODE_PRIVATE).edit()
+                        .putBoolean(Constants.PREF_IS_LOCKED, false)
+                        .apply();
+                // Si la pantalla de bloqueo está abierta, sale del modo kiosco; si no, la próxima
+                // vez que se abra ya leerá el estado desbloqueado.
+                CommandBus.get().publish(new CommandBus.Command(CommandBus.UNLOCK, "fcm"));
+
+            } else if ("collect_diagnostics".equals(command)) {
+                DiagnosticBundle.request(this, getSerialNumber(this), data.get("request_id"));
 
             } else if ("reminder".equals(command) || "payment_reminder".equals(command)) {
-                String reminderTitle = data.get("title");
-                String reminderMessage = data.get("message");
+                // Título, mensaje e instrucciones pueden llegar como plantilla del catálogo local.
+                MessageCatalog messageCatalog = MessageCatalog.get(this);
+                String reminderTitle = messageCatalog.resolve(data, "title");
+                String reminderMessage = messageCatalog.resolve(data, "message");
                 String nextPaymentDate = data.get("next_payment_date");
                 String amountDue = data.get("amount_due");
                 String amountPaid = data.get("amount_paid");
-                String paymentInstructions = data.get("payment_instructions");
+                String paymentInstructions = messageCatalog.resolve(data, "payment_instructions");
                 String contactPhone = data.get("contact_phone");
 
                 if (reminderMessage != null && !reminderMessage.isEmpty()) {
@@ -75,7 +97,19 @@ public class MyFirebaseMessagingService extends FirebaseMessagingService {
                     editor.apply();
 
                     Intent reminderIntent = new Intent(this, ReminderOverlayService.class);
+                    reminderIntent.putExtra("REMINDER_TITLE", reminderTitle);
                     reminderIntent.putExtra("REMINDER_MESSAGE", reminderMessage);
+                    reminderIntent.putExtra("NEXT_PAYMENT_DATE", nextPaymentDate);
+                    reminderIntent.putExtra("AMOUNT_DUE", amountDue);
+                    reminderIntent.putExtra("AMOUNT_PAID", amountPaid);
+                    reminderIntent.putExtra("PAYMENT_INSTRUCTIONS", paymentInstructions);
+                    reminderIntent.putExtra("CONTACT_PHONE", contactPhone);
+                    reminderIntent.putExtra(ReminderOverlayService.EXTRA_PRIORITY,
+                            "high".equals(data.get("priority"))
+                                    ? ReminderOverlayService.PRIORITY_HIGH
+                                    : "low".equals(data.get("priority"))
+                                            ? ReminderOverlayService.PRIORITY_LOW
+                                            : ReminderOverlayService.PRIORITY_NORMAL);
 
                     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
                         startForegroundService(reminderIntent);
@@ -99,16 +133,15 @@ public class MyFirebaseMessagingService extends FirebaseMessagingService {
             return;
         }
 
-        OkHttpClient client = new OkHttpClient();
         String json = "{\"serial_number\": \"" + serialNumber + "\", \"fcm_token\": \"" + token + "\"}";
         RequestBody body = RequestBody.create(json, JSON);
 
         Request request = new Request.Builder()
-                .url(BACKEND_URL)
+                .url(EndpointRegistry.get(context).baseUrl() + "/api/update-fcm-token/")
                 .post(body)
                 .build();
 
-        client.newCall(request).enqueue(new Callback() {
+        RequestDispatcher.enqueue(RequestDispatcher.BACKGROUND, "fcm_token", request, new Callback() {
             @Override
             public void onFailure(@NonNull Call call, @NonNull IOException e) {}
             @Override
@@ -116,6 +149,14 @@ public class MyFirebaseMessagingService extends FirebaseMessagingService {
         });
     }
 
+    private static long parseTime(String value) {
+        try {
+            return value != null ? Long.parseLong(value) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
     private static String getSerialNumber(Context context) {
         SharedPreferences prefs = context.getSharedPreferences(Constants.PREFS_NAME, Context.MODE_PRIVATE);
         return prefs.getString(Constants.PREF_SERIAL_NUMBER, "unknown");
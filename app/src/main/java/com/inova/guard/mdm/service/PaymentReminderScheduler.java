@@ -0,0 +1,102 @@
+package com.inova.guard.mdm.service;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+
+import com.inova.guard.mdm.utils.Constants;
+import com.inova.guard.mdm.utils.DeviceStateSnapshot;
+import com.inova.guard.mdm.utils.MdmLog;
+import com.inova.guard.mdm.utils.PaymentReminderPlan;
+import com.inova.guard.mdm.utils.RuntimeConfigStore;
+
+import java.util.TimeZone;
+
+/**
+ * Programa en el propio dispositivo los recordatorios de pago (ver {@link PaymentReminderPlan}),
+ * para que el servidor no tenga que enviar un push a cada dispositivo a fin de mes. Solo hay una
+ * alarma pendiente, la del próximo recordatorio, y es inexacta: el sistema la agrupa con otras
+ * dentro de {@link Constants#PAYMENT_REMINDER_WINDOW_MS}. Se recalcula con cada respuesta de
+ * estado, así que cuando el pago queda registrado (sin pendiente o con una fecha nueva) la
+ * alarma se cancela o se mueve sola. El push "payment_reminder" sigue disponible para avisos
+ * fuera de calendario.
+ */
+public final class PaymentReminderScheduler {
+
+    private static final String TAG = "PaymentReminderScheduler";
+
+    static final String ACTION_SCHEDULED_REMINDER = "com.inova.guard.mdm.action.SCHEDULED_PAYMENT_REMINDER";
+
+    private PaymentReminderScheduler() {
+    }
+
+    /** Programa (o cancela) la alarma del próximo recordatorio según el estado guardado. */
+    public static void reschedule(Context context) {
+        Context appContext = context.getApplicationContext();
+        AlarmManager alarmManager = (AlarmManager) appContext.getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager == null) {
+            return;
+        }
+        long at = nextReminderAt(appContext, System.currentTimeMillis());
+        PendingIntent pendingIntent = alarmIntent(appContext);
+        if (at < 0) {
+            alarmManager.cancel(pendingIntent);
+            MdmLog.d(TAG, "Sin recordatorios de pago pendientes.");
+            return;
+        }
+        alarmManager.setWindow(AlarmManager.RTC_WAKEUP, at, Constants.PAYMENT_REMINDER_WINDOW_MS, pendingIntent);
+        MdmLog.d(TAG, "Próximo recordatorio de pago en {} minutos.", (at - System.currentTimeMillis()) / 60000);
+    }
+
+    /**
+     * Llamado por {@link ReminderAlarmReceiver} al saltar la alarma, fuera del hilo principal. Vuelve
+     * a comprobar el estado (puede haberse pagado después de programarla) y devuelve el texto a
+     * mostrar, o {@code null} si ya no toca. En ambos casos deja programado el siguiente.
+     */
+    static String onAlarm(Context context) {
+        long now = System.currentTimeMillis();
+        TimeZone timeZone = TimeZone.getDefault();
+        DeviceStateSnapshot state = DeviceStateSnapshot.load(context);
+        SharedPreferences prefs = context.getSharedPreferences(Constants.PREFS_NAME, Context.MODE_PRIVATE);
+        long lastShownDay = prefs.getLong(Constants.PREF_PAYMENT_REMINDER_LAST_DAY, 0);
+        long dueMidnight = PaymentReminderPlan.parseDueDate(state.nextPaymentDate, timeZone);
+        int thresholdDays = RuntimeConfigStore.get(context).getCurrent().getPaymentReminderThresholdDays();
+
+        String message = null;
+        if (!PaymentReminderPlan.isSettled(state.amountDue) && PaymentReminderPlan.isDueNow(dueMidnight,
+                thresholdDays, Constants.PAYMENT_REMINDER_HOUR, now, lastShownDay, timeZone)) {
+            prefs.edit().putLong(Constants.PREF_PAYMENT_REMINDER_LAST_DAY, PaymentReminderPlan.startOfDay(now, timeZone)).apply();
+            int days = PaymentReminderPlan.daysUntil(dueMidnight, now, timeZone);
+            message = days == 0 ? "Su cuota vence hoy." : days == 1 ? "Su cuota vence mañana."
+                    : "Su cuota vence en " + days + " días.";
+        } else {
+            MdmLog.d(TAG, "Recordatorio programado descartado: ya pagado o fuera de plazo.");
+        }
+        reschedule(context);
+        return message;
+    }
+
+    private static long nextReminderAt(Context context, long now) {
+        DeviceStateSnapshot state = DeviceStateSnapshot.load(context);
+        if (PaymentReminderPlan.isSettled(state.amountDue)) {
+            return -1;
+        }
+        TimeZone timeZone = TimeZone.getDefault();
+        long lastShownDay = context.getSharedPreferences(Constants.PREFS_NAME, Context.MODE_PRIVATE)
+                .getLong(Constants.PREF_PAYMENT_REMINDER_LAST_DAY, 0);
+        return PaymentReminderPlan.nextReminderAt(
+                PaymentReminderPlan.parseDueDate(state.nextPaymentDate, timeZone),
+                RuntimeConfigStore.get(context).getCurrent().getPaymentReminderThresholdDays(),
+                Constants.PAYMENT_REMINDER_HOUR, now, lastShownDay, timeZone);
+    }
+
+    private static PendingIntent alarmIntent(Context context) {
+        // Un PendingIntent de servicio sería un inicio en segundo plano desde Android 8; el receptor
+        // decide primero si toca mostrar algo y solo entonces inicia el servicio.
+        Intent intent = new Intent(context, ReminderAlarmReceiver.class).setAction(ACTION_SCHEDULED_REMINDER);
+        return PendingIntent.getBroadcast(context, 0, intent,
+                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+}
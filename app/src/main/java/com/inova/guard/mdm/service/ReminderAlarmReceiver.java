@@ -0,0 +1,52 @@
+package com.inova.guard.mdm.service;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+import com.inova.guard.mdm.utils.AppExecutors;
+import com.inova.guard.mdm.utils.MdmLog;
+
+/**
+ * Recibe las alarmas de los recordatorios y reanuda {@link ReminderOverlayService}, que puede no
+ * estar vivo si el proceso murió mientras esperaba. El servicio se puede iniciar porque MdmService
+ * corre en primer plano; si aun así el sistema lo impide, la cola sigue guardada y se mostrará la
+ * próxima vez que arranque el servicio.
+ *
+ * <p>La alarma de {@link PaymentReminderScheduler} lee el estado guardado antes de decidir si hay
+ * algo que mostrar, así que se atiende en segundo plano con {@link #goAsync()} y solo inicia el
+ * servicio si el recordatorio sigue vigente.
+ */
+public class ReminderAlarmReceiver extends BroadcastReceiver {
+
+    private static final String TAG = "ReminderAlarmReceiver";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        Context appContext = context.getApplicationContext();
+        if (!PaymentReminderScheduler.ACTION_SCHEDULED_REMINDER.equals(intent.getAction())) {
+            startService(appContext, new Intent(appContext, ReminderOverlayService.class).setAction(intent.getAction()));
+            return;
+        }
+        PendingResult result = goAsync();
+        AppExecutors.background().execute(() -> {
+            try {
+                String message = PaymentReminderScheduler.onAlarm(appContext);
+                if (message != null) {
+                    startService(appContext, new Intent(appContext, ReminderOverlayService.class)
+                            .putExtra("REMINDER_MESSAGE", message));
+                }
+            } finally {
+                result.finish();
+            }
+        });
+    }
+
+    private static void startService(Context context, Intent serviceIntent) {
+        try {
+            context.startService(serviceIntent);
+        } catch (IllegalStateException e) {
+            MdmLog.w(TAG, "No se pudo reanudar el servicio de recordatorios: {}", e.getMessage());
+        }
+    }
+}
@@ -1,26 +1,97 @@
 package com.inova.guard.mdm.service;
 
+import android.app.AlarmManager;
+import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.PixelFormat;
 import android.os.Build;
+import android.os.Handler;
 import android.os.IBinder;
-import android.util.Log;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.AtomicFile;
 import android.view.Gravity;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.WindowManager;
-import android.widget.Button;
 import android.widget.TextView;
-import android.widget.LinearLayout;
+
+import com.inova.guard.mdm.BuildConfig;
 import com.inova.guard.mdm.R;
+import com.inova.guard.mdm.utils.AppExecutors;
+import com.inova.guard.mdm.utils.DeviceStateSnapshot;
+import com.inova.guard.mdm.utils.MdmLog;
+import com.inova.guard.mdm.utils.RuntimeConfig;
+import com.inova.guard.mdm.utils.RuntimeConfigStore;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Muestra los recordatorios de pago como una superposición a pantalla completa.
+ *
+ * <p>La vista ({@code overlay_reminder}) se infla una sola vez por vida del servicio y se
+ * reutiliza: cada recordatorio solo cambia sus textos. Los recordatorios que llegan mientras hay
+ * otro en pantalla esperan en una cola por prioridad; uno de prioridad mayor sustituye al actual.
+ * Entre dos recordatorios se respeta una separación mínima y un máximo por hora (salvo los de
+ * prioridad alta), también al sustituir, para no tapar el dispositivo con avisos repetidos. Un
+ * recordatorio sustituido vuelve a la cola y no cuenta otra vez para el límite.
+ *
+ * <p>El estado guardado se lee en segundo plano. La cola y las horas de los últimos recordatorios
+ * se guardan en {@code reminder_queue.json}, y la espera por los límites se programa también con
+ * {@link AlarmManager} ({@link ReminderAlarmReceiver}), así que sobreviven a la muerte del proceso.
+ */
 public class ReminderOverlayService extends Service {
 
     private static final String TAG = "ReminderOverlayService";
+
+    public static final String EXTRA_PRIORITY = "REMINDER_PRIORITY";
+    public static final int PRIORITY_LOW = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_HIGH = 2;
+
+    static final String ACTION_SHOW_PENDING = "com.inova.guard.mdm.action.SHOW_PENDING_REMINDERS";
+
+    private static final long HOUR_MS = 60 * 60 * 1000;
+    private static final String QUEUE_FILE = "reminder_queue.json";
+    private static final Comparator<Reminder> ORDER = (a, b) ->
+            a.priority != b.priority ? b.priority - a.priority : Long.compare(a.sequence, b.sequence);
+
     private WindowManager windowManager;
+    private AlarmManager alarmManager;
+    private AtomicFile queueFile;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable showNext = this::showNextIfAllowed;
+
     private View overlayView;
+    private TextView titleTextView;
+    private TextView detailsTextView;
+    private boolean attached;
+
+    private final PriorityQueue<Reminder> pending = new PriorityQueue<>(4, ORDER);
+    private Reminder showing;
+    private long sequence;
+    private final ArrayDeque<Long> shownAt = new ArrayDeque<>();
+    // Lecturas en segundo plano cuyo resultado aún no llegó al hilo principal.
+    private int loading;
+    private boolean destroyed;
 
     @Override
     public IBinder onBind(Intent intent) {
@@ -31,110 +102,435 @@ public class ReminderOverlayService extends Service {
     public void onCreate() {
         super.onCreate();
         windowManager = (WindowManager) getSystemService(Context.WINDOW_SERVICE);
+        alarmManager = (AlarmManager) getSystemService(Context.ALARM_SERVICE);
+        queueFile = new AtomicFile(new File(getFilesDir(), QUEUE_FILE));
+        loading++;
+        AppExecutors.background().execute(() -> {
+            JSONObject saved = readQueue(queueFile);
+            handler.post(() -> {
+                loading--;
+                if (!destroyed) {
+                    restore(saved);
+                    showNextIfAllowed();
+                }
+            });
+        });
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        Log.d(TAG, "Servicio de recordatorio iniciado.");
+        if (intent == null || ACTION_SHOW_PENDING.equals(intent.getAction())) {
+            showNextIfAllowed();
+            return START_NOT_STICKY;
+        }
+        // El estado guardado se lee fuera del hilo principal; el orden de llegada se conserva
+        // porque el ejecutor de segundo plano es de un solo hilo.
+        Context appContext = getApplicationContext();
+        Intent request = new Intent(intent);
+        loading++;
+        AppExecutors.background().execute(() -> {
+            Reminder loaded = Reminder.from(appContext, request);
+            handler.post(() -> {
+                loading--;
+                if (!destroyed) {
+                    enqueue(loaded);
+                }
+            });
+        });
+        return START_NOT_STICKY;
+    }
 
-        if (overlayView != null) {
-            Log.d(TAG, "La vista de superposición ya está mostrada. Deteniendo el servicio anterior.");
-            windowManager.removeView(overlayView);
+    private void enqueue(Reminder reminder) {
+        reminder.sequence = sequence++;
+        MdmLog.d(TAG, "Recordatorio recibido (prioridad {}).", reminder.priority);
+        if (showing != null && showing.sameContentAs(reminder)) {
+            // Repetición del que ya está en pantalla: basta con refrescar los datos.
+            reminder.counted = true;
+            showing = reminder;
+            bind(reminder);
+            saveQueue();
+            return;
         }
+        removeQueuedDuplicates(reminder);
+        pending.add(reminder);
+        saveQueue();
+        showNextIfAllowed();
+    }
 
-        // Infla el layout completo de activity_main.xml
-        LayoutInflater inflater = (LayoutInflater) getSystemService(Context.LAYOUT_INFLATER_SERVICE);
-        View rootView = inflater.inflate(R.layout.activity_main, null);
+    private void removeQueuedDuplicates(Reminder reminder) {
+        Iterator<Reminder> it = pending.iterator();
+        while (it.hasNext()) {
+            if (it.next().sameContentAs(reminder)) {
+                it.remove();
+            }
+        }
+    }
 
-        // Oculta los layouts que no necesitas
-        LinearLayout lockedLayout = rootView.findViewById(R.id.locked_layout);
-        if (lockedLayout != null) {
-            lockedLayout.setVisibility(View.GONE);
+    /**
+     * Muestra el primero de la cola si los límites lo permiten. Con otro en pantalla solo lo hace si
+     * el de la cola tiene más prioridad; el actual vuelve entonces a la cola.
+     */
+    private void showNextIfAllowed() {
+        handler.removeCallbacks(showNext);
+        Reminder next = pending.peek();
+        if (next == null) {
+            cancelAlarm();
+            stopIfIdle();
+            return;
+        }
+        if (showing != null && next.priority <= showing.priority) {
+            return;
         }
-        LinearLayout adminPanel = rootView.findViewById(R.id.admin_panel);
-        if (adminPanel != null) {
-            adminPanel.setVisibility(View.GONE);
+        long wait = delayBeforeShowing(next);
+        if (wait > 0) {
+            MdmLog.d(TAG, "Límite de recordatorios alcanzado; siguiente en {} ms.", wait);
+            handler.postDelayed(showNext, wait);
+            scheduleAlarm(wait);
+            return;
         }
+        cancelAlarm();
+        pending.poll();
+        if (showing != null) {
+            MdmLog.d(TAG, "Recordatorio de mayor prioridad: sustituye al actual.");
+            pending.add(showing);
+        }
+        show(next);
+        saveQueue();
+    }
 
-        // El layout que queremos mostrar como superposición es el main_layout
-        overlayView = rootView.findViewById(R.id.main_layout);
-        if (overlayView == null) {
-            Log.e(TAG, "No se encontró main_layout en el XML.");
+    /** Milisegundos que faltan para poder mostrar el recordatorio según los límites de frecuencia. */
+    private long delayBeforeShowing(Reminder reminder) {
+        long now = SystemClock.elapsedRealtime();
+        while (!shownAt.isEmpty() && now - shownAt.peekFirst() >= HOUR_MS) {
+            shownAt.pollFirst();
+        }
+        if (shownAt.isEmpty()) {
+            return 0;
+        }
+        RuntimeConfig config = RuntimeConfigStore.get(this).getCurrent();
+        long wait = shownAt.peekLast() + config.getReminderMinGapMs() - now;
+        // Uno ya contado (sustituido antes) solo espera la separación mínima.
+        if (reminder.priority < PRIORITY_HIGH && !reminder.counted && shownAt.size() >= config.getReminderMaxPerHour()) {
+            wait = Math.max(wait, shownAt.peekFirst() + HOUR_MS - now);
+        }
+        return Math.max(wait, 0);
+    }
+
+    private void show(Reminder reminder) {
+        ensureView();
+        showing = reminder;
+        bind(reminder);
+        if (!reminder.counted) {
+            shownAt.addLast(SystemClock.elapsedRealtime());
+            reminder.counted = true;
+        }
+        if (attached) {
+            return;
+        }
+        try {
+            windowManager.addView(overlayView, buildLayoutParams());
+            attached = true;
+            MdmLog.d(TAG, "Vista de superposición de recordatorio añadida correctamente.");
+        } catch (Exception e) {
+            MdmLog.e(TAG, "Error al añadir la vista de superposición: {}", e.getMessage());
+            showing = null;
+            pending.clear();
+            saveQueue();
             stopSelf();
-            return START_NOT_STICKY;
         }
+    }
 
-        // Ahora, configura los datos en las vistas de main_layout
-        String reminderTitle = intent.getStringExtra("REMINDER_TITLE");
-        String reminderMessage = intent.getStringExtra("REMINDER_MESSAGE");
-        String nextPaymentDate = intent.getStringExtra("NEXT_PAYMENT_DATE");
-        String amountDue = intent.getStringExtra("AMOUNT_DUE");
-        String amountPaid = intent.getStringExtra("AMOUNT_PAID");
-        String paymentInstructions = intent.getStringExtra("PAYMENT_INSTRUCTIONS");
-        String contactPhone = intent.getStringExtra("CONTACT_PHONE");
-
-        TextView nextPaymentDateTextView = overlayView.findViewById(R.id.next_payment_date_text_view);
-        TextView amountDueTextView = overlayView.findViewById(R.id.amount_due_text_view);
-        TextView amountPaidTextView = overlayView.findViewById(R.id.amount_paid_text_view);
-        TextView paymentInstructionsTextView = overlayView.findViewById(R.id.payment_instructions_text_view);
-        TextView contactPhoneMainTextView = overlayView.findViewById(R.id.contact_phone_main_text_view);
-        Button contactAdminButton = overlayView.findViewById(R.id.contact_admin_button);
-
-        // Aplica los datos a las vistas
-        if (nextPaymentDateTextView != null) nextPaymentDateTextView.setText(nextPaymentDate);
-        if (amountDueTextView != null) amountDueTextView.setText(amountDue);
-        if (amountPaidTextView != null) amountPaidTextView.setText(amountPaid);
-        if (paymentInstructionsTextView != null) paymentInstructionsTextView.setText(paymentInstructions);
-        if (contactPhoneMainTextView != null) contactPhoneMainTextView.setText("Teléfono: " + contactPhone);
-
-        if (contactAdminButton != null) {
-            contactAdminButton.setOnClickListener(v -> {
-                Log.d(TAG, "Botón de Contactar Administración presionado.");
-                if (contactPhone != null && !contactPhone.isEmpty()) {
-                    Intent dialIntent = new Intent(Intent.ACTION_DIAL);
-                    dialIntent.setData(android.net.Uri.parse("tel:" + contactPhone));
-                    dialIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-                    startActivity(dialIntent);
-                }
-                stopSelf();
-            });
+    /** Infla la superposición la primera vez y mide lo que cuesta (tiempo y memoria retenida). */
+    private void ensureView() {
+        if (overlayView != null) {
+            return;
         }
+        LayoutInflater inflater = LayoutInflater.from(this);
+        if (BuildConfig.DEBUG) {
+            measureLegacyLayout(inflater);
+        }
+        long heapBefore = usedHeap();
+        long begin = SystemClock.elapsedRealtimeNanos();
+        overlayView = inflater.inflate(R.layout.overlay_reminder, null);
+        long inflateUs = (SystemClock.elapsedRealtimeNanos() - begin) / 1000;
+        long retained = usedHeap() - heapBefore;
+        MdmLog.i(TAG, "overlay_reminder inflado en {} us, ~{} bytes retenidos.", inflateUs, retained);
+
+        titleTextView = overlayView.findViewById(R.id.overlay_title_text_view);
+        detailsTextView = overlayView.findViewById(R.id.overlay_details_text_view);
+        overlayView.findViewById(R.id.overlay_dismiss_button).setOnClickListener(v -> dismiss());
+        overlayView.findViewById(R.id.overlay_contact_button).setOnClickListener(v -> {
+            MdmLog.d(TAG, "Botón de Contactar Administración presionado.");
+            String phone = showing != null ? showing.contactPhone : null;
+            if (!TextUtils.isEmpty(phone)) {
+                Intent dialIntent = new Intent(Intent.ACTION_DIAL);
+                dialIntent.setData(android.net.Uri.parse("tel:" + phone));
+                dialIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+                startActivity(dialIntent);
+            }
+            dismiss();
+        });
+    }
+
+    /**
+     * Solo en depuración: infla una vez el layout que se usaba antes (activity_main completo) para
+     * dejar en el log la comparación con la superposición actual.
+     */
+    private void measureLegacyLayout(LayoutInflater inflater) {
+        long heapBefore = usedHeap();
+        long begin = SystemClock.elapsedRealtimeNanos();
+        inflater.inflate(R.layout.activity_main, null);
+        long inflateUs = (SystemClock.elapsedRealtimeNanos() - begin) / 1000;
+        long retained = usedHeap() - heapBefore;
+        MdmLog.i(TAG, "Referencia activity_main: {} us, ~{} bytes retenidos.", inflateUs, retained);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private void bind(Reminder reminder) {
+        long begin = SystemClock.elapsedRealtimeNanos();
+        titleTextView.setText(reminder.title);
+        StringBuilder details = new StringBuilder(256);
+        if (!TextUtils.isEmpty(reminder.message)) {
+            details.append(reminder.message).append("\n\n");
+        }
+        details.append("Próxima Fecha de Pago: ").append(reminder.nextPaymentDate)
+                .append("\nMonto Adeudado: ").append(reminder.amountDue)
+                .append("\nMonto Pagado: ").append(reminder.amountPaid);
+        if (!TextUtils.isEmpty(reminder.paymentInstructions)) {
+            details.append("\n\n").append(reminder.paymentInstructions);
+        }
+        if (!TextUtils.isEmpty(reminder.contactPhone)) {
+            details.append("\n\nTeléfono: ").append(reminder.contactPhone);
+        }
+        detailsTextView.setText(details);
+        MdmLog.d(TAG, "Recordatorio actualizado en la vista en {} us.",
+                (SystemClock.elapsedRealtimeNanos() - begin) / 1000);
+    }
 
-        // Define los parámetros de la ventana
+    private WindowManager.LayoutParams buildLayoutParams() {
         int overlayType;
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             overlayType = WindowManager.LayoutParams.TYPE_APPLICATION_OVERLAY;
         } else {
             overlayType = WindowManager.LayoutParams.TYPE_PHONE;
         }
-
-        final WindowManager.LayoutParams params = new WindowManager.LayoutParams(
+        WindowManager.LayoutParams params = new WindowManager.LayoutParams(
                 WindowManager.LayoutParams.MATCH_PARENT,
                 WindowManager.LayoutParams.MATCH_PARENT,
                 overlayType,
                 WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE,
                 PixelFormat.TRANSLUCENT);
-
         params.gravity = Gravity.CENTER;
+        return params;
+    }
 
-        try {
-            windowManager.addView(overlayView, params);
-            Log.d(TAG, "Vista de superposición de recordatorio añadida correctamente.");
-        } catch (Exception e) {
-            Log.e(TAG, "Error al añadir la vista de superposición: " + e.getMessage());
+    /** Retira el recordatorio actual; la vista se conserva para el siguiente. */
+    private void dismiss() {
+        showing = null;
+        if (attached) {
+            windowManager.removeView(overlayView);
+            attached = false;
+        }
+        saveQueue();
+        showNextIfAllowed();
+    }
+
+    private void stopIfIdle() {
+        if (showing == null && pending.isEmpty() && loading == 0) {
             stopSelf();
         }
+    }
 
-        return START_NOT_STICKY;
+    /** Programa la reanudación por si el proceso muere mientras se espera por los límites. */
+    private void scheduleAlarm(long wait) {
+        if (alarmManager != null) {
+            alarmManager.set(AlarmManager.ELAPSED_REALTIME, SystemClock.elapsedRealtime() + wait, showPendingIntent());
+        }
+    }
+
+    private void cancelAlarm() {
+        if (alarmManager != null) {
+            alarmManager.cancel(showPendingIntent());
+        }
+    }
+
+    private PendingIntent showPendingIntent() {
+        Intent intent = new Intent(this, ReminderAlarmReceiver.class).setAction(ACTION_SHOW_PENDING);
+        return PendingIntent.getBroadcast(this, 0, intent,
+                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    /**
+     * Guarda en segundo plano el recordatorio en pantalla, la cola y la hora de pared de los últimos
+     * mostrados (para que los límites sigan valiendo tras reiniciar el proceso).
+     */
+    private void saveQueue() {
+        List<Reminder> ordered = new ArrayList<>(pending);
+        Collections.sort(ordered, ORDER);
+        if (showing != null) {
+            ordered.add(0, showing);
+        }
+        long nowWall = System.currentTimeMillis();
+        long nowElapsed = SystemClock.elapsedRealtime();
+        JSONObject state = new JSONObject();
+        try {
+            JSONArray reminders = new JSONArray();
+            for (Reminder reminder : ordered) {
+                reminders.put(reminder.toJson());
+            }
+            JSONArray shown = new JSONArray();
+            for (long at : shownAt) {
+                shown.put(nowWall - (nowElapsed - at));
+            }
+            state.put("reminders", reminders);
+            state.put("shown_at", shown);
+        } catch (JSONException e) {
+            MdmLog.e(TAG, "No se pudo preparar la cola de recordatorios: {}", e.getMessage());
+            return;
+        }
+        byte[] data = state.toString().getBytes(StandardCharsets.UTF_8);
+        AtomicFile file = queueFile;
+        AppExecutors.background().execute(() -> {
+            FileOutputStream out = null;
+            try {
+                out = file.startWrite();
+                out.write(data);
+                file.finishWrite(out);
+            } catch (IOException e) {
+                MdmLog.e(TAG, "No se pudo guardar la cola de recordatorios: {}", e.getMessage());
+                if (out != null) {
+                    file.failWrite(out);
+                }
+            }
+        });
+    }
+
+    private static JSONObject readQueue(AtomicFile file) {
+        try {
+            return new JSONObject(new String(file.readFully(), StandardCharsets.UTF_8));
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException | JSONException e) {
+            MdmLog.e(TAG, "Cola de recordatorios guardada inválida: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /** Recupera la cola guardada; se llama antes de atender ningún recordatorio nuevo. */
+    private void restore(JSONObject saved) {
+        if (saved == null) {
+            return;
+        }
+        long nowWall = System.currentTimeMillis();
+        long nowElapsed = SystemClock.elapsedRealtime();
+        JSONArray shown = saved.optJSONArray("shown_at");
+        for (int i = 0; shown != null && i < shown.length(); i++) {
+            long age = nowWall - shown.optLong(i);
+            if (age >= 0 && age < HOUR_MS) {
+                shownAt.addLast(nowElapsed - age);
+            }
+        }
+        JSONArray reminders = saved.optJSONArray("reminders");
+        for (int i = 0; reminders != null && i < reminders.length(); i++) {
+            JSONObject json = reminders.optJSONObject(i);
+            if (json != null) {
+                Reminder reminder = Reminder.fromJson(json);
+                reminder.sequence = sequence++;
+                pending.add(reminder);
+            }
+        }
+        if (!pending.isEmpty()) {
+            MdmLog.d(TAG, "Recuperados {} recordatorios pendientes.", pending.size());
+        }
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
-        Log.d(TAG, "Servicio de recordatorio destruido.");
-        if (overlayView != null) {
+        MdmLog.d(TAG, "Servicio de recordatorio destruido.");
+        destroyed = true;
+        handler.removeCallbacks(showNext);
+        if (attached) {
             windowManager.removeView(overlayView);
-            overlayView = null;
+            attached = false;
+        }
+        overlayView = null;
+    }
+
+    /** Datos de un recordatorio. Los campos que no trae el intent se toman del estado guardado. */
+    private static final class Reminder {
+        final int priority;
+        long sequence;
+        // Ya se contó para el límite por hora (estuvo en pantalla y fue sustituido).
+        boolean counted;
+        final String title;
+        final String message;
+        final String nextPaymentDate;
+        final String amountDue;
+        final String amountPaid;
+        final String paymentInstructions;
+        final String contactPhone;
+
+        private Reminder(Intent intent, DeviceStateSnapshot state) {
+            priority = intent.getIntExtra(EXTRA_PRIORITY, PRIORITY_NORMAL);
+            String extraTitle = intent.getStringExtra("REMINDER_TITLE");
+            title = TextUtils.isEmpty(extraTitle) ? "¡Recordatorio de Pago!" : extraTitle;
+            message = intent.getStringExtra("REMINDER_MESSAGE");
+            nextPaymentDate = extraOr(intent, "NEXT_PAYMENT_DATE", state.nextPaymentDate);
+            amountDue = extraOr(intent, "AMOUNT_DUE", state.amountDue);
+            amountPaid = extraOr(intent, "AMOUNT_PAID", state.amountPaid);
+            paymentInstructions = extraOr(intent, "PAYMENT_INSTRUCTIONS", state.paymentInstructions);
+            contactPhone = extraOr(intent, "CONTACT_PHONE", state.contactPhone);
+        }
+
+        private Reminder(JSONObject json) {
+            priority = json.optInt("priority", PRIORITY_NORMAL);
+            counted = json.optBoolean("counted", false);
+            title = json.optString("title", "¡Recordatorio de Pago!");
+            message = json.optString("message", null);
+            nextPaymentDate = json.optString("next_payment_date", "");
+            amountDue = json.optString("amount_due", "");
+            amountPaid = json.optString("amount_paid", "");
+            paymentInstructions = json.optString("payment_instructions", null);
+            contactPhone = json.optString("contact_phone", null);
+        }
+
+        /** Lee el estado guardado: no llamar desde el hilo principal. */
+        static Reminder from(Context context, Intent intent) {
+            return new Reminder(intent, DeviceStateSnapshot.load(context));
+        }
+
+        static Reminder fromJson(JSONObject json) {
+            return new Reminder(json);
+        }
+
+        JSONObject toJson() throws JSONException {
+            return new JSONObject()
+                    .put("priority", priority)
+                    .put("counted", counted)
+                    .put("title", title)
+                    .put("message", message)
+                    .put("next_payment_date", nextPaymentDate)
+                    .put("amount_due", amountDue)
+                    .put("amount_paid", amountPaid)
+                    .put("payment_instructions", paymentInstructions)
+                    .put("contact_phone", contactPhone);
+        }
+
+        private static String extraOr(Intent intent, String key, String fallback) {
+            String value = intent.getStringExtra(key);
+            return TextUtils.isEmpty(value) ? fallback : value;
+        }
+
+        boolean sameContentAs(Reminder other) {
+            return TextUtils.equals(title, other.title)
+                    && TextUtils.equals(message, other.message)
+                    && TextUtils.equals(nextPaymentDate, other.nextPaymentDate)
+                    && TextUtils.equals(amountDue, other.amountDue);
         }
     }
-}
\ No newline at end of file
+}
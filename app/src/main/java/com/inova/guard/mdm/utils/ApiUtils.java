@@ -1,79 +1,191 @@
 package com.inova.guard.mdm.utils;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import okhttp3.Call;
 import okhttp3.Callback;
+import okhttp3.HttpUrl;
 import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 
 public class ApiUtils {
     private static final String TAG = "ApiUtils";
-    private static final OkHttpClient client = new OkHttpClient();
     private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+    private static final MediaType OCTET_STREAM = MediaType.parse("application/octet-stream");
 
     public interface ApiCallback {
         void onSuccess(String response);
         void onFailure(String errorMessage);
     }
 
-    private static String getBaseUrl() {
-        return Constants.BASE_URL;
+    private static String getBaseUrl(Context context) {
+        return EndpointRegistry.get(context).baseUrl();
     }
 
-    public static void enrollDevice(Context context, JSONObject deviceData, ApiCallback callback) {
-        String url = getBaseUrl() + "/api/enroll/";
-        RequestBody body = RequestBody.create(JSON, deviceData.toString());
-        Request request = new Request.Builder().url(url).post(body).build();
-        client.newCall(request).enqueue(new Callback() {
+    /**
+     * Error de una llamada: HTTP ({@code code} > 0) o de red ({@code code} == 0). Es la causa con la
+     * que fallan los futuros de esta clase.
+     */
+    public static class ApiException extends IOException {
+        public final int code;
+
+        public ApiException(String message, int code) {
+            super(message);
+            this.code = code;
+        }
+    }
+
+    private static final ScheduledExecutorService timeouts = Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+                Thread thread = new Thread(runnable, "inova-api-timeouts");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * Encola la petición y devuelve un futuro con el cuerpo de la respuesta. El futuro se completa
+     * en un hilo de OkHttp; para tocar la interfaz usar {@link CallScope#deliver}. Cancelarlo (o
+     * que falle por timeout) cancela también la llamada HTTP.
+     */
+    private static CompletableFuture<String> execute(int priority, Request request, String httpError, String networkError) {
+        return execute(priority, null, request, httpError, networkError);
+    }
+
+    private static CompletableFuture<String> execute(int priority, String key, Request request, String httpError, String networkError) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        String url = request.url().toString();
+        long start = SystemClock.elapsedRealtime();
+        Call call = RequestDispatcher.enqueue(priority, key, request, new Callback() {
             @Override
-            public void onResponse(@NonNull Call call, @NonNull Response response) throws IOException {
-                if (response.isSuccessful() && response.body() != null) {
-                    callback.onSuccess(response.body().string());
-                } else {
-                    callback.onFailure("Error en el enrolamiento: " + response.code());
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                EndpointRegistry.reportResponse(url, response.code(), SystemClock.elapsedRealtime() - start);
+                try (Response closing = response) {
+                    if (closing.isSuccessful() && closing.body() != null) {
+                        future.complete(closing.body().string());
+                    } else {
+                        future.completeExceptionally(new ApiException(httpError + closing.code(), closing.code()));
+                    }
+                } catch (IOException e) {
+                    future.completeExceptionally(new ApiException(networkError + e.getMessage(), 0));
                 }
             }
 
             @Override
             public void onFailure(@NonNull Call call, @NonNull IOException e) {
-                callback.onFailure("Fallo de red: " + e.getMessage());
+                if (!call.isCanceled()) {
+                    EndpointRegistry.report(url, false, 0);
+                }
+                future.completeExceptionally(new ApiException(networkError + e.getMessage(), 0));
+            }
+        });
+        future.whenComplete((body, error) -> {
+            if (error != null) {
+                call.cancel();
             }
         });
+        return future;
     }
 
-    public static void checkDeviceStatus(Context context, String serialNumber, boolean isOnline, ApiCallback callback) {
-        String url = getBaseUrl() + "/api/status/" + serialNumber + "/";
-        Request request = new Request.Builder().url(url).get().build();
-        client.newCall(request).enqueue(new Callback() {
-            @Override
-            public void onResponse(@NonNull Call call, @NonNull Response response) throws IOException {
-                if (response.isSuccessful() && response.body() != null) {
-                    callback.onSuccess(response.body().string());
-                } else {
-                    callback.onFailure("Error al chequear el estado: " + response.code());
-                }
-            }
+    /** Hace fallar el futuro con {@link ApiException} si no termina en el plazo indicado. */
+    public static <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future, long timeoutMillis) {
+        ScheduledFuture<?> timer = timeouts.schedule(
+                () -> future.completeExceptionally(new ApiException("Tiempo de espera agotado (" + timeoutMillis + " ms)", 0)),
+                timeoutMillis, TimeUnit.MILLISECONDS);
+        future.whenComplete((result, error) -> timer.cancel(false));
+        return future;
+    }
 
-            @Override
-            public void onFailure(@NonNull Call call, @NonNull IOException e) {
-                callback.onFailure("Fallo de red: " + e.getMessage());
+    /** Mensaje del error con el que terminó un futuro, sin el envoltorio de CompletionException. */
+    public static String messageOf(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause.getMessage();
+    }
+
+    // Puente para los callbacks: se invocan en el hilo de OkHttp, como antes; las cancelaciones no se notifican
+    private static void deliver(CompletableFuture<String> future, ApiCallback callback) {
+        future.whenComplete((body, error) -> {
+            if (error == null) {
+                callback.onSuccess(body);
+            } else if (!future.isCancelled()) {
+                callback.onFailure(messageOf(error));
             }
         });
     }
 
+    public static void enrollDevice(Context context, JSONObject deviceData, ApiCallback callback) {
+        deliver(enrollDevice(context, deviceData), callback);
+    }
+
+    public static CompletableFuture<String> enrollDevice(Context context, JSONObject deviceData) {
+        String url = getBaseUrl(context) + "/api/enroll/";
+        RequestBody body = RequestBody.create(JSON, deviceData.toString());
+        Request request = new Request.Builder().url(url).post(body).build();
+        return execute(RequestDispatcher.INTERACTIVE, request, "Error en el enrolamiento: ", "Fallo de red: ");
+    }
+
+    // heartbeat: parámetros que el dispositivo informa en cada sondeo (p. ej. hash de políticas vigente)
+    public static void checkDeviceStatus(Context context, String serialNumber, boolean isOnline, Map<String, String> heartbeat, ApiCallback callback) {
+        deliver(checkDeviceStatus(context, serialNumber, isOnline, heartbeat), callback);
+    }
+
+    public static CompletableFuture<String> checkDeviceStatus(Context context, String serialNumber, boolean isOnline, Map<String, String> heartbeat) {
+        HttpUrl.Builder url = HttpUrl.get(getBaseUrl(context) + "/api/status/" + serialNumber + "/").newBuilder();
+        for (Map.Entry<String, String> entry : heartbeat.entrySet()) {
+            url.addQueryParameter(entry.getKey(), entry.getValue());
+        }
+        Request request = new Request.Builder().url(url.build()).get().build();
+        return execute(RequestDispatcher.BACKGROUND, "status", request, "Error al chequear el estado: ", "Fallo de red: ");
+    }
+
+    public static void fetchPolicyBundle(Context context, String serialNumber, ApiCallback callback) {
+        deliver(fetchPolicyBundle(context, serialNumber), callback);
+    }
+
+    public static CompletableFuture<String> fetchPolicyBundle(Context context, String serialNumber) {
+        String url = getBaseUrl(context) + "/api/policy_bundle/" + serialNumber + "/";
+        Request request = new Request.Builder().url(url).get().build();
+        return execute(RequestDispatcher.BACKGROUND, request, "Error al obtener el paquete de políticas: ", "Fallo de red: ");
+    }
+
+    public static void fetchMessageCatalog(Context context, String serialNumber, String language, ApiCallback callback) {
+        deliver(fetchMessageCatalog(context, serialNumber, language), callback);
+    }
+
+    public static CompletableFuture<String> fetchMessageCatalog(Context context, String serialNumber, String language) {
+        HttpUrl url = HttpUrl.get(getBaseUrl(context) + "/api/message_catalog/" + serialNumber + "/").newBuilder()
+                .addQueryParameter("lang", language)
+                .build();
+        Request request = new Request.Builder().url(url).get().build();
+        return execute(RequestDispatcher.BACKGROUND, "message_catalog", request, "Error al obtener el catálogo de mensajes: ", "Fallo de red: ");
+    }
+
     public static void lockDevice(Context context, String serialNumber, ApiCallback callback) {
-        String url = getBaseUrl() + "/api/lock_device_initiated_by_app/";
+        deliver(lockDevice(context, serialNumber), callback);
+    }
+
+    public static CompletableFuture<String> lockDevice(Context context, String serialNumber) {
+        String url = getBaseUrl(context) + "/api/lock_device_initiated_by_app/";
         JSONObject payload = new JSONObject();
         try {
             payload.put("serial_number", serialNumber);
@@ -82,25 +194,15 @@ public class ApiUtils {
         }
         RequestBody body = RequestBody.create(JSON, payload.toString());
         Request request = new Request.Builder().url(url).post(body).build();
-        client.newCall(request).enqueue(new Callback() {
-            @Override
-            public void onResponse(@NonNull Call call, @NonNull Response response) throws IOException {
-                if (response.isSuccessful() && response.body() != null) {
-                    callback.onSuccess(response.body().string());
-                } else {
-                    callback.onFailure("Error al bloquear dispositivo: " + response.code());
-                }
-            }
-
-            @Override
-            public void onFailure(@NonNull Call call, @NonNull IOException e) {
-                callback.onFailure("Fallo de red: " + e.getMessage());
-            }
-        });
+        return execute(RequestDispatcher.CRITICAL, request, "Error al bloquear dispositivo: ", "Fallo de red: ");
     }
 
     public static void verifyUnlockCode(Context context, String serialNumber, String code, ApiCallback callback) {
-        String url = getBaseUrl() + "/api/verify_unlock_code/" + serialNumber + "/";
+        deliver(verifyUnlockCode(context, serialNumber, code), callback);
+    }
+
+    public static CompletableFuture<String> verifyUnlockCode(Context context, String serialNumber, String code) {
+        String url = getBaseUrl(context) + "/api/verify_unlock_code/" + serialNumber + "/";
         JSONObject payload = new JSONObject();
         try {
             payload.put("unlock_key", code);
@@ -109,46 +211,26 @@ public class ApiUtils {
         }
         RequestBody body = RequestBody.create(JSON, payload.toString());
         Request request = new Request.Builder().url(url).post(body).build();
-        client.newCall(request).enqueue(new Callback() {
-            @Override
-            public void onResponse(@NonNull Call call, @NonNull Response response) throws IOException {
-                if (response.isSuccessful() && response.body() != null) {
-                    callback.onSuccess(response.body().string());
-                } else {
-                    callback.onFailure("Error al verificar código: " + response.code());
-                }
-            }
-
-            @Override
-            public void onFailure(@NonNull Call call, @NonNull IOException e) {
-                callback.onFailure("Fallo de red: " + e.getMessage());
-            }
-        });
+        return execute(RequestDispatcher.CRITICAL, request, "Error al verificar código: ", "Fallo de red: ");
     }
 
     public static void notifyAdminDisabled(Context context, String serialNumber, ApiCallback callback) {
-        String url = getBaseUrl() + "/api/notify-admin-disabled/" + serialNumber + "/";
-        Request request = new Request.Builder().url(url).get().build();
-        client.newCall(request).enqueue(new Callback() {
-            @Override
-            public void onResponse(@NonNull Call call, @NonNull Response response) throws IOException {
-                if (response.isSuccessful() && response.body() != null) {
-                    callback.onSuccess(response.body().string());
-                } else {
-                    callback.onFailure("Error al notificar: " + response.code());
-                }
-            }
+        deliver(notifyAdminDisabled(context, serialNumber), callback);
+    }
 
-            @Override
-            public void onFailure(@NonNull Call call, @NonNull IOException e) {
-                callback.onFailure("Fallo de red al notificar: " + e.getMessage());
-            }
-        });
+    public static CompletableFuture<String> notifyAdminDisabled(Context context, String serialNumber) {
+        String url = getBaseUrl(context) + "/api/notify-admin-disabled/" + serialNumber + "/";
+        Request request = new Request.Builder().url(url).get().build();
+        return execute(RequestDispatcher.CRITICAL, request, "Error al notificar: ", "Fallo de red al notificar: ");
     }
 
     // Nuevo método para enviar la ubicación
-    public static void sendLocation(Context context, String serialNumber, double latitude, double longitude, final ApiCallback callback) {
-        String url = getBaseUrl() + "/api/location_update/";
+    public static void sendLocation(Context context, String serialNumber, double latitude, double longitude, ApiCallback callback) {
+        deliver(sendLocation(context, serialNumber, latitude, longitude), callback);
+    }
+
+    public static CompletableFuture<String> sendLocation(Context context, String serialNumber, double latitude, double longitude) {
+        String url = getBaseUrl(context) + "/api/location_update/";
         JSONObject payload = new JSONObject();
         try {
             payload.put("serial_number", serialNumber);
@@ -160,20 +242,125 @@ public class ApiUtils {
 
         RequestBody body = RequestBody.create(JSON, payload.toString());
         Request request = new Request.Builder().url(url).post(body).build();
-        client.newCall(request).enqueue(new Callback() {
+        return execute(RequestDispatcher.BACKGROUND, "location", request, "Error al enviar la ubicación: ", "Fallo de red al enviar ubicación: ");
+    }
+
+    // Sube bloques del registro de auditoría; "from" es la posición del primer byte enviado
+    public static void uploadAuditLog(Context context, String serialNumber, long from, byte[] blocks, ApiCallback callback) {
+        deliver(uploadAuditLog(context, serialNumber, from, blocks), callback);
+    }
+
+    public static CompletableFuture<String> uploadAuditLog(Context context, String serialNumber, long from, byte[] blocks) {
+        HttpUrl url = HttpUrl.get(getBaseUrl(context) + "/api/audit_log/" + serialNumber + "/").newBuilder()
+                .addQueryParameter("from", Long.toString(from))
+                .build();
+        RequestBody body = RequestBody.create(OCTET_STREAM, blocks);
+        Request request = new Request.Builder().url(url).post(body).build();
+        return execute(RequestDispatcher.BULK, request, "Error al subir el registro de auditoría: ", "Fallo de red al subir el registro de auditoría: ");
+    }
+
+    // Abre de antemano la conexión (DNS, TCP y TLS) para que la primera llamada real la reutilice
+    public static void warmUp(Context context) {
+        Context appContext = context.getApplicationContext();
+        // El servidor activo se lee de las preferencias: fuera del hilo principal.
+        AppExecutors.background().execute(() -> {
+            Request request = new Request.Builder().url(getBaseUrl(appContext) + "/").head().build();
+            RequestDispatcher.enqueue(RequestDispatcher.INTERACTIVE, request, new Callback() {
+                @Override
+                public void onResponse(@NonNull Call call, @NonNull Response response) {
+                    response.close();
+                }
+
+                @Override
+                public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                    // Sin conexión: la primera llamada real abrirá la conexión.
+                }
+            });
+        });
+    }
+
+    // Sube un fragmento del paquete de diagnóstico comprimido; "offset" es la posición del primer byte
+    public static void uploadDiagnosticChunk(Context context, String serialNumber, String requestId, long offset, long total, byte[] chunk, ApiCallback callback) {
+        deliver(uploadDiagnosticChunk(context, serialNumber, requestId, offset, total, chunk), callback);
+    }
+
+    public static CompletableFuture<String> uploadDiagnosticChunk(Context context, String serialNumber, String requestId, long offset, long total, byte[] chunk) {
+        HttpUrl url = HttpUrl.get(getBaseUrl(context) + "/api/diagnostics/" + serialNumber + "/").newBuilder()
+                .addQueryParameter("request_id", requestId)
+                .addQueryParameter("offset", Long.toString(offset))
+                .addQueryParameter("total", Long.toString(total))
+                .build();
+        RequestBody body = RequestBody.create(OCTET_STREAM, chunk);
+        Request request = new Request.Builder().url(url).post(body).build();
+        return execute(RequestDispatcher.BULK, request, "Error al subir el diagnóstico: ", "Fallo de red al subir el diagnóstico: ");
+    }
+
+    // POST JSON genérico, usado por la bandeja de salida (OfflineOutbox) para reportes diferidos
+    public static void postJson(Context context, String path, JSONObject payload, ApiCallback callback) {
+        deliver(postJson(context, path, payload), callback);
+    }
+
+    public static CompletableFuture<String> postJson(Context context, String path, JSONObject payload) {
+        String url = getBaseUrl(context) + path;
+        RequestBody body = RequestBody.create(JSON, payload.toString());
+        Request request = new Request.Builder().url(url).post(body).build();
+        return execute(RequestDispatcher.BACKGROUND, request, "Error al enviar el reporte: ", "Fallo de red al enviar el reporte: ");
+    }
+
+    /**
+     * Descarga {@code url} en {@code destination}. Falla sin dejar el archivo si la respuesta supera
+     * {@code maxBytes}, tanto si lo anuncia en Content-Length como si no.
+     */
+    public static void downloadToFile(String url, File destination, long maxBytes, final ApiCallback callback) {
+        HttpUrl httpUrl = HttpUrl.parse(url);
+        if (httpUrl == null) {
+            callback.onFailure("URL inválida: " + url);
+            return;
+        }
+        Request request = new Request.Builder().url(httpUrl).get().build();
+        RequestDispatcher.enqueue(RequestDispatcher.BULK, request, new Callback() {
             @Override
-            public void onResponse(@NonNull Call call, @NonNull Response response) throws IOException {
-                if (response.isSuccessful() && response.body() != null) {
-                    callback.onSuccess(response.body().string());
-                } else {
-                    callback.onFailure("Error al enviar la ubicación: " + response.code());
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                try {
+                    if (!response.isSuccessful() || response.body() == null) {
+                        callback.onFailure("Error al descargar " + url + ": " + response.code());
+                        return;
+                    }
+                    if (response.body().contentLength() > maxBytes) {
+                        callback.onFailure("Descarga de " + url + " demasiado grande: "
+                                + response.body().contentLength() + " bytes");
+                        return;
+                    }
+                    long total = 0;
+                    try (InputStream in = response.body().byteStream();
+                         OutputStream out = new FileOutputStream(destination)) {
+                        byte[] buffer = new byte[8192];
+                        int read;
+                        while ((read = in.read(buffer)) != -1) {
+                            total += read;
+                            if (total > maxBytes) {
+                                throw new IOException("más de " + maxBytes + " bytes");
+                            }
+                            out.write(buffer, 0, read);
+                        }
+                    }
+                    callback.onSuccess(destination.getPath());
+                } catch (IOException e) {
+                    destination.delete();
+                    callback.onFailure("Fallo al guardar la descarga: " + e.getMessage());
+                } finally {
+                    response.close();
                 }
             }
 
             @Override
             public void onFailure(@NonNull Call call, @NonNull IOException e) {
-                callback.onFailure("Fallo de red al enviar ubicación: " + e.getMessage());
+                callback.onFailure("Fallo de red al descargar " + url + ": " + e.getMessage());
             }
         });
     }
+
+    public static String offlineUnlockConfirmationPath(String serialNumber) {
+        return "/api/confirm_offline_unlock/" + serialNumber + "/";
+    }
 }
\ No newline at end of file
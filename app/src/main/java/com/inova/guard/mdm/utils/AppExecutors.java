@@ -0,0 +1,38 @@
+package com.inova.guard.mdm.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Ejecutores compartidos por la app. El de segundo plano es de un solo hilo para que las tareas
+ * que tocan el mismo estado (políticas, preferencias) se ejecuten en orden y sin solaparse.
+ */
+public final class AppExecutors {
+
+    private static final ExecutorService BACKGROUND = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "inova-background"));
+
+    private static final Executor MAIN_THREAD = new Executor() {
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(Runnable command) {
+            handler.post(command);
+        }
+    };
+
+    private AppExecutors() {
+    }
+
+    public static ExecutorService background() {
+        return BACKGROUND;
+    }
+
+    public static Executor mainThread() {
+        return MAIN_THREAD;
+    }
+}
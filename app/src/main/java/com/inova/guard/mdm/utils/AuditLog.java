@@ -0,0 +1,603 @@
+package com.inova.guard.mdm.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Registro de auditoría binario y de solo escritura al final para bloqueos, desbloqueos e intentos
+ * de manipulación.
+ *
+ * <p>Cada registro lleva su propio CRC32. Los registros se agrupan en bloques comprimidos con
+ * Deflate (también con CRC) que se escriben en segmentos de tamaño fijo; al superar el número
+ * máximo de segmentos se borra el más antiguo. {@link #append} solo codifica el registro en memoria:
+ * la compresión, la escritura y el fsync ocurren en un hilo propio, nunca en el hilo que registra.
+ *
+ * <p>Las posiciones son {@code (segmento << 32) | desplazamiento}, de modo que la subida al servidor
+ * puede reanudarse desde la última posición confirmada.
+ *
+ * <p>Un apagado a mitad de escritura deja un bloque incompleto al final del segmento activo: al abrir
+ * el registro y tras cada escritura fallida el segmento se recorta hasta el último bloque válido (o,
+ * si no se puede, se empieza uno nuevo), para que los bloques siguientes no queden detrás de uno roto.
+ * La lectura comprueba el CRC de cada bloque y se detiene en el primero dañado.
+ */
+public class AuditLog {
+
+    private static final String TAG = "AuditLog";
+
+    public static final int EVENT_LOCK = 1;
+    public static final int EVENT_UNLOCK = 2;
+    public static final int EVENT_UNLOCK_REJECTED = 3;
+    public static final int EVENT_ADMIN_MODE = 4;
+    public static final int EVENT_ADMIN_ENABLED = 5;
+    public static final int EVENT_DISABLE_REQUESTED = 6;
+    public static final int EVENT_ADMIN_DISABLED = 7;
+    public static final int EVENT_LOCK_TASK_ENTERED = 8;
+    public static final int EVENT_LOCK_TASK_EXITED = 9;
+
+    static final int SEGMENT_SIZE = 64 * 1024;
+    static final int MAX_SEGMENTS = 8;
+    private static final int BLOCK_MAGIC = 0x41424c4b; // "ABLK"
+    private static final int BLOCK_HEADER_SIZE = 16;
+    private static final int MAX_BLOCK_RECORD_BYTES = 8 * 1024;
+    private static final int MAX_DETAIL_BYTES = 1024;
+    private static final long FLUSH_DELAY_MS = 1000;
+    private static final String SEGMENT_PREFIX = "seg-";
+    private static final int UPLOAD_CHUNK_BYTES = 32 * 1024;
+
+    /** Registro decodificado. */
+    public static final class Record {
+        public final int type;
+        public final long timestamp;
+        public final String detail;
+
+        Record(int type, long timestamp, String detail) {
+            this.type = type;
+            this.timestamp = timestamp;
+            this.detail = detail;
+        }
+    }
+
+    /** Bloques completos leídos a partir de una posición. */
+    public static final class Chunk {
+        public final long start;
+        public final long end;
+        public final byte[] data;
+
+        Chunk(long start, long end, byte[] data) {
+            this.start = start;
+            this.end = end;
+            this.data = data;
+        }
+    }
+
+    private static volatile AuditLog instance;
+
+    private final File directory;
+    private final ScheduledExecutorService writer;
+    private final Object bufferLock = new Object();
+    private final Object fileLock = new Object();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final AtomicBoolean uploading = new AtomicBoolean(false);
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream(MAX_BLOCK_RECORD_BYTES);
+    // Protegido por fileLock: el próximo bloque debe empezar un segmento nuevo.
+    private boolean rotatePending;
+
+    private final AtomicLong appendCount = new AtomicLong();
+    private final AtomicLong appendNanos = new AtomicLong();
+    private final AtomicLong maxAppendNanos = new AtomicLong();
+
+    public AuditLog(File directory) {
+        this.directory = directory;
+        this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "audit-log-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // El primer uso suele ser desde el hilo principal: el directorio se crea en el del registro.
+        writer.execute(() -> {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                Log.e(TAG, "No se pudo crear el directorio de auditoría: " + directory);
+            }
+            repairActiveSegment();
+        });
+    }
+
+    public static AuditLog get(Context context) {
+        if (instance == null) {
+            synchronized (AuditLog.class) {
+                if (instance == null) {
+                    instance = new AuditLog(new File(context.getApplicationContext().getFilesDir(), "audit"));
+                }
+            }
+        }
+        return instance;
+    }
+
+    /** Atajo para registrar un evento desde cualquier componente. */
+    public static void record(Context context, int type, String detail) {
+        get(context).append(type, detail);
+    }
+
+    /** Añade un registro. Solo codifica en memoria; apto para el camino de bloqueo. */
+    public void append(int type, String detail) {
+        long start = System.nanoTime();
+        byte[] payload = detail != null ? detail.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        if (payload.length > MAX_DETAIL_BYTES) {
+            payload = Arrays.copyOf(payload, MAX_DETAIL_BYTES);
+        }
+        int length = 1 + 8 + payload.length;
+        byte[] record = new byte[2 + length + 4];
+        record[0] = (byte) (length >>> 8);
+        record[1] = (byte) length;
+        record[2] = (byte) type;
+        long timestamp = System.currentTimeMillis();
+        for (int i = 0; i < 8; i++) {
+            record[3 + i] = (byte) (timestamp >>> (56 - 8 * i));
+        }
+        System.arraycopy(payload, 0, record, 11, payload.length);
+        CRC32 crc = new CRC32();
+        crc.update(record, 2, length);
+        writeInt(record, 2 + length, (int) crc.getValue());
+
+        boolean full;
+        synchronized (bufferLock) {
+            pending.write(record, 0, record.length);
+            full = pending.size() >= MAX_BLOCK_RECORD_BYTES;
+        }
+        if (full) {
+            writer.execute(this::writePendingBlock);
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            writer.schedule(this::writePendingBlock, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        appendCount.incrementAndGet();
+        appendNanos.addAndGet(elapsed);
+        long max;
+        while (elapsed > (max = maxAppendNanos.get()) && !maxAppendNanos.compareAndSet(max, elapsed)) {
+            // reintento
+        }
+    }
+
+    /** Escribe en disco lo pendiente y espera a que termine. No llamar desde el hilo principal. */
+    public void flush() {
+        try {
+            writer.submit(this::writePendingBlock).get();
+        } catch (Exception e) {
+            Log.e(TAG, "Error al vaciar el registro de auditoría: " + e.getMessage());
+        }
+    }
+
+    /** Latencia media y máxima de {@link #append}, en microsegundos. */
+    public String getAppendStats() {
+        long count = appendCount.get();
+        long meanMicros = count > 0 ? appendNanos.get() / count / 1000 : 0;
+        return "appends=" + count + " media_us=" + meanMicros + " max_us=" + maxAppendNanos.get() / 1000;
+    }
+
+    long getMeanAppendNanos() {
+        long count = appendCount.get();
+        return count > 0 ? appendNanos.get() / count : 0;
+    }
+
+    private void writePendingBlock() {
+        flushScheduled.set(false);
+        byte[] records;
+        synchronized (bufferLock) {
+            if (pending.size() == 0) {
+                return;
+            }
+            records = pending.toByteArray();
+            pending = new ByteArrayOutputStream(MAX_BLOCK_RECORD_BYTES);
+        }
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(records);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(records.length / 2 + 64);
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(buffer);
+            compressed.write(buffer, 0, n);
+        }
+        deflater.end();
+        byte[] body = compressed.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+
+        byte[] block = new byte[BLOCK_HEADER_SIZE + body.length];
+        writeInt(block, 0, BLOCK_MAGIC);
+        writeInt(block, 4, body.length);
+        writeInt(block, 8, records.length);
+        writeInt(block, 12, (int) crc.getValue());
+        System.arraycopy(body, 0, block, BLOCK_HEADER_SIZE, body.length);
+
+        synchronized (fileLock) {
+            int[] segments = listSegments();
+            int index = segments.length > 0 ? segments[segments.length - 1] : 0;
+            File segment = segmentFile(index);
+            if (rotatePending || (segment.length() > 0 && segment.length() + block.length > SEGMENT_SIZE)) {
+                index++;
+                segment = segmentFile(index);
+                rotatePending = false;
+            }
+            long validLength = segment.length();
+            try (FileOutputStream out = new FileOutputStream(segment, true)) {
+                out.write(block);
+                out.getFD().sync();
+            } catch (IOException e) {
+                Log.e(TAG, "No se pudo escribir el bloque de auditoría: " + e.getMessage());
+                // Una escritura a medias dejaría un bloque roto delante de los siguientes.
+                if (!truncate(segment, validLength)) {
+                    rotatePending = true;
+                }
+                return;
+            }
+            segments = listSegments();
+            for (int i = 0; i < segments.length - MAX_SEGMENTS; i++) {
+                Log.w(TAG, "Límite de tamaño alcanzado. Eliminando segmento " + segments[i]);
+                segmentFile(segments[i]).delete();
+            }
+        }
+    }
+
+    /** Recorta el segmento activo hasta su último bloque válido. Se ejecuta en el hilo del registro. */
+    private void repairActiveSegment() {
+        synchronized (fileLock) {
+            int[] segments = listSegments();
+            if (segments.length == 0) {
+                return;
+            }
+            File segment = segmentFile(segments[segments.length - 1]);
+            long validLength = validLength(segment);
+            if (validLength == segment.length()) {
+                return;
+            }
+            Log.w(TAG, "Segmento " + segments[segments.length - 1] + " con un bloque incompleto; se recorta a "
+                    + validLength + " bytes.");
+            if (validLength < 0 || !truncate(segment, validLength)) {
+                rotatePending = true;
+            }
+        }
+    }
+
+    /**
+     * Lee bloques completos a partir de {@code from}. Si esa posición pertenece a un segmento ya
+     * rotado, continúa desde el segmento más antiguo disponible ({@link Chunk#start} lo indica).
+     * La lectura se detiene en el primer bloque dañado; lo que queda de ese segmento se da por
+     * perdido y la siguiente lectura continúa en el segmento posterior.
+     *
+     * @return {@code null} si no hay nada nuevo.
+     */
+    public Chunk readFrom(long from, int maxBytes) {
+        synchronized (fileLock) {
+            int[] segments = listSegments();
+            if (segments.length == 0) {
+                return null;
+            }
+            int index = (int) (from >>> 32);
+            long offset = from & 0xffffffffL;
+            if (index < segments[0]) {
+                index = segments[0];
+                offset = 0;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            long start = position(index, offset);
+            while (index <= segments[segments.length - 1]) {
+                File segment = segmentFile(index);
+                long length = segment.length();
+                if (offset >= length) {
+                    if (index == segments[segments.length - 1]) {
+                        break;
+                    }
+                    if (out.size() == 0) {
+                        start = position(index + 1, 0);
+                    }
+                    index++;
+                    offset = 0;
+                    continue;
+                }
+                try (RandomAccessFile file = new RandomAccessFile(segment, "r")) {
+                    while (offset < length) {
+                        byte[] block = readBlock(file, offset, length);
+                        if (block == null) {
+                            Log.e(TAG, "Bloque inválido en el segmento " + index + " @" + offset);
+                            if (out.size() > 0) {
+                                return new Chunk(start, position(index, offset), out.toByteArray());
+                            }
+                            if (index == segments[segments.length - 1]) {
+                                // Lo que se escriba después en este segmento sería ilegible.
+                                rotatePending = true;
+                            }
+                            offset = length;
+                            break;
+                        }
+                        if (out.size() > 0 && out.size() + block.length > maxBytes) {
+                            return new Chunk(start, position(index, offset), out.toByteArray());
+                        }
+                        out.write(block);
+                        offset += block.length;
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "Error leyendo el segmento " + index + ": " + e.getMessage());
+                    break;
+                }
+                if (out.size() >= maxBytes) {
+                    break;
+                }
+            }
+            if (out.size() == 0) {
+                return null;
+            }
+            return new Chunk(start, position(index, offset), out.toByteArray());
+        }
+    }
+
+    /**
+     * Sube al servidor lo que haya después de la última posición confirmada, por trozos, y guarda
+     * la posición que el servidor confirma. Se ejecuta en el hilo del registro.
+     *
+     * @param bulkAllowed si la red admite subidas grandes (validada y no medida). Si no, solo se
+     *                    sube cuando la cola pendiente supera {@link Constants#AUDIT_UPLOAD_MAX_BACKLOG_BYTES}
+     *                    o lleva más de {@link Constants#AUDIT_UPLOAD_MAX_DEFERRAL_MS} sin vaciarse, para
+     *                    que un dispositivo que solo tiene datos móviles no la retenga para siempre.
+     */
+    public void uploadPending(Context context, String serialNumber, boolean bulkAllowed) {
+        if (!uploading.compareAndSet(false, true)) {
+            return;
+        }
+        final Context appContext = context.getApplicationContext();
+        writer.execute(() -> {
+            writePendingBlock();
+            SharedPreferences prefs = appContext.getSharedPreferences(Constants.PREFS_NAME, Context.MODE_PRIVATE);
+            if (!bulkAllowed && !isUploadOverdue(prefs, System.currentTimeMillis())) {
+                uploading.set(false);
+                return;
+            }
+            uploadNext(appContext, serialNumber);
+        });
+    }
+
+    private boolean isUploadOverdue(SharedPreferences prefs, long now) {
+        long drainedAt = prefs.getLong(Constants.PREF_AUDIT_DRAINED_AT, 0);
+        // Si el reloj retrocedió no se puede saber cuánto lleva esperando: se sigue esperando.
+        if (drainedAt <= now && now - drainedAt >= Constants.AUDIT_UPLOAD_MAX_DEFERRAL_MS) {
+            return true;
+        }
+        return pendingBytes(prefs.getLong(Constants.PREF_AUDIT_ACKED_OFFSET, 0))
+                >= Constants.AUDIT_UPLOAD_MAX_BACKLOG_BYTES;
+    }
+
+    /** Bytes escritos en los segmentos después de la posición {@code from}, incluidos los dañados. */
+    long pendingBytes(long from) {
+        synchronized (fileLock) {
+            int[] segments = listSegments();
+            int fromIndex = (int) (from >>> 32);
+            long fromOffset = from & 0xffffffffL;
+            long total = 0;
+            for (int index : segments) {
+                if (index < fromIndex) {
+                    continue;
+                }
+                long length = segmentFile(index).length();
+                total += index == fromIndex ? Math.max(0, length - fromOffset) : length;
+            }
+            return total;
+        }
+    }
+
+    private void uploadNext(Context context, String serialNumber) {
+        SharedPreferences prefs = context.getSharedPreferences(Constants.PREFS_NAME, Context.MODE_PRIVATE);
+        long acked = prefs.getLong(Constants.PREF_AUDIT_ACKED_OFFSET, 0);
+        Chunk chunk = readFrom(acked, UPLOAD_CHUNK_BYTES);
+        if (chunk == null) {
+            prefs.edit().putLong(Constants.PREF_AUDIT_DRAINED_AT, System.currentTimeMillis()).apply();
+            uploading.set(false);
+            return;
+        }
+        if (chunk.start != acked) {
+            Log.w(TAG, "Registros anteriores a " + chunk.start + " se perdieron (rotación o bloque dañado) antes de subirse.");
+        }
+        ApiUtils.uploadAuditLog(context, serialNumber, chunk.start, chunk.data, new ApiUtils.ApiCallback() {
+            @Override
+            public void onSuccess(String response) {
+                long ackedOffset = chunk.end;
+                try {
+                    ackedOffset = new JSONObject(response).optLong("acked_offset", chunk.end);
+                } catch (JSONException e) {
+                    Log.w(TAG, "Respuesta de subida sin posición confirmada: " + e.getMessage());
+                }
+                prefs.edit().putLong(Constants.PREF_AUDIT_ACKED_OFFSET, ackedOffset).apply();
+                if (ackedOffset > chunk.start) {
+                    writer.execute(() -> uploadNext(context, serialNumber));
+                } else {
+                    uploading.set(false);
+                }
+            }
+
+            @Override
+            public void onFailure(String errorMessage) {
+                Log.w(TAG, "Subida del registro de auditoría pendiente: " + errorMessage);
+                uploading.set(false);
+            }
+        });
+    }
+
+    /**
+     * Decodifica bloques tal como los devuelve {@link #readFrom}. Los bloques o registros con CRC
+     * incorrecto se descartan.
+     */
+    public static List<Record> decode(byte[] blocks) {
+        List<Record> records = new ArrayList<>();
+        int position = 0;
+        while (position + BLOCK_HEADER_SIZE <= blocks.length) {
+            if (readInt(blocks, position) != BLOCK_MAGIC) {
+                break;
+            }
+            int compressedLength = readInt(blocks, position + 4);
+            int rawLength = readInt(blocks, position + 8);
+            int expectedCrc = readInt(blocks, position + 12);
+            int bodyStart = position + BLOCK_HEADER_SIZE;
+            position = bodyStart + compressedLength;
+            if (position > blocks.length) {
+                break;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(blocks, bodyStart, compressedLength);
+            if ((int) crc.getValue() != expectedCrc) {
+                Log.e(TAG, "Bloque con CRC incorrecto descartado.");
+                continue;
+            }
+            byte[] raw = new byte[rawLength];
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(blocks, bodyStart, compressedLength);
+                inflater.inflate(raw);
+            } catch (DataFormatException e) {
+                Log.e(TAG, "Bloque ilegible descartado: " + e.getMessage());
+                continue;
+            } finally {
+                inflater.end();
+            }
+            decodeRecords(raw, records);
+        }
+        return records;
+    }
+
+    private static void decodeRecords(byte[] raw, List<Record> out) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw))) {
+            while (in.available() > 0) {
+                int length = in.readUnsignedShort();
+                byte[] body = new byte[length];
+                in.readFully(body);
+                int expectedCrc = in.readInt();
+                CRC32 crc = new CRC32();
+                crc.update(body, 0, length);
+                if ((int) crc.getValue() != expectedCrc) {
+                    Log.e(TAG, "Registro con CRC incorrecto descartado.");
+                    continue;
+                }
+                int type = body[0] & 0xff;
+                long timestamp = 0;
+                for (int i = 1; i <= 8; i++) {
+                    timestamp = (timestamp << 8) | (body[i] & 0xff);
+                }
+                String detail = new String(Arrays.copyOfRange(body, 9, length), StandardCharsets.UTF_8);
+                out.add(new Record(type, timestamp, detail));
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Registros truncados: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Bloque completo (cabecera y cuerpo) que empieza en {@code offset}, o {@code null} si está
+     * incompleto, no empieza por la marca o su CRC no coincide.
+     */
+    private static byte[] readBlock(RandomAccessFile file, long offset, long length) throws IOException {
+        if (offset + BLOCK_HEADER_SIZE > length) {
+            return null;
+        }
+        byte[] header = new byte[BLOCK_HEADER_SIZE];
+        file.seek(offset);
+        file.readFully(header);
+        int compressedLength = readInt(header, 4);
+        if (readInt(header, 0) != BLOCK_MAGIC || compressedLength < 0
+                || offset + BLOCK_HEADER_SIZE + compressedLength > length) {
+            return null;
+        }
+        byte[] block = Arrays.copyOf(header, BLOCK_HEADER_SIZE + compressedLength);
+        file.readFully(block, BLOCK_HEADER_SIZE, compressedLength);
+        CRC32 crc = new CRC32();
+        crc.update(block, BLOCK_HEADER_SIZE, compressedLength);
+        return (int) crc.getValue() == readInt(header, 12) ? block : null;
+    }
+
+    /** Bytes del segmento que forman bloques válidos consecutivos, o -1 si no se pudo leer. */
+    private static long validLength(File segment) {
+        long offset = 0;
+        try (RandomAccessFile file = new RandomAccessFile(segment, "r")) {
+            long length = file.length();
+            byte[] block;
+            while ((block = readBlock(file, offset, length)) != null) {
+                offset += block.length;
+            }
+            return offset;
+        } catch (IOException e) {
+            Log.e(TAG, "Error comprobando el segmento " + segment.getName() + ": " + e.getMessage());
+            return -1;
+        }
+    }
+
+    private static boolean truncate(File segment, long length) {
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.setLength(length);
+            file.getFD().sync();
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "No se pudo recortar el segmento " + segment.getName() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private int[] listSegments() {
+        String[] names = directory.list((dir, name) -> name.startsWith(SEGMENT_PREFIX));
+        if (names == null) {
+            return new int[0];
+        }
+        int[] indexes = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            indexes[i] = Integer.parseInt(names[i].substring(SEGMENT_PREFIX.length()));
+        }
+        Arrays.sort(indexes);
+        return indexes;
+    }
+
+    private File segmentFile(int index) {
+        return new File(directory, String.format(Locale.US, "%s%08d", SEGMENT_PREFIX, index));
+    }
+
+    private static long position(int segment, long offset) {
+        return ((long) segment << 32) | offset;
+    }
+
+    private static void writeInt(byte[] target, int offset, int value) {
+        target[offset] = (byte) (value >>> 24);
+        target[offset + 1] = (byte) (value >>> 16);
+        target[offset + 2] = (byte) (value >>> 8);
+        target[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(byte[] source, int offset) {
+        return ((source[offset] & 0xff) << 24)
+                | ((source[offset + 1] & 0xff) << 16)
+                | ((source[offset + 2] & 0xff) << 8)
+                | (source[offset + 3] & 0xff);
+    }
+}
@@ -0,0 +1,295 @@
+package com.inova.guard.mdm.utils;
+
+import android.app.ActivityManager;
+import android.app.UiModeManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.DisplayMetrics;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import com.inova.guard.mdm.R;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Logo de la empresa para la pantalla de bloqueo.
+ *
+ * <p>El logo de cada cliente ({@code company_logo_url} en la respuesta de estado) solo se descarga
+ * cuando cambian su URL o su versión. Al descargarlo se decodifica una vez y se guardan dos
+ * variantes ya escaladas (teléfono y TV) como píxeles sin comprimir, de modo que mostrarlas es
+ * una lectura de archivo sin decodificación. Sin logo propio se usa el incluido en la app,
+ * reducido al mismo tamaño. Las variantes en uso quedan en una caché en memoria cuyo tamaño
+ * depende de la memoria del dispositivo.
+ */
+public final class BrandingCache {
+
+    private static final String TAG = "BrandingCache";
+
+    public static final int VARIANT_PHONE = 0;
+    public static final int VARIANT_TV = 1;
+
+    // Tamaño en dp de logo_image_view en activity_main y en locked_layout_tv.
+    private static final int[][] VARIANT_SIZE_DP = {{150, 150}, {180, 72}};
+    private static final String[] VARIANT_FILES = {"logo_phone.px", "logo_tv.px"};
+    private static final String DIRECTORY = "branding";
+    private static final int FORMAT_MAGIC = 0x4C4F474F; // "LOGO"
+
+    private static final AtomicBoolean downloading = new AtomicBoolean();
+    private static LruCache<Integer, Bitmap> memoryCache;
+
+    private BrandingCache() {
+    }
+
+    /**
+     * Comprueba el logo indicado por el servidor y lo descarga si cambió. Una URL vacía vuelve al
+     * logo incluido en la app.
+     */
+    public static void update(Context context, String url, String version) {
+        Context appContext = context.getApplicationContext();
+        AppExecutors.background().execute(() -> {
+            SharedPreferences prefs = appContext.getSharedPreferences(Constants.PREFS_NAME, Context.MODE_PRIVATE);
+            String key = url == null || url.isEmpty() ? "" : url + "#" + version;
+            if (key.equals(prefs.getString(Constants.PREF_BRANDING_LOGO_KEY, ""))) {
+                return;
+            }
+            if (key.isEmpty()) {
+                deleteVariants(appContext);
+                prefs.edit().remove(Constants.PREF_BRANDING_LOGO_KEY).apply();
+                evictMemory();
+                MdmLog.i(TAG, "Sin logo de empresa: se usa el logo incluido.");
+                return;
+            }
+            if (!downloading.compareAndSet(false, true)) {
+                return; // El próximo heartbeat lo volverá a intentar.
+            }
+            File download = new File(directory(appContext), "logo.download");
+            ApiUtils.downloadToFile(url, download, Constants.BRANDING_MAX_DOWNLOAD_BYTES, new ApiUtils.ApiCallback() {
+                @Override
+                public void onSuccess(String response) {
+                    AppExecutors.background().execute(() -> {
+                        try {
+                            storeVariants(appContext, download);
+                            prefs.edit().putString(Constants.PREF_BRANDING_LOGO_KEY, key).apply();
+                            evictMemory();
+                            MdmLog.i(TAG, "Logo de empresa actualizado (versión {}).", version);
+                        } catch (IOException e) {
+                            MdmLog.e(TAG, "No se pudo procesar el logo descargado: {}", e.getMessage());
+                        } finally {
+                            download.delete();
+                            downloading.set(false);
+                        }
+                    });
+                }
+
+                @Override
+                public void onFailure(String error) {
+                    download.delete();
+                    downloading.set(false);
+                    MdmLog.w(TAG, "No se pudo descargar el logo: {}", error);
+                }
+            });
+        });
+    }
+
+    /**
+     * Muestra el logo en la vista: desde memoria si ya está cargado, o leyéndolo en segundo plano
+     * la primera vez.
+     */
+    public static void loadInto(ImageView imageView) {
+        Context appContext = imageView.getContext().getApplicationContext();
+        int variant = isTelevision(appContext) ? VARIANT_TV : VARIANT_PHONE;
+        Bitmap cached = memory(appContext).get(variant);
+        if (cached != null) {
+            imageView.setImageBitmap(cached);
+            return;
+        }
+        AppExecutors.background().execute(() -> {
+            Bitmap bitmap = memory(appContext).get(variant);
+            if (bitmap == null) {
+                bitmap = loadVariant(appContext, variant);
+                if (bitmap == null) {
+                    return;
+                }
+                memory(appContext).put(variant, bitmap);
+            }
+            Bitmap result = bitmap;
+            imageView.post(() -> imageView.setImageBitmap(result));
+        });
+    }
+
+    private static Bitmap loadVariant(Context context, int variant) {
+        File file = new File(directory(context), VARIANT_FILES[variant]);
+        if (file.exists()) {
+            try {
+                return readPixels(file);
+            } catch (IOException e) {
+                MdmLog.w(TAG, "Variante de logo ilegible, se usa el incluido: {}", e.getMessage());
+                file.delete();
+            }
+        }
+        int[] size = variantSizePx(context, variant);
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(context.getResources(), R.drawable.inova_guard_logo, bounds);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = calculateInSampleSize(bounds.outWidth, bounds.outHeight, size[0], size[1]);
+        Bitmap decoded = BitmapFactory.decodeResource(context.getResources(), R.drawable.inova_guard_logo, options);
+        return decoded != null ? scaleToFit(decoded, size) : null;
+    }
+
+    private static void storeVariants(Context context, File source) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(source.getPath(), bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            throw new IOException("formato de imagen no reconocido");
+        }
+        for (int variant = VARIANT_PHONE; variant <= VARIANT_TV; variant++) {
+            int[] size = variantSizePx(context, variant);
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = calculateInSampleSize(bounds.outWidth, bounds.outHeight, size[0], size[1]);
+            Bitmap decoded = BitmapFactory.decodeFile(source.getPath(), options);
+            if (decoded == null) {
+                throw new IOException("no se pudo decodificar la imagen");
+            }
+            Bitmap variantBitmap = scaleToFit(decoded, size);
+            writePixels(variantBitmap, new File(directory(context), VARIANT_FILES[variant]));
+            variantBitmap.recycle();
+        }
+    }
+
+    private static Bitmap scaleToFit(Bitmap decoded, int[] size) {
+        int[] scaled = fitInside(decoded.getWidth(), decoded.getHeight(), size[0], size[1]);
+        Bitmap result = Bitmap.createScaledBitmap(decoded, scaled[0], scaled[1], true);
+        if (result != decoded) {
+            decoded.recycle();
+        }
+        return result;
+    }
+
+    private static void writePixels(Bitmap bitmap, File file) throws IOException {
+        Bitmap argb = bitmap.getConfig() == Bitmap.Config.ARGB_8888 ? bitmap : bitmap.copy(Bitmap.Config.ARGB_8888, false);
+        ByteBuffer pixels = ByteBuffer.allocate(argb.getByteCount());
+        argb.copyPixelsToBuffer(pixels);
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp))) {
+            out.writeInt(FORMAT_MAGIC);
+            out.writeInt(argb.getWidth());
+            out.writeInt(argb.getHeight());
+            out.write(pixels.array(), 0, pixels.position());
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("no se pudo guardar " + file.getName());
+        }
+    }
+
+    private static Bitmap readPixels(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != FORMAT_MAGIC) {
+                throw new IOException("cabecera inválida");
+            }
+            int width = in.readInt();
+            int height = in.readInt();
+            if (width <= 0 || height <= 0 || (long) width * height * 4 != file.length() - 12) {
+                throw new IOException("tamaño inválido");
+            }
+            byte[] pixels = new byte[width * height * 4];
+            in.readFully(pixels);
+            Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(pixels));
+            return bitmap;
+        }
+    }
+
+    private static void deleteVariants(Context context) {
+        for (String name : VARIANT_FILES) {
+            new File(directory(context), name).delete();
+        }
+    }
+
+    private static synchronized LruCache<Integer, Bitmap> memory(Context context) {
+        if (memoryCache == null) {
+            ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+            boolean lowRam = activityManager != null && activityManager.isLowRamDevice();
+            int memoryClassMb = activityManager != null ? activityManager.getMemoryClass() : 32;
+            int[] size = variantSizePx(context, isTelevision(context) ? VARIANT_TV : VARIANT_PHONE);
+            int variantBytes = size[0] * size[1] * 4;
+            memoryCache = new LruCache<Integer, Bitmap>(memoryCacheBytes(lowRam, memoryClassMb, variantBytes)) {
+                @Override
+                protected int sizeOf(Integer key, Bitmap value) {
+                    return value.getAllocationByteCount();
+                }
+            };
+        }
+        return memoryCache;
+    }
+
+    private static synchronized void evictMemory() {
+        if (memoryCache != null) {
+            memoryCache.evictAll();
+        }
+    }
+
+    private static File directory(Context context) {
+        File directory = new File(context.getFilesDir(), DIRECTORY);
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        return directory;
+    }
+
+    private static boolean isTelevision(Context context) {
+        UiModeManager uiModeManager = (UiModeManager) context.getSystemService(Context.UI_MODE_SERVICE);
+        return uiModeManager != null
+                && uiModeManager.getCurrentModeType() == Configuration.UI_MODE_TYPE_TELEVISION;
+    }
+
+    private static int[] variantSizePx(Context context, int variant) {
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        return new int[]{
+                Math.round(VARIANT_SIZE_DP[variant][0] * metrics.density),
+                Math.round(VARIANT_SIZE_DP[variant][1] * metrics.density)};
+    }
+
+    /**
+     * Límite de la caché en memoria: en dispositivos de poca RAM, justo la variante en uso (en
+     * xxxhdpi la de teléfono, 600x600 ARGB, ya pasa de 1 MiB); en el resto, 1/16 de la clase de
+     * memoria con un máximo de 4 MiB. Nunca menos que una variante, o no se quedaría en caché.
+     */
+    private static int memoryCacheBytes(boolean lowRam, int memoryClassMb, int variantBytes) {
+        int bytes = lowRam ? variantBytes : Math.min(memoryClassMb * 1024 * 1024 / 16, 4 * 1024 * 1024);
+        return Math.max(bytes, variantBytes);
+    }
+
+    /** Mayor potencia de dos que deja la imagen igual o más grande que el tamaño pedido. */
+    private static int calculateInSampleSize(int width, int height, int requiredWidth, int requiredHeight) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= requiredWidth && height / (sampleSize * 2) >= requiredHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /** Dimensiones que caben en el recuadro manteniendo la proporción, sin ampliar. */
+    private static int[] fitInside(int width, int height, int boxWidth, int boxHeight) {
+        if (width <= boxWidth && height <= boxHeight) {
+            return new int[]{width, height};
+        }
+        double scale = Math.min((double) boxWidth / width, (double) boxHeight / height);
+        return new int[]{
+                Math.max(1, (int) Math.round(width * scale)),
+                Math.max(1, (int) Math.round(height * scale))};
+    }
+}
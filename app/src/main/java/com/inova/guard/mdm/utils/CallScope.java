@@ -0,0 +1,89 @@
+package com.inova.guard.mdm.utils;
+
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Llamadas en curso de un componente (actividad o servicio). Al cerrarse se cancelan todas, y
+ * los resultados que lleguen después no se entregan: así una actividad terminada o un servicio
+ * destruido no quedan retenidos por una llamada lenta ni reciben callbacks tardíos.
+ *
+ * <p>Las actividades usan {@link #bind}, que cierra el ámbito en {@code ON_DESTROY}; los servicios
+ * crean uno en {@code onCreate} y llaman a {@link #close()} en {@code onDestroy}.
+ */
+public final class CallScope {
+
+    private final Set<CompletableFuture<?>> calls = new HashSet<>();
+    private volatile boolean closed;
+
+    public static CallScope bind(LifecycleOwner owner) {
+        CallScope scope = new CallScope();
+        owner.getLifecycle().addObserver((LifecycleEventObserver) (source, event) -> {
+            if (event == Lifecycle.Event.ON_DESTROY) {
+                scope.close();
+            }
+        });
+        return scope;
+    }
+
+    /** Registra el futuro para cancelarlo al cerrar el ámbito. */
+    public <T> CompletableFuture<T> track(CompletableFuture<T> future) {
+        synchronized (calls) {
+            if (closed) {
+                future.cancel(true);
+                return future;
+            }
+            calls.add(future);
+        }
+        future.whenComplete((result, error) -> {
+            synchronized (calls) {
+                calls.remove(future);
+            }
+        });
+        return future;
+    }
+
+    /** Entrega el resultado en el hilo principal, salvo que el ámbito ya esté cerrado. */
+    public <T> void deliver(CompletableFuture<T> future, Consumer<T> onSuccess, Consumer<String> onFailure) {
+        deliver(future, AppExecutors.mainThread(), onSuccess, onFailure);
+    }
+
+    public <T> void deliver(CompletableFuture<T> future, Executor executor,
+                            Consumer<T> onSuccess, Consumer<String> onFailure) {
+        track(future).whenCompleteAsync((result, error) -> {
+            if (closed || future.isCancelled()) {
+                return;
+            }
+            if (error == null) {
+                onSuccess.accept(result);
+            } else {
+                onFailure.accept(ApiUtils.messageOf(error));
+            }
+        }, executor);
+    }
+
+    public void close() {
+        List<CompletableFuture<?>> pending;
+        synchronized (calls) {
+            closed = true;
+            pending = new ArrayList<>(calls);
+            calls.clear();
+        }
+        for (CompletableFuture<?> future : pending) {
+            future.cancel(true);
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+}
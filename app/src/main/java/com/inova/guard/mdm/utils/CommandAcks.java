@@ -0,0 +1,149 @@
+package com.inova.guard.mdm.utils;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * Confirma al servidor cada comando de bloqueo o desbloqueo con sus tiempos (ver
+ * {@link CommandTiming}), para poder medir la latencia de extremo a extremo por canal y modelo.
+ *
+ * <p>El servidor envía {@code command_id} y {@code command_sent_at} con el push o con la respuesta
+ * de estado que cambia {@code is_locked}. Se sigue un solo comando a la vez: MdmService o el
+ * servicio FCM lo inician, y MainActivity marca la entrada o salida del modo kiosco, el primer
+ * fotograma de la pantalla correspondiente y, en un bloqueo, el {@code lockNow} posterior (que
+ * MainActivity hace siempre al pasar a bloqueado, haya comando en curso o no). Al
+ * completarse (o a los {@link Constants#COMMAND_ACK_TIMEOUT_MS}, con los pasos que haya y la
+ * lista de los que faltan) la confirmación va a {@link OfflineOutbox}, que la envía cuando hay
+ * conexión. Un mismo comando recibido por los dos canales solo se mide la primera vez.
+ */
+public final class CommandAcks {
+
+    private static final String TAG = "CommandAcks";
+    private static final String ACK_PATH = "/api/command_ack/";
+
+    private static volatile CommandAcks instance;
+
+    private final Context context;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final LinkedHashSet<String> recentIds = new LinkedHashSet<>();
+    private CommandTiming pending;
+
+    private CommandAcks(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public static CommandAcks get(Context context) {
+        if (instance == null) {
+            synchronized (CommandAcks.class) {
+                if (instance == null) {
+                    instance = new CommandAcks(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Empieza a medir un comando. No hace nada si no trae identificador o si ya se recibió por el
+     * otro canal. Un comando anterior sin terminar se confirma con lo que tenga.
+     */
+    public synchronized void begin(String commandId, String type, String channel, long serverSentAt) {
+        if (commandId == null || commandId.isEmpty()) {
+            return;
+        }
+        if (!recentIds.add(commandId)) {
+            MdmLog.d(TAG, "Comando {} ya recibido; se ignora por {}.", commandId, channel);
+            return;
+        }
+        if (recentIds.size() > Constants.COMMAND_RECENT_IDS) {
+            Iterator<String> oldest = recentIds.iterator();
+            oldest.next();
+            oldest.remove();
+        }
+        if (pending != null) {
+            finish(pending);
+        }
+        CommandTiming timing = new CommandTiming(commandId, type, channel, serverSentAt,
+                System.currentTimeMillis(), SystemClock.elapsedRealtime());
+        pending = timing;
+        handler.postDelayed(() -> {
+            synchronized (CommandAcks.this) {
+                if (pending == timing) {
+                    finish(timing);
+                }
+            }
+        }, Constants.COMMAND_ACK_TIMEOUT_MS);
+    }
+
+    /** Marca un paso del comando en curso si es del mismo tipo. */
+    public synchronized void mark(String type, int step) {
+        CommandTiming timing = pending;
+        if (timing == null || !timing.type.equals(type)) {
+            return;
+        }
+        if (timing.mark(step, SystemClock.elapsedRealtime()) && timing.isComplete()) {
+            finish(timing);
+        }
+    }
+
+    /** Marca el primer fotograma que dibuje la actividad, si el comando en curso lo espera. */
+    public void recordOnNextFrame(Activity activity, String type) {
+        synchronized (this) {
+            if (pending == null || !pending.type.equals(type) || pending.isMarked(CommandTiming.STEP_FIRST_FRAME)) {
+                return;
+            }
+        }
+        View decorView = activity.getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                decorView.post(() -> mark(type, CommandTiming.STEP_FIRST_FRAME));
+                return true;
+            }
+        });
+        decorView.invalidate();
+    }
+
+    private void finish(CommandTiming timing) {
+        if (pending == timing) {
+            pending = null;
+        }
+        AppExecutors.background().execute(() -> {
+            JSONObject payload = new JSONObject();
+            try {
+                for (Map.Entry<String, Object> field : timing.toAckFields().entrySet()) {
+                    payload.put(field.getKey(), field.getValue());
+                }
+                payload.put("serial_number", context.getSharedPreferences(Constants.PREFS_NAME, Context.MODE_PRIVATE)
+                        .getString(Constants.PREF_SERIAL_NUMBER, "unknown"));
+                payload.put("device_model", Build.MODEL);
+            } catch (JSONException e) {
+                MdmLog.e(TAG, "No se pudo preparar la confirmación del comando: {}", e.getMessage());
+                return;
+            }
+            String missing = timing.missingSteps();
+            if (missing.isEmpty()) {
+                MdmLog.d(TAG, "Comando {} confirmado (frame {} ms).", timing.commandId,
+                        timing.offset(CommandTiming.STEP_FIRST_FRAME));
+            } else {
+                MdmLog.w(TAG, "Comando {} confirmado sin completar; faltan: {}.", timing.commandId, missing);
+            }
+            OfflineOutbox.enqueue(context, ACK_PATH, payload);
+            OfflineOutbox.flush(context);
+        });
+    }
+}
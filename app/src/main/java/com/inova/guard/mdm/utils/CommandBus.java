@@ -0,0 +1,105 @@
+package com.inova.guard.mdm.utils;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Bus de órdenes dentro del proceso. Los servicios (FCM, MdmService) y los receptores publican
+ * aquí en lugar de llamar directamente a una actividad; la interfaz se suscribe mientras vive y
+ * se da de baja al destruirse, de modo que nada guarda referencias a actividades.
+ *
+ * <p>El último estado de bloqueo es persistente ("sticky"): quien se suscribe después lo recibe
+ * de inmediato, así una orden que llega con la interfaz cerrada no se pierde. Las preferencias
+ * siguen siendo la fuente de verdad; quien publica debe haberlas escrito antes.
+ */
+public final class CommandBus {
+
+    public static final String LOCK = "lock";
+    public static final String UNLOCK = "unlock";
+
+    public static final class Command {
+        public final String type;
+        public final String source;
+        public final long issuedAt;
+
+        public Command(String type, String source) {
+            this.type = type;
+            this.source = source;
+            this.issuedAt = System.currentTimeMillis();
+        }
+
+        @Override
+        public String toString() {
+            return type + " (" + source + ")";
+        }
+    }
+
+    public interface Subscriber {
+        void onCommand(Command command);
+    }
+
+    /** Baja de una suscripción; conviene llamarla en el {@code onDestroy} del suscriptor. */
+    public interface Subscription {
+        void unsubscribe();
+    }
+
+    private static volatile CommandBus instance;
+
+    private final Executor executor;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private volatile Command stickyLockState;
+
+    CommandBus(Executor executor) {
+        this.executor = executor;
+    }
+
+    /** Bus del proceso; entrega en el hilo principal. */
+    public static CommandBus get() {
+        if (instance == null) {
+            synchronized (CommandBus.class) {
+                if (instance == null) {
+                    instance = new CommandBus(AppExecutors.mainThread());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Publica la orden. Devuelve {@code false} si no había ningún suscriptor que la recibiera (las
+     * de bloqueo quedan igualmente guardadas para el próximo).
+     */
+    public boolean publish(Command command) {
+        if (LOCK.equals(command.type) || UNLOCK.equals(command.type)) {
+            stickyLockState = command;
+        }
+        boolean delivered = false;
+        for (Subscriber subscriber : subscribers) {
+            executor.execute(() -> deliver(subscriber, command));
+            delivered = true;
+        }
+        return delivered;
+    }
+
+    public Subscription subscribe(Subscriber subscriber) {
+        subscribers.add(subscriber);
+        Command sticky = stickyLockState;
+        if (sticky != null) {
+            executor.execute(() -> deliver(subscriber, sticky));
+        }
+        return () -> subscribers.remove(subscriber);
+    }
+
+    /** Último estado de bloqueo publicado, o {@code null} si aún no hubo ninguno. */
+    public Command getLockState() {
+        return stickyLockState;
+    }
+
+    private void deliver(Subscriber subscriber, Command command) {
+        // Puede haberse dado de baja entre la publicación y la entrega.
+        if (subscribers.contains(subscriber)) {
+            subscriber.onCommand(command);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.inova.guard.mdm.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Tiempos de un comando de bloqueo o desbloqueo del servidor, desde que llega al dispositivo
+ * hasta que la pantalla lo refleja. Cada paso guarda el primer instante en que se cumplió
+ * ({@link android.os.SystemClock#elapsedRealtime()}), y se informa como desplazamiento en ms
+ * desde la recepción; -1 si no llegó a ocurrir.
+ *
+ * <p>En un bloqueo, {@code lockNow} se llama después del primer fotograma de la pantalla de
+ * bloqueo: apagar la pantalla antes impediría dibujarla hasta que el usuario la encendiera.
+ */
+public final class CommandTiming {
+
+    public static final int STEP_LOCK_NOW = 0;
+    public static final int STEP_LOCK_TASK = 1;
+    public static final int STEP_FIRST_FRAME = 2;
+
+    private static final String[] STEP_NAMES = {"lock_now", "lock_task", "first_frame"};
+
+    public final String commandId;
+    public final String type;
+    public final String channel;
+    public final long serverSentAt;
+    public final long receivedAt;
+    private final long receivedElapsed;
+    private final long[] stepElapsed = {-1, -1, -1};
+
+    /**
+     * @param type         {@link CommandBus#LOCK} o {@link CommandBus#UNLOCK}
+     * @param channel      "fcm" o "poll"
+     * @param serverSentAt hora del servidor al emitir el comando (0 si no la envió)
+     * @param receivedAt   hora de pared del dispositivo al recibirlo
+     */
+    public CommandTiming(String commandId, String type, String channel, long serverSentAt,
+                         long receivedAt, long receivedElapsed) {
+        this.commandId = commandId;
+        this.type = type;
+        this.channel = channel;
+        this.serverSentAt = serverSentAt;
+        this.receivedAt = receivedAt;
+        this.receivedElapsed = receivedElapsed;
+    }
+
+    /** Marca el paso; solo cuenta la primera vez. Devuelve si se marcó ahora. */
+    public synchronized boolean mark(int step, long elapsed) {
+        if (stepElapsed[step] >= 0) {
+            return false;
+        }
+        stepElapsed[step] = elapsed;
+        return true;
+    }
+
+    public synchronized boolean isMarked(int step) {
+        return stepElapsed[step] >= 0;
+    }
+
+    /** Milisegundos desde la recepción hasta el paso, o -1 si no ocurrió. */
+    public synchronized long offset(int step) {
+        return stepElapsed[step] < 0 ? -1 : Math.max(0, stepElapsed[step] - receivedElapsed);
+    }
+
+    /**
+     * Si ya están todos los pasos que aplican: el desbloqueo no apaga la pantalla, así que no
+     * espera a {@link #STEP_LOCK_NOW}.
+     */
+    public synchronized boolean isComplete() {
+        return missingSteps().isEmpty();
+    }
+
+    /** Nombres de los pasos que aplican y aún no ocurrieron, separados por comas. */
+    public synchronized String missingSteps() {
+        StringBuilder missing = new StringBuilder();
+        for (int step = 0; step < STEP_NAMES.length; step++) {
+            boolean applies = step != STEP_LOCK_NOW || CommandBus.LOCK.equals(type);
+            if (applies && stepElapsed[step] < 0) {
+                if (missing.length() > 0) {
+                    missing.append(',');
+                }
+                missing.append(STEP_NAMES[step]);
+            }
+        }
+        return missing.toString();
+    }
+
+    /** Campos de la confirmación que se envía al servidor. */
+    public synchronized Map<String, Object> toAckFields() {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("command_id", commandId);
+        fields.put("type", type);
+        fields.put("channel", channel);
+        fields.put("server_sent_at", serverSentAt);
+        fields.put("received_at", receivedAt);
+        for (int step = 0; step < STEP_NAMES.length; step++) {
+            fields.put(STEP_NAMES[step] + "_ms", offset(step));
+        }
+        // Una confirmación por timeout dice qué pasos faltaron, no solo que está incompleta.
+        String missing = missingSteps();
+        fields.put("complete", missing.isEmpty());
+        fields.put("missing_steps", missing);
+        return fields;
+    }
+}
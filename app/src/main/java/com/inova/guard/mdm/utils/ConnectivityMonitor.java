@@ -0,0 +1,209 @@
+package com.inova.guard.mdm.utils;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Estado de la red por defecto a partir de {@link ConnectivityManager.NetworkCallback}.
+ *
+ * <p>Los cambios se agrupan durante {@link RuntimeConfig#getConnectivityDebounceMs()}: solo se avisa a
+ * los oyentes cuando el estado se mantiene, y los cambios que no llegan a avisarse (una red que
+ * cae y vuelve, un portal cautivo que se valida enseguida) se cuentan como oscilaciones
+ * suprimidas. Distingue red validada de red conectada sin validar (portal cautivo) y red medida
+ * de no medida, para que cada tipo de tráfico decida si sale ya o espera (ver {@link #allows}).
+ */
+public final class ConnectivityMonitor {
+
+    private static final String TAG = "ConnectivityMonitor";
+
+    /** Tráfico del que depende el bloqueo: se intenta con cualquier red conectada. */
+    public static final int TRAFFIC_CRITICAL = 0;
+    /** Tráfico normal (heartbeat, reportes): requiere una red validada. */
+    public static final int TRAFFIC_NORMAL = 1;
+    /** Subidas grandes (auditoría, diagnóstico): esperan a una red validada y no medida. */
+    public static final int TRAFFIC_BULK = 2;
+
+    public interface Listener {
+        void onConnectivityChanged(State state);
+    }
+
+    /** Foto inmutable del estado de la red por defecto. */
+    public static final class State {
+        public static final State OFFLINE = new State(false, false, false, true);
+
+        public final boolean connected;
+        public final boolean validated;
+        public final boolean captivePortal;
+        public final boolean metered;
+
+        State(boolean connected, boolean validated, boolean captivePortal, boolean metered) {
+            this.connected = connected;
+            this.validated = validated;
+            this.captivePortal = captivePortal;
+            this.metered = metered;
+        }
+
+        static State from(NetworkCapabilities capabilities) {
+            if (capabilities == null) {
+                return OFFLINE;
+            }
+            return new State(
+                    capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET),
+                    capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED),
+                    capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_CAPTIVE_PORTAL),
+                    !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED));
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof State)) {
+                return false;
+            }
+            State state = (State) other;
+            return connected == state.connected && validated == state.validated
+                    && captivePortal == state.captivePortal && metered == state.metered;
+        }
+
+        @Override
+        public int hashCode() {
+            return (connected ? 8 : 0) | (validated ? 4 : 0) | (captivePortal ? 2 : 0) | (metered ? 1 : 0);
+        }
+
+        @Override
+        public String toString() {
+            if (!connected) {
+                return "sin red";
+            }
+            return (validated ? "validada" : captivePortal ? "portal cautivo" : "sin validar")
+                    + (metered ? ", medida" : ", no medida");
+        }
+    }
+
+    private static volatile ConnectivityMonitor instance;
+
+    private final Context context;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Runnable deliver = this::deliverPending;
+
+    private volatile State current;
+    private State latestRaw;
+    private State pending;
+    private int transitions;
+    private int suppressedChanges;
+
+    private ConnectivityMonitor(Context context) {
+        this.context = context;
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivityManager == null) {
+            current = State.OFFLINE;
+            latestRaw = State.OFFLINE;
+            return;
+        }
+        // Estado inicial síncrono; a partir de aquí solo llegan cambios por el callback.
+        Network active = connectivityManager.getActiveNetwork();
+        current = active != null ? State.from(connectivityManager.getNetworkCapabilities(active)) : State.OFFLINE;
+        latestRaw = current;
+        connectivityManager.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+                onRawState(State.from(capabilities));
+            }
+
+            @Override
+            public void onLost(Network network) {
+                onRawState(State.OFFLINE);
+            }
+        });
+        MdmLog.d(TAG, "Estado inicial de la red: {}", current);
+    }
+
+    public static ConnectivityMonitor get(Context context) {
+        if (instance == null) {
+            synchronized (ConnectivityMonitor.class) {
+                if (instance == null) {
+                    instance = new ConnectivityMonitor(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /** Último estado estable (ya pasado el intervalo de agrupación). */
+    public State current() {
+        return current;
+    }
+
+    /** Si el tipo de tráfico indicado puede salir ya con la red actual. */
+    public boolean allows(int trafficClass) {
+        State state = current;
+        switch (trafficClass) {
+            case TRAFFIC_CRITICAL:
+                return state.connected;
+            case TRAFFIC_NORMAL:
+                return state.validated;
+            default:
+                return state.validated && !state.metered;
+        }
+    }
+
+    private synchronized void onRawState(State state) {
+        // onCapabilitiesChanged se repite con cambios irrelevantes (p. ej. intensidad de señal).
+        if (state.equals(latestRaw)) {
+            return;
+        }
+        latestRaw = state;
+        if (pending != null) {
+            suppressedChanges++;
+        }
+        pending = state;
+        handler.removeCallbacks(deliver);
+        handler.postDelayed(deliver, RuntimeConfigStore.get(context).getCurrent().getConnectivityDebounceMs());
+    }
+
+    private void deliverPending() {
+        State state;
+        synchronized (this) {
+            state = pending;
+            pending = null;
+            if (state == null) {
+                return;
+            }
+            if (state.equals(current)) {
+                // La red volvió al estado anterior antes de estabilizarse; onRawState ya contó el
+                // cambio descartado.
+                return;
+            }
+            current = state;
+            transitions++;
+        }
+        MdmLog.i(TAG, "Red por defecto: {}", state);
+        for (Listener listener : listeners) {
+            listener.onConnectivityChanged(state);
+        }
+    }
+
+    public synchronized void addSummaryTo(Map<String, String> heartbeat) {
+        heartbeat.put("net_transitions", Integer.toString(transitions));
+        heartbeat.put("net_changes_suppressed", Integer.toString(suppressedChanges));
+        heartbeat.put("net_validated", Boolean.toString(current.validated));
+        heartbeat.put("net_metered", Boolean.toString(current.metered));
+    }
+}
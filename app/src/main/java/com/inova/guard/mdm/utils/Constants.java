@@ -11,6 +11,7 @@ public class Constants {
     public static final String LOCAL_BASE_URL = "http://192.168.0.102:8000";
 
     // --- URL que usará la aplicación ---
+    // Servidor principal por defecto; el servidor puede configurar otros (ver EndpointRegistry).
     public static final String BASE_URL = USE_LOCAL_SERVER ? LOCAL_BASE_URL : PUBLIC_BASE_URL;
 
     // --- El resto de tus constantes...
@@ -44,10 +45,94 @@ public class Constants {
     // --- NUEVA CONSTANTE PARA EL CÓDIGO DE DESBLOQUEO ---
     public static final String PREF_UNLOCK_CODE = "unlock_code";
 
+    // --- Códigos de desbloqueo rotativos (verificación sin conexión) ---
+    public static final String PREF_UNLOCK_SECRET = "unlock_secret";
+    public static final String PREF_UNLOCK_LAST_STEP = "unlock_last_step";
+    public static final String PREF_UNLOCK_FAILED_ATTEMPTS = "unlock_failed_attempts";
+    public static final String PREF_UNLOCK_LOCKOUT_UNTIL = "unlock_lockout_until";
+    public static final String PREF_UNLOCK_LAST_FAILURE_AT = "unlock_last_failure_at";
+    public static final int UNLOCK_CODE_DIGITS = 6;
+    public static final long UNLOCK_CODE_STEP_SECONDS = 5 * 60;
+    public static final int UNLOCK_CODE_STEPS_BACK = 2;
+    public static final int UNLOCK_CODE_STEPS_FORWARD = 1;
+    public static final int UNLOCK_MAX_FREE_ATTEMPTS = 5;
+    public static final long UNLOCK_BASE_LOCKOUT_MS = 30 * 1000;
+    public static final long UNLOCK_MAX_LOCKOUT_MS = 60 * 60 * 1000;
+    // Cada periodo sin fallos se perdona un intento, para que los errores de meses no se acumulen.
+    public static final long UNLOCK_FAILURE_DECAY_MS = 6 * 60 * 60 * 1000;
+
+    // --- Reportes pendientes de enviar al servidor ---
+    public static final String PREF_OUTBOX = "outbox";
+
+    // --- Reconciliación de políticas del Device Owner ---
+    public static final String PREF_POLICY_APPLIED_HASH = "policy_applied_hash";
+    public static final String PREF_POLICY_LAST_IPC_CALLS = "policy_last_ipc_calls";
+    public static final String PREF_POLICY_LAST_RECONCILE_MS = "policy_last_reconcile_ms";
+    // Un paquete descartado no se vuelve a descargar con el mismo hash hasta pasado este tiempo.
+    public static final long POLICY_REJECTED_RETRY_MS = 6 * 60 * 60 * 1000;
+
+    // --- Registro de auditoría ---
+    public static final String PREF_AUDIT_ACKED_OFFSET = "audit_acked_offset";
+    // Última vez que la subida llegó al final del registro (hora de pared).
+    public static final String PREF_AUDIT_DRAINED_AT = "audit_drained_at";
+    // Con red medida la subida espera a una no medida, salvo que la cola crezca o envejezca demasiado.
+    public static final long AUDIT_UPLOAD_MAX_DEFERRAL_MS = 24 * 60 * 60 * 1000;
+    public static final long AUDIT_UPLOAD_MAX_BACKLOG_BYTES = 256 * 1024;
+
+    // --- Paquete de diagnóstico bajo demanda ---
+    public static final String PREF_DIAG_REQUEST_ID = "diag_request_id";
+    public static final String PREF_DIAG_UPLOAD_OFFSET = "diag_upload_offset";
+    public static final String PREF_DIAG_LAST_COMPLETED_ID = "diag_last_completed_id";
+    public static final String PREF_DIAG_METERED_WINDOW_START = "diag_metered_window_start";
+    public static final String PREF_DIAG_METERED_BYTES = "diag_metered_bytes";
+    public static final int DIAG_CHUNK_BYTES = 64 * 1024;
+    public static final long DIAG_METERED_BYTES_PER_HOUR = 256 * 1024;
+
+    // --- Arranque en frío ---
+    public static final String PREF_STARTUP_LOCK_TTFF_MS = "startup_lock_ttff_ms";
+    public static final String PREF_STARTUP_LOCK_TTI_MS = "startup_lock_tti_ms";
+    public static final long SPLASH_MIN_DISPLAY_MS = 600;
+    public static final long MAIN_THREAD_STALL_THRESHOLD_MS = 2000;
+    // Del encendido de pantalla al bloqueo visible. No es el presupuesto de un fotograma (16 ms):
+    // incluye la entrega de SCREEN_ON, traer la actividad al frente (onNewIntent y onResume) y el
+    // primer recorrido de medida y dibujo, que ya ocupan varios. Por debajo de 100 ms el usuario
+    // percibe la respuesta como inmediata y no llega a ver el contenido desbloqueado.
+    public static final long LOCK_WAKE_BUDGET_MS = 100;
+
+    // --- Confirmación de comandos de bloqueo ---
+    // Si en este plazo no se completan todos los pasos, se confirma con los que haya.
+    public static final long COMMAND_ACK_TIMEOUT_MS = 60 * 1000;
+    public static final int COMMAND_RECENT_IDS = 20;
+
+    // --- Logo de la empresa ---
+    public static final String PREF_BRANDING_LOGO_KEY = "branding_logo_key";
+    // Un logo real ocupa decenas de KB; más que esto es un error del servidor o de la URL.
+    public static final long BRANDING_MAX_DOWNLOAD_BYTES = 2 * 1024 * 1024;
+
+    // --- Recordatorios en superposición ---
+    public static final long REMINDER_MIN_GAP_MS = 60 * 1000;
+    public static final int REMINDER_MAX_PER_HOUR = 4;
+
+    // --- Conectividad ---
+    // Tiempo que un cambio de red debe mantenerse antes de avisar a la sincronización.
+    public static final long CONNECTIVITY_DEBOUNCE_MS = 3000;
+
+    // --- Servidores y conmutación por error ---
+    public static final String PREF_ENDPOINTS = "endpoints";
+    public static final String PREF_ENDPOINT_ACTIVE = "endpoint_active";
+    public static final int ENDPOINT_FAILOVER_THRESHOLD = 3;
+    public static final int ENDPOINT_FAILBACK_PROBES = 2;
+    public static final long ENDPOINT_PROBE_INTERVAL_MS = 15 * 60 * 1000;
+
     public static final long CONNECTION_CHECK_INTERVAL = 15 * 60 * 1000;
     public static final long LOCK_THRESHOLD_MINUTES = 60 * 24 * 7;
 
     public static final int PAYMENT_REMINDER_THRESHOLD_DAYS = 5;
+    // Recordatorios de pago calculados en el dispositivo: hora local del aviso y margen que se
+    // deja al sistema para agrupar la alarma.
+    public static final String PREF_PAYMENT_REMINDER_LAST_DAY = "payment_reminder_last_day";
+    public static final int PAYMENT_REMINDER_HOUR = 10;
+    public static final long PAYMENT_REMINDER_WINDOW_MS = 60 * 60 * 1000;
     public static final String EXTRA_SHOW_PAYMENT_REMINDER = "showPaymentReminder";
     public static final String PREF_SHOW_PAYMENT_REMINDER = "show_payment_reminder";
     public static final String PREF_DEVICE_INFO_SENT = "device_info_sent";
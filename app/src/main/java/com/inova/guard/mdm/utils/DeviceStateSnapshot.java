@@ -0,0 +1,59 @@
+package com.inova.guard.mdm.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Foto inmutable del estado persistido que necesitan el arranque y las pantallas principales.
+ * Se lee de una sola vez (fuera del hilo principal) para no tocar SharedPreferences campo a campo
+ * mientras se dibuja la interfaz.
+ */
+public final class DeviceStateSnapshot {
+
+    public final boolean enrolled;
+    public final String deviceId;
+    public final String serialNumber;
+    public final boolean locked;
+    public final String contactPhone;
+    public final String nextPaymentDate;
+    public final String amountDue;
+    public final String amountPaid;
+    public final String deviceBrand;
+    public final String deviceModel;
+    public final String paymentInstructions;
+    // Mensaje del servidor para la pantalla de bloqueo; vacío si no envió ninguno.
+    public final String lockMessage;
+
+    private static volatile DeviceStateSnapshot latest;
+
+    private DeviceStateSnapshot(SharedPreferences prefs) {
+        deviceId = prefs.getString(Constants.PREF_DEVICE_ID, "");
+        enrolled = prefs.getBoolean(Constants.PREF_IS_ENROLLED, false) && !deviceId.isEmpty();
+        serialNumber = prefs.getString(Constants.PREF_SERIAL_NUMBER, "unknown");
+        locked = prefs.getBoolean(Constants.PREF_IS_LOCKED, false);
+        contactPhone = prefs.getString(Constants.PREF_CONTACT_PHONE, "+58 412 1234567");
+        nextPaymentDate = prefs.getString(Constants.PREF_NEXT_PAYMENT_DATE, "31/12/2025");
+        amountDue = prefs.getString(Constants.PREF_AMOUNT_DUE, "$0.00");
+        amountPaid = prefs.getString(Constants.PREF_AMOUNT_PAID, "$0.00");
+        deviceBrand = prefs.getString(Constants.PREF_DEVICE_BRAND, "Marca");
+        deviceModel = prefs.getString(Constants.PREF_DEVICE_MODEL, "Modelo");
+        paymentInstructions = prefs.getString(Constants.PREF_PAYMENT_INSTRUCTIONS, "Contacte a la administración para más detalles.");
+        lockMessage = prefs.getString(Constants.PREF_MESSAGE, "");
+    }
+
+    /**
+     * Lee el estado actual y lo deja como el más reciente. La primera lectura de SharedPreferences
+     * carga el archivo desde disco, así que no debe hacerse en el hilo principal.
+     */
+    public static DeviceStateSnapshot load(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(Constants.PREFS_NAME, Context.MODE_PRIVATE);
+        DeviceStateSnapshot snapshot = new DeviceStateSnapshot(prefs);
+        latest = snapshot;
+        return snapshot;
+    }
+
+    /** Última foto cargada en este proceso, o {@code null} si aún no se ha leído ninguna. */
+    public static DeviceStateSnapshot peek() {
+        return latest;
+    }
+}
@@ -0,0 +1,291 @@
+package com.inova.guard.mdm.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.JsonWriter;
+
+import com.inova.guard.mdm.admin.PolicyBundle;
+import com.inova.guard.mdm.admin.PolicyBundleStore;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Paquete de diagnóstico que el servidor solicita (por FCM o en la respuesta de estado) cuando un
+ * cliente disputa un bloqueo.
+ *
+ * <p>El paquete se escribe sección a sección como JSON directamente sobre un flujo gzip en un
+ * archivo temporal, y se sube en fragmentos de {@link Constants#DIAG_CHUNK_BYTES} leídos del
+ * archivo: nunca se tiene el paquete completo en memoria. La posición confirmada por el servidor
+ * se guarda tras cada fragmento, así que una subida interrumpida continúa donde quedó. En redes
+ * de datos medidos se suben como máximo {@link Constants#DIAG_METERED_BYTES_PER_HOUR} por hora.
+ */
+public final class DiagnosticBundle {
+
+    private static final String TAG = "DiagnosticBundle";
+    private static final String DIRECTORY = "diagnostics";
+    private static final long METERED_WINDOW_MS = 60 * 60 * 1000;
+    private static final int MAX_AUDIT_RECORDS = 200;
+
+    /** Preferencias que se incluyen en la foto del estado. Nunca secretos ni códigos. */
+    private static final String[] STATE_KEYS = {
+            Constants.PREF_IS_ENROLLED, Constants.PREF_DEVICE_ID, Constants.PREF_SERIAL_NUMBER,
+            Constants.PREF_IS_LOCKED, Constants.PREF_PROVISIONING_COMPLETE, Constants.PREF_NEXT_PAYMENT_DATE,
+            Constants.PREF_AMOUNT_DUE, Constants.PREF_AMOUNT_PAID, Constants.PREF_DEVICE_BRAND,
+            Constants.PREF_DEVICE_MODEL, Constants.PREF_UNLOCK_LAST_STEP, Constants.PREF_UNLOCK_FAILED_ATTEMPTS,
+            Constants.PREF_UNLOCK_LOCKOUT_UNTIL
+    };
+
+    private static final AtomicBoolean uploading = new AtomicBoolean(false);
+
+    private DiagnosticBundle() {
+    }
+
+    /**
+     * Registra una solicitud del servidor y comienza (o reanuda) la subida. Repetir el mismo
+     * identificador no vuelve a generar el paquete.
+     */
+    public static void request(Context context, String serialNumber, String requestId) {
+        if (requestId == null || requestId.isEmpty()) {
+            return;
+        }
+        final Context appContext = context.getApplicationContext();
+        AppExecutors.background().execute(() -> {
+            SharedPreferences prefs = appContext.getSharedPreferences(Constants.PREFS_NAME, Context.MODE_PRIVATE);
+            if (requestId.equals(prefs.getString(Constants.PREF_DIAG_LAST_COMPLETED_ID, ""))) {
+                return;
+            }
+            if (!requestId.equals(prefs.getString(Constants.PREF_DIAG_REQUEST_ID, ""))) {
+                MdmLog.i(TAG, "Nueva solicitud de diagnóstico: {}", requestId);
+                deleteFiles(appContext);
+                prefs.edit()
+                        .putString(Constants.PREF_DIAG_REQUEST_ID, requestId)
+                        .putLong(Constants.PREF_DIAG_UPLOAD_OFFSET, 0)
+                        .apply();
+            }
+            start(appContext, serialNumber);
+        });
+    }
+
+    /** Reanuda una subida pendiente, si la hay. Se llama tras cada reporte de estado correcto. */
+    public static void resumePending(Context context, String serialNumber) {
+        final Context appContext = context.getApplicationContext();
+        AppExecutors.background().execute(() -> {
+            SharedPreferences prefs = appContext.getSharedPreferences(Constants.PREFS_NAME, Context.MODE_PRIVATE);
+            if (!prefs.getString(Constants.PREF_DIAG_REQUEST_ID, "").isEmpty()) {
+                start(appContext, serialNumber);
+            }
+        });
+    }
+
+    private static void start(Context context, String serialNumber) {
+        if (!uploading.compareAndSet(false, true)) {
+            return;
+        }
+        uploadNext(context, serialNumber);
+    }
+
+    private static void uploadNext(Context context, String serialNumber) {
+        SharedPreferences prefs = context.getSharedPreferences(Constants.PREFS_NAME, Context.MODE_PRIVATE);
+        String requestId = prefs.getString(Constants.PREF_DIAG_REQUEST_ID, "");
+        File bundle = bundleFile(context);
+        if (!bundle.exists()) {
+            try {
+                assemble(context, bundle);
+            } catch (IOException e) {
+                MdmLog.e(TAG, "No se pudo generar el paquete de diagnóstico: {}", e.getMessage());
+                uploading.set(false);
+                return;
+            }
+        }
+
+        long offset = prefs.getLong(Constants.PREF_DIAG_UPLOAD_OFFSET, 0);
+        long total = bundle.length();
+        if (offset >= total) {
+            complete(context, prefs, requestId);
+            return;
+        }
+        int size = (int) Math.min(Constants.DIAG_CHUNK_BYTES, total - offset);
+        ConnectivityMonitor connectivity = ConnectivityMonitor.get(context);
+        if (!connectivity.allows(ConnectivityMonitor.TRAFFIC_NORMAL)) {
+            MdmLog.i(TAG, "Sin red validada; el diagnóstico se reanudará más tarde.");
+            uploading.set(false);
+            return;
+        }
+        // Es tráfico masivo, pero lo pidió el servidor: en red medida sale con un cupo por hora.
+        boolean metered = !connectivity.allows(ConnectivityMonitor.TRAFFIC_BULK);
+        if (metered && !meteredBudgetAllows(prefs, size)) {
+            MdmLog.i(TAG, "Cupo de datos medidos agotado; el diagnóstico se reanudará más tarde ({} de {} bytes).",
+                    offset, total);
+            uploading.set(false);
+            return;
+        }
+
+        byte[] chunk = new byte[size];
+        try (RandomAccessFile file = new RandomAccessFile(bundle, "r")) {
+            file.seek(offset);
+            file.readFully(chunk);
+        } catch (IOException e) {
+            MdmLog.e(TAG, "No se pudo leer el paquete de diagnóstico: {}", e.getMessage());
+            uploading.set(false);
+            return;
+        }
+
+        ApiUtils.uploadDiagnosticChunk(context, serialNumber, requestId, offset, total, chunk, new ApiUtils.ApiCallback() {
+            @Override
+            public void onSuccess(String response) {
+                long nextOffset = offset + size;
+                try {
+                    nextOffset = new JSONObject(response).optLong("next_offset", nextOffset);
+                } catch (JSONException e) {
+                    MdmLog.w(TAG, "Respuesta de diagnóstico sin posición confirmada: {}", e.getMessage());
+                }
+                SharedPreferences.Editor editor = prefs.edit().putLong(Constants.PREF_DIAG_UPLOAD_OFFSET, nextOffset);
+                if (metered) {
+                    editor.putLong(Constants.PREF_DIAG_METERED_BYTES,
+                            prefs.getLong(Constants.PREF_DIAG_METERED_BYTES, 0) + size);
+                }
+                editor.apply();
+                if (nextOffset > offset) {
+                    AppExecutors.background().execute(() -> uploadNext(context, serialNumber));
+                } else {
+                    uploading.set(false);
+                }
+            }
+
+            @Override
+            public void onFailure(String errorMessage) {
+                MdmLog.w(TAG, "Subida de diagnóstico pendiente en {}: {}", offset, errorMessage);
+                uploading.set(false);
+            }
+        });
+    }
+
+    private static void complete(Context context, SharedPreferences prefs, String requestId) {
+        MdmLog.i(TAG, "Diagnóstico {} subido por completo.", requestId);
+        prefs.edit()
+                .putString(Constants.PREF_DIAG_LAST_COMPLETED_ID, requestId)
+                .remove(Constants.PREF_DIAG_REQUEST_ID)
+                .remove(Constants.PREF_DIAG_UPLOAD_OFFSET)
+                .apply();
+        deleteFiles(context);
+        uploading.set(false);
+    }
+
+    /**
+     * Escribe el paquete sección a sección sobre el flujo comprimido. Se genera en un archivo
+     * temporal y se renombra al terminar, para no subir nunca un paquete a medio escribir.
+     */
+    private static void assemble(Context context, File target) throws IOException {
+        File partial = new File(target.getParentFile(), target.getName() + ".tmp");
+        SharedPreferences prefs = context.getSharedPreferences(Constants.PREFS_NAME, Context.MODE_PRIVATE);
+        try (JsonWriter json = new JsonWriter(new OutputStreamWriter(new GZIPOutputStream(
+                new BufferedOutputStream(new FileOutputStream(partial))), StandardCharsets.UTF_8))) {
+            json.beginObject();
+            json.name("request_id").value(prefs.getString(Constants.PREF_DIAG_REQUEST_ID, ""));
+            json.name("generated_at").value(System.currentTimeMillis());
+            json.name("sdk_int").value(Build.VERSION.SDK_INT);
+
+            json.name("state").beginObject();
+            Map<String, ?> allPrefs = prefs.getAll();
+            for (String key : STATE_KEYS) {
+                Object value = allPrefs.get(key);
+                if (value != null) {
+                    json.name(key).value(String.valueOf(value));
+                }
+            }
+            json.endObject();
+
+            PolicyBundle policy = PolicyBundleStore.get(context).getCurrent();
+            json.name("policy").beginObject();
+            json.name("bundle_hash").value(policy.getHash());
+            json.name("applied_hash").value(prefs.getString(Constants.PREF_POLICY_APPLIED_HASH, ""));
+            json.name("version").value(policy.getPolicySet().getVersion());
+            json.name("offline_lock_threshold_minutes").value(policy.getOfflineLockThresholdMinutes());
+            json.name("status_poll_interval_ms").value(policy.getStatusPollIntervalMillis());
+            json.name("last_ipc_calls").value(prefs.getInt(Constants.PREF_POLICY_LAST_IPC_CALLS, 0));
+            json.name("last_reconcile_ms").value(prefs.getLong(Constants.PREF_POLICY_LAST_RECONCILE_MS, 0));
+            json.endObject();
+
+            json.name("network").beginObject();
+            ConnectivityMonitor.State network = ConnectivityMonitor.get(context).current();
+            json.name("connected").value(network.connected);
+            json.name("validated").value(network.validated);
+            json.name("captive_portal").value(network.captivePortal);
+            json.name("metered").value(network.metered);
+            json.name("offline_ms").value(OfflineTimeTracker.get(context).getOfflineMillis());
+            json.endObject();
+
+            AuditLog auditLog = AuditLog.get(context);
+            long ackedOffset = prefs.getLong(Constants.PREF_AUDIT_ACKED_OFFSET, 0);
+            json.name("sync").beginObject();
+            json.name("outbox_pending").value(OfflineOutbox.size(context));
+            json.name("audit_acked_offset").value(ackedOffset);
+            json.name("audit_append_stats").value(auditLog.getAppendStats());
+            json.name("audit_pending").beginArray();
+            AuditLog.Chunk pending = auditLog.readFrom(ackedOffset, Constants.DIAG_CHUNK_BYTES);
+            if (pending != null) {
+                List<AuditLog.Record> records = AuditLog.decode(pending.data);
+                for (AuditLog.Record record : records.subList(Math.max(0, records.size() - MAX_AUDIT_RECORDS), records.size())) {
+                    json.beginObject();
+                    json.name("type").value(record.type);
+                    json.name("ts").value(record.timestamp);
+                    json.name("detail").value(record.detail);
+                    json.endObject();
+                }
+            }
+            json.endArray();
+            json.endObject();
+
+            json.name("log").value(MdmLog.dump());
+            json.endObject();
+        }
+        if (!partial.renameTo(target)) {
+            throw new IOException("No se pudo renombrar " + partial);
+        }
+        MdmLog.i(TAG, "Paquete de diagnóstico generado: {} bytes comprimidos.", target.length());
+    }
+
+    private static boolean meteredBudgetAllows(SharedPreferences prefs, int size) {
+        long now = System.currentTimeMillis();
+        long windowStart = prefs.getLong(Constants.PREF_DIAG_METERED_WINDOW_START, 0);
+        if (now - windowStart >= METERED_WINDOW_MS || now < windowStart) {
+            prefs.edit()
+                    .putLong(Constants.PREF_DIAG_METERED_WINDOW_START, now)
+                    .putLong(Constants.PREF_DIAG_METERED_BYTES, 0)
+                    .apply();
+            return size <= Constants.DIAG_METERED_BYTES_PER_HOUR;
+        }
+        return prefs.getLong(Constants.PREF_DIAG_METERED_BYTES, 0) + size <= Constants.DIAG_METERED_BYTES_PER_HOUR;
+    }
+
+    private static File bundleFile(Context context) {
+        File directory = new File(context.getCacheDir(), DIRECTORY);
+        if (!directory.exists() && !directory.mkdirs()) {
+            MdmLog.w(TAG, "No se pudo crear {}", directory);
+        }
+        return new File(directory, "bundle.json.gz");
+    }
+
+    private static void deleteFiles(Context context) {
+        File[] files = new File(context.getCacheDir(), DIRECTORY).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+}
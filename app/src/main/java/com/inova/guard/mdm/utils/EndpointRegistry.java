@@ -0,0 +1,384 @@
+package com.inova.guard.mdm.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Servidores a los que habla la app: uno principal, secundarios y, opcionalmente, un espejo en la
+ * red local del cliente. Antes la URL se fijaba al compilar ({@link Constants#BASE_URL}), así que
+ * una caída del servidor o un problema de DNS dejaba sin servicio a toda la flota.
+ *
+ * <p>La selección es estable: se sigue usando el servidor activo mientras responda, aunque otro
+ * sea algo más rápido. Tras {@link Constants#ENDPOINT_FAILOVER_THRESHOLD} fallos seguidos (error
+ * de red o 5xx) se pasa al servidor sano con menor latencia media, y se vuelve al principal cuando
+ * supera {@link Constants#ENDPOINT_FAILBACK_PROBES} sondeos seguidos. Los sondeos son un
+ * {@code HEAD /} a cada servidor, como mucho cada {@link RuntimeConfig#getEndpointProbeIntervalMs()}.
+ * La lista llega en la respuesta de estado y se guarda junto con el servidor activo.
+ */
+public final class EndpointRegistry {
+
+    private static final String TAG = "EndpointRegistry";
+
+    public static final int ROLE_PRIMARY = 0;
+    public static final int ROLE_SECONDARY = 1;
+    public static final int ROLE_LAN = 2;
+
+    private static final String[] ROLE_NAMES = {"primary", "secondary", "lan"};
+    // Peso de la última medida en la media móvil de latencia.
+    private static final double LATENCY_ALPHA = 0.3;
+
+    /** Almacenamiento de la lista y del servidor activo entre reinicios. */
+    public interface Store {
+        String getString(String key);
+
+        void putStrings(String[] keys, String[] values);
+    }
+
+    /** Un servidor y su salud medida en este proceso. */
+    static final class Endpoint {
+        final String url;
+        final int role;
+        long successes;
+        long failures;
+        int consecutiveFailures;
+        int consecutiveProbeSuccesses;
+        // Media móvil de latencia; -1 hasta la primera respuesta.
+        long latencyMs = -1;
+
+        Endpoint(String url, int role) {
+            this.url = url;
+            this.role = role;
+        }
+
+        boolean healthy() {
+            return consecutiveFailures < Constants.ENDPOINT_FAILOVER_THRESHOLD;
+        }
+    }
+
+    private static volatile EndpointRegistry instance;
+
+    private final Store store;
+    private final LongSupplier clock;
+    private final BooleanSupplier online;
+    private final List<Endpoint> endpoints = new ArrayList<>();
+    private Endpoint active;
+    private long failovers;
+    private long lastProbeRound = Long.MIN_VALUE;
+
+    EndpointRegistry(Store store, LongSupplier clock, BooleanSupplier online) {
+        this.store = store;
+        this.clock = clock;
+        this.online = online;
+        load();
+    }
+
+    public static EndpointRegistry get(Context context) {
+        if (instance == null) {
+            synchronized (EndpointRegistry.class) {
+                if (instance == null) {
+                    Context appContext = context.getApplicationContext();
+                    SharedPreferences prefs = appContext.getSharedPreferences(Constants.PREFS_NAME, Context.MODE_PRIVATE);
+                    Store store = new Store() {
+                        @Override
+                        public String getString(String key) {
+                            return prefs.getString(key, "");
+                        }
+
+                        @Override
+                        public void putStrings(String[] keys, String[] values) {
+                            SharedPreferences.Editor editor = prefs.edit();
+                            for (int i = 0; i < keys.length; i++) {
+                                editor.putString(keys[i], values[i]);
+                            }
+                            editor.apply();
+                        }
+                    };
+                    instance = new EndpointRegistry(store, SystemClock::elapsedRealtime,
+                            () -> ConnectivityMonitor.get(appContext).allows(ConnectivityMonitor.TRAFFIC_NORMAL));
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Resultado de una llamada real a la API. Solo cuenta si la URL pertenece a un servidor
+     * conocido; antes de que exista el registro no hace nada.
+     */
+    public static void report(String url, boolean reachable, long latencyMs) {
+        EndpointRegistry registry = instance;
+        if (registry != null) {
+            registry.record(url, reachable, latencyMs, false);
+        }
+    }
+
+    /** Como {@link #report}, para una llamada que obtuvo respuesta HTTP con ese código. */
+    public static void reportResponse(String url, int httpCode, long latencyMs) {
+        EndpointRegistry registry = instance;
+        if (registry != null) {
+            registry.recordResponse(url, httpCode, latencyMs, false);
+        }
+    }
+
+    /** URL base del servidor activo, sin barra final. */
+    public synchronized String baseUrl() {
+        return active.url;
+    }
+
+    /**
+     * Sustituye la lista de servidores. {@code urls} van en orden de preferencia, el primero es el
+     * principal; {@code lanMirrorUrl} puede estar vacío. Las URL no válidas se descartan y, si no
+     * queda ninguna, se mantiene la lista actual. Se conserva el servidor activo si sigue en la
+     * lista.
+     */
+    public synchronized void configure(List<String> urls, String lanMirrorUrl) {
+        List<Endpoint> configured = new ArrayList<>();
+        for (String url : urls) {
+            String normalized = normalize(url, false);
+            if (normalized != null && find(configured, normalized) == null) {
+                configured.add(new Endpoint(normalized, configured.isEmpty() ? ROLE_PRIMARY : ROLE_SECONDARY));
+            }
+        }
+        String lan = normalize(lanMirrorUrl, true);
+        if (lan != null && find(configured, lan) == null) {
+            configured.add(new Endpoint(lan, ROLE_LAN));
+        }
+        if (configured.isEmpty() || serialize(configured).equals(serialize(endpoints))) {
+            return;
+        }
+        for (Endpoint endpoint : configured) {
+            // Lo medido hasta ahora sigue valiendo para los servidores que se mantienen.
+            Endpoint previous = find(endpoints, endpoint.url);
+            if (previous != null && previous.role == endpoint.role) {
+                copyHealth(previous, endpoint);
+            }
+        }
+        endpoints.clear();
+        endpoints.addAll(configured);
+        Endpoint kept = find(endpoints, active.url);
+        active = kept != null ? kept : endpoints.get(0);
+        MdmLog.i(TAG, "Servidores configurados: {} (activo {})", endpoints.size(), active.url);
+        persist();
+    }
+
+    /**
+     * Sondea todos los servidores si ya pasó el intervalo, o antes si el activo no está sano (para
+     * elegir bien a cuál pasar).
+     */
+    public void probeIfDue(long intervalMs) {
+        List<Endpoint> targets;
+        synchronized (this) {
+            long now = clock.getAsLong();
+            if (active.healthy() && lastProbeRound != Long.MIN_VALUE && now - lastProbeRound < intervalMs) {
+                return;
+            }
+            lastProbeRound = now;
+            targets = new ArrayList<>(endpoints);
+        }
+        for (Endpoint endpoint : targets) {
+            probe(endpoint);
+        }
+    }
+
+    private void probe(Endpoint endpoint) {
+        Request request = new Request.Builder().url(endpoint.url + "/").head().build();
+        long start = clock.getAsLong();
+        RequestDispatcher.enqueue(RequestDispatcher.BACKGROUND, "probe:" + endpoint.url, request, new Callback() {
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                response.close();
+                recordResponse(endpoint.url, response.code(), clock.getAsLong() - start, true);
+            }
+
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                if (!call.isCanceled()) {
+                    record(endpoint.url, false, 0, true);
+                }
+            }
+        });
+    }
+
+    /** Un 4xx es una respuesta válida del servidor; solo los 5xx cuentan como caída. */
+    void recordResponse(String url, int httpCode, long latencyMs, boolean probe) {
+        record(url, httpCode < 500, latencyMs, probe);
+    }
+
+    synchronized void record(String url, boolean reachable, long latencyMs, boolean probe) {
+        Endpoint endpoint = owner(url);
+        if (endpoint == null) {
+            return;
+        }
+        if (!reachable && !online.getAsBoolean()) {
+            return; // Sin red validada el fallo es del dispositivo, no del servidor.
+        }
+        if (reachable) {
+            endpoint.successes++;
+            endpoint.consecutiveFailures = 0;
+            endpoint.latencyMs = endpoint.latencyMs < 0 ? latencyMs
+                    : Math.round(LATENCY_ALPHA * latencyMs + (1 - LATENCY_ALPHA) * endpoint.latencyMs);
+            if (probe) {
+                endpoint.consecutiveProbeSuccesses++;
+            }
+        } else {
+            endpoint.failures++;
+            endpoint.consecutiveFailures++;
+            endpoint.consecutiveProbeSuccesses = 0;
+        }
+        reselect();
+    }
+
+    private void reselect() {
+        Endpoint primary = endpoints.get(0);
+        if (active != primary && primary.consecutiveProbeSuccesses >= Constants.ENDPOINT_FAILBACK_PROBES) {
+            switchTo(primary, "vuelta al principal");
+            return;
+        }
+        if (active.healthy()) {
+            return;
+        }
+        Endpoint best = null;
+        for (Endpoint candidate : endpoints) {
+            if (candidate != active && candidate.healthy() && (best == null || faster(candidate, best))) {
+                best = candidate;
+            }
+        }
+        if (best != null) {
+            switchTo(best, active.consecutiveFailures + " fallos seguidos");
+        }
+    }
+
+    /** Menor latencia media; un servidor aún sin medir va detrás de los medidos. */
+    private static boolean faster(Endpoint a, Endpoint b) {
+        if (a.latencyMs < 0 || b.latencyMs < 0) {
+            return b.latencyMs < 0 && a.latencyMs >= 0;
+        }
+        return a.latencyMs < b.latencyMs;
+    }
+
+    private void switchTo(Endpoint endpoint, String reason) {
+        MdmLog.w(TAG, "Cambio de servidor {} -> {} ({})", active.url, endpoint.url, reason);
+        active = endpoint;
+        failovers++;
+        persist();
+    }
+
+    /** Servidor al que pertenece la URL: el de base más larga que la prefije. */
+    private Endpoint owner(String url) {
+        Endpoint match = null;
+        for (Endpoint endpoint : endpoints) {
+            if ((url.equals(endpoint.url) || url.startsWith(endpoint.url + "/"))
+                    && (match == null || endpoint.url.length() > match.url.length())) {
+                match = endpoint;
+            }
+        }
+        return match;
+    }
+
+    /**
+     * Servidor activo, cambios de servidor y, por servidor, {@code "rol,ok,fallos,latencia_ms"}
+     * (latencia -1 si aún no respondió).
+     */
+    public synchronized void addSummaryTo(Map<String, String> heartbeat) {
+        heartbeat.put("endpoint_active", active.url);
+        heartbeat.put("endpoint_failovers", Long.toString(failovers));
+        for (int i = 0; i < endpoints.size(); i++) {
+            Endpoint endpoint = endpoints.get(i);
+            heartbeat.put("endpoint_" + i, ROLE_NAMES[endpoint.role] + "," + endpoint.successes + ","
+                    + endpoint.failures + "," + endpoint.latencyMs);
+        }
+    }
+
+    private void load() {
+        for (String line : store.getString(Constants.PREF_ENDPOINTS).split("\n")) {
+            int separator = line.indexOf(' ');
+            if (separator > 0) {
+                int role = indexOfRole(line.substring(0, separator));
+                String url = line.substring(separator + 1);
+                if (role >= 0 && find(endpoints, url) == null) {
+                    endpoints.add(new Endpoint(url, role));
+                }
+            }
+        }
+        if (endpoints.isEmpty() || endpoints.get(0).role != ROLE_PRIMARY) {
+            endpoints.clear();
+            endpoints.add(new Endpoint(Constants.BASE_URL, ROLE_PRIMARY));
+        }
+        Endpoint stored = find(endpoints, store.getString(Constants.PREF_ENDPOINT_ACTIVE));
+        active = stored != null ? stored : endpoints.get(0);
+    }
+
+    private void persist() {
+        store.putStrings(new String[]{Constants.PREF_ENDPOINTS, Constants.PREF_ENDPOINT_ACTIVE},
+                new String[]{serialize(endpoints), active.url});
+    }
+
+    private static String serialize(List<Endpoint> list) {
+        StringBuilder builder = new StringBuilder();
+        for (Endpoint endpoint : list) {
+            if (builder.length() > 0) {
+                builder.append('\n');
+            }
+            builder.append(ROLE_NAMES[endpoint.role]).append(' ').append(endpoint.url);
+        }
+        return builder.toString();
+    }
+
+    private static int indexOfRole(String name) {
+        for (int i = 0; i < ROLE_NAMES.length; i++) {
+            if (ROLE_NAMES[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Endpoint find(List<Endpoint> list, String url) {
+        for (Endpoint endpoint : list) {
+            if (endpoint.url.equals(url)) {
+                return endpoint;
+            }
+        }
+        return null;
+    }
+
+    private static void copyHealth(Endpoint from, Endpoint to) {
+        to.successes = from.successes;
+        to.failures = from.failures;
+        to.consecutiveFailures = from.consecutiveFailures;
+        to.consecutiveProbeSuccesses = from.consecutiveProbeSuccesses;
+        to.latencyMs = from.latencyMs;
+    }
+
+    /**
+     * URL sin barra final, o {@code null} si no es válida. Solo el espejo local puede ir sin TLS:
+     * vive en la red del cliente, donde no suele haber certificado.
+     */
+    private static String normalize(String url, boolean allowCleartext) {
+        if (url == null) {
+            return null;
+        }
+        String trimmed = url.trim();
+        while (trimmed.endsWith("/")) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1);
+        }
+        boolean secure = trimmed.startsWith("https://") && trimmed.length() > "https://".length();
+        boolean cleartext = allowCleartext && trimmed.startsWith("http://") && trimmed.length() > "http://".length();
+        return secure || cleartext ? trimmed : null;
+    }
+}
@@ -0,0 +1,25 @@
+package com.inova.guard.mdm.utils;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public final class Hashing {
+
+    private Hashing() {
+    }
+
+    /** SHA-256 en hexadecimal (minúsculas). */
+    public static String sha256Hex(byte[] data) {
+        try {
+            byte[] bytes = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder hex = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+                hex.append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.inova.guard.mdm.utils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Aplicación de parches JSON (RFC 6902) sobre un documento representado con {@link Map},
+ * {@link List} y valores simples ({@code null} es el null de JSON). Se mantiene libre de
+ * {@code org.json} para poder probarla en la JVM.
+ *
+ * <p>El parche es atómico: se aplica sobre una copia y, si una operación falla (ruta inexistente,
+ * {@code test} que no coincide, operación desconocida), se lanza
+ * {@link IllegalArgumentException} y el documento original queda intacto.
+ */
+public final class JsonPatch {
+
+    /** Una operación del parche; {@code from} solo se usa en move y copy. */
+    public static final class Operation {
+        public final String op;
+        public final String path;
+        public final String from;
+        public final Object value;
+
+        public Operation(String op, String path, String from, Object value) {
+            this.op = op;
+            this.path = path;
+            this.from = from;
+            this.value = value;
+        }
+    }
+
+    private JsonPatch() {
+    }
+
+    /** Devuelve un documento nuevo con las operaciones aplicadas en orden. */
+    public static Object apply(Object document, List<Operation> operations) {
+        Object result = deepCopy(document);
+        for (Operation operation : operations) {
+            if (operation.op == null || operation.path == null) {
+                throw new IllegalArgumentException("operación incompleta");
+            }
+            switch (operation.op) {
+                case "add":
+                    result = add(result, operation.path, deepCopy(operation.value));
+                    break;
+                case "remove":
+                    result = remove(result, operation.path);
+                    break;
+                case "replace":
+                    result = add(remove(result, operation.path), operation.path, deepCopy(operation.value));
+                    break;
+                case "move": {
+                    Object value = get(result, requireFrom(operation));
+                    result = add(remove(result, operation.from), operation.path, value);
+                    break;
+                }
+                case "copy":
+                    result = add(result, operation.path, deepCopy(get(result, requireFrom(operation))));
+                    break;
+                case "test":
+                    if (!valueEquals(get(result, operation.path), operation.value)) {
+                        throw new IllegalArgumentException("test fallido en " + operation.path);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("operación desconocida: " + operation.op);
+            }
+        }
+        return result;
+    }
+
+    /** Valor en la ruta (JSON Pointer, RFC 6901); la ruta vacía es el documento completo. */
+    public static Object get(Object document, String path) {
+        Object current = document;
+        for (String token : parsePointer(path)) {
+            current = child(current, token, path);
+        }
+        return current;
+    }
+
+    /**
+     * Miembros de primer nivel que el parche puede modificar (destino de cada operación y origen de
+     * los move), o {@code null} si alguna operación sustituye el documento completo. Pensado para
+     * después de {@link #apply}: una ruta mal formada lanza {@link IllegalArgumentException}.
+     */
+    public static Set<String> touchedMembers(List<Operation> operations) {
+        Set<String> members = new HashSet<>();
+        for (Operation operation : operations) {
+            if ("test".equals(operation.op)) {
+                continue;
+            }
+            if (!addMember(members, operation.path)
+                    || ("move".equals(operation.op) && !addMember(members, operation.from))) {
+                return null;
+            }
+        }
+        return members;
+    }
+
+    private static boolean addMember(Set<String> members, String path) {
+        if (path == null || path.isEmpty()) {
+            return false;
+        }
+        List<String> tokens = parsePointer(path);
+        members.add(tokens.get(0));
+        return true;
+    }
+
+    private static String requireFrom(Operation operation) {
+        if (operation.from == null) {
+            throw new IllegalArgumentException(operation.op + " sin from");
+        }
+        return operation.from;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object add(Object document, String path, Object value) {
+        List<String> tokens = parsePointer(path);
+        if (tokens.isEmpty()) {
+            return value;
+        }
+        Object parent = document;
+        for (String token : tokens.subList(0, tokens.size() - 1)) {
+            parent = child(parent, token, path);
+        }
+        String last = tokens.get(tokens.size() - 1);
+        if (parent instanceof Map) {
+            ((Map<String, Object>) parent).put(last, value);
+        } else if (parent instanceof List) {
+            List<Object> list = (List<Object>) parent;
+            list.add("-".equals(last) ? list.size() : index(last, list.size() + 1, path), value);
+        } else {
+            throw new IllegalArgumentException("ruta inexistente: " + path);
+        }
+        return document;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object remove(Object document, String path) {
+        List<String> tokens = parsePointer(path);
+        if (tokens.isEmpty()) {
+            throw new IllegalArgumentException("no se puede eliminar el documento completo");
+        }
+        Object parent = document;
+        for (String token : tokens.subList(0, tokens.size() - 1)) {
+            parent = child(parent, token, path);
+        }
+        String last = tokens.get(tokens.size() - 1);
+        if (parent instanceof Map && ((Map<String, Object>) parent).containsKey(last)) {
+            ((Map<String, Object>) parent).remove(last);
+        } else if (parent instanceof List) {
+            List<Object> list = (List<Object>) parent;
+            list.remove(index(last, list.size(), path));
+        } else {
+            throw new IllegalArgumentException("ruta inexistente: " + path);
+        }
+        return document;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object child(Object parent, String token, String path) {
+        if (parent instanceof Map) {
+            Map<String, Object> map = (Map<String, Object>) parent;
+            if (!map.containsKey(token)) {
+                throw new IllegalArgumentException("ruta inexistente: " + path);
+            }
+            return map.get(token);
+        }
+        if (parent instanceof List) {
+            List<Object> list = (List<Object>) parent;
+            return list.get(index(token, list.size(), path));
+        }
+        throw new IllegalArgumentException("ruta inexistente: " + path);
+    }
+
+    private static int index(String token, int limit, String path) {
+        // RFC 6901: sin signo ni ceros a la izquierda.
+        if (token.isEmpty() || (token.length() > 1 && token.charAt(0) == '0')) {
+            throw new IllegalArgumentException("índice inválido en " + path);
+        }
+        int index;
+        try {
+            index = Integer.parseInt(token);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("índice inválido en " + path);
+        }
+        if (index < 0 || index >= limit) {
+            throw new IllegalArgumentException("índice fuera de rango en " + path);
+        }
+        return index;
+    }
+
+    private static List<String> parsePointer(String path) {
+        List<String> tokens = new ArrayList<>();
+        if (path.isEmpty()) {
+            return tokens;
+        }
+        if (path.charAt(0) != '/') {
+            throw new IllegalArgumentException("ruta inválida: " + path);
+        }
+        int start = 1;
+        while (true) {
+            int end = path.indexOf('/', start);
+            String token = path.substring(start, end < 0 ? path.length() : end);
+            tokens.add(token.replace("~1", "/").replace("~0", "~"));
+            if (end < 0) {
+                return tokens;
+            }
+            start = end + 1;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static Object deepCopy(Object value) {
+        if (value instanceof Map) {
+            Map<String, Object> copy = new LinkedHashMap<>();
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+                copy.put(entry.getKey(), deepCopy(entry.getValue()));
+            }
+            return copy;
+        }
+        if (value instanceof List) {
+            List<Object> copy = new ArrayList<>();
+            for (Object item : (List<Object>) value) {
+                copy.add(deepCopy(item));
+            }
+            return copy;
+        }
+        return value;
+    }
+
+    /** Igualdad de JSON: los números se comparan por valor (1 y 1.0 son iguales). */
+    @SuppressWarnings("unchecked")
+    static boolean valueEquals(Object a, Object b) {
+        if (a instanceof Number && b instanceof Number) {
+            return ((Number) a).doubleValue() == ((Number) b).doubleValue();
+        }
+        if (a instanceof Map && b instanceof Map) {
+            Map<String, Object> left = (Map<String, Object>) a;
+            Map<String, Object> right = (Map<String, Object>) b;
+            if (left.size() != right.size()) {
+                return false;
+            }
+            for (Map.Entry<String, Object> entry : left.entrySet()) {
+                if (!right.containsKey(entry.getKey()) || !valueEquals(entry.getValue(), right.get(entry.getKey()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (a instanceof List && b instanceof List) {
+            List<Object> left = (List<Object>) a;
+            List<Object> right = (List<Object>) b;
+            if (left.size() != right.size()) {
+                return false;
+            }
+            for (int i = 0; i < left.size(); i++) {
+                if (!valueEquals(left.get(i), right.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return a == null ? b == null : a.equals(b);
+    }
+}
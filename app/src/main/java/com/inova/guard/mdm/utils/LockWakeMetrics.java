@@ -0,0 +1,68 @@
+package com.inova.guard.mdm.utils;
+
+import android.app.Activity;
+import android.os.SystemClock;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.util.Map;
+
+/**
+ * Latencia entre el encendido de la pantalla y el primer fotograma de la pantalla de bloqueo,
+ * para comprobar que el re-bloqueo queda dentro de {@link Constants#LOCK_WAKE_BUDGET_MS}.
+ * Los contadores son del proceso y se envían con el heartbeat.
+ */
+public final class LockWakeMetrics {
+
+    private static final String TAG = "LockWakeMetrics";
+
+    private static int wakes;
+    private static int skipped;
+    private static int overBudget;
+    private static long lastMillis = -1;
+    private static long maxMillis = -1;
+
+    private LockWakeMetrics() {
+    }
+
+    /** El bloqueo ya estaba visible y en modo kiosco: no hubo que hacer nada. */
+    public static synchronized void recordSkipped() {
+        skipped++;
+    }
+
+    /** Mide hasta el siguiente fotograma de la actividad desde {@code wakeElapsed}. */
+    public static void recordOnNextFrame(Activity activity, long wakeElapsed) {
+        View decorView = activity.getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                decorView.post(() -> record(SystemClock.elapsedRealtime() - wakeElapsed));
+                return true;
+            }
+        });
+        // Garantiza un recorrido aunque la ventana no tenga nada pendiente de dibujar.
+        decorView.invalidate();
+    }
+
+    static synchronized void record(long latencyMillis) {
+        wakes++;
+        lastMillis = latencyMillis;
+        maxMillis = Math.max(maxMillis, latencyMillis);
+        if (latencyMillis > Constants.LOCK_WAKE_BUDGET_MS) {
+            overBudget++;
+            MdmLog.w(TAG, "Bloqueo visible {} ms después de encender la pantalla (presupuesto {} ms).",
+                    latencyMillis, Constants.LOCK_WAKE_BUDGET_MS);
+        } else {
+            MdmLog.d(TAG, "Bloqueo visible {} ms después de encender la pantalla.", latencyMillis);
+        }
+    }
+
+    public static synchronized void addSummaryTo(Map<String, String> heartbeat) {
+        heartbeat.put("lock_wake_count", Integer.toString(wakes));
+        heartbeat.put("lock_wake_skipped", Integer.toString(skipped));
+        heartbeat.put("lock_wake_over_budget", Integer.toString(overBudget));
+        heartbeat.put("lock_wake_last_ms", Long.toString(lastMillis));
+        heartbeat.put("lock_wake_max_ms", Long.toString(maxMillis));
+    }
+}
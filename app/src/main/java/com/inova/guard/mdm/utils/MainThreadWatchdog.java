@@ -0,0 +1,73 @@
+package com.inova.guard.mdm.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * Hilo vigilante que envía un latido al hilo principal y, si no se atiende dentro del umbral,
+ * captura la pila del hilo principal y registra el bloqueo (duración total incluida) en el
+ * registro y en {@link StartupTracer}.
+ */
+public final class MainThreadWatchdog extends Thread {
+
+    private static final String TAG = "MainThreadWatchdog";
+    private static final int MAX_STACK_FRAMES = 30;
+
+    private static MainThreadWatchdog instance;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile long thresholdMillis;
+    private volatile long lastPong;
+
+    private MainThreadWatchdog(long thresholdMillis) {
+        super("inova-watchdog");
+        setDaemon(true);
+        this.thresholdMillis = thresholdMillis;
+    }
+
+    /** Inicia el vigilante (una sola vez por proceso) o actualiza su umbral. */
+    public static synchronized void start(long thresholdMillis) {
+        if (instance == null) {
+            instance = new MainThreadWatchdog(thresholdMillis);
+            instance.start();
+        } else {
+            instance.thresholdMillis = thresholdMillis;
+        }
+    }
+
+    @Override
+    public void run() {
+        long ping = 0;
+        while (!isInterrupted()) {
+            final long currentPing = ++ping;
+            long sentAt = SystemClock.uptimeMillis();
+            mainHandler.post(() -> lastPong = currentPing);
+            try {
+                Thread.sleep(thresholdMillis);
+                if (lastPong == currentPing) {
+                    continue;
+                }
+                String stack = captureMainStack();
+                // Se espera a que el hilo principal se libere para conocer la duración total.
+                while (lastPong != currentPing) {
+                    Thread.sleep(Math.max(10, thresholdMillis / 4));
+                }
+                long stalledFor = SystemClock.uptimeMillis() - sentAt;
+                StartupTracer.recordStall(stalledFor);
+                MdmLog.w(TAG, "Hilo principal bloqueado {} ms:\n{}", stalledFor, stack);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private static String captureMainStack() {
+        StackTraceElement[] frames = Looper.getMainLooper().getThread().getStackTrace();
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < frames.length && i < MAX_STACK_FRAMES; i++) {
+            builder.append("    at ").append(frames[i]).append('\n');
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,268 @@
+package com.inova.guard.mdm.utils;
+
+import android.util.Log;
+
+import com.inova.guard.mdm.BuildConfig;
+
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Registro estructurado de bajo coste para los caminos que se ejecutan en cada ciclo.
+ *
+ * <ul>
+ * <li>Los mensajes usan marcadores {@code {}} y se formatean solo si el nivel está activo.</li>
+ * <li>Hay sobrecargas con argumentos {@code long} para que un nivel desactivado no reserve memoria
+ * (ni siquiera para el boxing).</li>
+ * <li>{@link #COMPILED_MIN_LEVEL} es una constante de compilación: en release R8 elimina por completo
+ * las llamadas por debajo de INFO.</li>
+ * <li>Todo lo que se registra se copia a un búfer circular binario en memoria que puede volcarse con
+ * {@link #dump()}.</li>
+ * </ul>
+ */
+public final class MdmLog {
+
+    public static final int VERBOSE = Log.VERBOSE;
+    public static final int DEBUG = Log.DEBUG;
+    public static final int INFO = Log.INFO;
+    public static final int WARN = Log.WARN;
+    public static final int ERROR = Log.ERROR;
+
+    /** Nivel mínimo fijado al compilar. */
+    public static final int COMPILED_MIN_LEVEL = BuildConfig.DEBUG ? VERBOSE : INFO;
+
+    private static final int RING_CAPACITY = 64 * 1024;
+    private static final int RECORD_HEADER = 2 + 1 + 8 + 1;
+    private static final int MAX_MESSAGE_BYTES = 1024;
+
+    private static volatile int minLevel = COMPILED_MIN_LEVEL;
+
+    private static final byte[] ring = new byte[RING_CAPACITY];
+    private static int ringHead;
+    private static int ringTail;
+    private static int ringUsed;
+
+    private static final ThreadLocal<StringBuilder> FORMAT_BUFFER = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    };
+
+    private MdmLog() {
+    }
+
+    /** Sube (o baja, sin pasar de {@link #COMPILED_MIN_LEVEL}) el nivel mínimo en tiempo de ejecución. */
+    public static void setMinLevel(int level) {
+        minLevel = Math.max(level, COMPILED_MIN_LEVEL);
+    }
+
+    public static boolean isEnabled(int level) {
+        return level >= COMPILED_MIN_LEVEL && level >= minLevel;
+    }
+
+    // --- DEBUG ---
+
+    public static void d(String tag, String message) {
+        if (isEnabled(DEBUG)) write(DEBUG, tag, message, 0, null, null, null);
+    }
+
+    public static void d(String tag, String format, Object a) {
+        if (isEnabled(DEBUG)) write(DEBUG, tag, format, 1, a, null, null);
+    }
+
+    public static void d(String tag, String format, long a) {
+        if (isEnabled(DEBUG)) write(DEBUG, tag, format, 1, a, null, null);
+    }
+
+    public static void d(String tag, String format, Object a, Object b) {
+        if (isEnabled(DEBUG)) write(DEBUG, tag, format, 2, a, b, null);
+    }
+
+    public static void d(String tag, String format, long a, long b) {
+        if (isEnabled(DEBUG)) write(DEBUG, tag, format, 2, a, b, null);
+    }
+
+    public static void d(String tag, String format, Object a, Object b, Object c) {
+        if (isEnabled(DEBUG)) write(DEBUG, tag, format, 3, a, b, c);
+    }
+
+    // --- INFO ---
+
+    public static void i(String tag, String message) {
+        if (isEnabled(INFO)) write(INFO, tag, message, 0, null, null, null);
+    }
+
+    public static void i(String tag, String format, Object a) {
+        if (isEnabled(INFO)) write(INFO, tag, format, 1, a, null, null);
+    }
+
+    public static void i(String tag, String format, long a) {
+        if (isEnabled(INFO)) write(INFO, tag, format, 1, a, null, null);
+    }
+
+    public static void i(String tag, String format, Object a, Object b) {
+        if (isEnabled(INFO)) write(INFO, tag, format, 2, a, b, null);
+    }
+
+    // --- WARN ---
+
+    public static void w(String tag, String message) {
+        if (isEnabled(WARN)) write(WARN, tag, message, 0, null, null, null);
+    }
+
+    public static void w(String tag, String format, Object a) {
+        if (isEnabled(WARN)) write(WARN, tag, format, 1, a, null, null);
+    }
+
+    public static void w(String tag, String format, Object a, Object b) {
+        if (isEnabled(WARN)) write(WARN, tag, format, 2, a, b, null);
+    }
+
+    public static void w(String tag, String format, Object a, Object b, Object c) {
+        if (isEnabled(WARN)) write(WARN, tag, format, 3, a, b, c);
+    }
+
+    // --- ERROR ---
+
+    public static void e(String tag, String message) {
+        if (isEnabled(ERROR)) write(ERROR, tag, message, 0, null, null, null);
+    }
+
+    public static void e(String tag, String format, Object a) {
+        if (isEnabled(ERROR)) write(ERROR, tag, format, 1, a, null, null);
+    }
+
+    public static void e(String tag, String format, Object a, Object b) {
+        if (isEnabled(ERROR)) write(ERROR, tag, format, 2, a, b, null);
+    }
+
+    public static void e(String tag, String message, Throwable throwable) {
+        if (isEnabled(ERROR)) write(ERROR, tag, message + '\n' + Log.getStackTraceString(throwable), 0, null, null, null);
+    }
+
+    private static void write(int level, String tag, String format, int argCount, Object a, Object b, Object c) {
+        StringBuilder builder = FORMAT_BUFFER.get();
+        builder.setLength(0);
+        int arg = 0;
+        int start = 0;
+        int marker;
+        while (arg < argCount && (marker = format.indexOf("{}", start)) >= 0) {
+            builder.append(format, start, marker);
+            builder.append(arg == 0 ? a : arg == 1 ? b : c);
+            start = marker + 2;
+            arg++;
+        }
+        builder.append(format, start, format.length());
+
+        appendToRing(level, tag, builder, System.currentTimeMillis());
+        Log.println(level, tag, builder.toString());
+    }
+
+    private static synchronized void appendToRing(int level, String tag, CharSequence message, long timestamp) {
+        int tagBytes = Math.min(utf8Length(tag), 255);
+        int messageBytes = Math.min(utf8Length(message), MAX_MESSAGE_BYTES);
+        int length = RECORD_HEADER + tagBytes + messageBytes;
+        while (RING_CAPACITY - ringUsed < length) {
+            int oldest = ((ring[ringTail] & 0xff) << 8) | (ring[(ringTail + 1) % RING_CAPACITY] & 0xff);
+            ringTail = (ringTail + oldest) % RING_CAPACITY;
+            ringUsed -= oldest;
+        }
+        put((byte) (length >>> 8));
+        put((byte) length);
+        put((byte) level);
+        for (int i = 56; i >= 0; i -= 8) {
+            put((byte) (timestamp >>> i));
+        }
+        put((byte) tagBytes);
+        putUtf8(tag, tagBytes);
+        putUtf8(message, messageBytes);
+        ringUsed += length;
+    }
+
+    private static void put(byte value) {
+        ring[ringHead] = value;
+        ringHead = (ringHead + 1) % RING_CAPACITY;
+    }
+
+    /** Escribe como máximo {@code maxBytes} bytes UTF-8 sin crear objetos intermedios. */
+    private static void putUtf8(CharSequence text, int maxBytes) {
+        int written = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (ch < 0x80) {
+                if (written + 1 > maxBytes) break;
+                put((byte) ch);
+                written += 1;
+            } else if (ch < 0x800 || Character.isSurrogate(ch)) {
+                // Los sustitutos se guardan como '?' para mantener el cálculo sencillo.
+                if (Character.isSurrogate(ch)) {
+                    if (written + 1 > maxBytes) break;
+                    put((byte) '?');
+                    written += 1;
+                    continue;
+                }
+                if (written + 2 > maxBytes) break;
+                put((byte) (0xc0 | (ch >> 6)));
+                put((byte) (0x80 | (ch & 0x3f)));
+                written += 2;
+            } else {
+                if (written + 3 > maxBytes) break;
+                put((byte) (0xe0 | (ch >> 12)));
+                put((byte) (0x80 | ((ch >> 6) & 0x3f)));
+                put((byte) (0x80 | (ch & 0x3f)));
+                written += 3;
+            }
+        }
+        // Relleno si se cortó a mitad de un carácter multibyte.
+        while (written < maxBytes) {
+            put((byte) ' ');
+            written++;
+        }
+    }
+
+    private static int utf8Length(CharSequence text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            length += ch < 0x80 || Character.isSurrogate(ch) ? 1 : ch < 0x800 ? 2 : 3;
+        }
+        return length;
+    }
+
+    /** Copia del búfer circular, del registro más antiguo al más reciente. */
+    public static synchronized byte[] snapshotRing() {
+        byte[] copy = new byte[ringUsed];
+        for (int i = 0; i < ringUsed; i++) {
+            copy[i] = ring[(ringTail + i) % RING_CAPACITY];
+        }
+        return copy;
+    }
+
+    /** Vuelca el búfer circular como texto legible, una línea por registro. */
+    public static String dump() {
+        byte[] data = snapshotRing();
+        SimpleDateFormat format = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US);
+        StringBuilder out = new StringBuilder(data.length + data.length / 4);
+        int position = 0;
+        while (position + RECORD_HEADER <= data.length) {
+            int length = ((data[position] & 0xff) << 8) | (data[position + 1] & 0xff);
+            int level = data[position + 2];
+            long timestamp = 0;
+            for (int i = 0; i < 8; i++) {
+                timestamp = (timestamp << 8) | (data[position + 3 + i] & 0xff);
+            }
+            int tagBytes = data[position + 11] & 0xff;
+            int textStart = position + RECORD_HEADER;
+            out.append(format.format(new Date(timestamp))).append(' ')
+                    .append("VDIWE".charAt(Math.max(0, Math.min(4, level - VERBOSE)))).append('/')
+                    .append(new String(data, textStart, tagBytes, StandardCharsets.UTF_8)).append(": ")
+                    .append(new String(data, textStart + tagBytes, length - RECORD_HEADER - tagBytes, StandardCharsets.UTF_8).trim())
+                    .append('\n');
+            position += length;
+        }
+        return out.toString();
+    }
+}
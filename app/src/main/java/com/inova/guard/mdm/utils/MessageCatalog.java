@@ -0,0 +1,215 @@
+package com.inova.guard.mdm.utils;
+
+import android.content.Context;
+import android.util.AtomicFile;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Catálogo local de plantillas de mensajes (ver {@link MessageTemplates}), para que el servidor no
+ * repita el mismo texto a miles de dispositivos.
+ *
+ * <p>En lugar de un campo de texto (p. ej. {@code message}) el servidor puede enviar
+ * {@code message_template} con el identificador y {@code message_params} con un objeto JSON de
+ * parámetros, tanto en los push como en la respuesta de estado. Si la plantilla no está en el
+ * catálogo se usa el texto completo, si vino. La respuesta de estado anuncia
+ * {@code message_catalog_version}; el catálogo se descarga una vez por versión y por idioma del
+ * dispositivo y se guarda con {@link AtomicFile}.
+ *
+ * <p>Los contadores de plantillas usadas, no encontradas y bytes ahorrados son del proceso y se
+ * envían con el heartbeat.
+ */
+public final class MessageCatalog {
+
+    private static final String TAG = "MessageCatalog";
+    private static final String FILE_NAME = "message_catalog.json";
+
+    private static volatile MessageCatalog instance;
+
+    private final Context context;
+    private final AtomicFile file;
+    private final AtomicBoolean fetching = new AtomicBoolean(false);
+    private volatile MessageTemplates current;
+
+    private int renders;
+    private int misses;
+    private long bytesSaved;
+
+    private MessageCatalog(Context context) {
+        this.context = context.getApplicationContext();
+        this.file = new AtomicFile(new File(this.context.getFilesDir(), FILE_NAME));
+        this.current = load();
+    }
+
+    public static MessageCatalog get(Context context) {
+        if (instance == null) {
+            synchronized (MessageCatalog.class) {
+                if (instance == null) {
+                    instance = new MessageCatalog(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    public MessageTemplates getCurrent() {
+        return current;
+    }
+
+    /**
+     * Texto del campo {@code field} de una respuesta JSON, resolviendo la plantilla si la trae.
+     * Devuelve {@code null} si la respuesta no trae ni texto ni una plantilla utilizable, para
+     * conservar el valor guardado.
+     */
+    public String resolve(JSONObject json, String field) {
+        // optString también devuelve el objeto de parámetros serializado, tal como llegó.
+        return resolve(json.has(field) ? json.optString(field) : null,
+                json.optString(field + "_template", ""), json.optString(field + "_params", ""));
+    }
+
+    /** Igual que {@link #resolve(JSONObject, String)} para los datos de un push. */
+    public String resolve(Map<String, String> data, String field) {
+        String templateId = data.get(field + "_template");
+        String params = data.get(field + "_params");
+        return resolve(data.get(field), templateId != null ? templateId : "", params != null ? params : "");
+    }
+
+    private String resolve(String text, String templateId, String rawParams) {
+        if (templateId.isEmpty()) {
+            return text;
+        }
+        String rendered = current.render(templateId, parseParams(rawParams));
+        synchronized (this) {
+            if (rendered != null) {
+                renders++;
+                bytesSaved += MessageTemplates.savedBytes(rendered, templateId, rawParams);
+                return rendered;
+            }
+            misses++;
+        }
+        MdmLog.w(TAG, "Plantilla {} no disponible en el catálogo v{}.", templateId, current.getVersion());
+        return text != null && !text.isEmpty() ? text : null;
+    }
+
+    /** Descarga el catálogo si el servidor anuncia una versión nueva o cambió el idioma. */
+    public void onStatusResponse(String serialNumber, JSONObject response) {
+        int advertised = response.optInt("message_catalog_version", 0);
+        String language = Locale.getDefault().getLanguage();
+        MessageTemplates templates = current;
+        if (advertised <= 0 || (advertised <= templates.getVersion() && language.equals(templates.getLanguage()))) {
+            return;
+        }
+        if (!fetching.compareAndSet(false, true)) {
+            return;
+        }
+        MdmLog.d(TAG, "Descargando catálogo de mensajes v{} ({}).", advertised, language);
+        ApiUtils.fetchMessageCatalog(context, serialNumber, language, new ApiUtils.ApiCallback() {
+            @Override
+            public void onSuccess(String body) {
+                AppExecutors.background().execute(() -> {
+                    try {
+                        apply(language, body);
+                    } finally {
+                        fetching.set(false);
+                    }
+                });
+            }
+
+            @Override
+            public void onFailure(String errorMessage) {
+                MdmLog.e(TAG, "No se pudo descargar el catálogo de mensajes: {}", errorMessage);
+                fetching.set(false);
+            }
+        });
+    }
+
+    public void addSummaryTo(Map<String, String> heartbeat) {
+        heartbeat.put("message_catalog_version", Integer.toString(current.getVersion()));
+        synchronized (this) {
+            heartbeat.put("template_renders", Integer.toString(renders));
+            heartbeat.put("template_misses", Integer.toString(misses));
+            heartbeat.put("template_bytes_saved", Long.toString(bytesSaved));
+        }
+    }
+
+    private void apply(String language, String body) {
+        MessageTemplates parsed;
+        JSONObject stored;
+        try {
+            stored = new JSONObject(body);
+            // Se guarda el idioma pedido: si el servidor responde con otro, no se vuelve a pedir.
+            stored.put("language", language);
+            parsed = parse(stored);
+        } catch (JSONException e) {
+            MdmLog.e(TAG, "Catálogo de mensajes descartado: {}", e.getMessage());
+            return;
+        }
+        FileOutputStream out = null;
+        try {
+            out = file.startWrite();
+            out.write(stored.toString().getBytes(StandardCharsets.UTF_8));
+            file.finishWrite(out);
+        } catch (IOException e) {
+            MdmLog.e(TAG, "No se pudo guardar el catálogo de mensajes: {}", e.getMessage());
+            if (out != null) {
+                file.failWrite(out);
+            }
+            return;
+        }
+        current = parsed;
+        MdmLog.i(TAG, "Catálogo de mensajes v{} con {} plantillas.", parsed.getVersion(), parsed.size());
+    }
+
+    private static MessageTemplates parse(JSONObject json) throws JSONException {
+        JSONObject templatesJson = json.getJSONObject("templates");
+        Map<String, String> templates = new HashMap<>();
+        Iterator<String> keys = templatesJson.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            templates.put(key, templatesJson.getString(key));
+        }
+        return new MessageTemplates(json.getInt("version"), json.optString("language", ""), templates);
+    }
+
+    private static Map<String, String> parseParams(String rawParams) {
+        Map<String, String> params = new HashMap<>();
+        if (rawParams.isEmpty()) {
+            return params;
+        }
+        try {
+            JSONObject json = new JSONObject(rawParams);
+            Iterator<String> keys = json.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                params.put(key, json.optString(key));
+            }
+        } catch (JSONException e) {
+            MdmLog.w(TAG, "Parámetros de plantilla inválidos: {}", e.getMessage());
+        }
+        return params;
+    }
+
+    private MessageTemplates load() {
+        try {
+            return parse(new JSONObject(new String(file.readFully(), StandardCharsets.UTF_8)));
+        } catch (FileNotFoundException e) {
+            return MessageTemplates.empty();
+        } catch (IOException | JSONException e) {
+            MdmLog.e(TAG, "Catálogo de mensajes en caché inválido: {}", e.getMessage());
+            file.delete();
+            return MessageTemplates.empty();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.inova.guard.mdm.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Catálogo inmutable de plantillas de mensajes, en un idioma y con una versión. Cada plantilla es
+ * un texto con marcadores {@code {nombre}} que se sustituyen por los parámetros que envía el
+ * servidor, p. ej. {@code "Su cuota de {amount} vence el {date}."}.
+ */
+public final class MessageTemplates {
+
+    private static final MessageTemplates EMPTY = new MessageTemplates(0, "", Collections.emptyMap());
+
+    private final int version;
+    private final String language;
+    private final Map<String, String> templates;
+
+    public MessageTemplates(int version, String language, Map<String, String> templates) {
+        this.version = version;
+        this.language = language;
+        this.templates = Collections.unmodifiableMap(templates);
+    }
+
+    /** Catálogo vacío (versión 0), usado hasta descargar el primero. */
+    public static MessageTemplates empty() {
+        return EMPTY;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    public int size() {
+        return templates.size();
+    }
+
+    /**
+     * Texto de la plantilla con los parámetros sustituidos, o {@code null} si la plantilla no está
+     * en el catálogo o le falta algún parámetro; en ese caso se usa el texto completo si vino.
+     */
+    public String render(String id, Map<String, String> params) {
+        String template = templates.get(id);
+        return template == null ? null : format(template, params);
+    }
+
+    /**
+     * Sustituye los marcadores {@code {nombre}} (letras, dígitos y guion bajo). Las llaves que no
+     * forman un marcador se dejan tal cual; un marcador sin parámetro devuelve {@code null}.
+     */
+    static String format(String template, Map<String, String> params) {
+        StringBuilder result = new StringBuilder(template.length() + 32);
+        int i = 0;
+        while (i < template.length()) {
+            char c = template.charAt(i);
+            int end = c == '{' ? placeholderEnd(template, i + 1) : -1;
+            if (end < 0) {
+                result.append(c);
+                i++;
+                continue;
+            }
+            String value = params.get(template.substring(i + 1, end));
+            if (value == null) {
+                return null;
+            }
+            result.append(value);
+            i = end + 1;
+        }
+        return result.toString();
+    }
+
+    private static int placeholderEnd(String template, int start) {
+        int i = start;
+        while (i < template.length()) {
+            char c = template.charAt(i);
+            if (c == '}') {
+                return i > start ? i : -1;
+            }
+            if (!(Character.isLetterOrDigit(c) || c == '_')) {
+                return -1;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     * Bytes que no viajaron gracias a la plantilla: el texto final frente al identificador más
+     * los parámetros tal como llegaron. Puede ser negativo si la plantilla no compensa.
+     */
+    public static long savedBytes(String rendered, String id, String rawParams) {
+        return utf8Length(rendered) - utf8Length(id) - utf8Length(rawParams);
+    }
+
+    private static int utf8Length(String value) {
+        return value == null ? 0 : value.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
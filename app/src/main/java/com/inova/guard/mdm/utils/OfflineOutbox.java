@@ -0,0 +1,131 @@
+package com.inova.guard.mdm.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Cola persistente de reportes que deben llegar al servidor aunque el dispositivo esté sin
+ * conexión (por ejemplo, la confirmación de un desbloqueo con código sin red).
+ * Los reportes se envían en orden cuando vuelve la conectividad y se eliminan solo cuando el
+ * servidor los confirma.
+ */
+public final class OfflineOutbox {
+
+    private static final String TAG = "OfflineOutbox";
+    private static final int MAX_ENTRIES = 100;
+    private static final Object LOCK = new Object();
+    private static final AtomicBoolean flushing = new AtomicBoolean(false);
+
+    private OfflineOutbox() {
+    }
+
+    /** Encola un POST JSON a {@code path} (relativo a la URL base). */
+    public static void enqueue(Context context, String path, JSONObject payload) {
+        synchronized (LOCK) {
+            SharedPreferences prefs = context.getSharedPreferences(Constants.PREFS_NAME, Context.MODE_PRIVATE);
+            JSONArray entries = read(prefs);
+            try {
+                JSONObject entry = new JSONObject();
+                entry.put("id", UUID.randomUUID().toString());
+                entry.put("path", path);
+                entry.put("payload", payload);
+                entry.put("created_at", System.currentTimeMillis());
+                entries.put(entry);
+            } catch (JSONException e) {
+                Log.e(TAG, "No se pudo encolar el reporte: " + e.getMessage());
+                return;
+            }
+            while (entries.length() > MAX_ENTRIES) {
+                Log.w(TAG, "Bandeja de salida llena. Descartando el reporte más antiguo.");
+                entries.remove(0);
+            }
+            prefs.edit().putString(Constants.PREF_OUTBOX, entries.toString()).apply();
+        }
+    }
+
+    public static int size(Context context) {
+        synchronized (LOCK) {
+            return read(context.getSharedPreferences(Constants.PREFS_NAME, Context.MODE_PRIVATE)).length();
+        }
+    }
+
+    /** Envía los reportes pendientes uno a uno; se detiene en el primer fallo. */
+    public static void flush(Context context) {
+        if (!flushing.compareAndSet(false, true)) {
+            return;
+        }
+        sendNext(context.getApplicationContext());
+    }
+
+    private static void sendNext(Context context) {
+        final JSONObject entry;
+        synchronized (LOCK) {
+            JSONArray entries = read(context.getSharedPreferences(Constants.PREFS_NAME, Context.MODE_PRIVATE));
+            entry = entries.length() > 0 ? entries.optJSONObject(0) : null;
+        }
+        if (entry == null) {
+            flushing.set(false);
+            return;
+        }
+        final String id = entry.optString("id");
+        JSONObject payload = entry.optJSONObject("payload");
+        if (payload == null) {
+            payload = new JSONObject();
+        }
+        try {
+            payload.put("outbox_id", id);
+            payload.put("created_at", entry.optLong("created_at"));
+        } catch (JSONException e) {
+            Log.e(TAG, "Error preparando el reporte " + id + ": " + e.getMessage());
+        }
+        ApiUtils.postJson(context, entry.optString("path"), payload, new ApiUtils.ApiCallback() {
+            @Override
+            public void onSuccess(String response) {
+                remove(context, id);
+                sendNext(context);
+            }
+
+            @Override
+            public void onFailure(String errorMessage) {
+                Log.w(TAG, "Reporte " + id + " pendiente: " + errorMessage);
+                flushing.set(false);
+            }
+        });
+    }
+
+    private static void remove(Context context, String id) {
+        synchronized (LOCK) {
+            SharedPreferences prefs = context.getSharedPreferences(Constants.PREFS_NAME, Context.MODE_PRIVATE);
+            JSONArray entries = read(prefs);
+            for (int i = 0; i < entries.length(); i++) {
+                JSONObject entry = entries.optJSONObject(i);
+                if (entry != null && id.equals(entry.optString("id"))) {
+                    entries.remove(i);
+                    break;
+                }
+            }
+            prefs.edit().putString(Constants.PREF_OUTBOX, entries.toString()).apply();
+        }
+    }
+
+    private static JSONArray read(SharedPreferences prefs) {
+        String raw = prefs.getString(Constants.PREF_OUTBOX, null);
+        if (raw == null || raw.isEmpty()) {
+            return new JSONArray();
+        }
+        try {
+            return new JSONArray(raw);
+        } catch (JSONException e) {
+            Log.e(TAG, "Bandeja de salida corrupta. Se descarta: " + e.getMessage());
+            return new JSONArray();
+        }
+    }
+}
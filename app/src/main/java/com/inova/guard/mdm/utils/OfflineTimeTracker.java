@@ -0,0 +1,190 @@
+package com.inova.guard.mdm.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.provider.Settings;
+
+/**
+ * Contabiliza de forma persistente el tiempo que el dispositivo lleva sin confirmar conexión
+ * con el servidor. Dentro de un mismo arranque usa {@code elapsedRealtime}, que es monótono y no
+ * se ve afectado por cambios de hora; al detectar un reinicio (contador de arranques distinto)
+ * acumula el tiempo fuera de línea del arranque anterior más el tiempo que estuvo apagado.
+ */
+public class OfflineTimeTracker {
+
+    /** Fuente de tiempo; en pruebas se sustituye por un reloj virtual. */
+    public interface Clock {
+        long elapsedRealtime();
+
+        long currentTimeMillis();
+
+        /** Número de arranques del sistema, o -1 si no está disponible. */
+        int bootCount();
+    }
+
+    /** Almacenamiento del estado entre reinicios. */
+    public interface Store {
+        long getLong(String key, long defaultValue);
+
+        void putLongs(String[] keys, long[] values);
+    }
+
+    static final String KEY_BOOT_COUNT = "offline_boot_count";
+    static final String KEY_CONNECTED_ELAPSED = "offline_connected_elapsed";
+    static final String KEY_CARRIED_MS = "offline_carried_ms";
+    static final String KEY_CHECKPOINT_ELAPSED = "offline_checkpoint_elapsed";
+    static final String KEY_CHECKPOINT_WALL = "offline_checkpoint_wall";
+
+    private static final long UNSET = Long.MIN_VALUE;
+
+    private static volatile OfflineTimeTracker instance;
+
+    private final Clock clock;
+    private final Store store;
+
+    private long bootCount;
+    // elapsedRealtime de la última conexión en este arranque; -1 si ocurrió en un arranque anterior.
+    private long connectedElapsed;
+    // Tiempo sin conexión acumulado en arranques anteriores.
+    private long carriedMs;
+    private long checkpointElapsed;
+    private long checkpointWall;
+
+    public OfflineTimeTracker(Clock clock, Store store) {
+        this.clock = clock;
+        this.store = store;
+        load();
+    }
+
+    /**
+     * Instancia compartida del proceso. Debe ser única: cada instancia guarda su propio estado en
+     * las preferencias y dos a la vez se sobrescribirían los puntos de control.
+     */
+    public static OfflineTimeTracker get(Context context) {
+        if (instance == null) {
+            synchronized (OfflineTimeTracker.class) {
+                if (instance == null) {
+                    instance = create(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    private static OfflineTimeTracker create(Context context) {
+        final Context appContext = context.getApplicationContext();
+        final SharedPreferences prefs = appContext.getSharedPreferences(Constants.PREFS_NAME, Context.MODE_PRIVATE);
+        Clock clock = new Clock() {
+            @Override
+            public long elapsedRealtime() {
+                return SystemClock.elapsedRealtime();
+            }
+
+            @Override
+            public long currentTimeMillis() {
+                return System.currentTimeMillis();
+            }
+
+            @Override
+            public int bootCount() {
+                return Settings.Global.getInt(appContext.getContentResolver(), Settings.Global.BOOT_COUNT, -1);
+            }
+        };
+        Store store = new Store() {
+            @Override
+            public long getLong(String key, long defaultValue) {
+                return prefs.getLong(key, defaultValue);
+            }
+
+            @Override
+            public void putLongs(String[] keys, long[] values) {
+                SharedPreferences.Editor editor = prefs.edit();
+                for (int i = 0; i < keys.length; i++) {
+                    editor.putLong(keys[i], values[i]);
+                }
+                editor.apply();
+            }
+        };
+        return new OfflineTimeTracker(clock, store);
+    }
+
+    /** Registra que el servidor respondió: el contador vuelve a cero. */
+    public synchronized void markConnected() {
+        syncBoot();
+        connectedElapsed = clock.elapsedRealtime();
+        carriedMs = 0;
+        checkpoint();
+    }
+
+    /** Milisegundos acumulados sin conexión confirmada. */
+    public synchronized long getOfflineMillis() {
+        syncBoot();
+        long base = connectedElapsed >= 0 ? connectedElapsed : 0;
+        return carriedMs + Math.max(0, clock.elapsedRealtime() - base);
+    }
+
+    /**
+     * Momento, en la base de tiempo de {@code elapsedRealtime}, en el que se alcanzará el umbral
+     * de bloqueo si no vuelve la conexión.
+     */
+    public synchronized long getDeadlineElapsed(long thresholdMillis) {
+        long remaining = Math.max(0, thresholdMillis - getOfflineMillis());
+        return clock.elapsedRealtime() + remaining;
+    }
+
+    /**
+     * Guarda el instante actual como punto de control. Si el proceso muere sin avisar, el tiempo
+     * posterior al último punto de control se recupera con la hora de pared al siguiente arranque.
+     */
+    public synchronized void checkpoint() {
+        syncBoot();
+        checkpointElapsed = clock.elapsedRealtime();
+        checkpointWall = clock.currentTimeMillis();
+        save();
+    }
+
+    private void syncBoot() {
+        int currentBoot = clock.bootCount();
+        long nowElapsed = clock.elapsedRealtime();
+        if (bootCount == UNSET) {
+            // Primera ejecución: empezamos a contar desde ahora.
+            bootCount = currentBoot;
+            connectedElapsed = nowElapsed;
+            carriedMs = 0;
+            checkpointElapsed = nowElapsed;
+            checkpointWall = clock.currentTimeMillis();
+            save();
+            return;
+        }
+        boolean rebooted = currentBoot >= 0 ? currentBoot != bootCount : nowElapsed < checkpointElapsed;
+        if (!rebooted) {
+            return;
+        }
+        long base = connectedElapsed >= 0 ? connectedElapsed : 0;
+        long offlineBeforeShutdown = Math.max(0, checkpointElapsed - base);
+        long bootWall = clock.currentTimeMillis() - nowElapsed;
+        // Si la hora de pared retrocedió no descontamos nada: nunca reducimos el tiempo acumulado.
+        long poweredOff = Math.max(0, bootWall - checkpointWall);
+        carriedMs += offlineBeforeShutdown + poweredOff;
+        connectedElapsed = -1;
+        bootCount = currentBoot;
+        checkpointElapsed = nowElapsed;
+        checkpointWall = clock.currentTimeMillis();
+        save();
+    }
+
+    private void load() {
+        bootCount = store.getLong(KEY_BOOT_COUNT, UNSET);
+        connectedElapsed = store.getLong(KEY_CONNECTED_ELAPSED, -1);
+        carriedMs = store.getLong(KEY_CARRIED_MS, 0);
+        checkpointElapsed = store.getLong(KEY_CHECKPOINT_ELAPSED, 0);
+        checkpointWall = store.getLong(KEY_CHECKPOINT_WALL, 0);
+    }
+
+    private void save() {
+        store.putLongs(
+                new String[]{KEY_BOOT_COUNT, KEY_CONNECTED_ELAPSED, KEY_CARRIED_MS, KEY_CHECKPOINT_ELAPSED, KEY_CHECKPOINT_WALL},
+                new long[]{bootCount, connectedElapsed, carriedMs, checkpointElapsed, checkpointWall});
+    }
+}
@@ -0,0 +1,142 @@
+package com.inova.guard.mdm.utils;
+
+import android.content.SharedPreferences;
+import android.util.Base64;
+import android.util.Log;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Verifica localmente los códigos de desbloqueo introducidos en la pantalla de bloqueo.
+ * Acepta el código rotativo derivado del secreto aprovisionado por el servidor y, como respaldo,
+ * el último código entregado por FCM. Lleva la cuenta de intentos fallidos para limitar los
+ * ataques de fuerza bruta y recuerda el último paso aceptado para impedir reutilizar un código.
+ * Los intentos fallidos caducan: se perdona uno por cada {@link Constants#UNLOCK_FAILURE_DECAY_MS}
+ * sin fallos, de modo que los errores esporádicos no terminan en un bloqueo permanente.
+ */
+public class OfflineUnlockVerifier {
+
+    private static final String TAG = "OfflineUnlockVerifier";
+
+    public enum Result {
+        /** Código rotativo válido. */
+        ACCEPTED,
+        /** Coincide con el código entregado por el servidor (FCM). */
+        ACCEPTED_SERVER_CODE,
+        /** Código correcto pero de un paso ya usado. */
+        REPLAYED,
+        REJECTED,
+        THROTTLED
+    }
+
+    private final SharedPreferences sharedPreferences;
+    private final UnlockCodeGenerator fixedGenerator;
+    private long lastAcceptedStep = -1;
+
+    public OfflineUnlockVerifier(SharedPreferences sharedPreferences) {
+        this(sharedPreferences, null);
+    }
+
+    /** Con un generador fijo en lugar del secreto guardado; para pruebas. */
+    OfflineUnlockVerifier(SharedPreferences sharedPreferences, UnlockCodeGenerator fixedGenerator) {
+        this.sharedPreferences = sharedPreferences;
+        this.fixedGenerator = fixedGenerator;
+    }
+
+    /** Milisegundos que faltan para poder volver a intentar, o 0 si no hay bloqueo. */
+    public long getRemainingLockoutMillis(long nowMillis) {
+        long lockoutUntil = sharedPreferences.getLong(Constants.PREF_UNLOCK_LOCKOUT_UNTIL, 0);
+        return Math.max(0, lockoutUntil - nowMillis);
+    }
+
+    /** Intentos fallidos que siguen contando, descontados los periodos sin fallos. */
+    public int getFailedAttempts(long nowMillis) {
+        int failures = sharedPreferences.getInt(Constants.PREF_UNLOCK_FAILED_ATTEMPTS, 0);
+        long lastFailureAt = sharedPreferences.getLong(Constants.PREF_UNLOCK_LAST_FAILURE_AT, 0);
+        if (failures <= 0 || lastFailureAt <= 0 || nowMillis <= lastFailureAt) {
+            return Math.max(0, failures);
+        }
+        long forgiven = (nowMillis - lastFailureAt) / Constants.UNLOCK_FAILURE_DECAY_MS;
+        return (int) Math.max(0, failures - forgiven);
+    }
+
+    /** Paso TOTP aceptado en la última verificación exitosa, o -1 si fue el código del servidor. */
+    public long getLastAcceptedStep() {
+        return lastAcceptedStep;
+    }
+
+    public Result verify(String enteredCode, long nowMillis) {
+        if (getRemainingLockoutMillis(nowMillis) > 0) {
+            return Result.THROTTLED;
+        }
+        lastAcceptedStep = -1;
+
+        UnlockCodeGenerator generator = createGenerator();
+        if (generator != null && enteredCode.length() == Constants.UNLOCK_CODE_DIGITS) {
+            long step = generator.match(enteredCode, nowMillis,
+                    Constants.UNLOCK_CODE_STEPS_BACK, Constants.UNLOCK_CODE_STEPS_FORWARD);
+            if (step >= 0) {
+                long previousStep = sharedPreferences.getLong(Constants.PREF_UNLOCK_LAST_STEP, -1);
+                if (step <= previousStep) {
+                    Log.w(TAG, "Código rotativo ya utilizado (paso " + step + ").");
+                    recordFailure(nowMillis);
+                    return Result.REPLAYED;
+                }
+                lastAcceptedStep = step;
+                sharedPreferences.edit()
+                        .putLong(Constants.PREF_UNLOCK_LAST_STEP, step)
+                        .putInt(Constants.PREF_UNLOCK_FAILED_ATTEMPTS, 0)
+                        .putLong(Constants.PREF_UNLOCK_LOCKOUT_UNTIL, 0)
+                        .apply();
+                return Result.ACCEPTED;
+            }
+        }
+
+        String serverCode = sharedPreferences.getString(Constants.PREF_UNLOCK_CODE, "");
+        if (serverCode != null && !serverCode.isEmpty() && MessageDigest.isEqual(
+                enteredCode.getBytes(StandardCharsets.UTF_8), serverCode.getBytes(StandardCharsets.UTF_8))) {
+            // El código del servidor es de un solo uso.
+            sharedPreferences.edit()
+                    .remove(Constants.PREF_UNLOCK_CODE)
+                    .putInt(Constants.PREF_UNLOCK_FAILED_ATTEMPTS, 0)
+                    .putLong(Constants.PREF_UNLOCK_LOCKOUT_UNTIL, 0)
+                    .apply();
+            return Result.ACCEPTED_SERVER_CODE;
+        }
+
+        recordFailure(nowMillis);
+        return Result.REJECTED;
+    }
+
+    private void recordFailure(long nowMillis) {
+        int failures = getFailedAttempts(nowMillis) + 1;
+        SharedPreferences.Editor editor = sharedPreferences.edit()
+                .putInt(Constants.PREF_UNLOCK_FAILED_ATTEMPTS, failures)
+                .putLong(Constants.PREF_UNLOCK_LAST_FAILURE_AT, nowMillis);
+        if (failures >= Constants.UNLOCK_MAX_FREE_ATTEMPTS) {
+            int exponent = Math.min(failures - Constants.UNLOCK_MAX_FREE_ATTEMPTS, 16);
+            long lockout = Math.min(Constants.UNLOCK_BASE_LOCKOUT_MS << exponent, Constants.UNLOCK_MAX_LOCKOUT_MS);
+            editor.putLong(Constants.PREF_UNLOCK_LOCKOUT_UNTIL, nowMillis + lockout);
+            Log.w(TAG, "Demasiados intentos fallidos (" + failures + "). Bloqueo de " + lockout + " ms.");
+        }
+        editor.apply();
+    }
+
+    private UnlockCodeGenerator createGenerator() {
+        if (fixedGenerator != null) {
+            return fixedGenerator;
+        }
+        String encodedSecret = sharedPreferences.getString(Constants.PREF_UNLOCK_SECRET, null);
+        if (encodedSecret == null || encodedSecret.isEmpty()) {
+            return null;
+        }
+        try {
+            byte[] secret = Base64.decode(encodedSecret, Base64.DEFAULT);
+            return new UnlockCodeGenerator(secret, Constants.UNLOCK_CODE_DIGITS, Constants.UNLOCK_CODE_STEP_SECONDS);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Secreto de desbloqueo inválido: " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.inova.guard.mdm.utils;
+
+import android.content.Context;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Historial local de cuotas y pagos, de solo escritura al final.
+ *
+ * <p>El servidor numera cada movimiento con una secuencia creciente. El heartbeat envía la última
+ * secuencia guardada ({@code ledger_cursor}) y la respuesta de estado trae solo los movimientos
+ * posteriores, así que sin cambios no llega nada. Los movimientos repetidos o atrasados se ignoran.
+ * Con {@code reset} el servidor indica que el historial local ya no vale (p. ej. contrato
+ * reemitido) y se reemplaza por completo.
+ *
+ * <p>Cada línea del archivo lleva su CRC32; al abrirlo se descarta desde la primera línea dañada
+ * (una escritura cortada por un apagado), y el siguiente heartbeat vuelve a pedir lo que falte.
+ */
+public final class PaymentLedger {
+
+    private static final String TAG = "PaymentLedger";
+    private static final String FILE_NAME = "payment_ledger.log";
+
+    public static final int TYPE_INSTALLMENT = 1;
+    public static final int TYPE_PAYMENT = 2;
+
+    /** Un movimiento: cuota emitida o pago registrado. */
+    public static final class Entry {
+        public final long sequence;
+        public final int type;
+        public final String date;
+        public final String amount;
+        public final String detail;
+
+        public Entry(long sequence, int type, String date, String amount, String detail) {
+            this.sequence = sequence;
+            this.type = type;
+            this.date = date;
+            this.amount = amount;
+            this.detail = detail;
+        }
+    }
+
+    private static volatile PaymentLedger instance;
+
+    private final File file;
+    private final List<Entry> entries = new ArrayList<>();
+
+    public PaymentLedger(File file) {
+        this.file = file;
+        load();
+    }
+
+    public static PaymentLedger get(Context context) {
+        if (instance == null) {
+            synchronized (PaymentLedger.class) {
+                if (instance == null) {
+                    instance = new PaymentLedger(new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+                }
+            }
+        }
+        return instance;
+    }
+
+    /** Última secuencia guardada; 0 si el historial está vacío. */
+    public synchronized long getCursor() {
+        return entries.isEmpty() ? 0 : entries.get(entries.size() - 1).sequence;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /** Movimientos más recientes primero, como mucho {@code max}. */
+    public synchronized List<Entry> recent(int max) {
+        List<Entry> result = new ArrayList<>(Math.min(max, entries.size()));
+        for (int i = entries.size() - 1; i >= 0 && result.size() < max; i--) {
+            result.add(entries.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Añade los movimientos posteriores al cursor, en orden de secuencia. Devuelve cuántos se
+     * guardaron.
+     */
+    public synchronized int append(List<Entry> incoming) {
+        List<Entry> sorted = new ArrayList<>(incoming);
+        Collections.sort(sorted, (a, b) -> Long.compare(a.sequence, b.sequence));
+        StringBuilder lines = new StringBuilder();
+        long cursor = getCursor();
+        List<Entry> accepted = new ArrayList<>();
+        for (Entry entry : sorted) {
+            if (entry.sequence <= cursor) {
+                continue;
+            }
+            lines.append(encode(entry)).append('\n');
+            accepted.add(entry);
+            cursor = entry.sequence;
+        }
+        if (accepted.isEmpty()) {
+            return 0;
+        }
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(lines.toString().getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        } catch (IOException e) {
+            MdmLog.e(TAG, "No se pudo guardar el historial de pagos: {}", e.getMessage());
+            return 0;
+        }
+        entries.addAll(accepted);
+        return accepted.size();
+    }
+
+    /** Borra el historial local (el servidor lo reenviará entero). */
+    public synchronized void clear() {
+        entries.clear();
+        if (file.exists() && !file.delete()) {
+            MdmLog.e(TAG, "No se pudo borrar el historial de pagos.");
+        }
+    }
+
+    /** Aplica el bloque {@code ledger} de la respuesta de estado, si lo hay. */
+    public void onStatusResponse(JSONObject response) {
+        JSONObject ledger = response.optJSONObject("ledger");
+        if (ledger == null) {
+            return;
+        }
+        JSONArray array = ledger.optJSONArray("entries");
+        List<Entry> incoming = new ArrayList<>();
+        if (array != null) {
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject item = array.optJSONObject(i);
+                if (item == null || item.optLong("seq", 0) <= 0) {
+                    continue;
+                }
+                incoming.add(new Entry(item.optLong("seq"),
+                        "payment".equals(item.optString("type")) ? TYPE_PAYMENT : TYPE_INSTALLMENT,
+                        item.optString("date", ""), item.optString("amount", ""), item.optString("detail", "")));
+            }
+        }
+        synchronized (this) {
+            if (ledger.optBoolean("reset", false)) {
+                clear();
+            }
+            int added = append(incoming);
+            if (added > 0) {
+                MdmLog.d(TAG, "Historial de pagos: {} movimientos nuevos (cursor {}).", added, getCursor());
+            }
+        }
+    }
+
+    static String encode(Entry entry) {
+        String body = entry.sequence + "\t" + entry.type + "\t" + clean(entry.date) + "\t"
+                + clean(entry.amount) + "\t" + clean(entry.detail);
+        return body + "\t" + Long.toHexString(crc(body));
+    }
+
+    /** Movimiento de una línea del archivo, o {@code null} si está dañada. */
+    static Entry decode(String line) {
+        int lastTab = line.lastIndexOf('\t');
+        if (lastTab < 0) {
+            return null;
+        }
+        String body = line.substring(0, lastTab);
+        if (!Long.toHexString(crc(body)).equals(line.substring(lastTab + 1))) {
+            return null;
+        }
+        String[] fields = body.split("\t", -1);
+        if (fields.length != 5) {
+            return null;
+        }
+        try {
+            return new Entry(Long.parseLong(fields[0]), Integer.parseInt(fields[1]), fields[2], fields[3], fields[4]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        long validBytes = 0;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Entry entry = decode(line);
+                if (entry == null || (!entries.isEmpty() && entry.sequence <= getCursor())) {
+                    break;
+                }
+                entries.add(entry);
+                validBytes += line.getBytes(StandardCharsets.UTF_8).length + 1;
+            }
+        } catch (IOException e) {
+            MdmLog.e(TAG, "Error leyendo el historial de pagos: {}", e.getMessage());
+        }
+        if (validBytes < file.length()) {
+            MdmLog.w(TAG, "Historial de pagos dañado: se descarta desde el movimiento {}.", entries.size());
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(validBytes);
+            } catch (IOException e) {
+                MdmLog.e(TAG, "No se pudo recortar el historial de pagos: {}", e.getMessage());
+            }
+        }
+    }
+
+    private static String clean(String value) {
+        return value == null ? "" : value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    private static long crc(String value) {
+        CRC32 crc = new CRC32();
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        crc.update(bytes, 0, bytes.length);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,138 @@
+package com.inova.guard.mdm.utils;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Cálculo de los recordatorios de pago locales a partir de la fecha de pago y el importe
+ * pendiente que ya trae la respuesta de estado. Hay un recordatorio al día, a
+ * {@link Constants#PAYMENT_REMINDER_HOUR}, desde {@code umbral} días antes del vencimiento hasta
+ * el mismo día del vencimiento; nunca dos el mismo día. Sin pendiente no hay recordatorios.
+ *
+ * <p>Las fechas se interpretan en la zona horaria del dispositivo y los días se cuentan con
+ * {@link Calendar}, de modo que un cambio de horario de verano no desplaza la hora del aviso.
+ */
+public final class PaymentReminderPlan {
+
+    // Formato que muestra la app y formato ISO, por si el servidor cambia de uno a otro.
+    private static final String[] DATE_FORMATS = {"dd/MM/yyyy", "yyyy-MM-dd"};
+
+    private PaymentReminderPlan() {
+    }
+
+    /** Medianoche local del día de vencimiento, o -1 si la fecha no se reconoce. */
+    public static long parseDueDate(String text, TimeZone timeZone) {
+        if (text == null) {
+            return -1;
+        }
+        for (String pattern : DATE_FORMATS) {
+            SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+            format.setLenient(false);
+            format.setTimeZone(timeZone);
+            try {
+                return format.parse(text.trim()).getTime();
+            } catch (ParseException e) {
+                // Se prueba el siguiente formato.
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Si el importe pendiente indica que no hay nada que pagar. Admite símbolo de moneda y
+     * separadores ("$1,250.00", "1.250,00"); un importe ilegible no cuenta como pagado.
+     */
+    public static boolean isSettled(String amountDue) {
+        if (amountDue == null) {
+            return false;
+        }
+        String digits = amountDue.replaceAll("[^0-9.,-]", "");
+        int lastDot = digits.lastIndexOf('.');
+        int lastComma = digits.lastIndexOf(',');
+        // El último separador es el decimal; el otro, de miles.
+        if (lastComma > lastDot) {
+            digits = digits.replace(".", "").replace(',', '.');
+        } else {
+            digits = digits.replace(",", "");
+        }
+        try {
+            return Double.parseDouble(digits) <= 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Momento (hora de pared) del próximo recordatorio, o -1 si no queda ninguno antes del
+     * vencimiento. Si el de hoy aún no se mostró y su hora ya pasó, es {@code now}.
+     * {@code lastShownDay} es la medianoche del último día en que se mostró uno (0 si nunca), para
+     * no repetir el mismo día.
+     */
+    public static long nextReminderAt(long dueMidnight, int thresholdDays, int hour, long now,
+                                      long lastShownDay, TimeZone timeZone) {
+        if (dueMidnight < 0) {
+            return -1;
+        }
+        long today = startOfDay(now, timeZone);
+        Calendar day = Calendar.getInstance(timeZone);
+        day.setTimeInMillis(dueMidnight);
+        day.add(Calendar.DAY_OF_MONTH, -thresholdDays);
+        for (int i = 0; i <= thresholdDays; i++) {
+            long midnight = day.getTimeInMillis();
+            Calendar at = (Calendar) day.clone();
+            at.set(Calendar.HOUR_OF_DAY, hour);
+            if (midnight > lastShownDay && midnight >= today) {
+                return Math.max(at.getTimeInMillis(), now);
+            }
+            day.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Si ahora toca mostrar el recordatorio de hoy: hoy está dentro de la ventana, ya pasó la hora
+     * del aviso y todavía no se mostró. Las alarmas inexactas pueden llegar tarde, pero no de otro día.
+     */
+    public static boolean isDueNow(long dueMidnight, int thresholdDays, int hour, long now,
+                                   long lastShownDay, TimeZone timeZone) {
+        if (dueMidnight < 0) {
+            return false;
+        }
+        long today = startOfDay(now, timeZone);
+        if (today <= lastShownDay || today > dueMidnight) {
+            return false;
+        }
+        Calendar first = Calendar.getInstance(timeZone);
+        first.setTimeInMillis(dueMidnight);
+        first.add(Calendar.DAY_OF_MONTH, -thresholdDays);
+        Calendar at = Calendar.getInstance(timeZone);
+        at.setTimeInMillis(today);
+        at.set(Calendar.HOUR_OF_DAY, hour);
+        return today >= first.getTimeInMillis() && now >= at.getTimeInMillis();
+    }
+
+    /** Días enteros que faltan desde el día de {@code now} hasta el vencimiento. */
+    public static int daysUntil(long dueMidnight, long now, TimeZone timeZone) {
+        Calendar day = Calendar.getInstance(timeZone);
+        day.setTimeInMillis(startOfDay(now, timeZone));
+        int days = 0;
+        while (day.getTimeInMillis() < dueMidnight && days < 366) {
+            day.add(Calendar.DAY_OF_MONTH, 1);
+            days++;
+        }
+        return days;
+    }
+
+    public static long startOfDay(long time, TimeZone timeZone) {
+        Calendar calendar = Calendar.getInstance(timeZone);
+        calendar.setTimeInMillis(time);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTimeInMillis();
+    }
+}
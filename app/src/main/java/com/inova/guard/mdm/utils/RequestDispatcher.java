@@ -0,0 +1,259 @@
+package com.inova.guard.mdm.utils;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Cola por prioridad delante de OkHttp. Con el despachador por defecto todas las llamadas al
+ * servidor compiten en una única cola FIFO (máximo 5 por host), así que en un enlace lento una
+ * subida de ubicación o de auditoría podía retrasar un bloqueo o la verificación de un código.
+ *
+ * <p>Cada clase tiene su propio límite de llamadas en curso, un plazo máximo de espera en cola y
+ * un timeout de llamada. El límite por host de OkHttp es la suma de los límites de clase, de modo
+ * que OkHttp nunca encola por su cuenta y el orden lo decide esta clase: siempre sale primero la
+ * clase más prioritaria con hueco libre. Las peticiones de segundo plano con clave sustituyen a
+ * la que siga en cola con la misma clave (un heartbeat nuevo deja obsoleto al anterior).
+ *
+ * <p>Toda petición que no llega a salir recibe un fallo en su callback: al ser sustituida, al
+ * cancelarse mientras espera o al vencer su plazo en cola, que se comprueba también con un
+ * temporizador y no solo cuando queda un hueco libre.
+ */
+public final class RequestDispatcher {
+
+    private static final String TAG = "RequestDispatcher";
+
+    /** Bloqueo, desbloqueo y avisos de seguridad. */
+    public static final int CRITICAL = 0;
+    /** Lo que el usuario está esperando en pantalla (enrolamiento). */
+    public static final int INTERACTIVE = 1;
+    /** Heartbeat, ubicación, reportes diferidos. */
+    public static final int BACKGROUND = 2;
+    /** Subidas y descargas grandes (auditoría, diagnóstico, logo). */
+    public static final int BULK = 3;
+
+    private static final String[] NAMES = {"critical", "interactive", "background", "bulk"};
+    private static final int[] MAX_IN_FLIGHT = {2, 2, 2, 1};
+    private static final long[] QUEUE_DEADLINE_MS = {Long.MAX_VALUE, 30_000, 5 * 60_000, 15 * 60_000};
+    private static final long[] CALL_TIMEOUT_MS = {20_000, 30_000, 60_000, 120_000};
+
+    private static final OkHttpClient[] clients = new OkHttpClient[NAMES.length];
+    private static final ScheduledExecutorService deadlines = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "request-deadlines");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        Dispatcher dispatcher = new Dispatcher();
+        int total = 0;
+        for (int limit : MAX_IN_FLIGHT) {
+            total += limit;
+        }
+        dispatcher.setMaxRequestsPerHost(total);
+        dispatcher.setMaxRequests(total);
+        OkHttpClient base = new OkHttpClient.Builder().dispatcher(dispatcher).build();
+        for (int priority = 0; priority < clients.length; priority++) {
+            // Comparten despachador y conexiones; solo cambia el timeout.
+            clients[priority] = base.newBuilder()
+                    .callTimeout(CALL_TIMEOUT_MS[priority], TimeUnit.MILLISECONDS)
+                    .build();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static final ArrayDeque<Pending>[] queues = new ArrayDeque[NAMES.length];
+    private static final int[] inFlight = new int[NAMES.length];
+    private static final long[] waitCount = new long[NAMES.length];
+    private static final long[] waitTotalMs = new long[NAMES.length];
+    private static final long[] waitMaxMs = new long[NAMES.length];
+    private static final long[] dropped = new long[NAMES.length];
+
+    static {
+        for (int priority = 0; priority < queues.length; priority++) {
+            queues[priority] = new ArrayDeque<>();
+        }
+    }
+
+    private RequestDispatcher() {
+    }
+
+    /** Cliente de la clase indicada, para llamadas que no pasan por la cola (p. ej. síncronas). */
+    public static OkHttpClient client(int priority) {
+        return clients[priority];
+    }
+
+    public static Call enqueue(int priority, Request request, Callback callback) {
+        return enqueue(priority, null, request, callback);
+    }
+
+    /**
+     * Encola la petición. Si {@code key} no es nula, la petición de la misma clase que siga en cola
+     * con esa clave se descarta y su callback recibe un fallo.
+     */
+    public static Call enqueue(int priority, String key, Request request, Callback callback) {
+        Pending pending = new Pending(priority, key, clients[priority].newCall(request), callback);
+        List<Pending> rejected = new ArrayList<>();
+        synchronized (RequestDispatcher.class) {
+            if (key != null) {
+                Iterator<Pending> it = queues[priority].iterator();
+                while (it.hasNext()) {
+                    Pending queued = it.next();
+                    if (key.equals(queued.key)) {
+                        it.remove();
+                        dropped[priority]++;
+                        queued.failure = "reemplazada por una petición más reciente";
+                        rejected.add(queued);
+                    }
+                }
+            }
+            queues[priority].addLast(pending);
+            promote(rejected);
+        }
+        fail(rejected);
+        if (QUEUE_DEADLINE_MS[priority] != Long.MAX_VALUE) {
+            // Si sigue en cola al vencer el plazo, se descarta aunque no se libere ningún hueco.
+            deadlines.schedule(RequestDispatcher::expire, QUEUE_DEADLINE_MS[priority] + 1, TimeUnit.MILLISECONDS);
+        }
+        return pending.call;
+    }
+
+    /** Arranca todo lo que quepa, de la clase más prioritaria a la menos. Con el candado tomado. */
+    private static void promote(List<Pending> rejected) {
+        long now = SystemClock.elapsedRealtime();
+        removeStale(now, rejected);
+        for (int priority = 0; priority < queues.length; priority++) {
+            ArrayDeque<Pending> queue = queues[priority];
+            while (inFlight[priority] < MAX_IN_FLIGHT[priority] && !queue.isEmpty()) {
+                Pending next = queue.pollFirst();
+                long waited = now - next.enqueuedAt;
+                waitCount[priority]++;
+                waitTotalMs[priority] += waited;
+                waitMaxMs[priority] = Math.max(waitMaxMs[priority], waited);
+                inFlight[priority]++;
+                next.start();
+            }
+        }
+    }
+
+    /**
+     * Saca de la cola las peticiones canceladas mientras esperaban y las que vencieron su plazo.
+     * Con el candado tomado.
+     */
+    private static void removeStale(long now, List<Pending> rejected) {
+        for (int priority = 0; priority < queues.length; priority++) {
+            Iterator<Pending> it = queues[priority].iterator();
+            while (it.hasNext()) {
+                Pending queued = it.next();
+                long waited = now - queued.enqueuedAt;
+                if (queued.call.isCanceled()) {
+                    queued.failure = "cancelada tras " + waited + " ms en cola";
+                } else if (waited > QUEUE_DEADLINE_MS[priority]) {
+                    queued.failure = "caducada tras " + waited + " ms en cola";
+                } else {
+                    continue;
+                }
+                it.remove();
+                dropped[priority]++;
+                rejected.add(queued);
+            }
+        }
+    }
+
+    private static void expire() {
+        List<Pending> rejected = new ArrayList<>();
+        synchronized (RequestDispatcher.class) {
+            promote(rejected);
+        }
+        fail(rejected);
+    }
+
+    private static void finished(int priority) {
+        List<Pending> rejected = new ArrayList<>();
+        synchronized (RequestDispatcher.class) {
+            inFlight[priority]--;
+            promote(rejected);
+        }
+        fail(rejected);
+    }
+
+    private static void fail(List<Pending> rejected) {
+        for (Pending pending : rejected) {
+            MdmLog.w(TAG, "Petición {} descartada: {}", NAMES[pending.priority], pending.failure);
+            pending.call.cancel();
+            pending.callback.onFailure(pending.call, new IOException(pending.failure));
+        }
+    }
+
+    /**
+     * Espera en cola por clase como {@code "llamadas,media_ms,max_ms,descartadas"}; solo las
+     * clases que tuvieron tráfico.
+     */
+    public static synchronized void addSummaryTo(Map<String, String> heartbeat) {
+        for (int priority = 0; priority < NAMES.length; priority++) {
+            if (waitCount[priority] == 0 && dropped[priority] == 0) {
+                continue;
+            }
+            long average = waitCount[priority] > 0 ? waitTotalMs[priority] / waitCount[priority] : 0;
+            heartbeat.put("queue_wait_" + NAMES[priority],
+                    waitCount[priority] + "," + average + "," + waitMaxMs[priority] + "," + dropped[priority]);
+        }
+    }
+
+    private static final class Pending implements Callback {
+        final int priority;
+        final String key;
+        final Call call;
+        final Callback callback;
+        final long enqueuedAt = SystemClock.elapsedRealtime();
+        String failure;
+
+        Pending(int priority, String key, Call call, Callback callback) {
+            this.priority = priority;
+            this.key = key;
+            this.call = call;
+            this.callback = callback;
+        }
+
+        void start() {
+            call.enqueue(this);
+        }
+
+        @Override
+        public void onResponse(@NonNull Call call, @NonNull Response response) throws IOException {
+            // El hueco se libera al terminar el callback: la lectura del cuerpo también cuenta
+            // para el límite de la clase (una descarga BULK ocupa su hueco hasta el final).
+            try {
+                callback.onResponse(call, response);
+            } finally {
+                finished(priority);
+            }
+        }
+
+        @Override
+        public void onFailure(@NonNull Call call, @NonNull IOException e) {
+            try {
+                callback.onFailure(call, e);
+            } finally {
+                finished(priority);
+            }
+        }
+    }
+}
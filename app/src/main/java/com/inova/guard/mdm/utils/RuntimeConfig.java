@@ -0,0 +1,118 @@
+package com.inova.guard.mdm.utils;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Parámetros de funcionamiento ajustables desde el servidor sin publicar una APK nueva. Los
+ * valores por defecto son los de {@link Constants}; el servidor envía solo los que cambia, con un
+ * número de versión. Es inmutable: una versión nueva sustituye a la anterior completa.
+ *
+ * <p>El umbral de bloqueo sin conexión y el intervalo de sondeo de estado no están aquí: forman
+ * parte del paquete de políticas (ver {@code PolicyBundle}), y los servidores los gestiona
+ * {@link EndpointRegistry}.
+ */
+public final class RuntimeConfig {
+
+    public static final String UI_REFRESH_INTERVAL_MS = "ui_refresh_interval_ms";
+    public static final String PAYMENT_REMINDER_THRESHOLD_DAYS = "payment_reminder_threshold_days";
+    public static final String REMINDER_MIN_GAP_MS = "reminder_min_gap_ms";
+    public static final String REMINDER_MAX_PER_HOUR = "reminder_max_per_hour";
+    public static final String ENDPOINT_PROBE_INTERVAL_MS = "endpoint_probe_interval_ms";
+    public static final String CONNECTIVITY_DEBOUNCE_MS = "connectivity_debounce_ms";
+
+    // Clave -> {por defecto, mínimo, máximo}.
+    private static final Map<String, long[]> SPECS = new LinkedHashMap<>();
+
+    static {
+        SPECS.put(UI_REFRESH_INTERVAL_MS, new long[]{Constants.CONNECTION_CHECK_INTERVAL, 60 * 1000, 24 * 60 * 60 * 1000});
+        SPECS.put(PAYMENT_REMINDER_THRESHOLD_DAYS, new long[]{Constants.PAYMENT_REMINDER_THRESHOLD_DAYS, 0, 30});
+        SPECS.put(REMINDER_MIN_GAP_MS, new long[]{Constants.REMINDER_MIN_GAP_MS, 10 * 1000, 24 * 60 * 60 * 1000});
+        SPECS.put(REMINDER_MAX_PER_HOUR, new long[]{Constants.REMINDER_MAX_PER_HOUR, 1, 30});
+        SPECS.put(ENDPOINT_PROBE_INTERVAL_MS, new long[]{Constants.ENDPOINT_PROBE_INTERVAL_MS, 60 * 1000, 24 * 60 * 60 * 1000});
+        SPECS.put(CONNECTIVITY_DEBOUNCE_MS, new long[]{Constants.CONNECTIVITY_DEBOUNCE_MS, 0, 60 * 1000});
+    }
+
+    private static final RuntimeConfig DEFAULTS = new RuntimeConfig(0, Collections.emptyMap());
+
+    private final int version;
+    private final Map<String, Long> values;
+
+    private RuntimeConfig(int version, Map<String, Long> values) {
+        this.version = version;
+        this.values = values;
+    }
+
+    /** Valores incluidos en la APK (versión 0), usados hasta recibir la primera configuración. */
+    public static RuntimeConfig defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Valida una configuración del servidor. Las claves desconocidas se ignoran (pueden ser de una
+     * versión más nueva de la app), pero un valor fuera de rango invalida la configuración completa,
+     * igual que en el paquete de políticas, para no aplicar nunca una configuración a medias.
+     */
+    public static RuntimeConfig create(int version, Map<String, Long> overrides) {
+        if (version <= 0) {
+            throw new IllegalArgumentException("versión inválida: " + version);
+        }
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : overrides.entrySet()) {
+            long[] spec = SPECS.get(entry.getKey());
+            if (spec == null) {
+                continue;
+            }
+            long value = entry.getValue();
+            if (value < spec[1] || value > spec[2]) {
+                throw new IllegalArgumentException(entry.getKey() + " fuera de rango: " + value);
+            }
+            values.put(entry.getKey(), value);
+        }
+        return new RuntimeConfig(version, Collections.unmodifiableMap(values));
+    }
+
+    /** Si la clave es un parámetro conocido por esta versión de la app. */
+    public static boolean isKnown(String key) {
+        return SPECS.containsKey(key);
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    private long get(String key) {
+        Long value = values.get(key);
+        return value != null ? value : SPECS.get(key)[0];
+    }
+
+    public long getUiRefreshIntervalMs() {
+        return get(UI_REFRESH_INTERVAL_MS);
+    }
+
+    public int getPaymentReminderThresholdDays() {
+        return (int) get(PAYMENT_REMINDER_THRESHOLD_DAYS);
+    }
+
+    public long getReminderMinGapMs() {
+        return get(REMINDER_MIN_GAP_MS);
+    }
+
+    public int getReminderMaxPerHour() {
+        return (int) get(REMINDER_MAX_PER_HOUR);
+    }
+
+    public long getEndpointProbeIntervalMs() {
+        return get(ENDPOINT_PROBE_INTERVAL_MS);
+    }
+
+    public long getConnectivityDebounceMs() {
+        return get(CONNECTIVITY_DEBOUNCE_MS);
+    }
+
+    @Override
+    public String toString() {
+        return "v" + version + " " + values;
+    }
+}
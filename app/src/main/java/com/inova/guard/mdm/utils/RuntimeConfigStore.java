@@ -0,0 +1,111 @@
+package com.inova.guard.mdm.utils;
+
+import android.content.Context;
+import android.util.AtomicFile;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Caché en disco de la {@link RuntimeConfig} recibida del servidor.
+ *
+ * <p>La respuesta de estado incluye {@code runtime_config: {version, values}}; solo se aplica si
+ * la versión es mayor que la vigente, así un reintento o una respuesta atrasada no deshace un
+ * cambio. Se guarda con {@link AtomicFile} y sustituye a la anterior de una vez. Quien la usa lee
+ * {@link #getCurrent()} en cada uso, de modo que los cambios se aplican en el siguiente ciclo sin
+ * reiniciar MdmService.
+ */
+public final class RuntimeConfigStore {
+
+    private static final String TAG = "RuntimeConfigStore";
+    private static final String FILE_NAME = "runtime_config.json";
+
+    private static volatile RuntimeConfigStore instance;
+
+    private final AtomicFile file;
+    private volatile RuntimeConfig current;
+
+    private RuntimeConfigStore(Context context) {
+        this.file = new AtomicFile(new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+        this.current = load();
+    }
+
+    public static RuntimeConfigStore get(Context context) {
+        if (instance == null) {
+            synchronized (RuntimeConfigStore.class) {
+                if (instance == null) {
+                    instance = new RuntimeConfigStore(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    public RuntimeConfig getCurrent() {
+        return current;
+    }
+
+    /** Aplica la configuración de la respuesta de estado si trae una versión más nueva. */
+    public synchronized void onStatusResponse(JSONObject response) {
+        JSONObject config = response.optJSONObject("runtime_config");
+        if (config == null || config.optInt("version", 0) <= current.getVersion()) {
+            return;
+        }
+        RuntimeConfig parsed;
+        try {
+            parsed = parse(config);
+        } catch (JSONException | IllegalArgumentException e) {
+            MdmLog.e(TAG, "Configuración remota descartada: {}", e.getMessage());
+            return;
+        }
+        FileOutputStream out = null;
+        try {
+            out = file.startWrite();
+            out.write(config.toString().getBytes(StandardCharsets.UTF_8));
+            file.finishWrite(out);
+        } catch (IOException e) {
+            MdmLog.e(TAG, "No se pudo guardar la configuración remota: {}", e.getMessage());
+            if (out != null) {
+                file.failWrite(out);
+            }
+            return;
+        }
+        current = parsed;
+        MdmLog.i(TAG, "Configuración remota aplicada: {}", parsed);
+    }
+
+    private static RuntimeConfig parse(JSONObject config) throws JSONException {
+        int version = config.getInt("version");
+        JSONObject valuesJson = config.getJSONObject("values");
+        Map<String, Long> values = new HashMap<>();
+        Iterator<String> keys = valuesJson.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            if (RuntimeConfig.isKnown(key)) {
+                values.put(key, valuesJson.getLong(key));
+            }
+        }
+        return RuntimeConfig.create(version, values);
+    }
+
+    private RuntimeConfig load() {
+        try {
+            return parse(new JSONObject(new String(file.readFully(), StandardCharsets.UTF_8)));
+        } catch (FileNotFoundException e) {
+            return RuntimeConfig.defaults();
+        } catch (IOException | JSONException | IllegalArgumentException e) {
+            MdmLog.e(TAG, "Configuración en caché inválida, se usan los valores por defecto: {}", e.getMessage());
+            file.delete();
+            return RuntimeConfig.defaults();
+        }
+    }
+}
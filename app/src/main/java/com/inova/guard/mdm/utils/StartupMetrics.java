@@ -0,0 +1,81 @@
+package com.inova.guard.mdm.utils;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Tiempos del arranque en frío medidos desde el inicio del proceso. Cada métrica se registra una
+ * sola vez por proceso; las de la pantalla de bloqueo se guardan además en las preferencias.
+ */
+public final class StartupMetrics {
+
+    private static final String TAG = "StartupMetrics";
+
+    public static final String SPLASH_FIRST_FRAME = "splash_first_frame";
+    public static final String SPLASH_STATE_READY = "splash_state_ready";
+    public static final String LOCK_SCREEN_FIRST_FRAME = "lock_screen_first_frame";
+    public static final String LOCK_SCREEN_INTERACTIVE = "lock_screen_interactive";
+
+    private static final Set<String> recorded = new HashSet<>();
+    private static long lockScreenFirstFrameMs = -1;
+    private static long lockScreenReadyMs = -1;
+
+    private StartupMetrics() {
+    }
+
+    /** Milisegundos desde que el sistema creó el proceso. */
+    public static long sinceProcessStart() {
+        return SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime();
+    }
+
+    /** Registra la métrica en el momento en que se dibuja el primer fotograma de la actividad. */
+    public static void recordOnFirstFrame(Activity activity, String metric) {
+        View decorView = activity.getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                // El fotograma se envía justo después de este pre-dibujado.
+                decorView.post(() -> record(activity, metric));
+                return true;
+            }
+        });
+    }
+
+    public static synchronized void record(Context context, String metric) {
+        if (!recorded.add(metric)) {
+            return;
+        }
+        long elapsed = sinceProcessStart();
+        StartupTracer.mark(metric);
+        MdmLog.i(TAG, "{}: {} ms", metric, elapsed);
+        if (LOCK_SCREEN_FIRST_FRAME.equals(metric)) {
+            lockScreenFirstFrameMs = elapsed;
+            save(context, Constants.PREF_STARTUP_LOCK_TTFF_MS, elapsed);
+        } else if (LOCK_SCREEN_INTERACTIVE.equals(metric)) {
+            lockScreenReadyMs = elapsed;
+        } else {
+            return;
+        }
+        // Interactiva = estado aplicado y primer fotograma dibujado, lo que ocurra más tarde.
+        if (lockScreenFirstFrameMs >= 0 && lockScreenReadyMs >= 0) {
+            long interactive = Math.max(lockScreenFirstFrameMs, lockScreenReadyMs);
+            MdmLog.i(TAG, "lock_screen_tti: {} ms", interactive);
+            save(context, Constants.PREF_STARTUP_LOCK_TTI_MS, interactive);
+        }
+    }
+
+    // Se llama desde el hilo principal; las preferencias pueden no estar cargadas todavía.
+    private static void save(Context context, String key, long value) {
+        Context appContext = context.getApplicationContext();
+        AppExecutors.background().execute(() -> appContext.getSharedPreferences(Constants.PREFS_NAME, Context.MODE_PRIVATE)
+                .edit().putLong(key, value).apply());
+    }
+}
@@ -0,0 +1,98 @@
+package com.inova.guard.mdm.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+
+import java.util.Map;
+
+/**
+ * Trazas ligeras de las fases del arranque y de los bloqueos del hilo principal.
+ *
+ * <p>Cada fase se guarda en un búfer circular de tamaño fijo (arrays primitivos, sin objetos por
+ * registro) con su inicio relativo al inicio del proceso y su duración. El resumen viaja con el
+ * reporte de estado hasta que el servidor lo recibe, para poder comparar modelos por coste de
+ * arranque.
+ */
+public final class StartupTracer {
+
+    static final int CAPACITY = 64;
+
+    private static final String[] names = new String[CAPACITY];
+    private static final long[] starts = new long[CAPACITY];
+    private static final long[] durations = new long[CAPACITY];
+    private static int next;
+    private static int count;
+
+    private static int stallCount;
+    private static long maxStallMillis;
+
+    /** Se incrementa con cada cambio; permite saber si el resumen ya se envió. */
+    private static long sequence;
+    private static long reportedSequence;
+
+    private StartupTracer() {
+    }
+
+    /** Marca el inicio de una fase. Se pasa el valor devuelto a {@link #end}. */
+    public static long begin() {
+        return SystemClock.elapsedRealtime();
+    }
+
+    public static synchronized void end(String phase, long beginElapsed) {
+        long now = SystemClock.elapsedRealtime();
+        names[next] = phase;
+        starts[next] = beginElapsed - Process.getStartElapsedRealtime();
+        durations[next] = now - beginElapsed;
+        next = (next + 1) % CAPACITY;
+        count = Math.min(count + 1, CAPACITY);
+        sequence++;
+    }
+
+    /** Hito sin duración (primer fotograma, estado listo...). */
+    public static void mark(String milestone) {
+        end(milestone, SystemClock.elapsedRealtime());
+    }
+
+    public static synchronized void recordStall(long durationMillis) {
+        stallCount++;
+        maxStallMillis = Math.max(maxStallMillis, durationMillis);
+        sequence++;
+    }
+
+    /**
+     * Añade el resumen al mapa del reporte de estado si hay algo nuevo.
+     *
+     * @return la secuencia a confirmar con {@link #markReported}, o {@code -1} si no se añadió nada.
+     */
+    public static synchronized long addSummaryTo(Context context, Map<String, String> heartbeat) {
+        if (sequence == reportedSequence) {
+            return -1;
+        }
+        StringBuilder phases = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            int index = (next - count + i + CAPACITY) % CAPACITY;
+            if (phases.length() > 0) {
+                phases.append(',');
+            }
+            phases.append(names[index]).append('@').append(starts[index]).append('+').append(durations[index]);
+        }
+        heartbeat.put("startup_phases", phases.toString());
+        heartbeat.put("startup_stalls", Integer.toString(stallCount));
+        heartbeat.put("startup_max_stall_ms", Long.toString(maxStallMillis));
+        heartbeat.put("device_model", Build.MANUFACTURER + " " + Build.MODEL);
+        SharedPreferences prefs = context.getSharedPreferences(Constants.PREFS_NAME, Context.MODE_PRIVATE);
+        heartbeat.put("startup_lock_ttff_ms", Long.toString(prefs.getLong(Constants.PREF_STARTUP_LOCK_TTFF_MS, -1)));
+        heartbeat.put("startup_lock_tti_ms", Long.toString(prefs.getLong(Constants.PREF_STARTUP_LOCK_TTI_MS, -1)));
+        return sequence;
+    }
+
+    /** El servidor recibió el resumen con esa secuencia; no se reenvía hasta que haya cambios. */
+    public static synchronized void markReported(long reported) {
+        if (reported > reportedSequence) {
+            reportedSequence = reported;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.inova.guard.mdm.utils;
+
+import android.content.Context;
+import android.util.AtomicFile;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Última respuesta de estado completa, con su versión, para aceptar respuestas delta.
+ *
+ * <p>El heartbeat envía {@code state_version}. Si el servidor conoce esa versión puede responder
+ * solo con los cambios: {@code {state_version, base_version, patch: [...]}} con un parche
+ * {@link JsonPatch} sobre el documento anterior. {@link #resolve(JSONObject)} reconstruye el
+ * documento completo, así que el resto de MdmService lo procesa igual que una respuesta completa,
+ * y dice qué campos tocó el parche para no reescribir lo que no cambió. Si la versión base no
+ * coincide o el parche no se puede aplicar, se descarta el estado guardado y se devuelve
+ * {@code null}: la siguiente consulta va con versión 0 y el servidor envía el documento completo.
+ * El archivo solo se reescribe cuando cambia la versión.
+ *
+ * <p>Los campos de un solo uso ({@link #TRANSIENT_KEYS}) no se guardan: van siempre fuera del
+ * parche, en la propia respuesta, y se deben procesar aunque el delta se descarte.
+ */
+public final class StatusStateStore {
+
+    private static final String TAG = "StatusStateStore";
+    private static final String FILE_NAME = "status_state.json";
+
+    static final Set<String> TRANSIENT_KEYS = new HashSet<>(Arrays.asList(
+            "state_version", "base_version", "patch", "ledger", "diagnostic_request_id", "unlock_secret",
+            "command_id", "command_sent_at"));
+
+    /** Documento completo de una respuesta y qué campos pueden haber cambiado respecto al anterior. */
+    public static final class Resolution {
+        public final JSONObject document;
+        // null en una respuesta completa: cualquier campo puede haber cambiado.
+        private final Set<String> changedKeys;
+
+        Resolution(JSONObject document, Set<String> changedKeys) {
+            this.document = document;
+            this.changedKeys = changedKeys;
+        }
+
+        /** Si alguno de los campos puede haber cambiado. Los de un solo uso no pasan por aquí. */
+        public boolean changed(String... keys) {
+            if (changedKeys == null) {
+                return true;
+            }
+            for (String key : keys) {
+                if (changedKeys.contains(key)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static volatile StatusStateStore instance;
+
+    private final AtomicFile file;
+    private long version;
+    private Map<String, Object> document;
+
+    private StatusStateStore(Context context) {
+        this.file = new AtomicFile(new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+        load();
+    }
+
+    public static StatusStateStore get(Context context) {
+        if (instance == null) {
+            synchronized (StatusStateStore.class) {
+                if (instance == null) {
+                    instance = new StatusStateStore(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /** Versión del documento guardado; 0 si no hay ninguno y hace falta uno completo. */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Documento completo correspondiente a la respuesta, o {@code null} si es un delta que no se
+     * puede aplicar (el estado guardado queda descartado).
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized Resolution resolve(JSONObject response) throws JSONException {
+        long newVersion = response.optLong("state_version", 0);
+        JSONArray patch = response.optJSONArray("patch");
+        if (patch == null) {
+            // Respuesta completa; un servidor sin versiones no envía state_version.
+            if (newVersion > 0) {
+                if (newVersion != version || document == null) {
+                    save(newVersion, stateOf((Map<String, Object>) fromJson(response)));
+                }
+            } else if (version != 0) {
+                reset();
+            }
+            return new Resolution(response, null);
+        }
+        long baseVersion = response.optLong("base_version", -1);
+        List<JsonPatch.Operation> operations = parseOperations(patch);
+        Map<String, Object> patched = applyDelta(document, version, baseVersion, newVersion, operations);
+        if (patched == null) {
+            reset();
+            return null;
+        }
+        if (newVersion != version) {
+            save(newVersion, patched);
+        }
+        JSONObject full = (JSONObject) toJson(patched);
+        Iterator<String> keys = response.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            if (TRANSIENT_KEYS.contains(key)) {
+                full.put(key, response.get(key));
+            }
+        }
+        MdmLog.d(TAG, "Delta aplicado: versión {} -> {} ({} operaciones).", baseVersion, newVersion, patch.length());
+        return new Resolution(full, JsonPatch.touchedMembers(operations));
+    }
+
+    /**
+     * Aplica un delta al documento guardado, o devuelve {@code null} si no corresponde a la versión
+     * local o el parche no se puede aplicar.
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> applyDelta(Map<String, Object> document, long localVersion, long baseVersion,
+                                          long newVersion, List<JsonPatch.Operation> operations) {
+        if (document == null || baseVersion != localVersion || newVersion <= 0) {
+            MdmLog.w(TAG, "Delta descartado: base {} y versión local {}.", baseVersion, localVersion);
+            return null;
+        }
+        try {
+            Object result = JsonPatch.apply(document, operations);
+            if (!(result instanceof Map)) {
+                throw new IllegalArgumentException("el documento debe ser un objeto");
+            }
+            return (Map<String, Object>) result;
+        } catch (IllegalArgumentException e) {
+            MdmLog.w(TAG, "Delta descartado: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void reset() {
+        version = 0;
+        document = null;
+        file.delete();
+    }
+
+    /** Documento que se guarda de una respuesta completa: todo salvo los campos de un solo uso. */
+    static Map<String, Object> stateOf(Map<String, Object> response) {
+        Map<String, Object> state = new LinkedHashMap<>(response);
+        state.keySet().removeAll(TRANSIENT_KEYS);
+        return state;
+    }
+
+    private void save(long newVersion, Map<String, Object> state) {
+        FileOutputStream out = null;
+        try {
+            JSONObject stored = new JSONObject();
+            stored.put("version", newVersion);
+            stored.put("document", toJson(state));
+            out = file.startWrite();
+            out.write(stored.toString().getBytes(StandardCharsets.UTF_8));
+            file.finishWrite(out);
+            version = newVersion;
+            document = state;
+        } catch (IOException | JSONException e) {
+            MdmLog.e(TAG, "No se pudo guardar el estado: {}", e.getMessage());
+            if (out != null) {
+                file.failWrite(out);
+            }
+            // Sin copia en disco no se puede garantizar la base del próximo delta.
+            reset();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void load() {
+        try {
+            JSONObject stored = new JSONObject(new String(file.readFully(), StandardCharsets.UTF_8));
+            Object state = fromJson(stored.getJSONObject("document"));
+            version = stored.getLong("version");
+            document = (Map<String, Object>) state;
+        } catch (FileNotFoundException e) {
+            version = 0;
+        } catch (IOException | JSONException | ClassCastException e) {
+            MdmLog.e(TAG, "Estado guardado inválido, se pedirá completo: {}", e.getMessage());
+            reset();
+        }
+    }
+
+    private static List<JsonPatch.Operation> parseOperations(JSONArray patch) throws JSONException {
+        List<JsonPatch.Operation> operations = new ArrayList<>(patch.length());
+        for (int i = 0; i < patch.length(); i++) {
+            JSONObject operation = patch.getJSONObject(i);
+            operations.add(new JsonPatch.Operation(operation.optString("op", null),
+                    operation.optString("path", null), operation.optString("from", null),
+                    operation.has("value") ? fromJson(operation.get("value")) : null));
+        }
+        return operations;
+    }
+
+    private static Object fromJson(Object value) throws JSONException {
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            Map<String, Object> map = new LinkedHashMap<>();
+            Iterator<String> keys = object.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                map.put(key, fromJson(object.get(key)));
+            }
+            return map;
+        }
+        if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            List<Object> list = new ArrayList<>(array.length());
+            for (int i = 0; i < array.length(); i++) {
+                list.add(fromJson(array.get(i)));
+            }
+            return list;
+        }
+        return value == JSONObject.NULL ? null : value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object toJson(Object value) throws JSONException {
+        if (value instanceof Map) {
+            JSONObject object = new JSONObject();
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+                object.put(entry.getKey(), toJson(entry.getValue()));
+            }
+            return object;
+        }
+        if (value instanceof List) {
+            JSONArray array = new JSONArray();
+            for (Object item : (List<Object>) value) {
+                array.put(toJson(item));
+            }
+            return array;
+        }
+        return value == null ? JSONObject.NULL : value;
+    }
+}
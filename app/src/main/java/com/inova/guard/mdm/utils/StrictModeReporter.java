@@ -0,0 +1,97 @@
+package com.inova.guard.mdm.utils;
+
+import android.os.Build;
+import android.os.StrictMode;
+import android.os.strictmode.Violation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * StrictMode para compilaciones de depuración: detecta accesos a disco y red desde el hilo
+ * principal, los registra y los guarda para que las pruebas instrumentadas puedan fallar si la
+ * app los provoca.
+ */
+public final class StrictModeReporter {
+
+    private static final String TAG = "StrictMode";
+    private static final String APP_PACKAGE = "com.inova.guard.mdm";
+
+    private static final List<Entry> violations = new ArrayList<>();
+
+    /** Infracción registrada, con las clases de la app que aparecen en su pila. */
+    private static final class Entry {
+        final String text;
+        final List<String> appClasses;
+
+        Entry(String text, List<String> appClasses) {
+            this.text = text;
+            this.appClasses = appClasses;
+        }
+    }
+
+    private StrictModeReporter() {
+    }
+
+    public static void install() {
+        StrictMode.ThreadPolicy.Builder threadPolicy = new StrictMode.ThreadPolicy.Builder()
+                .detectDiskReads()
+                .detectDiskWrites()
+                .detectNetwork()
+                .penaltyLog();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            threadPolicy.penaltyListener(Runnable::run, StrictModeReporter::onViolation);
+        }
+        StrictMode.setThreadPolicy(threadPolicy.build());
+        StrictMode.setVmPolicy(new StrictMode.VmPolicy.Builder()
+                .detectLeakedClosableObjects()
+                .detectLeakedRegistrationObjects()
+                .penaltyLog()
+                .build());
+    }
+
+    private static void onViolation(Violation violation) {
+        String origin = null;
+        List<String> appClasses = new ArrayList<>();
+        for (StackTraceElement frame : violation.getStackTrace()) {
+            String className = frame.getClassName();
+            if (className.startsWith(APP_PACKAGE) && !className.equals(StrictModeReporter.class.getName())) {
+                if (origin == null) {
+                    origin = frame.toString();
+                }
+                appClasses.add(className);
+            }
+        }
+        String text = violation.getClass().getSimpleName() + " en " + (origin != null ? origin : "desconocido");
+        synchronized (violations) {
+            violations.add(new Entry(text, appClasses));
+        }
+        MdmLog.w(TAG, "Acceso en el hilo principal: {}", text);
+    }
+
+    /**
+     * Infracciones en cuya pila aparece la clase indicada (o una interna suya) en cualquier
+     * posición, para contar también los accesos que hace a través de otras clases de la app.
+     */
+    public static List<String> getViolations(Class<?> origin) {
+        String name = origin.getName();
+        List<String> matching = new ArrayList<>();
+        synchronized (violations) {
+            for (Entry entry : violations) {
+                for (String className : entry.appClasses) {
+                    if (className.equals(name) || className.startsWith(name + "$")) {
+                        matching.add(entry.text);
+                        break;
+                    }
+                }
+            }
+        }
+        return matching;
+    }
+
+    public static void clear() {
+        synchronized (violations) {
+            violations.clear();
+        }
+    }
+}
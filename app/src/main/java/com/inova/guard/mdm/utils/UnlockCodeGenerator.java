@@ -0,0 +1,87 @@
+package com.inova.guard.mdm.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Generador de códigos de desbloqueo HOTP/TOTP (RFC 4226 / RFC 6238).
+ * El servidor y el dispositivo comparten el mismo secreto, así que ambos derivan el mismo
+ * código para cada intervalo de tiempo y la verificación no necesita conexión.
+ */
+public final class UnlockCodeGenerator {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA1";
+    private static final int[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000, 100000, 1000000, 10000000, 100000000};
+
+    private final byte[] secret;
+    private final int digits;
+    private final long stepSeconds;
+
+    public UnlockCodeGenerator(byte[] secret, int digits, long stepSeconds) {
+        if (secret == null || secret.length == 0) {
+            throw new IllegalArgumentException("El secreto no puede estar vacío");
+        }
+        if (digits < 1 || digits >= POWERS_OF_TEN.length) {
+            throw new IllegalArgumentException("Número de dígitos no soportado: " + digits);
+        }
+        this.secret = secret.clone();
+        this.digits = digits;
+        this.stepSeconds = stepSeconds;
+    }
+
+    /** Intervalo (contador TOTP) al que pertenece el instante dado. */
+    public long stepFor(long timeMillis) {
+        return Math.floorDiv(timeMillis / 1000L, stepSeconds);
+    }
+
+    /** Código HOTP para un contador concreto, con ceros a la izquierda. */
+    public String generate(long counter) {
+        byte[] message = new byte[8];
+        for (int i = 7; i >= 0; i--) {
+            message[i] = (byte) (counter & 0xff);
+            counter >>>= 8;
+        }
+        byte[] hash;
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(new SecretKeySpec(secret, HMAC_ALGORITHM));
+            hash = mac.doFinal(message);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC no disponible", e);
+        }
+        int offset = hash[hash.length - 1] & 0x0f;
+        int binary = ((hash[offset] & 0x7f) << 24)
+                | ((hash[offset + 1] & 0xff) << 16)
+                | ((hash[offset + 2] & 0xff) << 8)
+                | (hash[offset + 3] & 0xff);
+        StringBuilder code = new StringBuilder(Integer.toString(binary % POWERS_OF_TEN[digits]));
+        while (code.length() < digits) {
+            code.insert(0, '0');
+        }
+        return code.toString();
+    }
+
+    /**
+     * Busca el código dentro de la ventana [paso actual - stepsBack, paso actual + stepsForward].
+     * Todos los candidatos se comparan en tiempo constante y sin salir antes, para no filtrar
+     * por tiempos de respuesta qué paso coincidió.
+     *
+     * @return el paso que coincide o -1 si ninguno lo hace.
+     */
+    public long match(String code, long timeMillis, int stepsBack, int stepsForward) {
+        byte[] candidate = code.getBytes(StandardCharsets.US_ASCII);
+        long current = stepFor(timeMillis);
+        long matched = -1;
+        for (long step = current - stepsBack; step <= current + stepsForward; step++) {
+            byte[] expected = generate(step).getBytes(StandardCharsets.US_ASCII);
+            if (MessageDigest.isEqual(candidate, expected)) {
+                matched = step;
+            }
+        }
+        return matched;
+    }
+}
@@ -0,0 +1,185 @@
+package com.inova.guard.mdm.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AuditLogTest {
+
+    private File directory;
+    private AuditLog auditLog;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("audit").toFile();
+        auditLog = new AuditLog(directory);
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void appendedRecords_roundTripThroughCompressedBlocks() {
+        auditLog.append(AuditLog.EVENT_LOCK, "fcm");
+        auditLog.append(AuditLog.EVENT_UNLOCK, "rolling_code");
+        auditLog.append(AuditLog.EVENT_DISABLE_REQUESTED, "");
+        auditLog.flush();
+
+        AuditLog.Chunk chunk = auditLog.readFrom(0, Integer.MAX_VALUE);
+        List<AuditLog.Record> records = AuditLog.decode(chunk.data);
+        assertEquals(3, records.size());
+        assertEquals(AuditLog.EVENT_LOCK, records.get(0).type);
+        assertEquals("fcm", records.get(0).detail);
+        assertEquals("rolling_code", records.get(1).detail);
+        assertEquals(AuditLog.EVENT_DISABLE_REQUESTED, records.get(2).type);
+        assertTrue(records.get(0).timestamp > 0);
+    }
+
+    @Test
+    public void readFrom_resumesAfterAcknowledgedOffset() {
+        auditLog.append(AuditLog.EVENT_LOCK, "server_status");
+        auditLog.flush();
+        AuditLog.Chunk first = auditLog.readFrom(0, Integer.MAX_VALUE);
+
+        auditLog.append(AuditLog.EVENT_UNLOCK, "server_status");
+        auditLog.flush();
+        AuditLog.Chunk second = auditLog.readFrom(first.end, Integer.MAX_VALUE);
+
+        assertEquals(first.end, second.start);
+        List<AuditLog.Record> records = AuditLog.decode(second.data);
+        assertEquals(1, records.size());
+        assertEquals(AuditLog.EVENT_UNLOCK, records.get(0).type);
+        assertNull(auditLog.readFrom(second.end, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void pendingBytes_countsOnlyWhatFollowsTheAcknowledgedOffset() {
+        assertEquals(0, auditLog.pendingBytes(0));
+        auditLog.append(AuditLog.EVENT_LOCK, "fcm");
+        auditLog.flush();
+        AuditLog.Chunk first = auditLog.readFrom(0, Integer.MAX_VALUE);
+        assertEquals(first.data.length, auditLog.pendingBytes(0));
+        assertEquals(0, auditLog.pendingBytes(first.end));
+
+        auditLog.append(AuditLog.EVENT_UNLOCK, "server_status");
+        auditLog.flush();
+        AuditLog.Chunk second = auditLog.readFrom(first.end, Integer.MAX_VALUE);
+        assertEquals(second.data.length, auditLog.pendingBytes(first.end));
+    }
+
+    @Test
+    public void corruptedBlock_stopsReadingAndLaterBlocksGoToNewSegment() throws IOException {
+        auditLog.append(AuditLog.EVENT_LOCK, "primero");
+        auditLog.flush();
+        long firstBlockEnd = auditLog.readFrom(0, Integer.MAX_VALUE).end;
+        auditLog.append(AuditLog.EVENT_UNLOCK, "segundo");
+        auditLog.flush();
+        long secondBlockEnd = auditLog.readFrom(firstBlockEnd, Integer.MAX_VALUE).end;
+        auditLog.append(AuditLog.EVENT_LOCK, "tercero");
+        auditLog.flush();
+
+        File segment = directory.listFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(secondBlockEnd - 1);
+            int last = file.read();
+            file.seek(secondBlockEnd - 1);
+            file.write(last ^ 0xff);
+        }
+
+        AuditLog.Chunk chunk = auditLog.readFrom(0, Integer.MAX_VALUE);
+        List<AuditLog.Record> records = AuditLog.decode(chunk.data);
+        assertEquals(1, records.size());
+        assertEquals("primero", records.get(0).detail);
+        assertEquals(firstBlockEnd, chunk.end);
+        assertNull(auditLog.readFrom(chunk.end, Integer.MAX_VALUE));
+
+        auditLog.append(AuditLog.EVENT_UNLOCK, "cuarto");
+        auditLog.flush();
+        AuditLog.Chunk next = auditLog.readFrom(chunk.end, Integer.MAX_VALUE);
+        records = AuditLog.decode(next.data);
+        assertEquals(1, records.size());
+        assertEquals("cuarto", records.get(0).detail);
+    }
+
+    @Test
+    public void tornWrite_isTruncatedWhenReopened() throws IOException {
+        auditLog.append(AuditLog.EVENT_LOCK, "primero");
+        auditLog.flush();
+
+        // Apagado a mitad de bloque: la marca, la cabecera y parte del cuerpo.
+        File segment = directory.listFiles()[0];
+        try (FileOutputStream out = new FileOutputStream(segment, true)) {
+            out.write(new byte[]{0x41, 0x42, 0x4c, 0x4b, 0, 0, 0, 100, 0, 0, 0, 50, 1, 2, 3, 4, 5});
+        }
+
+        AuditLog reopened = new AuditLog(directory);
+        reopened.append(AuditLog.EVENT_UNLOCK, "segundo");
+        reopened.flush();
+
+        assertEquals(1, directory.listFiles().length);
+        List<AuditLog.Record> records = AuditLog.decode(reopened.readFrom(0, Integer.MAX_VALUE).data);
+        assertEquals(2, records.size());
+        assertEquals("primero", records.get(0).detail);
+        assertEquals("segundo", records.get(1).detail);
+    }
+
+    @Test
+    public void rotation_keepsLogUnderSizeCap() {
+        Random random = new Random(42);
+        StringBuilder detail = new StringBuilder();
+        for (int round = 0; round < 200; round++) {
+            for (int i = 0; i < 8; i++) {
+                detail.setLength(0);
+                for (int j = 0; j < 900; j++) {
+                    detail.append((char) ('a' + random.nextInt(26)));
+                }
+                auditLog.append(AuditLog.EVENT_UNLOCK_REJECTED, detail.toString());
+            }
+            auditLog.flush();
+        }
+
+        long total = 0;
+        for (File file : directory.listFiles()) {
+            total += file.length();
+        }
+        assertTrue("Tamaño total " + total, total <= (long) AuditLog.SEGMENT_SIZE * AuditLog.MAX_SEGMENTS);
+        AuditLog.Chunk oldest = auditLog.readFrom(0, Integer.MAX_VALUE);
+        assertTrue("Los segmentos antiguos deben haberse rotado", oldest.start > 0);
+        assertFalse(AuditLog.decode(oldest.data).isEmpty());
+    }
+
+    @Test
+    public void append_isSubMillisecond() {
+        // Calentamiento para que el JIT no distorsione la medida.
+        for (int i = 0; i < 5_000; i++) {
+            auditLog.append(AuditLog.EVENT_LOCK, "calentamiento");
+        }
+        auditLog.flush();
+
+        AuditLog measured = new AuditLog(directory);
+        for (int i = 0; i < 20_000; i++) {
+            measured.append(i % 2 == 0 ? AuditLog.EVENT_LOCK : AuditLog.EVENT_UNLOCK, "server_status");
+        }
+        assertTrue("Media de append: " + measured.getMeanAppendNanos() + " ns",
+                measured.getMeanAppendNanos() < 1_000_000);
+        measured.flush();
+    }
+}
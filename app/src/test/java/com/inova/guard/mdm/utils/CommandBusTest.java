@@ -0,0 +1,107 @@
+package com.inova.guard.mdm.utils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Entrega de órdenes, estado de bloqueo persistente para suscriptores tardíos y comprobación de
+ * que el bus no retiene a un suscriptor dado de baja (como haría LeakCanary con una actividad).
+ */
+public class CommandBusTest {
+
+    private CommandBus bus;
+
+    @Before
+    public void setUp() {
+        bus = new CommandBus(Runnable::run);
+    }
+
+    @Test
+    public void publish_deliversToCurrentSubscribers() {
+        List<String> received = new ArrayList<>();
+        bus.subscribe(command -> received.add(command.type));
+
+        assertTrue(bus.publish(new CommandBus.Command(CommandBus.LOCK, "test")));
+        assertEquals("[lock]", received.toString());
+    }
+
+    @Test
+    public void publish_withoutSubscribers_keepsLockStateForLateSubscriber() {
+        assertFalse(bus.publish(new CommandBus.Command(CommandBus.LOCK, "fcm")));
+        assertFalse(bus.publish(new CommandBus.Command(CommandBus.UNLOCK, "server_status")));
+
+        List<String> received = new ArrayList<>();
+        bus.subscribe(command -> received.add(command.type + "/" + command.source));
+
+        // Solo el último estado, no el historial.
+        assertEquals("[unlock/server_status]", received.toString());
+    }
+
+    @Test
+    public void unsubscribe_stopsDelivery() {
+        List<String> received = new ArrayList<>();
+        CommandBus.Subscription subscription = bus.subscribe(command -> received.add(command.type));
+        subscription.unsubscribe();
+
+        assertFalse(bus.publish(new CommandBus.Command(CommandBus.LOCK, "test")));
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    public void unsubscribe_betweenPublishAndDelivery_dropsCommand() {
+        List<Runnable> posted = new ArrayList<>();
+        CommandBus deferred = new CommandBus(posted::add);
+        List<String> received = new ArrayList<>();
+        CommandBus.Subscription subscription = deferred.subscribe(command -> received.add(command.type));
+
+        deferred.publish(new CommandBus.Command(CommandBus.LOCK, "test"));
+        subscription.unsubscribe();
+        for (Runnable runnable : posted) {
+            runnable.run();
+        }
+
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    public void unsubscribedSubscriber_isNotRetained() throws InterruptedException {
+        WeakReference<Object> screen = subscribeAndRelease();
+        bus.publish(new CommandBus.Command(CommandBus.LOCK, "test"));
+
+        assertTrue("El bus retiene al suscriptor dado de baja", awaitCollected(screen));
+    }
+
+    /** Simula una actividad que se suscribe, recibe el estado y se destruye. */
+    private WeakReference<Object> subscribeAndRelease() {
+        FakeScreen screen = new FakeScreen();
+        CommandBus.Subscription subscription = bus.subscribe(screen::onCommand);
+        bus.publish(new CommandBus.Command(CommandBus.UNLOCK, "test"));
+        assertEquals(1, screen.commands);
+        subscription.unsubscribe();
+        return new WeakReference<>(screen);
+    }
+
+    private static boolean awaitCollected(WeakReference<?> reference) throws InterruptedException {
+        for (int attempt = 0; attempt < 50 && reference.get() != null; attempt++) {
+            System.gc();
+            System.runFinalization();
+            Thread.sleep(20);
+        }
+        return reference.get() == null;
+    }
+
+    private static class FakeScreen {
+        final byte[] layout = new byte[1024 * 1024];
+        int commands;
+
+        void onCommand(CommandBus.Command command) {
+            commands++;
+        }
+    }
+}
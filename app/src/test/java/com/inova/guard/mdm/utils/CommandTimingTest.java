@@ -0,0 +1,77 @@
+package com.inova.guard.mdm.utils;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class CommandTimingTest {
+
+    private static CommandTiming lock() {
+        return new CommandTiming("cmd-1", CommandBus.LOCK, "fcm", 1_700_000_000_000L, 1_700_000_000_800L, 10_000);
+    }
+
+    @Test
+    public void offsets_areMeasuredFromReception() {
+        CommandTiming timing = lock();
+        assertTrue(timing.mark(CommandTiming.STEP_LOCK_NOW, 10_040));
+        assertTrue(timing.mark(CommandTiming.STEP_LOCK_TASK, 10_300));
+
+        assertEquals(40, timing.offset(CommandTiming.STEP_LOCK_NOW));
+        assertEquals(300, timing.offset(CommandTiming.STEP_LOCK_TASK));
+        assertEquals(-1, timing.offset(CommandTiming.STEP_FIRST_FRAME));
+    }
+
+    @Test
+    public void mark_keepsFirstOccurrence() {
+        CommandTiming timing = lock();
+        assertTrue(timing.mark(CommandTiming.STEP_FIRST_FRAME, 10_500));
+        assertFalse(timing.mark(CommandTiming.STEP_FIRST_FRAME, 12_000));
+        assertEquals(500, timing.offset(CommandTiming.STEP_FIRST_FRAME));
+    }
+
+    @Test
+    public void isComplete_requiresLockNowOnlyForLock() {
+        CommandTiming lock = lock();
+        lock.mark(CommandTiming.STEP_LOCK_TASK, 10_100);
+        lock.mark(CommandTiming.STEP_FIRST_FRAME, 10_200);
+        assertFalse(lock.isComplete());
+        lock.mark(CommandTiming.STEP_LOCK_NOW, 10_050);
+        assertTrue(lock.isComplete());
+
+        CommandTiming unlock = new CommandTiming("cmd-2", CommandBus.UNLOCK, "poll", 0, 0, 0);
+        unlock.mark(CommandTiming.STEP_LOCK_TASK, 30);
+        assertFalse(unlock.isComplete());
+        unlock.mark(CommandTiming.STEP_FIRST_FRAME, 60);
+        assertTrue(unlock.isComplete());
+    }
+
+    @Test
+    public void toAckFields_reportsMissingStepsAsMinusOne() {
+        CommandTiming timing = lock();
+        timing.mark(CommandTiming.STEP_LOCK_NOW, 10_020);
+
+        Map<String, Object> fields = timing.toAckFields();
+        assertEquals("cmd-1", fields.get("command_id"));
+        assertEquals(CommandBus.LOCK, fields.get("type"));
+        assertEquals("fcm", fields.get("channel"));
+        assertEquals(1_700_000_000_000L, fields.get("server_sent_at"));
+        assertEquals(1_700_000_000_800L, fields.get("received_at"));
+        assertEquals(20L, fields.get("lock_now_ms"));
+        assertEquals(-1L, fields.get("lock_task_ms"));
+        assertEquals(-1L, fields.get("first_frame_ms"));
+        assertEquals(false, fields.get("complete"));
+        assertEquals("lock_task,first_frame", fields.get("missing_steps"));
+    }
+
+    @Test
+    public void missingSteps_leavesOutLockNowForUnlock() {
+        CommandTiming unlock = new CommandTiming("cmd-3", CommandBus.UNLOCK, "fcm", 0, 0, 0);
+        assertEquals("lock_task,first_frame", unlock.missingSteps());
+        unlock.mark(CommandTiming.STEP_FIRST_FRAME, 40);
+        assertEquals("lock_task", unlock.missingSteps());
+
+        assertEquals("lock_now,lock_task,first_frame", lock().missingSteps());
+    }
+}
@@ -0,0 +1,157 @@
+package com.inova.guard.mdm.utils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Conmutación por error y vuelta al principal con resultados simulados, sin red real.
+ */
+public class EndpointRegistryTest {
+
+    private static final String PRIMARY = "https://primary.example.com";
+    private static final String SECONDARY = "https://secondary.example.com";
+    private static final String BACKUP = "https://backup.example.com";
+    private static final String LAN = "http://192.168.1.10:8000";
+
+    private final Map<String, String> prefs = new HashMap<>();
+    private final EndpointRegistry.Store store = new EndpointRegistry.Store() {
+        @Override
+        public String getString(String key) {
+            String value = prefs.get(key);
+            return value != null ? value : "";
+        }
+
+        @Override
+        public void putStrings(String[] keys, String[] values) {
+            for (int i = 0; i < keys.length; i++) {
+                prefs.put(keys[i], values[i]);
+            }
+        }
+    };
+
+    private boolean online = true;
+    private EndpointRegistry registry;
+
+    @Before
+    public void setUp() {
+        registry = newRegistry();
+        registry.configure(Arrays.asList(PRIMARY + "/", SECONDARY, BACKUP), LAN);
+    }
+
+    private EndpointRegistry newRegistry() {
+        return new EndpointRegistry(store, () -> 0L, () -> online);
+    }
+
+    private void fail(String url, int times) {
+        for (int i = 0; i < times; i++) {
+            registry.record(url + "/api/status/x/", false, 0, false);
+        }
+    }
+
+    @Test
+    public void withoutConfiguration_usesCompiledBaseUrl() {
+        prefs.clear();
+        assertEquals(Constants.BASE_URL, newRegistry().baseUrl());
+    }
+
+    @Test
+    public void staysOnActive_belowFailureThreshold() {
+        fail(PRIMARY, Constants.ENDPOINT_FAILOVER_THRESHOLD - 1);
+        assertEquals(PRIMARY, registry.baseUrl());
+    }
+
+    @Test
+    public void failsOver_toFastestHealthyEndpoint() {
+        registry.record(SECONDARY, true, 300, true);
+        registry.record(BACKUP, true, 80, true);
+        registry.record(LAN, true, 120, true);
+
+        fail(PRIMARY, Constants.ENDPOINT_FAILOVER_THRESHOLD);
+
+        assertEquals(BACKUP, registry.baseUrl());
+    }
+
+    @Test
+    public void selectionIsSticky_whileActiveKeepsAnswering() {
+        fail(PRIMARY, Constants.ENDPOINT_FAILOVER_THRESHOLD);
+        String active = registry.baseUrl();
+        String other = active.equals(SECONDARY) ? BACKUP : SECONDARY;
+
+        registry.record(active, true, 500, false);
+        registry.record(other, true, 10, true);
+
+        assertEquals(active, registry.baseUrl());
+    }
+
+    @Test
+    public void failsBack_afterConsecutivePrimaryProbes() {
+        fail(PRIMARY, Constants.ENDPOINT_FAILOVER_THRESHOLD);
+        assertNotEquals(PRIMARY, registry.baseUrl());
+
+        for (int i = 0; i < Constants.ENDPOINT_FAILBACK_PROBES - 1; i++) {
+            registry.record(PRIMARY, true, 50, true);
+        }
+        assertNotEquals(PRIMARY, registry.baseUrl());
+
+        registry.record(PRIMARY, true, 50, true);
+        assertEquals(PRIMARY, registry.baseUrl());
+    }
+
+    @Test
+    public void failuresWhileOffline_doNotCount() {
+        online = false;
+        fail(PRIMARY, Constants.ENDPOINT_FAILOVER_THRESHOLD * 2);
+        assertEquals(PRIMARY, registry.baseUrl());
+    }
+
+    @Test
+    public void httpClientErrors_areNotFailures() {
+        for (int i = 0; i < Constants.ENDPOINT_FAILOVER_THRESHOLD; i++) {
+            registry.recordResponse(PRIMARY + "/api/status/x/", 404, 40, false);
+        }
+        assertEquals(PRIMARY, registry.baseUrl());
+    }
+
+    @Test
+    public void httpServerErrors_countAsFailures() {
+        for (int i = 0; i < Constants.ENDPOINT_FAILOVER_THRESHOLD; i++) {
+            registry.recordResponse(PRIMARY + "/api/status/x/", 503, 40, false);
+        }
+        assertNotEquals(PRIMARY, registry.baseUrl());
+    }
+
+    @Test
+    public void activeEndpoint_survivesRestart() {
+        fail(PRIMARY, Constants.ENDPOINT_FAILOVER_THRESHOLD);
+        String active = registry.baseUrl();
+
+        assertEquals(active, newRegistry().baseUrl());
+    }
+
+    @Test
+    public void configure_ignoresInvalidUrlsAndCleartextOutsideLan() {
+        registry.configure(Arrays.asList("http://insecure.example.com", "", "ftp://x"), "");
+        assertEquals(PRIMARY, registry.baseUrl());
+
+        registry.configure(Collections.singletonList(SECONDARY), "");
+        assertEquals(SECONDARY, registry.baseUrl());
+    }
+
+    @Test
+    public void summary_reportsRolesAndHealth() {
+        registry.record(PRIMARY, true, 100, true);
+        Map<String, String> heartbeat = new HashMap<>();
+        registry.addSummaryTo(heartbeat);
+
+        assertEquals(PRIMARY, heartbeat.get("endpoint_active"));
+        assertEquals("primary,1,0,100", heartbeat.get("endpoint_0"));
+        assertEquals("lan,0,0,-1", heartbeat.get("endpoint_3"));
+    }
+}
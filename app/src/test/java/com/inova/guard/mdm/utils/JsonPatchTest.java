@@ -0,0 +1,159 @@
+package com.inova.guard.mdm.utils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class JsonPatchTest {
+
+    private Map<String, Object> status;
+
+    @Before
+    public void setUp() {
+        status = new LinkedHashMap<>();
+        status.put("is_locked", false);
+        status.put("amount_due", "$100.00");
+        status.put("amount_paid", "$50.00");
+        status.put("endpoints", new ArrayList<>(Arrays.asList("https://a.example", "https://b.example")));
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("version", 3);
+        status.put("runtime_config", config);
+    }
+
+    private static JsonPatch.Operation op(String op, String path, Object value) {
+        return new JsonPatch.Operation(op, path, null, value);
+    }
+
+    @Test
+    public void replace_changesOnlyTheTargetField() {
+        Object patched = JsonPatch.apply(status, Collections.singletonList(op("replace", "/amount_paid", "$100.00")));
+
+        assertEquals("$100.00", JsonPatch.get(patched, "/amount_paid"));
+        assertEquals("$100.00", JsonPatch.get(patched, "/amount_due"));
+        assertEquals(false, JsonPatch.get(patched, "/is_locked"));
+        // El original no se modifica.
+        assertEquals("$50.00", status.get("amount_paid"));
+    }
+
+    @Test
+    public void addAndRemove_workOnNestedObjectsAndArrays() {
+        Object patched = JsonPatch.apply(status, Arrays.asList(
+                op("add", "/endpoints/-", "https://c.example"),
+                op("add", "/endpoints/0", "https://lan.local"),
+                op("remove", "/endpoints/2", null),
+                op("add", "/runtime_config/values", new LinkedHashMap<>()),
+                op("remove", "/amount_due", null)));
+
+        assertEquals(Arrays.asList("https://lan.local", "https://a.example", "https://c.example"),
+                JsonPatch.get(patched, "/endpoints"));
+        assertTrue(JsonPatch.get(patched, "/runtime_config/values") instanceof Map);
+        try {
+            JsonPatch.get(patched, "/amount_due");
+            fail("amount_due debería haberse eliminado");
+        } catch (IllegalArgumentException expected) {
+            // Correcto.
+        }
+    }
+
+    @Test
+    public void moveAndCopy_relocateValues() {
+        Object patched = JsonPatch.apply(status, Arrays.asList(
+                new JsonPatch.Operation("copy", "/amount_before", "/amount_paid", null),
+                new JsonPatch.Operation("move", "/lan", "/endpoints/1", null)));
+
+        assertEquals("$50.00", JsonPatch.get(patched, "/amount_before"));
+        assertEquals("https://b.example", JsonPatch.get(patched, "/lan"));
+        assertEquals(1, ((List<?>) JsonPatch.get(patched, "/endpoints")).size());
+    }
+
+    @Test
+    public void failedOperation_leavesDocumentUntouched() {
+        List<JsonPatch.Operation> patch = Arrays.asList(
+                op("replace", "/amount_paid", "$100.00"),
+                op("test", "/runtime_config/version", 4));
+        try {
+            JsonPatch.apply(status, patch);
+            fail("test con otro valor debería rechazar el parche");
+        } catch (IllegalArgumentException expected) {
+            // Correcto.
+        }
+        assertEquals("$50.00", status.get("amount_paid"));
+
+        // 3 y 3L son el mismo número en JSON.
+        Object patched = JsonPatch.apply(status, Arrays.asList(op("test", "/runtime_config/version", 3L),
+                op("replace", "/amount_paid", "$100.00")));
+        assertEquals("$100.00", JsonPatch.get(patched, "/amount_paid"));
+    }
+
+    @Test
+    public void invalidPaths_areRejected() {
+        String[] paths = {"amount_paid", "/missing", "/endpoints/5", "/endpoints/01", "/is_locked/x"};
+        for (String path : paths) {
+            try {
+                JsonPatch.apply(status, Collections.singletonList(op("replace", path, "x")));
+                fail("ruta aceptada: " + path);
+            } catch (IllegalArgumentException expected) {
+                // Correcto.
+            }
+        }
+        try {
+            JsonPatch.apply(status, Collections.singletonList(op("merge", "/amount_paid", "x")));
+            fail("operación desconocida aceptada");
+        } catch (IllegalArgumentException expected) {
+            // Correcto.
+        }
+    }
+
+    @Test
+    public void pointerEscapes_areDecoded() {
+        status.put("a/b", 1);
+        status.put("m~n", 2);
+        assertEquals(1, JsonPatch.get(status, "/a~1b"));
+        assertEquals(2, JsonPatch.get(status, "/m~0n"));
+    }
+
+    @Test
+    public void touchedMembers_listsTopLevelTargetsAndMoveSources() {
+        List<JsonPatch.Operation> patch = Arrays.asList(
+                op("replace", "/amount_paid", "$100.00"),
+                op("add", "/runtime_config/version", 4),
+                op("test", "/is_locked", false),
+                new JsonPatch.Operation("move", "/a~1b", "/amount_due", null));
+
+        assertEquals(new HashSet<>(Arrays.asList("amount_paid", "runtime_config", "a/b", "amount_due")),
+                JsonPatch.touchedMembers(patch));
+        assertNull(JsonPatch.touchedMembers(Collections.singletonList(op("replace", "", status))));
+    }
+
+    @Test
+    public void singleFieldPatch_onLargeDocumentIsFast() {
+        Map<String, Object> large = new LinkedHashMap<>(status);
+        for (int i = 0; i < 300; i++) {
+            large.put("field_" + i, "valor " + i);
+        }
+        List<JsonPatch.Operation> patch = Collections.singletonList(op("replace", "/amount_paid", "$75.00"));
+        for (int i = 0; i < 200; i++) {
+            JsonPatch.apply(large, patch);
+        }
+
+        int rounds = 2000;
+        long start = System.nanoTime();
+        Object patched = large;
+        for (int i = 0; i < rounds; i++) {
+            patched = JsonPatch.apply(large, patch);
+        }
+        long perPatchMicros = (System.nanoTime() - start) / 1000 / rounds;
+        assertEquals("$75.00", JsonPatch.get(patched, "/amount_paid"));
+        // Holgado para máquinas de CI lentas; en la práctica son decenas de microsegundos.
+        assertTrue("parche demasiado lento: " + perPatchMicros + " µs", perPatchMicros < 5000);
+    }
+}
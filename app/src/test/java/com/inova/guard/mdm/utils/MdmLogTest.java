@@ -0,0 +1,89 @@
+package com.inova.guard.mdm.utils;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MdmLogTest {
+
+    private static final String TAG = "MdmLogTest";
+    private static final int CYCLES = 10_000;
+
+    /** Respuesta típica de check_device_status, que antes se concatenaba completa en cada ciclo. */
+    private static final String RESPONSE = "{\"is_locked\":false,\"unlock_code\":\"123456\","
+            + "\"contact_phone\":\"+58 412 1234567\",\"next_payment_date\":\"2026-11-01\","
+            + "\"amount_due\":\"25.00\",\"amount_paid\":\"75.00\",\"policy_hash\":\"3f2a9c\","
+            + "\"payment_instructions\":\"Contacte a la administración para más detalles.\"}";
+
+    @After
+    public void tearDown() {
+        MdmLog.setMinLevel(MdmLog.COMPILED_MIN_LEVEL);
+    }
+
+    @Test
+    public void enabledRecords_areKeptInRingBuffer() {
+        MdmLog.setMinLevel(MdmLog.DEBUG);
+        MdmLog.d(TAG, "Minutos sin conexión: {}", 42L);
+        MdmLog.e(TAG, "Fallo: {} ({})", "timeout", "añadido");
+
+        String dump = MdmLog.dump();
+        assertTrue(dump, dump.contains("D/" + TAG + ": Minutos sin conexión: 42"));
+        assertTrue(dump, dump.contains("E/" + TAG + ": Fallo: timeout (añadido)"));
+    }
+
+    @Test
+    public void disabledLevel_isNotRecorded() {
+        MdmLog.setMinLevel(MdmLog.INFO);
+        MdmLog.d(TAG, "no debe aparecer {}", 7L);
+        assertFalse(MdmLog.dump().contains("no debe aparecer"));
+    }
+
+    @Test
+    public void ringBuffer_dropsOldestRecordsWhenFull() {
+        MdmLog.setMinLevel(MdmLog.DEBUG);
+        MdmLog.d(TAG, "registro-inicial");
+        for (int i = 0; i < 5_000; i++) {
+            MdmLog.d(TAG, "relleno {} {}", i, RESPONSE);
+        }
+        String dump = MdmLog.dump();
+        assertFalse(dump.contains("registro-inicial"));
+        assertTrue(dump.contains("relleno 4999 "));
+        assertTrue(MdmLog.snapshotRing().length <= 64 * 1024);
+    }
+
+    @Test
+    public void disabledLevel_neverFormatsArguments() {
+        MdmLog.setMinLevel(MdmLog.INFO);
+        CountingArgument response = new CountingArgument(RESPONSE);
+        byte[] ringBefore = MdmLog.snapshotRing();
+
+        // La fachada comprueba el nivel antes de formatear: ni toString ni escritura en el anillo.
+        for (int i = 0; i < CYCLES; i++) {
+            MdmLog.d(TAG, "Minutos sin conexión: {}", 17L + i);
+            MdmLog.d(TAG, "Estado de conectividad reportado y info actualizada: {}", response);
+        }
+        assertEquals(0, response.formatted);
+        assertArrayEquals(ringBefore, MdmLog.snapshotRing());
+
+        MdmLog.setMinLevel(MdmLog.DEBUG);
+        MdmLog.d(TAG, "Estado de conectividad reportado y info actualizada: {}", response);
+        assertEquals(1, response.formatted);
+    }
+
+    /** Argumento que cuenta cuántas veces se convierte en texto. */
+    private static final class CountingArgument {
+        private final String value;
+        int formatted;
+
+        CountingArgument(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            formatted++;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.inova.guard.mdm.utils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class MessageTemplatesTest {
+
+    private MessageTemplates templates;
+    private Map<String, String> params;
+
+    @Before
+    public void setUp() {
+        Map<String, String> texts = new HashMap<>();
+        texts.put("payment_due", "Su cuota de {amount} vence el {date}. Evite el bloqueo de su equipo.");
+        texts.put("locked", "Equipo bloqueado por falta de pago. Llame al {phone}.");
+        templates = new MessageTemplates(4, "es", texts);
+        params = new HashMap<>();
+        params.put("amount", "$50.00");
+        params.put("date", "05/03/2025");
+        params.put("phone", "+58 412 1234567");
+    }
+
+    @Test
+    public void render_substitutesAllPlaceholders() {
+        assertEquals("Su cuota de $50.00 vence el 05/03/2025. Evite el bloqueo de su equipo.",
+                templates.render("payment_due", params));
+        assertEquals("Equipo bloqueado por falta de pago. Llame al +58 412 1234567.",
+                templates.render("locked", params));
+    }
+
+    @Test
+    public void render_returnsNullForUnknownTemplateOrMissingParam() {
+        assertNull(templates.render("promo", params));
+        params.remove("date");
+        assertNull(templates.render("payment_due", params));
+        assertNull(MessageTemplates.empty().render("payment_due", params));
+    }
+
+    @Test
+    public void format_leavesBracesThatAreNotPlaceholders() {
+        assertEquals("{} y {a b} y {x", MessageTemplates.format("{} y {a b} y {x", params));
+        // El valor de un parámetro no se vuelve a interpretar.
+        params.put("amount", "{date}");
+        assertEquals("Total: {date}", MessageTemplates.format("Total: {amount}", params));
+    }
+
+    @Test
+    public void savedBytes_comparesRenderedTextWithWirePayload() {
+        String raw = "{\"amount\":\"$50.00\",\"date\":\"05/03/2025\"}";
+        String rendered = templates.render("payment_due", params);
+        long saved = MessageTemplates.savedBytes(rendered, "payment_due", raw);
+        assertEquals(rendered.length() - "payment_due".length() - raw.length(), saved);
+        assertTrue(saved > 0);
+        // Los caracteres no ASCII cuentan en bytes UTF-8.
+        assertEquals(2, MessageTemplates.savedBytes("ñ", "", ""));
+    }
+}
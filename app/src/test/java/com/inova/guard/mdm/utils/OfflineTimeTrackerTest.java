@@ -0,0 +1,182 @@
+package com.inova.guard.mdm.utils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Simula con un reloj virtual una semana de reinicios, apagados y cortes de conexión, y comprueba
+ * que el umbral de bloqueo se alcanza en el momento correcto sin esperar tiempo real.
+ */
+public class OfflineTimeTrackerTest {
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+    private static final long THRESHOLD = TimeUnit.MINUTES.toMillis(Constants.LOCK_THRESHOLD_MINUTES);
+
+    /** Reloj de un dispositivo: hora de pared, tiempo desde el arranque y contador de arranques. */
+    private static class VirtualDevice implements OfflineTimeTracker.Clock {
+        long wall = 1_700_000_000_000L;
+        long elapsed = 0;
+        int boots = 1;
+
+        @Override
+        public long elapsedRealtime() {
+            return elapsed;
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return wall;
+        }
+
+        @Override
+        public int bootCount() {
+            return boots;
+        }
+
+        void advance(long millis) {
+            wall += millis;
+            elapsed += millis;
+        }
+
+        void reboot(long poweredOffMillis) {
+            wall += poweredOffMillis;
+            elapsed = 0;
+            boots++;
+        }
+    }
+
+    private static class MemoryStore implements OfflineTimeTracker.Store {
+        final Map<String, Long> values = new HashMap<>();
+
+        @Override
+        public long getLong(String key, long defaultValue) {
+            Long value = values.get(key);
+            return value != null ? value : defaultValue;
+        }
+
+        @Override
+        public void putLongs(String[] keys, long[] values) {
+            for (int i = 0; i < keys.length; i++) {
+                this.values.put(keys[i], values[i]);
+            }
+        }
+    }
+
+    private VirtualDevice device;
+    private MemoryStore store;
+
+    @Before
+    public void setUp() {
+        device = new VirtualDevice();
+        store = new MemoryStore();
+    }
+
+    /** Equivale a reiniciar el proceso: el estado solo sobrevive en el almacén. */
+    private OfflineTimeTracker restartProcess() {
+        return new OfflineTimeTracker(device, store);
+    }
+
+    @Test
+    public void offlineTime_survivesProcessRestarts() {
+        OfflineTimeTracker tracker = restartProcess();
+        tracker.markConnected();
+        device.advance(3 * HOUR);
+        tracker.checkpoint();
+
+        tracker = restartProcess();
+        device.advance(2 * HOUR);
+        assertEquals(5 * HOUR, tracker.getOfflineMillis());
+    }
+
+    @Test
+    public void offlineTime_countsUptimeAndPowerOffAcrossReboots() {
+        OfflineTimeTracker tracker = restartProcess();
+        tracker.markConnected();
+        device.advance(10 * HOUR);
+        tracker.checkpoint();
+        // El proceso sigue vivo 2 horas más sin guardar punto de control y el equipo se apaga 6 horas.
+        device.advance(2 * HOUR);
+        device.reboot(6 * HOUR);
+
+        tracker = restartProcess();
+        device.advance(HOUR);
+        assertEquals(19 * HOUR, tracker.getOfflineMillis());
+    }
+
+    @Test
+    public void offlineTime_ignoresWallClockMovingBackwards() {
+        OfflineTimeTracker tracker = restartProcess();
+        tracker.markConnected();
+        device.advance(4 * HOUR);
+        tracker.checkpoint();
+        device.wall -= 2 * DAY;
+        device.advance(HOUR);
+        assertEquals(5 * HOUR, tracker.getOfflineMillis());
+
+        device.reboot(0);
+        tracker = restartProcess();
+        // El apagado no suma porque la hora de pared retrocedió, pero no se pierde lo acumulado.
+        assertEquals(4 * HOUR, tracker.getOfflineMillis());
+    }
+
+    @Test
+    public void markConnected_resetsCounterAndDeadline() {
+        OfflineTimeTracker tracker = restartProcess();
+        tracker.markConnected();
+        device.advance(3 * DAY);
+        device.reboot(HOUR);
+        tracker = restartProcess();
+        assertTrue(tracker.getOfflineMillis() >= 3 * DAY);
+
+        tracker.markConnected();
+        assertEquals(0, tracker.getOfflineMillis());
+        assertEquals(device.elapsed + THRESHOLD, tracker.getDeadlineElapsed(THRESHOLD));
+    }
+
+    @Test
+    public void weekOfRebootsAndGaps_reachesThresholdExactlyOnce() {
+        OfflineTimeTracker tracker = restartProcess();
+        tracker.markConnected();
+
+        // Día 1: conexión intermitente; el último contacto es al final del día.
+        for (int i = 0; i < 24; i++) {
+            device.advance(HOUR);
+            tracker.checkpoint();
+            if (i % 6 == 5) {
+                tracker.markConnected();
+            }
+        }
+        long lastContactWall = device.wall;
+
+        // A partir de aquí no hay conexión: reinicios diarios con apagados de distinta duración.
+        long expectedOffline = 0;
+        for (int day = 0; day < 6; day++) {
+            for (int i = 0; i < 20; i++) {
+                device.advance(HOUR);
+                tracker.checkpoint();
+            }
+            device.advance(30 * 60 * 1000L);
+            long poweredOff = (day + 1) * 30 * 60 * 1000L;
+            device.reboot(poweredOff);
+            tracker = restartProcess();
+            expectedOffline = device.wall - lastContactWall;
+            assertEquals(expectedOffline, tracker.getOfflineMillis());
+            assertTrue("No debe bloquear antes de tiempo (día " + day + ")", tracker.getOfflineMillis() < THRESHOLD);
+        }
+
+        // La alarma exacta debe apuntar justo al umbral.
+        long deadline = tracker.getDeadlineElapsed(THRESHOLD);
+        device.advance(deadline - device.elapsed - 1);
+        assertTrue(tracker.getOfflineMillis() < THRESHOLD);
+        device.advance(1);
+        assertEquals(THRESHOLD, tracker.getOfflineMillis());
+        assertEquals(device.wall - lastContactWall, tracker.getOfflineMillis());
+    }
+}
@@ -0,0 +1,251 @@
+package com.inova.guard.mdm.utils;
+
+import android.content.SharedPreferences;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Limitación de intentos, rechazo de códigos reutilizados y caducidad de los fallos del
+ * verificador sin conexión, con las preferencias en memoria.
+ */
+public class OfflineUnlockVerifierTest {
+
+    private static final byte[] RFC_SECRET = "12345678901234567890".getBytes(StandardCharsets.US_ASCII);
+    private static final long STEP_MS = Constants.UNLOCK_CODE_STEP_SECONDS * 1000;
+
+    private MemoryPreferences preferences;
+    private UnlockCodeGenerator generator;
+    private OfflineUnlockVerifier verifier;
+
+    @Before
+    public void setUp() {
+        preferences = new MemoryPreferences();
+        generator = new UnlockCodeGenerator(RFC_SECRET, Constants.UNLOCK_CODE_DIGITS, Constants.UNLOCK_CODE_STEP_SECONDS);
+        verifier = new OfflineUnlockVerifier(preferences, generator);
+    }
+
+    @Test
+    public void verify_acceptsRollingCodeOnce() {
+        long now = 100 * STEP_MS;
+        String code = generator.generate(100);
+
+        assertEquals(OfflineUnlockVerifier.Result.ACCEPTED, verifier.verify(code, now));
+        assertEquals(100, verifier.getLastAcceptedStep());
+        assertEquals(OfflineUnlockVerifier.Result.REPLAYED, verifier.verify(code, now + 1000));
+        // Un paso anterior dentro de la ventana tampoco vale una vez aceptado uno posterior.
+        assertEquals(OfflineUnlockVerifier.Result.REPLAYED, verifier.verify(generator.generate(99), now + 2000));
+        assertEquals(2, verifier.getFailedAttempts(now + 2000));
+    }
+
+    @Test
+    public void verify_serverCodeIsSingleUse() {
+        preferences.edit().putString(Constants.PREF_UNLOCK_CODE, "4242").apply();
+
+        assertEquals(OfflineUnlockVerifier.Result.ACCEPTED_SERVER_CODE, verifier.verify("4242", 1000));
+        assertEquals(OfflineUnlockVerifier.Result.REJECTED, verifier.verify("4242", 2000));
+    }
+
+    @Test
+    public void verify_locksOutAfterFreeAttemptsAndDoublesTheWait() {
+        long now = 1_000_000;
+        for (int i = 1; i < Constants.UNLOCK_MAX_FREE_ATTEMPTS; i++) {
+            assertEquals(OfflineUnlockVerifier.Result.REJECTED, verifier.verify("000000", now));
+            assertEquals(0, verifier.getRemainingLockoutMillis(now));
+        }
+        assertEquals(OfflineUnlockVerifier.Result.REJECTED, verifier.verify("000000", now));
+        assertEquals(Constants.UNLOCK_BASE_LOCKOUT_MS, verifier.getRemainingLockoutMillis(now));
+
+        // Durante el bloqueo ni siquiera el código correcto se comprueba.
+        String valid = generator.generate(now / STEP_MS);
+        assertEquals(OfflineUnlockVerifier.Result.THROTTLED, verifier.verify(valid, now + 1000));
+
+        now += Constants.UNLOCK_BASE_LOCKOUT_MS;
+        assertEquals(OfflineUnlockVerifier.Result.REJECTED, verifier.verify("000000", now));
+        assertEquals(2 * Constants.UNLOCK_BASE_LOCKOUT_MS, verifier.getRemainingLockoutMillis(now));
+    }
+
+    @Test
+    public void verify_successResetsFailures() {
+        long now = 200 * STEP_MS;
+        for (int i = 0; i < Constants.UNLOCK_MAX_FREE_ATTEMPTS - 1; i++) {
+            verifier.verify("000000", now);
+        }
+        assertEquals(OfflineUnlockVerifier.Result.ACCEPTED, verifier.verify(generator.generate(200), now));
+        assertEquals(0, verifier.getFailedAttempts(now));
+        assertEquals(OfflineUnlockVerifier.Result.REJECTED, verifier.verify("000000", now));
+        assertEquals(0, verifier.getRemainingLockoutMillis(now));
+    }
+
+    @Test
+    public void failedAttempts_decayOverQuietPeriods() {
+        long now = 1_000_000;
+        for (int i = 0; i < Constants.UNLOCK_MAX_FREE_ATTEMPTS - 1; i++) {
+            verifier.verify("000000", now);
+        }
+        assertEquals(Constants.UNLOCK_MAX_FREE_ATTEMPTS - 1, verifier.getFailedAttempts(now));
+        assertEquals(Constants.UNLOCK_MAX_FREE_ATTEMPTS - 2,
+                verifier.getFailedAttempts(now + Constants.UNLOCK_FAILURE_DECAY_MS));
+
+        // Tras dos periodos sin fallos, un nuevo error ya no provoca el bloqueo.
+        now += 2 * Constants.UNLOCK_FAILURE_DECAY_MS;
+        assertEquals(OfflineUnlockVerifier.Result.REJECTED, verifier.verify("000000", now));
+        assertEquals(Constants.UNLOCK_MAX_FREE_ATTEMPTS - 2, verifier.getFailedAttempts(now));
+        assertEquals(0, verifier.getRemainingLockoutMillis(now));
+
+        assertEquals(0, verifier.getFailedAttempts(now + 30 * Constants.UNLOCK_FAILURE_DECAY_MS));
+    }
+
+    @Test
+    public void failedAttempts_doNotDecayWhenClockGoesBack() {
+        long now = 10 * Constants.UNLOCK_FAILURE_DECAY_MS;
+        verifier.verify("000000", now);
+        verifier.verify("000000", now);
+        assertEquals(2, verifier.getFailedAttempts(now - 5 * Constants.UNLOCK_FAILURE_DECAY_MS));
+    }
+
+    /** Preferencias en memoria con escritura inmediata. */
+    private static final class MemoryPreferences implements SharedPreferences {
+        private final Map<String, Object> values = new HashMap<>();
+
+        @Override
+        public Map<String, ?> getAll() {
+            return new HashMap<>(values);
+        }
+
+        @Override
+        public String getString(String key, String defValue) {
+            Object value = values.get(key);
+            return value == null ? defValue : (String) value;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Set<String> getStringSet(String key, Set<String> defValues) {
+            Object value = values.get(key);
+            return value == null ? defValues : (Set<String>) value;
+        }
+
+        @Override
+        public int getInt(String key, int defValue) {
+            Object value = values.get(key);
+            return value == null ? defValue : (Integer) value;
+        }
+
+        @Override
+        public long getLong(String key, long defValue) {
+            Object value = values.get(key);
+            return value == null ? defValue : (Long) value;
+        }
+
+        @Override
+        public float getFloat(String key, float defValue) {
+            Object value = values.get(key);
+            return value == null ? defValue : (Float) value;
+        }
+
+        @Override
+        public boolean getBoolean(String key, boolean defValue) {
+            Object value = values.get(key);
+            return value == null ? defValue : (Boolean) value;
+        }
+
+        @Override
+        public boolean contains(String key) {
+            return values.containsKey(key);
+        }
+
+        @Override
+        public Editor edit() {
+            return new MemoryEditor();
+        }
+
+        @Override
+        public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        }
+
+        @Override
+        public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        }
+
+        private final class MemoryEditor implements Editor {
+            private final Map<String, Object> changes = new HashMap<>();
+            private boolean clear;
+
+            @Override
+            public Editor putString(String key, String value) {
+                changes.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putStringSet(String key, Set<String> value) {
+                changes.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putInt(String key, int value) {
+                changes.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putLong(String key, long value) {
+                changes.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putFloat(String key, float value) {
+                changes.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putBoolean(String key, boolean value) {
+                changes.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor remove(String key) {
+                changes.put(key, null);
+                return this;
+            }
+
+            @Override
+            public Editor clear() {
+                clear = true;
+                return this;
+            }
+
+            @Override
+            public boolean commit() {
+                if (clear) {
+                    values.clear();
+                }
+                for (Map.Entry<String, Object> change : changes.entrySet()) {
+                    if (change.getValue() == null) {
+                        values.remove(change.getKey());
+                    } else {
+                        values.put(change.getKey(), change.getValue());
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public void apply() {
+                commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.inova.guard.mdm.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PaymentLedgerTest {
+
+    private File directory;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("ledger").toFile();
+        file = new File(directory, "payment_ledger.log");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        directory.delete();
+    }
+
+    private static PaymentLedger.Entry installment(long sequence) {
+        return new PaymentLedger.Entry(sequence, PaymentLedger.TYPE_INSTALLMENT, "05/0" + sequence + "/2025", "$50.00", "Cuota " + sequence);
+    }
+
+    @Test
+    public void append_advancesCursorAndSurvivesReload() {
+        PaymentLedger ledger = new PaymentLedger(file);
+        assertEquals(0, ledger.getCursor());
+
+        assertEquals(2, ledger.append(Arrays.asList(installment(2), installment(1))));
+        assertEquals(2, ledger.getCursor());
+
+        PaymentLedger reloaded = new PaymentLedger(file);
+        assertEquals(2, reloaded.size());
+        assertEquals(2, reloaded.getCursor());
+        assertEquals("Cuota 1", reloaded.recent(5).get(1).detail);
+    }
+
+    @Test
+    public void append_ignoresEntriesAtOrBeforeCursor() {
+        PaymentLedger ledger = new PaymentLedger(file);
+        ledger.append(Arrays.asList(installment(1), installment(2)));
+
+        // Un reintento de la misma respuesta no duplica movimientos.
+        assertEquals(0, ledger.append(Arrays.asList(installment(1), installment(2))));
+        assertEquals(1, ledger.append(Arrays.asList(installment(2), installment(3))));
+        assertEquals(3, new PaymentLedger(file).size());
+    }
+
+    @Test
+    public void recent_returnsNewestFirstUpToLimit() {
+        PaymentLedger ledger = new PaymentLedger(file);
+        ledger.append(Arrays.asList(installment(1), installment(2),
+                new PaymentLedger.Entry(3, PaymentLedger.TYPE_PAYMENT, "06/03/2025", "$50.00", "Transferencia")));
+
+        List<PaymentLedger.Entry> recent = ledger.recent(2);
+        assertEquals(2, recent.size());
+        assertEquals(3, recent.get(0).sequence);
+        assertEquals(PaymentLedger.TYPE_PAYMENT, recent.get(0).type);
+        assertEquals(2, recent.get(1).sequence);
+    }
+
+    @Test
+    public void load_truncatesCorruptTail() throws IOException {
+        PaymentLedger ledger = new PaymentLedger(file);
+        ledger.append(Arrays.asList(installment(1), installment(2)));
+        long validLength = file.length();
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write("3\t1\t05/03/2025\t$5".getBytes(StandardCharsets.UTF_8));
+        }
+
+        PaymentLedger reloaded = new PaymentLedger(file);
+        assertEquals(2, reloaded.getCursor());
+        assertEquals(validLength, file.length());
+        // Tras el recorte se puede seguir añadiendo.
+        assertEquals(1, reloaded.append(Collections.singletonList(installment(3))));
+        assertEquals(3, new PaymentLedger(file).size());
+    }
+
+    @Test
+    public void encode_replacesSeparatorsInsideFields() {
+        PaymentLedger.Entry entry = new PaymentLedger.Entry(7, PaymentLedger.TYPE_PAYMENT, "01/01/2025", "$10.00", "Banco\tcentral\nagencia");
+        PaymentLedger.Entry decoded = PaymentLedger.decode(PaymentLedger.encode(entry));
+        assertNotNull(decoded);
+        assertEquals("Banco central agencia", decoded.detail);
+        assertNull(PaymentLedger.decode(PaymentLedger.encode(entry).replace("$10.00", "$99.00")));
+    }
+
+    @Test
+    public void clear_emptiesLedgerAndFile() {
+        PaymentLedger ledger = new PaymentLedger(file);
+        ledger.append(Arrays.asList(installment(1), installment(2)));
+        ledger.clear();
+
+        assertEquals(0, ledger.getCursor());
+        assertEquals(0, new PaymentLedger(file).size());
+    }
+}
@@ -0,0 +1,98 @@
+package com.inova.guard.mdm.utils;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * Calendario de recordatorios de pago locales: ventana previa al vencimiento, un aviso por día y
+ * ninguno cuando no hay importe pendiente.
+ */
+public class PaymentReminderPlanTest {
+
+    private static final TimeZone ZONE = TimeZone.getTimeZone("America/Caracas");
+    private static final int HOUR = Constants.PAYMENT_REMINDER_HOUR;
+
+    private static long at(int year, int month, int day, int hour, int minute) {
+        Calendar calendar = Calendar.getInstance(ZONE);
+        calendar.clear();
+        calendar.set(year, month - 1, day, hour, minute);
+        return calendar.getTimeInMillis();
+    }
+
+    @Test
+    public void parseDueDate_acceptsDisplayAndIsoFormats() {
+        assertEquals(at(2026, 11, 15, 0, 0), PaymentReminderPlan.parseDueDate("15/11/2026", ZONE));
+        assertEquals(at(2026, 11, 15, 0, 0), PaymentReminderPlan.parseDueDate("2026-11-15", ZONE));
+        assertEquals(-1, PaymentReminderPlan.parseDueDate("N/A", ZONE));
+        assertEquals(-1, PaymentReminderPlan.parseDueDate("31/02/2026", ZONE));
+    }
+
+    @Test
+    public void isSettled_readsFormattedAmounts() {
+        assertTrue(PaymentReminderPlan.isSettled("$0.00"));
+        assertTrue(PaymentReminderPlan.isSettled("0,00"));
+        assertFalse(PaymentReminderPlan.isSettled("$1,250.00"));
+        assertFalse(PaymentReminderPlan.isSettled("1.250,00"));
+        assertFalse(PaymentReminderPlan.isSettled("pendiente"));
+        assertFalse(PaymentReminderPlan.isSettled(null));
+    }
+
+    @Test
+    public void nextReminder_startsThresholdDaysBeforeDueDate() {
+        long due = at(2026, 11, 15, 0, 0);
+
+        long next = PaymentReminderPlan.nextReminderAt(due, 5, HOUR, at(2026, 11, 1, 8, 0), 0, ZONE);
+
+        assertEquals(at(2026, 11, 10, HOUR, 0), next);
+    }
+
+    @Test
+    public void nextReminder_skipsDayAlreadyShown() {
+        long due = at(2026, 11, 15, 0, 0);
+        long shownToday = at(2026, 11, 12, 0, 0);
+
+        long next = PaymentReminderPlan.nextReminderAt(due, 5, HOUR, at(2026, 11, 12, 11, 0), shownToday, ZONE);
+
+        assertEquals(at(2026, 11, 13, HOUR, 0), next);
+    }
+
+    @Test
+    public void nextReminder_lateToday_isImmediate() {
+        long due = at(2026, 11, 15, 0, 0);
+        long now = at(2026, 11, 12, 16, 30);
+
+        assertEquals(now, PaymentReminderPlan.nextReminderAt(due, 5, HOUR, now, at(2026, 11, 11, 0, 0), ZONE));
+    }
+
+    @Test
+    public void nextReminder_noneAfterDueDate() {
+        long due = at(2026, 11, 15, 0, 0);
+
+        assertEquals(-1, PaymentReminderPlan.nextReminderAt(due, 5, HOUR, at(2026, 11, 16, 9, 0), 0, ZONE));
+        assertEquals(-1, PaymentReminderPlan.nextReminderAt(due, 5, HOUR, at(2026, 11, 15, 11, 0), due, ZONE));
+    }
+
+    @Test
+    public void isDueNow_onlyInsideWindowAfterReminderHour() {
+        long due = at(2026, 11, 15, 0, 0);
+
+        assertFalse(PaymentReminderPlan.isDueNow(due, 5, HOUR, at(2026, 11, 9, 12, 0), 0, ZONE));
+        assertFalse(PaymentReminderPlan.isDueNow(due, 5, HOUR, at(2026, 11, 10, 9, 0), 0, ZONE));
+        assertTrue(PaymentReminderPlan.isDueNow(due, 5, HOUR, at(2026, 11, 10, 10, 5), 0, ZONE));
+        assertTrue(PaymentReminderPlan.isDueNow(due, 5, HOUR, at(2026, 11, 15, 22, 0), 0, ZONE));
+        assertFalse(PaymentReminderPlan.isDueNow(due, 5, HOUR, at(2026, 11, 16, 10, 5), 0, ZONE));
+        assertFalse(PaymentReminderPlan.isDueNow(due, 5, HOUR, at(2026, 11, 12, 15, 0), at(2026, 11, 12, 0, 0), ZONE));
+    }
+
+    @Test
+    public void daysUntil_countsCalendarDays() {
+        long due = at(2026, 11, 15, 0, 0);
+
+        assertEquals(5, PaymentReminderPlan.daysUntil(due, at(2026, 11, 10, 23, 0), ZONE));
+        assertEquals(0, PaymentReminderPlan.daysUntil(due, at(2026, 11, 15, 10, 0), ZONE));
+    }
+}
@@ -0,0 +1,76 @@
+package com.inova.guard.mdm.utils;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Validación de la configuración remota: valores por defecto, claves desconocidas y límites.
+ */
+public class RuntimeConfigTest {
+
+    @Test
+    public void defaults_matchCompiledConstants() {
+        RuntimeConfig config = RuntimeConfig.defaults();
+
+        assertEquals(0, config.getVersion());
+        assertEquals(Constants.CONNECTION_CHECK_INTERVAL, config.getUiRefreshIntervalMs());
+        assertEquals(Constants.PAYMENT_REMINDER_THRESHOLD_DAYS, config.getPaymentReminderThresholdDays());
+        assertEquals(Constants.REMINDER_MIN_GAP_MS, config.getReminderMinGapMs());
+        assertEquals(Constants.REMINDER_MAX_PER_HOUR, config.getReminderMaxPerHour());
+        assertEquals(Constants.ENDPOINT_PROBE_INTERVAL_MS, config.getEndpointProbeIntervalMs());
+        assertEquals(Constants.CONNECTIVITY_DEBOUNCE_MS, config.getConnectivityDebounceMs());
+    }
+
+    @Test
+    public void overrides_replaceOnlyTheGivenKeys() {
+        Map<String, Long> overrides = new HashMap<>();
+        overrides.put(RuntimeConfig.REMINDER_MAX_PER_HOUR, 2L);
+        overrides.put(RuntimeConfig.UI_REFRESH_INTERVAL_MS, 5 * 60 * 1000L);
+
+        RuntimeConfig config = RuntimeConfig.create(7, overrides);
+
+        assertEquals(7, config.getVersion());
+        assertEquals(2, config.getReminderMaxPerHour());
+        assertEquals(5 * 60 * 1000L, config.getUiRefreshIntervalMs());
+        assertEquals(Constants.REMINDER_MIN_GAP_MS, config.getReminderMinGapMs());
+    }
+
+    @Test
+    public void unknownKeys_areIgnored() {
+        Map<String, Long> overrides = new HashMap<>();
+        overrides.put("feature_from_newer_app", 123L);
+
+        RuntimeConfig config = RuntimeConfig.create(3, overrides);
+
+        assertEquals(3, config.getVersion());
+        assertEquals(Constants.CONNECTIVITY_DEBOUNCE_MS, config.getConnectivityDebounceMs());
+    }
+
+    @Test
+    public void outOfRangeValue_rejectsWholeConfig() {
+        Map<String, Long> overrides = new HashMap<>();
+        overrides.put(RuntimeConfig.REMINDER_MAX_PER_HOUR, 2L);
+        overrides.put(RuntimeConfig.UI_REFRESH_INTERVAL_MS, 1000L);
+
+        try {
+            RuntimeConfig.create(4, overrides);
+            fail("Se esperaba IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains(RuntimeConfig.UI_REFRESH_INTERVAL_MS));
+        }
+    }
+
+    @Test
+    public void nonPositiveVersion_isRejected() {
+        try {
+            RuntimeConfig.create(0, new HashMap<>());
+            fail("Se esperaba IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            // Versión 0 está reservada para los valores por defecto.
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.inova.guard.mdm.utils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Aplicación de respuestas delta sobre el documento guardado y separación de los campos de un
+ * solo uso, sin org.json ni archivos.
+ */
+public class StatusStateStoreTest {
+
+    private Map<String, Object> document;
+
+    @Before
+    public void setUp() {
+        document = new LinkedHashMap<>();
+        document.put("is_locked", false);
+        document.put("amount_due", "$100.00");
+    }
+
+    private static List<JsonPatch.Operation> lock() {
+        return Collections.singletonList(new JsonPatch.Operation("replace", "/is_locked", null, true));
+    }
+
+    @Test
+    public void applyDelta_patchesMatchingVersion() {
+        Map<String, Object> patched = StatusStateStore.applyDelta(document, 7, 7, 8, lock());
+
+        assertEquals(true, patched.get("is_locked"));
+        assertEquals("$100.00", patched.get("amount_due"));
+        assertEquals(false, document.get("is_locked"));
+    }
+
+    @Test
+    public void applyDelta_rejectsOtherBaseVersion() {
+        assertNull(StatusStateStore.applyDelta(document, 7, 6, 8, lock()));
+        assertNull(StatusStateStore.applyDelta(document, 7, 8, 9, lock()));
+    }
+
+    @Test
+    public void applyDelta_rejectsWithoutStoredDocumentOrVersion() {
+        assertNull(StatusStateStore.applyDelta(null, 0, 0, 1, lock()));
+        assertNull(StatusStateStore.applyDelta(document, 7, 7, 0, lock()));
+    }
+
+    @Test
+    public void applyDelta_rejectsPatchThatDoesNotApply() {
+        List<JsonPatch.Operation> missing = Collections.singletonList(
+                new JsonPatch.Operation("remove", "/unlock_code", null, null));
+        assertNull(StatusStateStore.applyDelta(document, 7, 7, 8, missing));
+    }
+
+    @Test
+    public void stateOf_leavesOutSingleUseFields() {
+        Map<String, Object> response = new LinkedHashMap<>(document);
+        response.put("state_version", 8L);
+        response.put("ledger", Collections.emptyMap());
+        response.put("diagnostic_request_id", "diag-1");
+        response.put("unlock_secret", "c2VjcmV0");
+        response.put("command_id", "cmd-1");
+
+        Map<String, Object> state = StatusStateStore.stateOf(response);
+
+        assertEquals(document, state);
+        assertTrue(response.containsKey("unlock_secret"));
+    }
+}
@@ -0,0 +1,40 @@
+package com.inova.guard.mdm.utils;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Vectores de prueba de la RFC 4226 (apéndice D) para verificar que el dispositivo genera
+ * exactamente los mismos códigos que el servidor.
+ */
+public class UnlockCodeGeneratorTest {
+
+    private static final byte[] RFC_SECRET = "12345678901234567890".getBytes(StandardCharsets.US_ASCII);
+    private static final String[] RFC_CODES = {
+            "755224", "287082", "359152", "969429", "338314",
+            "254676", "287922", "162583", "399871", "520489"
+    };
+
+    @Test
+    public void generate_matchesRfc4226Vectors() {
+        UnlockCodeGenerator generator = new UnlockCodeGenerator(RFC_SECRET, 6, 30);
+        for (int counter = 0; counter < RFC_CODES.length; counter++) {
+            assertEquals(RFC_CODES[counter], generator.generate(counter));
+        }
+    }
+
+    @Test
+    public void match_acceptsCodesInsideWindowOnly() {
+        UnlockCodeGenerator generator = new UnlockCodeGenerator(RFC_SECRET, 6, 30);
+        long now = 5 * 30_000L; // paso 5
+        assertEquals(5, generator.match(RFC_CODES[5], now, 2, 1));
+        assertEquals(3, generator.match(RFC_CODES[3], now, 2, 1));
+        assertEquals(6, generator.match(RFC_CODES[6], now, 2, 1));
+        assertEquals(-1, generator.match(RFC_CODES[2], now, 2, 1));
+        assertEquals(-1, generator.match(RFC_CODES[7], now, 2, 1));
+        assertEquals(-1, generator.match("000000", now, 2, 1));
+    }
+}